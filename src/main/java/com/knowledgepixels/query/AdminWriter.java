@@ -0,0 +1,233 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.common.transaction.IsolationLevels;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.nanopub.vocabulary.NPA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The single writer of the admin repo's small, frequent triples. Hot-path callers queue
+ * triples with {@link #enqueue} and go on; a dedicated thread adds what has accumulated in
+ * one transaction every {@link #INTERVAL_MS}, or straight away once {@link #MAX_PENDING}
+ * triples are waiting.
+ *
+ * <p>Queued are the {@code npa:isHashOf} triples of hashes {@link Utils#createHash} sees
+ * for the first time and the {@code npa:note} triples {@link NanopubLoader} records. Each
+ * used to be its own admin-repo transaction on the thread that produced it; the hash
+ * mappings even while holding the lock every loader thread needs for hashing.
+ *
+ * <p>Writes that restart correctness depends on, the load state and counter of
+ * {@link StatusController}, go through {@link #commitNow} instead: it runs on the calling
+ * thread, returns only once the transaction is committed, and takes everything queued so
+ * far into the same transaction. So once a load counter is durable, so are the notes of
+ * the nanopubs it covers. Queued triples lost in a crash are harmless: a hash mapping is
+ * added again the next time its object is hashed, since the restarted process does not
+ * know the hash, and a note belongs to a nanopub the counter does not cover yet and that
+ * is therefore loaded again.
+ *
+ * <p>A failed write is logged and its triples stay queued for the next attempt;
+ * {@link #flush()} is called on shutdown.
+ */
+final class AdminWriter implements AutoCloseable {
+
+    /**
+     * Write interval in ms, from {@code NANOPUB_QUERY_ADMIN_WRITE_INTERVAL_MS} (default 1000;
+     * {@code NANOPUB_QUERY_HASH_WRITE_INTERVAL_MS} is still read as a fallback).
+     */
+    static final long INTERVAL_MS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_ADMIN_WRITE_INTERVAL_MS",
+            Utils.getEnvInt("NANOPUB_QUERY_HASH_WRITE_INTERVAL_MS", 1000)));
+
+    /**
+     * Pending triples after which a write is made without waiting for the interval, from
+     * {@code NANOPUB_QUERY_ADMIN_WRITE_MAX_PENDING} (default 200;
+     * {@code NANOPUB_QUERY_HASH_WRITE_MAX_PENDING} is still read as a fallback).
+     */
+    static final int MAX_PENDING = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_ADMIN_WRITE_MAX_PENDING",
+            Utils.getEnvInt("NANOPUB_QUERY_HASH_WRITE_MAX_PENDING", 200)));
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "admin-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final Logger logger = LoggerFactory.getLogger(AdminWriter.class);
+
+    private static final AdminWriter instance = new AdminWriter(AdminWriter::writeToAdminRepo, INTERVAL_MS, MAX_PENDING);
+
+    /**
+     * @return the writer of the admin repo
+     */
+    static AdminWriter get() {
+        return instance;
+    }
+
+    /**
+     * One admin-repo transaction.
+     */
+    @FunctionalInterface
+    interface Transaction {
+
+        /**
+         * Adds the queued triples and applies the update, all or nothing.
+         *
+         * @param batch  queued triples to add; may be empty
+         * @param update further changes to make in the same transaction, or null
+         */
+        void write(List<Statement> batch, Consumer<RepositoryConnection> update);
+
+    }
+
+    private final Transaction transaction;
+    private final int maxPending;
+    private final ConcurrentLinkedQueue<Statement> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final ScheduledFuture<?> ticker;
+
+    /**
+     * @param transaction writes to the store; may throw
+     * @param intervalMs  write interval
+     * @param maxPending  pending triples that trigger an early write
+     */
+    AdminWriter(Transaction transaction, long intervalMs, int maxPending) {
+        this.transaction = transaction;
+        this.maxPending = maxPending;
+        this.ticker = executor.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a triple for writing. Never touches the store on the calling thread.
+     *
+     * @param st the triple, in its admin-repo graph
+     */
+    void enqueue(Statement st) {
+        pending.add(st);
+        // One queued flush at a time: while the admin repo refuses writes the count stays
+        // above the threshold, and each call would queue one more transaction otherwise.
+        if (pendingCount.incrementAndGet() >= maxPending && flushQueued.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    /**
+     * Queues the mapping of a new hash.
+     *
+     * @param hash the hash
+     * @param obj  the hashed object
+     */
+    void enqueueHashMapping(String hash, Value obj) {
+        enqueue(vf.createStatement(vf.createIRI(NPA.HASH + hash), NPA.IS_HASH_OF, obj, NPA.GRAPH));
+    }
+
+    /**
+     * Queues a note about a nanopub.
+     *
+     * @param subj the nanopub
+     * @param note the note
+     */
+    void enqueueNote(Resource subj, String note) {
+        enqueue(vf.createStatement(subj, NPA.NOTE, vf.createLiteral(note), NPA.GRAPH));
+    }
+
+    /**
+     * Writes all pending triples in one transaction. On failure they stay pending for the
+     * next attempt.
+     */
+    void flush() {
+        flushQueued.set(false);
+        try {
+            write(null);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not write {} admin triples; will retry on the next tick: {}", pendingCount.get(), ex.toString());
+        }
+    }
+
+    /**
+     * Applies an update to the admin repo in one transaction together with all pending
+     * triples, and returns once it is committed.
+     *
+     * @param update the changes to make, given the connection of the open transaction
+     * @throws RuntimeException if the transaction failed; nothing of it was applied, and the
+     *                          pending triples stay pending
+     */
+    void commitNow(Consumer<RepositoryConnection> update) {
+        write(update);
+    }
+
+    /**
+     * @return the number of triples not yet written
+     */
+    int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the periodic writes. Does not write what is still pending; {@link #flush()}
+     * first if it should be.
+     */
+    @Override
+    public void close() {
+        ticker.cancel(false);
+    }
+
+    private synchronized void write(Consumer<RepositoryConnection> update) {
+        List<Statement> batch = new ArrayList<>();
+        for (Statement st = pending.poll(); st != null; st = pending.poll()) {
+            batch.add(st);
+        }
+        if (batch.isEmpty() && update == null) {
+            return;
+        }
+        try {
+            transaction.write(batch, update);
+            pendingCount.addAndGet(-batch.size());
+        } catch (RuntimeException ex) {
+            pending.addAll(batch);
+            throw ex;
+        }
+    }
+
+    @GeneratedFlagForDependentElements
+    private static void writeToAdminRepo(List<Statement> batch, Consumer<RepositoryConnection> update) {
+        try (RepositoryConnection conn = TripleStore.get().getAdminRepoConnection()) {
+            try {
+                // Plain inserts of triples nobody reads back in this process need no more
+                // than READ_COMMITTED. An update's triples are only written here and by
+                // StatusController#initialize, so SNAPSHOT already gives strict consistency;
+                // see NanopubLoader#repoWriteLocks for why SERIALIZABLE is avoided.
+                conn.begin(update == null ? IsolationLevels.READ_COMMITTED : IsolationLevels.SNAPSHOT);
+                if (!batch.isEmpty()) {
+                    conn.add(batch);
+                }
+                if (update != null) {
+                    update.accept(conn);
+                }
+                conn.commit();
+            } catch (RuntimeException ex) {
+                Utils.rollbackQuietly(conn);
+                throw ex;
+            }
+        }
+    }
+
+}
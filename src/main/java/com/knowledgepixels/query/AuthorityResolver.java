@@ -1,7 +1,9 @@
 package com.knowledgepixels.query;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -23,6 +25,7 @@ import org.nanopub.vocabulary.NPX;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.knowledgepixels.query.vocabulary.GEN;
 import com.knowledgepixels.query.vocabulary.NPAT;
 import com.knowledgepixels.query.vocabulary.SpacesVocab;
@@ -82,6 +85,9 @@ public final class AuthorityResolver {
      */
     private static final Set<IRI> APPROVED_SET = Set.of(NPA_LOADED, NPA_TO_LOAD);
 
+    /** The AccountState predicates {@link #mirrorTrustState} reads. */
+    private static final List<IRI> ACCOUNT_STATE_FIELDS = List.of(NPA_TRUST_STATUS, NPA_AGENT, NPA_PUBKEY, NPA_VIA_NANOPUB);
+
     private static AuthorityResolver instance;
 
     /** Returns the singleton. */
@@ -3261,18 +3267,28 @@ public final class AuthorityResolver {
             // Walk rdf:type triples in the trust state's graph; for each AccountState,
             // check status and copy the approved ones verbatim (minus status-specific
             // detail triples, which we don't need for validation).
+            List<IRI> accountStates = new ArrayList<>();
             try (RepositoryResult<Statement> typeRows = trustConn.getStatements(
                     null, RDF.TYPE, NPA_ACCOUNT_STATE, trustStateIri)) {
                 while (typeRows.hasNext()) {
-                    Statement st = typeRows.next();
-                    if (!(st.getSubject() instanceof IRI accountStateIri)) continue;
-                    Value status = trustConn.getStatements(accountStateIri, NPA_TRUST_STATUS, null, trustStateIri)
-                            .stream().findFirst().map(Statement::getObject).orElse(null);
+                    if (typeRows.next().getSubject() instanceof IRI accountStateIri) {
+                        accountStates.add(accountStateIri);
+                    }
+                }
+            }
+            // The fields of a batch of accounts come in one query, rather than four
+            // requests per account; only one batch's fields are held at a time.
+            for (List<IRI> batch : Lists.partition(accountStates, TripleStore.FETCH_BATCH_SIZE)) {
+                Map<IRI, Map<IRI, Value>> fields = new HashMap<>();
+                TripleStore.get().fetchSubjects(trustConn, batch, ACCOUNT_STATE_FIELDS, trustStateIri,
+                        st -> fields.computeIfAbsent((IRI) st.getSubject(), k -> new HashMap<>())
+                                .putIfAbsent(st.getPredicate(), st.getObject()));
+                for (IRI accountStateIri : batch) {
+                    Map<IRI, Value> account = fields.getOrDefault(accountStateIri, Map.of());
+                    Value status = account.get(NPA_TRUST_STATUS);
                     if (!(status instanceof IRI statusIri) || !APPROVED_SET.contains(statusIri)) continue;
-                    Value agent = trustConn.getStatements(accountStateIri, NPA_AGENT, null, trustStateIri)
-                            .stream().findFirst().map(Statement::getObject).orElse(null);
-                    Value pubkey = trustConn.getStatements(accountStateIri, NPA_PUBKEY, null, trustStateIri)
-                            .stream().findFirst().map(Statement::getObject).orElse(null);
+                    Value agent = account.get(NPA_AGENT);
+                    Value pubkey = account.get(NPA_PUBKEY);
                     if (agent == null || pubkey == null) {
                         logger.warn("AuthorityResolver.mirror: account {} missing agent or pubkey; skipping",
                                 accountStateIri);
@@ -3286,8 +3302,7 @@ public final class AuthorityResolver {
                     // finding #4). Optional: absent for snapshots from registries that predate
                     // nanopub-registry#117/#118, so consumers (e.g. get-space-members-ref) must
                     // treat npa:viaNanopub on an AccountState as best-effort, not guaranteed.
-                    Value viaNanopub = trustConn.getStatements(accountStateIri, NPA_VIA_NANOPUB, null, trustStateIri)
-                            .stream().findFirst().map(Statement::getObject).orElse(null);
+                    Value viaNanopub = account.get(NPA_VIA_NANOPUB);
                     if (viaNanopub != null) {
                         spacesConn.add(accountStateIri, NPA_VIA_NANOPUB, viaNanopub, newGraph);
                     }
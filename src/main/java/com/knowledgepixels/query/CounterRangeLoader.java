@@ -0,0 +1,323 @@
+package com.knowledgepixels.query;
+
+import org.nanopub.Nanopub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Fetches an initial load as several Jelly streams at once, one per range of registry
+ * counters, and hands the nanopubs on in counter order.
+ *
+ * <p>A single stream from the registry is read at the pace of one HTTP response, which for
+ * a fresh instance syncing millions of nanopubs is what the whole initial load waits on.
+ * Here the counters still to load are cut into ranges of {@link #RANGE_SIZE}; up to
+ * {@link #STREAMS} readers each take the next unfetched range, open a stream at its start
+ * (the registry's {@code afterCounter}), read it up to the range's end, and submit every
+ * nanopub to the prepare pool, so signature verification runs for all ranges in parallel.
+ *
+ * <p>The writes do not run in parallel. {@link #run} takes the ranges strictly in order and
+ * passes the prepared loaders to the caller's {@link NanopubLoadBatch}, exactly as the
+ * single-stream path does. That keeps every invariant the loader rests on: each repo's
+ * load-number chain follows registry order, an invalidator is written after what it
+ * invalidates, and the persisted load counter means "everything up to here is loaded".
+ * The last point is also what makes a crash cheap to resume: the only progress that
+ * exists in the store is a prefix of the counters, the ranges beyond it were fetched but
+ * never written, and a restart cuts what is left into ranges afresh.
+ *
+ * <p>Memory is bounded by {@link #MAX_RANGES_IN_MEMORY} ranges, of which at most a window
+ * of {@link NanopubLoadPipeline#MAX_IN_FLIGHT} prepared nanopubs each: a reader waits for
+ * the merge to finish a range before it takes one more, and for it to take nanopubs off a
+ * range's queue once the window is full. A reader whose stream breaks
+ * reconnects from the last counter it read, up to {@link #MAX_STREAM_RETRIES} times in a
+ * row; after that {@link #run} fails and the caller retries from its persisted counter.
+ *
+ * <p>A stream that ends without error before the end of its range, and without showing a
+ * counter beyond it, leaves the range short: the counters missing from it may still be in
+ * the registry. Passing the later ranges on would skip them for good, so {@link #run}
+ * stops after a short range and the caller cuts what is left into ranges afresh.
+ */
+final class CounterRangeLoader implements AutoCloseable {
+
+    /**
+     * Parallel Jelly streams during an initial load, from
+     * {@code NANOPUB_QUERY_INITIAL_LOAD_STREAMS} (default 1: the single-stream path). Each
+     * stream is one more long-running request against the registry.
+     */
+    static final int STREAMS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_INITIAL_LOAD_STREAMS", 1));
+
+    /**
+     * Counters per range, from {@code NANOPUB_QUERY_INITIAL_LOAD_RANGE_SIZE} (default
+     * 2000). Smaller ranges mean more stream requests; larger ones more nanopubs held in
+     * memory ahead of the writes.
+     */
+    static final long RANGE_SIZE = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_INITIAL_LOAD_RANGE_SIZE", 2000));
+
+    /**
+     * Ranges fetched ahead of the one being written, at most: twice the streams, so that
+     * the readers keep going while the merge drains a range.
+     */
+    static final int MAX_RANGES_IN_MEMORY = 2 * STREAMS;
+
+    static final int MAX_STREAM_RETRIES = 5;
+
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private static final Logger logger = LoggerFactory.getLogger(CounterRangeLoader.class);
+
+    /**
+     * The registry counters after {@code afterCounter} up to and including
+     * {@code lastCounter}.
+     */
+    record CounterRange(long afterCounter, long lastCounter) {
+    }
+
+    /**
+     * Where the nanopubs come from: the registry's Jelly stream in production.
+     */
+    interface StreamSource {
+
+        /**
+         * Streams the nanopubs after a counter, in counter order, until the stream ends or
+         * the consumer returns false.
+         *
+         * @param afterCounter the counter to start after
+         * @param consumer     takes each nanopub and its counter
+         * @throws Exception if the stream cannot be opened or breaks off
+         */
+        void stream(long afterCounter, StreamConsumer consumer) throws Exception;
+    }
+
+    interface StreamConsumer {
+
+        /**
+         * @return whether to keep reading
+         */
+        boolean accept(Nanopub np, long counter);
+    }
+
+    /**
+     * Marks the end of a range in its queue.
+     */
+    private static final Future<NanopubLoader> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * Marks the end of a range whose stream ended before the end of the range.
+     */
+    private static final Future<NanopubLoader> SHORT = CompletableFuture.completedFuture(null);
+
+    private final StreamSource source;
+    private final BiFunction<Nanopub, Long, Future<NanopubLoader>> prepare;
+    private final int streams;
+    private final int window;
+    private final long retryDelayMs;
+    private final ExecutorService readers;
+    private volatile boolean closed = false;
+
+    /**
+     * @param source       the stream to read ranges from
+     * @param prepare      submits a nanopub for preparation
+     * @param streams      the number of ranges read at once
+     * @param window       the prepared nanopubs queued per range at most
+     * @param retryDelayMs the pause before a broken stream is reopened
+     */
+    CounterRangeLoader(StreamSource source, BiFunction<Nanopub, Long, Future<NanopubLoader>> prepare, int streams, int window, long retryDelayMs) {
+        this.source = source;
+        this.prepare = prepare;
+        this.streams = Math.max(1, streams);
+        this.window = Math.max(1, window);
+        this.retryDelayMs = retryDelayMs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.readers = Executors.newFixedThreadPool(this.streams, r -> {
+            Thread t = new Thread(r, "range-reader-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param source the stream to read ranges from
+     */
+    CounterRangeLoader(StreamSource source) {
+        this(source, NanopubLoadPipeline::submitPrepare, STREAMS, NanopubLoadPipeline.MAX_IN_FLIGHT, RETRY_DELAY_MS);
+    }
+
+    /**
+     * Cuts the counters after {@code afterCounter} up to {@code targetCounter} into
+     * consecutive ranges.
+     *
+     * @param afterCounter  the last counter already loaded
+     * @param targetCounter the last counter to load
+     * @param rangeSize     counters per range
+     * @return the ranges, in order; empty if there is nothing to load
+     */
+    static List<CounterRange> split(long afterCounter, long targetCounter, long rangeSize) {
+        List<CounterRange> ranges = new ArrayList<>();
+        for (long after = afterCounter; after < targetCounter; after += rangeSize) {
+            ranges.add(new CounterRange(after, Math.min(after + rangeSize, targetCounter)));
+        }
+        return ranges;
+    }
+
+    /**
+     * Reads the ranges and passes their prepared nanopubs to {@code sink}, range by range in
+     * order, on the calling thread. Returns once every range has been passed on, or early
+     * after a range that ended short, leaving the ranges after it to the caller's next pass.
+     *
+     * @param ranges consecutive ranges, as from {@link #split}
+     * @param sink   takes the prepared loaders in counter order
+     * @throws RuntimeException if a range could not be read or a nanopub not be prepared, or
+     *                          the first range ended short before anything was passed on
+     */
+    void run(List<CounterRange> ranges, Consumer<NanopubLoader> sink) {
+        List<BlockingQueue<Future<NanopubLoader>>> queues = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            // One more than the window, for the end marker.
+            queues.add(new ArrayBlockingQueue<>(window + 1));
+        }
+        Semaphore inMemory = new Semaphore(Math.max(MAX_RANGES_IN_MEMORY, streams));
+        AtomicInteger nextRange = new AtomicInteger();
+        for (int r = 0; r < streams; r++) {
+            readers.execute(() -> {
+                while (!closed) {
+                    try {
+                        inMemory.acquire();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    // Ranges are handed out in order after the permit, so the range the
+                    // merge waits for always has a reader.
+                    int i = nextRange.getAndIncrement();
+                    if (i >= ranges.size()) {
+                        return;
+                    }
+                    if (!readRange(ranges.get(i), queues.get(i))) {
+                        return;
+                    }
+                }
+            });
+        }
+        boolean passed = false;
+        for (int i = 0; i < ranges.size(); i++) {
+            BlockingQueue<Future<NanopubLoader>> queue = queues.get(i);
+            try {
+                for (Future<NanopubLoader> next = queue.take(); next != END; next = queue.take()) {
+                    if (next == SHORT) {
+                        if (!passed) {
+                            // Nothing to start the next pass from: fail, so the caller
+                            // waits before it asks again.
+                            throw new RuntimeException("Stream for counter range " + ranges.get(i) + " ended before the end of the range");
+                        }
+                        logger.info("Initial load: stream for counter range {} ended before the end of the range; " +
+                                    "leaving the ranges after it for the next pass", ranges.get(i));
+                        return;
+                    }
+                    sink.accept(next.get());
+                    passed = true;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for counter range " + ranges.get(i), ex);
+            } catch (ExecutionException ex) {
+                throw new RuntimeException("Failed to read counter range " + ranges.get(i), ex.getCause());
+            }
+            inMemory.release();
+            logger.info("Initial load: range {} of {} done (counter {})", i + 1, ranges.size(), ranges.get(i).lastCounter());
+        }
+    }
+
+    /**
+     * Reads one range into its queue, reconnecting as needed, and ends it with
+     * {@link #END}, {@link #SHORT} or a failed future.
+     *
+     * @return false if the reader should stop
+     */
+    private boolean readRange(CounterRange range, BlockingQueue<Future<NanopubLoader>> queue) {
+        long[] position = {range.afterCounter()};
+        boolean[] beyond = {false};
+        int failures = 0;
+        while (!closed && position[0] < range.lastCounter()) {
+            long before = position[0];
+            try {
+                source.stream(before, (np, counter) -> {
+                    if (counter > range.lastCounter()) {
+                        beyond[0] = true;
+                        return false;
+                    }
+                    if (counter < position[0]) {
+                        throw new IllegalStateException("Received a nanopub with a counter lower than the last one read. " +
+                                                        "Last read: " + position[0] + ", received: " + counter);
+                    }
+                    enqueue(queue, prepare.apply(np, counter));
+                    position[0] = counter;
+                    return counter < range.lastCounter();
+                });
+                if (beyond[0]) {
+                    // The registry has no counters between the last one read and the end.
+                    break;
+                }
+                if (position[0] == before) {
+                    // Nothing more for now, which does not mean the rest of the range is
+                    // not in the registry.
+                    enqueue(queue, SHORT);
+                    return false;
+                }
+                failures = 0;
+            } catch (Exception ex) {
+                if (closed) {
+                    return false;
+                }
+                if (++failures > MAX_STREAM_RETRIES) {
+                    enqueue(queue, CompletableFuture.failedFuture(ex));
+                    return false;
+                }
+                logger.info("Stream for counter range {} broke off after counter {} (attempt {}/{}); reopening: {}",
+                        range, position[0], failures, MAX_STREAM_RETRIES, ex.toString());
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+        }
+        enqueue(queue, END);
+        return true;
+    }
+
+    /**
+     * Adds to a range's queue, waiting for the merge while it is full. Only {@link #close}
+     * interrupts the wait.
+     */
+    private static void enqueue(BlockingQueue<Future<NanopubLoader>> queue, Future<NanopubLoader> next) {
+        try {
+            queue.put(next);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the merge", ex);
+        }
+    }
+
+    /**
+     * Stops the readers. Nanopubs fetched but not yet passed on are dropped; they lie beyond
+     * the persisted counter and are fetched again on the next attempt.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        readers.shutdownNow();
+    }
+
+}
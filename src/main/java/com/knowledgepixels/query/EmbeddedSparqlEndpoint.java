@@ -0,0 +1,266 @@
+package com.knowledgepixels.query;
+
+import com.knowledgepixels.query.GrlcSpec.InvalidGrlcSpecException;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import org.eclipse.rdf4j.common.lang.FileFormat;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Answers the SPARQL requests that otherwise go through the reverse proxy to the RDF4J
+ * server, when the repos are embedded ({@link TripleStore#EMBEDDED_ENDPOINT_TYPE}) and there
+ * is no server. {@code /repo/<name>} takes a query like the server's repository endpoint
+ * (GET or form POST with a {@code query} parameter, or a POST with an
+ * {@code application/sparql-query} body); {@code /api/...} expands the grlc query as the
+ * proxy interceptor does and evaluates it here.
+ *
+ * <p>Results are written in the format the {@code Accept} header asks for, SPARQL JSON
+ * (Turtle for graph queries) when it names none the writers know. They are written in
+ * full on a worker thread and then sent; query results here are bounded by
+ * {@code RDF4J_QUERY_TIMEOUT_SECONDS} like the proxied ones are. Updates are not accepted,
+ * as on the proxied endpoint.
+ */
+final class EmbeddedSparqlEndpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedSparqlEndpoint.class);
+
+    private static final String API_PATTERN = "^/api/(RA[a-zA-Z0-9-_]{43})/([a-zA-Z0-9-_]+)([.]csv|[.]json|[.]srx)?([?].*)?$";
+
+    private EmbeddedSparqlEndpoint() {
+    }
+
+    /**
+     * A response ready to send.
+     */
+    record Response(int status, String contentType, byte[] body) {
+
+        static Response text(int status, String message) {
+            return new Response(status, "text/plain; charset=UTF-8", message.getBytes(StandardCharsets.UTF_8));
+        }
+
+    }
+
+    /**
+     * @param vertx               for running the queries on worker threads
+     * @param queryTimeoutSeconds evaluation limit per query
+     * @return the handler for {@code /repo/*}
+     */
+    static Handler<RoutingContext> repoHandler(Vertx vertx, int queryTimeoutSeconds) {
+        return ctx -> {
+            HttpServerRequest req = ctx.request();
+            if (req.method() == HttpMethod.HEAD) {
+                ctx.response().setStatusCode(200).end();
+                return;
+            }
+            String query = req.getParam("query");
+            String contentType = req.getHeader("Content-Type");
+            if (query == null && req.method() == HttpMethod.POST && contentType != null
+                && contentType.startsWith("application/sparql-query")) {
+                query = ctx.body().asString();
+            }
+            String repoName = repoName(ctx.normalizedPath());
+            String q = query;
+            answer(vertx, ctx, () -> {
+                if (q == null) {
+                    return Response.text(400, "Missing parameter: query");
+                }
+                return evaluateOnRepo(repoName, q, req.getHeader("Accept"), queryTimeoutSeconds);
+            });
+        };
+    }
+
+    /**
+     * @param vertx               for running the queries on worker threads
+     * @param queryTimeoutSeconds evaluation limit per query
+     * @return the handler for {@code /api/*}; passes requests that are no grlc API calls on
+     */
+    static Handler<RoutingContext> apiHandler(Vertx vertx, int queryTimeoutSeconds) {
+        return ctx -> {
+            HttpServerRequest req = ctx.request();
+            String uri = req.uri();
+            if (!uri.matches(API_PATTERN)) {
+                ctx.next();
+                return;
+            }
+            String accept = req.getHeader("Accept");
+            if (uri.matches(".*[.]csv([?].*)?$")) {
+                accept = "text/csv";
+            } else if (uri.matches(".*[.]json([?].*)?$")) {
+                accept = "application/json";
+            } else if (uri.matches(".*[.]srx([?].*)?$")) {
+                accept = "application/xml";
+            }
+            String path = uri.replaceFirst("[.](csv|json|srx)([?].*)?$", "$2");
+            String resultAccept = accept;
+            ctx.response().putHeader("Content-Disposition", "inline");
+            answer(vertx, ctx, () -> {
+                try {
+                    GrlcSpec grlcSpec = new GrlcSpec(path, req.params());
+                    return evaluateOnRepo(grlcSpec.getRepoName(), grlcSpec.expandQuery(), resultAccept, queryTimeoutSeconds);
+                } catch (InvalidGrlcSpecException ex) {
+                    logger.warn("Bad API request for '{}' with params {}: {}", uri, req.params(), ex.getMessage());
+                    return Response.text(400, "Bad request: " + ex.getMessage());
+                }
+            });
+        };
+    }
+
+    /**
+     * Maps a {@code /repo/...} path to the repo name the same way the proxy does, so
+     * {@code /repo/type/abc} is {@code type_abc}.
+     *
+     * @param path request path
+     * @return repo name
+     */
+    static String repoName(String path) {
+        return path.replaceAll("/", "_").replaceFirst("^_repo_", "");
+    }
+
+    private static void answer(Vertx vertx, RoutingContext ctx, Callable<Response> work) {
+        vertx.executeBlocking(work, false).onSuccess(r -> {
+            ctx.response()
+                    .setStatusCode(r.status())
+                    .putHeader("Content-Type", r.contentType())
+                    .putHeader("Access-Control-Allow-Origin", "*")
+                    .putHeader("Access-Control-Allow-Methods", "POST, GET, OPTIONS")
+                    .end(Buffer.buffer(r.body()));
+        }).onFailure(ex -> {
+            logger.error("Embedded query on '{}' failed", ctx.normalizedPath(), ex);
+            ctx.response().setStatusCode(500).end("Unexpected error: " + ex.getMessage());
+        });
+    }
+
+    /**
+     * Evaluates a query on one of the store's repos.
+     */
+    @GeneratedFlagForDependentElements
+    private static Response evaluateOnRepo(String repoName, String query, String accept, int queryTimeoutSeconds) {
+        if (!TripleStore.get().getRepositoryNames(TripleStore.repoClass(repoName)).contains(repoName)) {
+            return Response.text(404, "Unknown repository: " + repoName);
+        }
+        try (RepositoryConnection conn = TripleStore.get().getRepoConnection(repoName)) {
+            return evaluate(conn, query, accept, queryTimeoutSeconds);
+        }
+    }
+
+    /**
+     * Evaluates a query and writes its result in the format {@code accept} asks for.
+     *
+     * @param conn                connection to the repo to query
+     * @param query               SPARQL query
+     * @param accept              the request's {@code Accept} header, or null
+     * @param queryTimeoutSeconds evaluation limit
+     * @return the response: the result, or a 400 for a malformed query and a 503 for one
+     * that ran out of time
+     */
+    static Response evaluate(RepositoryConnection conn, String query, String accept, int queryTimeoutSeconds) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Query q = conn.prepareQuery(QueryLanguage.SPARQL, query);
+            q.setMaxExecutionTime(queryTimeoutSeconds);
+            if (q instanceof TupleQuery tq) {
+                var format = negotiate(accept, QueryResultIO::getWriterFormatForMIMEType, TupleQueryResultFormat.JSON);
+                tq.evaluate(QueryResultIO.createTupleWriter(format, out));
+                return new Response(200, contentType(format), out.toByteArray());
+            }
+            if (q instanceof BooleanQuery bq) {
+                var format = negotiate(accept, QueryResultIO::getBooleanWriterFormatForMIMEType, BooleanQueryResultFormat.JSON);
+                QueryResultIO.writeBoolean(bq.evaluate(), format, out);
+                return new Response(200, contentType(format), out.toByteArray());
+            }
+            GraphQuery gq = (GraphQuery) q;
+            var format = negotiate(accept, Rio::getWriterFormatForMIMEType, RDFFormat.TURTLE);
+            gq.evaluate(Rio.createWriter(format, out));
+            return new Response(200, contentType(format), out.toByteArray());
+        } catch (MalformedQueryException ex) {
+            return Response.text(400, "MALFORMED QUERY: " + ex.getMessage());
+        } catch (QueryInterruptedException ex) {
+            return Response.text(503, "Query evaluation took too long: " + ex.getMessage());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param accept an {@code Accept} header, or null
+     * @return its media types, most preferred first, without parameters
+     */
+    static List<String> acceptedMimeTypes(String accept) {
+        record Range(String mimeType, double q) {
+        }
+        List<Range> ranges = new ArrayList<>();
+        if (accept == null) {
+            return List.of();
+        }
+        for (String part : accept.split(",")) {
+            String[] params = part.split(";");
+            String mimeType = params[0].trim();
+            if (mimeType.isEmpty()) {
+                continue;
+            }
+            double q = 1.0;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException ex) {
+                        q = 0.0;
+                    }
+                }
+            }
+            if (q > 0) {
+                ranges.add(new Range(mimeType, q));
+            }
+        }
+        // Stable, so equally preferred types keep the client's order.
+        ranges.sort(Comparator.comparingDouble(Range::q).reversed());
+        return ranges.stream().map(Range::mimeType).toList();
+    }
+
+    private static <F extends FileFormat> F negotiate(String accept, Function<String, Optional<F>> writerFormat, F fallback) {
+        for (String mimeType : acceptedMimeTypes(accept)) {
+            Optional<F> format = writerFormat.apply(mimeType);
+            if (format.isPresent()) {
+                return format.get();
+            }
+        }
+        return fallback;
+    }
+
+    private static String contentType(FileFormat format) {
+        return format.hasCharset()
+                ? format.getDefaultMIMEType() + "; charset=" + format.getCharset().name()
+                : format.getDefaultMIMEType();
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.knowledgepixels.query;
 
+import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
 import net.trustyuri.TrustyUriUtils;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
@@ -27,13 +29,17 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Nanopub Query-specific wrapper around {@link QueryTemplate} that adds:
  * <ul>
  *   <li>request-URL parsing ({@code /…/RA…/{name}.rq})</li>
- *   <li>nanopub fetch cache</li>
+ *   <li>caching of parsed templates and resolved latest versions ({@link QueryTemplateCache}),
+ *       with concurrent fetches of one template nanopub collapsed into one</li>
  *   <li>the {@code _nanopub_trig} inline-nanopub parameter</li>
  *   <li>{@code api-version=latest} resolution against the local meta repo</li>
  *   <li>rewriting the canonical {@code https://w3id.org/np/l/nanopub-query-1.1/repo/}
@@ -50,7 +56,15 @@ public class GrlcSpec {
 
     private static final Logger logger = LoggerFactory.getLogger(GrlcSpec.class);
 
-    private static final ConcurrentHashMap<String, Nanopub> nanopubCache = new ConcurrentHashMap<>();
+    /**
+     * Fetches of template nanopubs that are running, by artifact code, so that concurrent
+     * requests for a template not cached yet wait for the same fetch instead of each making
+     * their own. Fetched nanopubs are kept by {@link QueryTemplateCache} as part of their
+     * parsed template.
+     */
+    private static final ConcurrentHashMap<String, CompletableFuture<Nanopub>> fetching = new ConcurrentHashMap<>();
+
+    private static final String ARTIFACT_CODE_URL_PATTERN = "^(.*/)(RA[A-Za-z0-9\\-_]{43})/(.*)?$";
 
     /**
      * Exception for invalid grlc specifications.
@@ -109,40 +123,107 @@ public class GrlcSpec {
      * @param parameters The URL request parameters
      */
     public GrlcSpec(String requestUrl, MultiMap parameters) throws InvalidGrlcSpecException {
+        this(requestUrl, parameters, read(requestUrl, parameters));
+    }
+
+    /**
+     * Creates the spec for a template already read.
+     */
+    private GrlcSpec(String requestUrl, MultiMap parameters, ReadTemplate read) {
         this.parameters = parameters;
+        requestUrl = requestUrl.replaceFirst("\\?.*$", "");
+        requestUrlBase = requestUrl.replaceFirst("^/(.*/)(RA[A-Za-z0-9\\-_]{43})/(.*)?$", "$1");
+        queryPart = queryPartOf(requestUrl);
+        artifactCode = read.artifactCode();
+        template = read.parsed().template();
+        queryContent = read.parsed().queryContent();
+        endpoint = read.parsed().endpoint();
+    }
+
+    /**
+     * The template a request is for.
+     *
+     * @param artifactCode artifact code of the template nanopub, the latest version if asked for
+     * @param parsed       the template
+     */
+    private record ReadTemplate(String artifactCode, ParsedTemplate parsed) {
+    }
+
+    private static String queryPartOf(String url) {
+        return url.replaceFirst("^(.*/)(RA[A-Za-z0-9\\-_]{43}/)(.*)?$", "$3").replaceFirst(".rq$", "");
+    }
+
+    /**
+     * Reads the template of a request, from the cache or else its nanopub. May block.
+     */
+    private static ReadTemplate read(String requestUrl, MultiMap parameters) throws InvalidGrlcSpecException {
         requestUrl = requestUrl.replaceFirst("\\?.*$", "");
         if (!requestUrl.matches(".*/RA[A-Za-z0-9\\-_]{43}/(.*)?")) {
             throw new InvalidGrlcSpecException("Invalid grlc API request: " + requestUrl);
         }
-        String parsedArtifactCode = requestUrl.replaceFirst("^(.*/)(RA[A-Za-z0-9\\-_]{43})/(.*)?$", "$2");
-        requestUrlBase = requestUrl.replaceFirst("^/(.*/)(RA[A-Za-z0-9\\-_]{43})/(.*)?$", "$1");
-
-        String parsedQueryPart = requestUrl.replaceFirst("^(.*/)(RA[A-Za-z0-9\\-_]{43}/)(.*)?$", "$3");
-        parsedQueryPart = parsedQueryPart.replaceFirst(".rq$", "");
-        queryPart = parsedQueryPart;
+        String parsedArtifactCode = requestUrl.replaceFirst(ARTIFACT_CODE_URL_PATTERN, "$2");
+        String queryPart = queryPartOf(requestUrl);
 
-        Nanopub np;
+        boolean latest = isLatestRequested(parameters);
+        ParsedTemplate parsed;
         String nanopubParam = parameters.get("_nanopub_trig");
         if (nanopubParam != null && !nanopubParam.isEmpty()) {
+            Nanopub np;
             try {
                 byte[] trig = Base64.getUrlDecoder().decode(nanopubParam);
                 np = new NanopubImpl(new ByteArrayInputStream(trig), RDFFormat.TRIG);
             } catch (MalformedNanopubException | IOException | IllegalArgumentException ex) {
                 throw new InvalidGrlcSpecException("Failed to parse nanopub from 'nanopub' parameter", ex);
             }
+            if (latest) {
+                String npArtifactCode = TrustyUriUtils.getArtifactCode(np.getUri().stringValue());
+                parsedArtifactCode = latestVersion(npArtifactCode, np);
+                // A later version is fetched like any other; the inline one is not cached.
+                parsed = parsedArtifactCode.equals(npArtifactCode)
+                        ? parse(np, parsedArtifactCode, queryPart)
+                        : cachedTemplate(parsedArtifactCode, queryPart);
+            } else {
+                parsed = parse(np, parsedArtifactCode, queryPart);
+            }
         } else {
-            np = nanopubCache.computeIfAbsent(parsedArtifactCode, GetNanopub::get);
-        }
-        // TODO rename "api-version" to "_api_version" for consistency
-        if (parameters.get("api-version") != null && parameters.get("api-version").equals("latest")) {
-            String latestUri = getLatestVersionIdLocally(np.getUri().stringValue());
-            if (!latestUri.equals(np.getUri().stringValue())) {
-                np = nanopubCache.computeIfAbsent(TrustyUriUtils.getArtifactCode(latestUri), GetNanopub::get);
+            if (latest) {
+                parsedArtifactCode = latestVersion(parsedArtifactCode, null);
             }
-            parsedArtifactCode = TrustyUriUtils.getArtifactCode(np.getUri().stringValue());
+            parsed = cachedTemplate(parsedArtifactCode, queryPart);
         }
-        artifactCode = parsedArtifactCode;
+        return new ReadTemplate(parsedArtifactCode, parsed);
+    }
 
+    /**
+     * A template as read from its nanopub, with the repo URLs rewritten.
+     *
+     * @param template     the template
+     * @param queryContent its query, as returned by {@link #getQueryContent()}
+     * @param endpoint     its endpoint, rewritten, or null
+     */
+    record ParsedTemplate(QueryTemplate template, String queryContent, String endpoint) {
+    }
+
+    // TODO rename "api-version" to "_api_version" for consistency
+    private static boolean isLatestRequested(MultiMap parameters) {
+        return "latest".equals(parameters.get("api-version"));
+    }
+
+    /**
+     * Returns the template from the cache, or fetches, parses and caches it.
+     */
+    private static ParsedTemplate cachedTemplate(String artifactCode, String queryPart) throws InvalidGrlcSpecException {
+        QueryTemplateCache cache = QueryTemplateCache.get();
+        ParsedTemplate parsed = cache.getTemplate(artifactCode, queryPart);
+        if (parsed == null) {
+            parsed = parse(fetchNanopub(artifactCode), artifactCode, queryPart);
+            cache.putTemplate(artifactCode, queryPart, parsed);
+        }
+        return parsed;
+    }
+
+    private static ParsedTemplate parse(Nanopub np, String artifactCode, String queryPart) throws InvalidGrlcSpecException {
+        QueryTemplate template;
         try {
             if (queryPart.isEmpty()) {
                 template = new QueryTemplate(np);
@@ -158,17 +239,124 @@ public class GrlcSpec {
                     "Query part doesn't match query name: " + queryPart + " / " + template.getQuerySuffix());
         }
 
-        queryContent = template.getSparql().replace(NANOPUB_QUERY_REPO_URL, nanopubQueryInternalUrl + "repo/");
+        String queryContent = template.getSparql().replace(NANOPUB_QUERY_REPO_URL, nanopubQueryInternalUrl + "repo/");
 
         IRI rawEndpoint = template.getEndpoint();
+        String endpoint = null;
         if (rawEndpoint != null) {
             String ep = rawEndpoint.stringValue();
             if (!ep.startsWith(NANOPUB_QUERY_REPO_URL)) {
                 throw new InvalidGrlcSpecException("Invalid/non-recognized endpoint: " + ep);
             }
             endpoint = ep.replace(NANOPUB_QUERY_REPO_URL, nanopubQueryInternalUrl + "repo/");
-        } else {
-            endpoint = null;
+        }
+        return new ParsedTemplate(template, queryContent, endpoint);
+    }
+
+    /**
+     * Returns the artifact code of the latest version of a template nanopub, from the cache
+     * or else the meta repo. Looked up in the meta repo, it is cached unless the lookup
+     * failed, in which case the given version is used as before.
+     *
+     * @param artifactCode artifact code of the template nanopub
+     * @param np           the nanopub, or null to take it from the template cache or fetch it
+     */
+    private static String latestVersion(String artifactCode, Nanopub np) throws InvalidGrlcSpecException {
+        QueryTemplateCache cache = QueryTemplateCache.get();
+        String latestArtifactCode = cache.getLatestVersion(artifactCode);
+        if (latestArtifactCode != null) {
+            return latestArtifactCode;
+        }
+        if (np == null) {
+            np = fetchNanopub(artifactCode);
+        }
+        long generation = cache.chainGeneration();
+        String nanopubUri = np.getUri().stringValue();
+        String latestUri;
+        try {
+            latestUri = getLatestVersionIdLocally(nanopubUri);
+        } catch (Exception ex) {
+            logger.warn("Could not resolve latest version locally, using original version: {}", ex.getMessage());
+            return artifactCode;
+        }
+        latestArtifactCode = latestUri.equals(nanopubUri) ? artifactCode : TrustyUriUtils.getArtifactCode(latestUri);
+        cache.putLatestVersion(artifactCode, latestArtifactCode, generation);
+        return latestArtifactCode;
+    }
+
+    /**
+     * Creates the spec for a request without blocking the calling thread. Reading the
+     * template can mean fetching its nanopub from the network and, for
+     * {@code api-version=latest}, querying the meta repo; that is done on a worker thread.
+     * Only a request that {@link QueryTemplateCache} can answer in full is read on the
+     * calling thread, from the entries as taken from the cache here: one evicted or expired
+     * in the meantime must not send the read to the store on this thread.
+     *
+     * @param vertx      for the worker thread
+     * @param requestUrl the request URL
+     * @param parameters the URL request parameters
+     * @return the spec; failed with an {@link InvalidGrlcSpecException} for a bad request
+     */
+    public static Future<GrlcSpec> resolve(Vertx vertx, String requestUrl, MultiMap parameters) {
+        String url = requestUrl.replaceFirst("\\?.*$", "");
+        if (parameters.get("_nanopub_trig") == null && url.matches(ARTIFACT_CODE_URL_PATTERN)) {
+            QueryTemplateCache cache = QueryTemplateCache.get();
+            String code = url.replaceFirst(ARTIFACT_CODE_URL_PATTERN, "$2");
+            String queryPart = queryPartOf(url);
+            if (isLatestRequested(parameters)) {
+                code = cache.hasLatestVersion(code) ? cache.getLatestVersion(code) : null;
+            }
+            // Checked first so that a miss is counted once, by the read on the worker thread.
+            ParsedTemplate parsed = code != null && cache.hasTemplate(code, queryPart)
+                    ? cache.getTemplate(code, queryPart) : null;
+            if (parsed != null) {
+                return Future.succeededFuture(new GrlcSpec(requestUrl, parameters, new ReadTemplate(code, parsed)));
+            }
+        }
+        return vertx.executeBlocking(() -> new GrlcSpec(requestUrl, parameters), false);
+    }
+
+    /**
+     * Fetches the nanopub with the given artifact code.
+     */
+    private static Nanopub fetchNanopub(String artifactCode) throws InvalidGrlcSpecException {
+        return fetchNanopub(artifactCode, GetNanopub::get);
+    }
+
+    /**
+     * Fetches the nanopub with the given artifact code. While a fetch is running, other
+     * callers for the same artifact code wait for its result instead of fetching again.
+     *
+     * @param artifactCode the artifact code
+     * @param fetch        fetches a nanopub; returns null if there is none
+     * @return the nanopub
+     * @throws InvalidGrlcSpecException if there is no such nanopub
+     */
+    static Nanopub fetchNanopub(String artifactCode, Function<String, Nanopub> fetch) throws InvalidGrlcSpecException {
+        CompletableFuture<Nanopub> own = new CompletableFuture<>();
+        CompletableFuture<Nanopub> fetched = fetching.putIfAbsent(artifactCode, own);
+        if (fetched == null) {
+            fetched = own;
+            try {
+                Nanopub np = fetch.apply(artifactCode);
+                if (np == null) {
+                    throw new InvalidGrlcSpecException("Nanopub not found: " + artifactCode);
+                }
+                own.complete(np);
+            } catch (Throwable ex) {
+                // Whatever it was, the waiting callers must be released.
+                own.completeExceptionally(ex);
+            } finally {
+                fetching.remove(artifactCode, own);
+            }
+        }
+        try {
+            return fetched.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof InvalidGrlcSpecException invalid) {
+                throw new InvalidGrlcSpecException(invalid.getMessage(), invalid);
+            }
+            throw ex.getCause() instanceof RuntimeException re ? re : ex;
         }
     }
 
@@ -411,43 +599,38 @@ public class GrlcSpec {
     /**
      * Resolves the latest version of a nanopub by following the supersedes chain in the local store.
      * Uses a single SPARQL query with a property path to find the latest non-invalidated version
-     * signed by the same key. If no result is found locally, or if the local store is unavailable,
-     * returns the original URI.
+     * signed by the same key. If no result is found locally, returns the original URI.
      *
      * @param nanopubUri the URI of the nanopub to resolve
      * @return the URI of the latest version
+     * @throws Exception if the local store could not be queried
      */
-    static String getLatestVersionIdLocally(String nanopubUri) {
+    static String getLatestVersionIdLocally(String nanopubUri) throws Exception {
         logger.info("Resolving latest version locally for: {}", nanopubUri);
-        try {
-            RepositoryConnection conn = TripleStore.get().getRepoConnection("meta");
-            try (conn) {
-                String query =
-                        "SELECT ?latest ?date WHERE { " +
-                        "GRAPH <" + NPA.GRAPH + "> { " +
-                        "<" + nanopubUri + "> <" + NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY + "> ?pubkey . " +
-                        "?latest <" + NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY + "> ?pubkey . " +
-                        "FILTER NOT EXISTS { ?npx <" + NPX.INVALIDATES + "> ?latest ; " +
-                        "<" + NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY + "> ?pubkey . } " +
-                        "?latest <" + DCTERMS.CREATED + "> ?date . " +
-                        "} " +
-                        "GRAPH <" + NPA.NETWORK_GRAPH + "> { " +
-                        "?latest (<" + NPX.SUPERSEDES + ">)* <" + nanopubUri + "> . " +
-                        "} " +
-                        "} ORDER BY DESC(?date) LIMIT 1";
-                TupleQueryResult r = conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
-                try (r) {
-                    if (r.hasNext()) {
-                        String latestUri = r.next().getBinding("latest").getValue().stringValue();
-                        logger.info("Resolved latest version: {}", latestUri);
-                        return latestUri;
-                    }
+        RepositoryConnection conn = TripleStore.get().getRepoConnection("meta");
+        try (conn) {
+            String query =
+                    "SELECT ?latest ?date WHERE { " +
+                    "GRAPH <" + NPA.GRAPH + "> { " +
+                    "<" + nanopubUri + "> <" + NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY + "> ?pubkey . " +
+                    "?latest <" + NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY + "> ?pubkey . " +
+                    "FILTER NOT EXISTS { ?npx <" + NPX.INVALIDATES + "> ?latest ; " +
+                    "<" + NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY + "> ?pubkey . } " +
+                    "?latest <" + DCTERMS.CREATED + "> ?date . " +
+                    "} " +
+                    "GRAPH <" + NPA.NETWORK_GRAPH + "> { " +
+                    "?latest (<" + NPX.SUPERSEDES + ">)* <" + nanopubUri + "> . " +
+                    "} " +
+                    "} ORDER BY DESC(?date) LIMIT 1";
+            TupleQueryResult r = conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+            try (r) {
+                if (r.hasNext()) {
+                    String latestUri = r.next().getBinding("latest").getValue().stringValue();
+                    logger.info("Resolved latest version: {}", latestUri);
+                    return latestUri;
                 }
-                logger.info("No latest version found locally for: {}", nanopubUri);
-                return nanopubUri;
             }
-        } catch (Exception ex) {
-            logger.warn("Could not resolve latest version locally, using original version: {}", ex.getMessage());
+            logger.info("No latest version found locally for: {}", nanopubUri);
             return nanopubUri;
         }
     }
@@ -0,0 +1,311 @@
+package com.knowledgepixels.query;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * The HTTP connection pools to the RDF4J server, one per {@link Workload}, so that one
+ * kind of traffic cannot take the connections another one needs.
+ *
+ * <p>Before this, every request went through a single pool of
+ * {@link TripleStore#MAX_CONNECTIONS_PER_ROUTE} connections. A full space-state build or a
+ * reconciliation sweep could hold most of them for minutes while the loader's writers sat
+ * in the pool's wait queue, invisible to every metric, and an admin-repo status update
+ * behind them would run into the connection-request timeout. Now each workload leases from
+ * its own pool with its own budget and the others keep theirs.
+ *
+ * <p>{@link TripleStore} hands every {@code HTTPRepository} the same {@link #client()}; it
+ * picks the pool per request. Requests against the admin repo and the repository
+ * management calls (listing, creating) always go to {@link Workload#ADMIN}; everything
+ * else goes to the pool of the calling thread's workload, as set by {@link #run} or a
+ * {@link #threadFactory}, and to {@link Workload#INGEST} when none is set. The workload
+ * follows the caller rather than the repo because the same repos are written by the loader
+ * and read by the reconciler, and {@code spaces} is written by both the loader and the
+ * authority resolver.
+ *
+ * <p>Each pool reports its leased, available and pending connections through
+ * {@link #stats}, and the time each request waited for a connection to a listener set with
+ * {@link #onLeaseWait}; {@link MetricsCollector} exports both.
+ */
+final class HttpPools {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpPools.class);
+
+    /**
+     * Workload classes with separate connection budgets. Each budget is the pool's limit
+     * per route and in total (all requests go to the same server), from
+     * {@code NANOPUB_QUERY_HTTP_POOL_<WORKLOAD>}.
+     */
+    enum Workload {
+        /** The loader and anything not tagged otherwise, including served queries. */
+        INGEST(10),
+        /** {@link AuthorityResolver} builds and cycles, {@link TrustStateLoader} materialization. */
+        MATERIALIZATION(4),
+        /** {@link ShardReconciler} sweeps and the repairs they run. */
+        RECONCILIATION(2),
+        /** Admin-repo reads and writes, and repository listing and creation. */
+        ADMIN(4);
+
+        final int budget;
+
+        Workload(int defaultBudget) {
+            this.budget = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_HTTP_POOL_" + name(), defaultBudget));
+        }
+
+        /** The label this workload's metrics are tagged with. */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final ThreadLocal<Workload> threadWorkload = ThreadLocal.withInitial(() -> Workload.INGEST);
+
+    private static final class Pool {
+        final LeaseTimingConnectionManager manager;
+        final CloseableHttpClient client;
+
+        Pool(Workload workload) {
+            manager = new LeaseTimingConnectionManager();
+            manager.setMaxTotal(workload.budget);
+            manager.setDefaultMaxPerRoute(workload.budget);
+            client = HttpClients.custom()
+                    .setConnectionManager(manager)
+                    .setDefaultRequestConfig(REQUEST_CONFIG)
+                    // Hygiene: kill pooled connections that RDF4J has quietly closed server-side
+                    // before we try to reuse them. Without this, a half-broken connection is
+                    // only noticed when the next request fails, spending the full socket-read
+                    // timeout discovering it.
+                    .evictExpiredConnections()
+                    .evictIdleConnections(30, TimeUnit.SECONDS)
+                    .build();
+        }
+    }
+
+    /**
+     * Timeouts shared by all pools.
+     * <ul>
+     *   <li><b>socket-read = 60 s</b> — an individual HTTP response body must arrive
+     *       within this window. Healthy per-nanopub commits complete in milliseconds,
+     *       so 60 s is pure safety margin; its job is to turn the silent "threads
+     *       parked forever inside a commit" wedge (observed in the April test) into
+     *       a recoverable error that feeds the existing retry path.</li>
+     *   <li><b>connection-request = 30 s</b> — a caller waiting for a pooled connection
+     *       gives up after this long. Prevents the invisible self-deadlock in
+     *       {@code loadInvalidateStatements} (one thread holding N connections while
+     *       waiting for an (N+1)th) from hanging forever.</li>
+     *   <li><b>connect = 10 s</b> — kills TCP handshakes that stall. Generous but
+     *       bounded.</li>
+     * </ul>
+     * Without these defaults, HttpClient uses {@code -1} everywhere, which means
+     * "wait forever".
+     */
+    private static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
+            .setSocketTimeout(60_000)
+            .setConnectionRequestTimeout(30_000)
+            .setConnectTimeout(10_000)
+            .build();
+
+    private static final HttpPools instance = new HttpPools();
+
+    static HttpPools get() {
+        return instance;
+    }
+
+    private final Map<Workload, Pool> pools = new EnumMap<>(Workload.class);
+    private final CloseableHttpClient client = new RoutingClient();
+
+    private HttpPools() {
+        for (Workload workload : Workload.values()) {
+            pools.put(workload, new Pool(workload));
+        }
+        logger.info("HTTP connection budgets: ingest {}, materialization {}, reconciliation {}, admin {}",
+                Workload.INGEST.budget, Workload.MATERIALIZATION.budget,
+                Workload.RECONCILIATION.budget, Workload.ADMIN.budget);
+    }
+
+    /**
+     * @return the client that sends each request through the pool of its workload
+     */
+    CloseableHttpClient client() {
+        return client;
+    }
+
+    /**
+     * @param workload the pool
+     * @return its leased, available and pending (waiting for a lease) connections
+     */
+    PoolStats stats(Workload workload) {
+        return pools.get(workload).manager.getTotalStats();
+    }
+
+    /**
+     * Sets what to tell about each connection lease of a pool: the nanoseconds the request
+     * waited for it, including waits that ended in a timeout.
+     *
+     * @param workload the pool
+     * @param listener receives the wait in nanoseconds, on the requesting thread
+     */
+    void onLeaseWait(Workload workload, LongConsumer listener) {
+        pools.get(workload).manager.leaseWaitListener = listener;
+    }
+
+    /**
+     * Runs a task with the calling thread's requests going through the given workload's
+     * pool, restoring the previous workload afterwards.
+     *
+     * @param workload the workload the task's store traffic belongs to
+     * @param task     the task
+     */
+    static void run(Workload workload, Runnable task) {
+        Workload previous = threadWorkload.get();
+        threadWorkload.set(workload);
+        try {
+            task.run();
+        } finally {
+            threadWorkload.set(previous);
+        }
+    }
+
+    /**
+     * @return the calling thread's workload
+     */
+    static Workload currentWorkload() {
+        return threadWorkload.get();
+    }
+
+    /**
+     * @param workload the workload all store traffic of the threads belongs to
+     * @param name     the thread name
+     * @return a factory for the single thread of a scheduled executor that runs one workload
+     */
+    static ThreadFactory threadFactory(Workload workload, String name) {
+        return r -> new Thread(() -> run(workload, r), name);
+    }
+
+    /**
+     * Picks the pool for a request.
+     *
+     * @param method          the HTTP method
+     * @param uri             the request URI, absolute or just the path
+     * @param callingWorkload the calling thread's workload
+     * @return the workload whose pool to use
+     */
+    static Workload workloadFor(String method, String uri, Workload callingWorkload) {
+        String path;
+        try {
+            path = URI.create(uri).getPath();
+        } catch (IllegalArgumentException ex) {
+            return callingWorkload;
+        }
+        if (path == null) {
+            return callingWorkload;
+        }
+        int i = path.lastIndexOf("/repositories");
+        if (i < 0) {
+            return callingWorkload;
+        }
+        String rest = path.substring(i + "/repositories".length());
+        if (rest.isEmpty() || rest.equals("/")) {
+            return Workload.ADMIN;
+        }
+        String repo = rest.substring(1);
+        int slash = repo.indexOf('/');
+        if (slash < 0 && method.equals("PUT")) {
+            return Workload.ADMIN;
+        }
+        if ((slash < 0 ? repo : repo.substring(0, slash)).equals(TripleStore.ADMIN_REPO)) {
+            return Workload.ADMIN;
+        }
+        return callingWorkload;
+    }
+
+    /**
+     * Times the wait of every connection lease.
+     */
+    private static final class LeaseTimingConnectionManager extends PoolingHttpClientConnectionManager {
+
+        volatile LongConsumer leaseWaitListener = nanos -> {
+        };
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, unit);
+                    } finally {
+                        leaseWaitListener.accept(System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+
+    /**
+     * Hands each request to the client of the pool {@link #workloadFor} picks.
+     */
+    private final class RoutingClient extends CloseableHttpClient {
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                throws IOException, ClientProtocolException {
+            Workload workload = workloadFor(request.getRequestLine().getMethod(),
+                    request.getRequestLine().getUri(), threadWorkload.get());
+            return pools.get(workload).client.execute(target, request, context);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Pool pool : pools.values()) {
+                pool.client.close();
+            }
+        }
+
+        @Override
+        @Deprecated
+        public HttpParams getParams() {
+            return pools.get(Workload.INGEST).client.getParams();
+        }
+
+        @Override
+        @Deprecated
+        public ClientConnectionManager getConnectionManager() {
+            return pools.get(Workload.INGEST).client.getConnectionManager();
+        }
+    }
+
+}
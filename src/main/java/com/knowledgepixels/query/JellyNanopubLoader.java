@@ -14,7 +14,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Loads nanopubs from the attached Nanopub Registry via a restartable Jelly stream.
@@ -30,6 +33,7 @@ public class JellyNanopubLoader {
     static volatile String lastNanopubCount = null;
     private static final CloseableHttpClient metadataClient;
     private static final CloseableHttpClient jellyStreamClient;
+    private static final CloseableHttpClient rangeStreamClient;
 
     private static final int MAX_RETRIES_METADATA = 10;
     private static final int RETRY_DELAY_METADATA = 3000;
@@ -168,6 +172,9 @@ public class JellyNanopubLoader {
 
         metadataClient = HttpClientBuilder.create().setDefaultRequestConfig(Utils.getHttpRequestConfig()).build();
         jellyStreamClient = NanopubUtils.getHttpClient();
+        // One connection per parallel initial-load stream, so they never queue for the pool.
+        rangeStreamClient = HttpClientBuilder.create().setDefaultRequestConfig(Utils.getHttpRequestConfig())
+                .setMaxConnPerRoute(CounterRangeLoader.STREAMS).setMaxConnTotal(CounterRangeLoader.STREAMS).build();
     }
 
     /**
@@ -211,7 +218,12 @@ public class JellyNanopubLoader {
                 }
             }
             try {
-                loadBatch(lastCommittedCounter, LoadingType.INITIAL);
+                List<CounterRangeLoader.CounterRange> ranges = CounterRangeLoader.split(lastCommittedCounter, targetCounter, CounterRangeLoader.RANGE_SIZE);
+                if (CounterRangeLoader.STREAMS > 1 && ranges.size() > 1) {
+                    loadRanges(ranges);
+                } else {
+                    loadBatch(lastCommittedCounter, LoadingType.INITIAL);
+                }
                 consecutiveBatchFailures = 0;
                 // A completed batch wrote to RDF4J, so it satisfies the "only stamp
                 // after the store answered" rule and, like an update batch, is a
@@ -419,10 +431,179 @@ public class JellyNanopubLoader {
      * @param type         the type of loading operation (initial or update)
      */
     static void loadBatch(long afterCounter, LoadingType type) {
+        CloseableHttpResponse response = openStream(jellyStreamClient, afterCounter);
+        try (
+                var is = response.getEntity().getContent();
+                var npStream = NanopubStream.fromByteStream(is).getAsNanopubs()
+        ) {
+            loadInCounterOrder(type, batch -> {
+                try (NanopubLoadPipeline pipeline = new NanopubLoadPipeline(batch)) {
+                    npStream.forEach(m -> {
+                        if (!m.isSuccess()) {
+                            throw new RuntimeException("Failed to load " +
+                                                       "nanopub from Jelly stream. Last known counter: " + lastCommittedCounter,
+                                    m.getException()
+                            );
+                        }
+                        if (m.getCounter() < lastCommittedCounter) {
+                            throw new RuntimeException("Received a nanopub with a counter lower than " +
+                                                       "the last known counter. Last known counter: " + lastCommittedCounter +
+                                                       ", received counter: " + m.getCounter());
+                        }
+                        pipeline.add(m.getNanopub(), m.getCounter());
+                    });
+                    pipeline.finish();
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while reading the response Jelly stream.", e);
+        } finally {
+            closeQuietly(response);
+        }
+    }
+
+    /**
+     * Initial-load counterpart of {@link #loadBatch} that reads several counter ranges as
+     * parallel streams (see {@link CounterRangeLoader}). Writes, counter checkpoints and
+     * the final save are the same as for a single stream.
+     *
+     * @param ranges consecutive ranges starting after {@link #lastCommittedCounter}
+     */
+    static void loadRanges(List<CounterRangeLoader.CounterRange> ranges) {
+        logger.info("Initial load: reading {} counter ranges over {} parallel streams", ranges.size(), CounterRangeLoader.STREAMS);
+        loadInCounterOrder(LoadingType.INITIAL, batch -> {
+            try (CounterRangeLoader rangeLoader = new CounterRangeLoader(JellyNanopubLoader::streamRange)) {
+                rangeLoader.run(ranges, batch::add);
+                batch.flush();
+            }
+        });
+    }
+
+    /**
+     * Runs {@code load} against a {@link NanopubLoadBatch} that advances
+     * {@link #lastCommittedCounter} and checkpoints it as commits land, then saves the
+     * final counter.
+     *
+     * @param type the type of loading operation (initial or update)
+     * @param load feeds the batch, in counter order, and flushes it
+     */
+    private static void loadInCounterOrder(LoadingType type, Consumer<NanopubLoadBatch> load) {
+        AtomicLong checkpointTime = new AtomicLong(System.currentTimeMillis());
+        AtomicLong checkpointLoaded = new AtomicLong(0L);
+        AtomicLong loaded = new AtomicLong(0L);
+
+        // Persists the counter off this thread on a time/volume policy, replacing the
+        // synchronous admin-repo write on every tenth nanopub. Closed (see below) before
+        // the final save, so no checkpoint can land after the caller moves on.
+        LoadCounterCheckpointer checkpointer = new LoadCounterCheckpointer(lastCommittedCounter,
+                counter -> persistCommittedCounter(type, counter));
+
+        // Nanopubs are committed in groups (see NanopubLoadBatch), so everything that
+        // used to happen per nanopub now happens per commit, for the range it covered.
+        NanopubLoadBatch batch = new NanopubLoadBatch((counter, nanopubs) -> {
+            // Bump the in-memory counter BEFORE handing it to the checkpointer. The
+            // order once was the other way round, which persisted the *previous*
+            // nanopub's counter at each checkpoint, so a crash-restart silently
+            // re-processed one extra nanopub and the contract "saved counter == last
+            // fully loaded nanopub" was violated.
+            lastCommittedCounter = counter;
+            checkpointer.committed(counter, nanopubs);
+            long before = loaded.getAndAdd(nanopubs);
+
+            if ((before + nanopubs) / 50 > before / 50) {
+                long currTime = System.currentTimeMillis();
+                double speed = (loaded.get() - checkpointLoaded.get()) / ((currTime - checkpointTime.get()) / 1000.0);
+                logger.info("Loading speed: {} np/s. Counter: {}", String.format("%.2f", speed), lastCommittedCounter);
+                checkpointTime.set(currTime);
+                checkpointLoaded.set(loaded.get());
+                // A full re-stream is a single loadBatch call lasting tens of
+                // minutes; without this the forwarded registry count would hold
+                // its entry-time value for the whole of it, and the sync-lag
+                // gauge derived from it would drift with it.
+                maybeRefreshForwardingMetadata();
+            }
+        });
+
+        try (checkpointer) {
+            load.accept(batch);
+        }
+        // Make sure to save the last committed counter at the end of the batch. This
+        // one is synchronous and must succeed: the checkpointer is closed by now, and
+        // the caller reads the persisted counter back as its resume point.
+        saveCommittedCounter(type);
+    }
+
+    /**
+     * {@link CounterRangeLoader.StreamSource} over the registry: one Jelly stream per call,
+     * on the client reserved for range streams.
+     */
+    private static void streamRange(long afterCounter, CounterRangeLoader.StreamConsumer consumer) throws IOException {
+        HttpGet request = new HttpGet(makeStreamFetchUrl(afterCounter));
+        CloseableHttpResponse response = openStream(rangeStreamClient, request);
+        readBody(request, response, is -> {
+            var it = NanopubStream.fromByteStream(is).getAsNanopubs().iterator();
+            while (it.hasNext()) {
+                var m = it.next();
+                if (!m.isSuccess()) {
+                    throw new RuntimeException("Failed to load nanopub from Jelly stream after counter " + afterCounter,
+                            m.getException());
+                }
+                if (!consumer.accept(m.getNanopub(), m.getCounter())) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Reads a response body, for as much of it as is needed.
+     */
+    @FunctionalInterface
+    interface BodyReader {
+
+        /**
+         * @param is the body
+         * @return whether the body was read to its end
+         */
+        boolean read(InputStream is) throws IOException;
+
+    }
+
+    /**
+     * Reads a response body and closes the response. If the reader stops early, or fails,
+     * the connection is dropped: closing the body would first read the rest of it, which for
+     * a range stream is everything the registry has after the range.
+     *
+     * @param request  the request
+     * @param response its response
+     * @param reader   reads the body
+     * @throws IOException if reading fails
+     */
+    static void readBody(HttpGet request, CloseableHttpResponse response, BodyReader reader) throws IOException {
+        boolean readToEnd = false;
+        try {
+            InputStream is = response.getEntity().getContent();
+            readToEnd = reader.read(is);
+            if (readToEnd) {
+                is.close();
+            }
+        } finally {
+            if (!readToEnd) {
+                request.abort();
+            }
+            closeQuietly(response);
+        }
+    }
+
+    private static CloseableHttpResponse openStream(CloseableHttpClient client, long afterCounter) {
+        return openStream(client, new HttpGet(makeStreamFetchUrl(afterCounter)));
+    }
+
+    private static CloseableHttpResponse openStream(CloseableHttpClient client, HttpGet request) {
         CloseableHttpResponse response;
         try {
-            var request = new HttpGet(makeStreamFetchUrl(afterCounter));
-            response = jellyStreamClient.execute(request);
+            response = client.execute(request);
         } catch (IOException e) {
             throw new RuntimeException("Failed to fetch Jelly stream from the Registry (I/O error).", e);
         }
@@ -430,96 +611,58 @@ public class JellyNanopubLoader {
         int httpStatus = response.getStatusLine().getStatusCode();
         if (httpStatus < 200 || httpStatus >= 300) {
             EntityUtils.consumeQuietly(response.getEntity());
+            closeQuietly(response);
             throw new RuntimeException("Jelly stream HTTP status is not 2xx: " + httpStatus + ".");
         }
+        return response;
+    }
 
-        try (
-                var is = response.getEntity().getContent();
-                var npStream = NanopubStream.fromByteStream(is).getAsNanopubs()
-        ) {
-            AtomicLong checkpointTime = new AtomicLong(System.currentTimeMillis());
-            AtomicLong checkpointCounter = new AtomicLong(lastCommittedCounter);
-            AtomicLong lastSavedCounter = new AtomicLong(lastCommittedCounter);
-            AtomicLong loaded = new AtomicLong(0L);
-
-            npStream.forEach(m -> {
-                if (!m.isSuccess()) {
-                    throw new RuntimeException("Failed to load " +
-                                               "nanopub from Jelly stream. Last known counter: " + lastCommittedCounter,
-                            m.getException()
-                    );
-                }
-                if (m.getCounter() < lastCommittedCounter) {
-                    throw new RuntimeException("Received a nanopub with a counter lower than " +
-                                               "the last known counter. Last known counter: " + lastCommittedCounter +
-                                               ", received counter: " + m.getCounter());
-                }
-                NanopubLoader.load(m.getNanopub(), m.getCounter());
-                // Bump the in-memory counter BEFORE persisting it. The previous order
-                // wrote the *previous* nanopub's counter to the DB at each checkpoint,
-                // so a crash-restart silently re-processed one extra nanopub and the
-                // contract "saved counter == last fully loaded nanopub" was violated.
-                lastCommittedCounter = m.getCounter();
-                if (m.getCounter() % 10 == 0) {
-                    // Save the committed counter only every 10 nanopubs to reduce DB load
-                    saveCommittedCounter(type);
-                    lastSavedCounter.set(m.getCounter());
-                }
-                loaded.getAndIncrement();
-
-                if (loaded.get() % 50 == 0) {
-                    long currTime = System.currentTimeMillis();
-                    double speed = 50 / ((currTime - checkpointTime.get()) / 1000.0);
-                    logger.info("Loading speed: {} np/s. Counter: {}", String.format("%.2f", speed), lastCommittedCounter);
-                    checkpointTime.set(currTime);
-                    checkpointCounter.set(lastCommittedCounter);
-                    // A full re-stream is a single loadBatch call lasting tens of
-                    // minutes; without this the forwarded registry count would hold
-                    // its entry-time value for the whole of it, and the sync-lag
-                    // gauge derived from it would drift with it.
-                    maybeRefreshForwardingMetadata();
-                }
-            });
-            // Make sure to save the last committed counter at the end of the batch
-            if (lastCommittedCounter >= lastSavedCounter.get()) {
-                saveCommittedCounter(type);
-            }
+    private static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
         } catch (IOException e) {
-            throw new RuntimeException("I/O error while reading the response Jelly stream.", e);
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                logger.info("Failed to close the Jelly stream response.");
-            }
+            logger.info("Failed to close the Jelly stream response.");
         }
     }
 
     /**
-     * Save the last committed counter to the DB. Do this every N nanopubs to reduce DB load.
-     * Remember to call this method at the end of the batch as well.
+     * Save the last committed counter to the DB, on the loader thread. Called at the end of
+     * each batch; during the batch, {@link LoadCounterCheckpointer} saves it periodically.
      *
      * @param type the type of loading operation (initial or update)
      */
     private static void saveCommittedCounter(LoadingType type) {
         try {
-            if (type == LoadingType.INITIAL) {
-                StatusController.get().setLoadingInitial(lastCommittedCounter);
-            } else {
-                StatusController.get().setLoadingUpdates(lastCommittedCounter);
-            }
-            // A committed counter is an admin-repo write that RDF4J acknowledged, so it
-            // is the finest-grained evidence of liveness there is — and the only one
-            // that ticks inside a batch rather than at its end, which is what makes a
-            // long initial load legible. Stamped after the call, never before: a failed
-            // commit is exactly how the loader wedges, and must not read as progress.
-            lastSuccessfulBatchAtMs = System.currentTimeMillis();
+            persistCommittedCounter(type, lastCommittedCounter);
             lastStoreProbeAtMs = lastSuccessfulBatchAtMs;
         } catch (Exception e) {
             throw new RuntimeException("Could not update the nanopub counter in DB", e);
         }
     }
 
+    /**
+     * Writes the given counter through {@link StatusController}. Runs on the loader thread
+     * for the end-of-batch save and on the checkpointer thread during a batch, so it only
+     * touches state that is safe from both — {@link #lastStoreProbeAtMs} is left to the
+     * loader thread.
+     *
+     * @param type    the type of loading operation (initial or update)
+     * @param counter the counter of the last fully loaded nanopub
+     */
+    private static void persistCommittedCounter(LoadingType type, long counter) {
+        if (type == LoadingType.INITIAL) {
+            StatusController.get().setLoadingInitial(counter);
+        } else {
+            StatusController.get().setLoadingUpdates(counter);
+        }
+        // A committed counter is an admin-repo write that RDF4J acknowledged, so it
+        // is the finest-grained evidence of liveness there is — and the only one
+        // that ticks inside a batch rather than at its end, which is what makes a
+        // long initial load legible. Stamped after the call, never before: a failed
+        // commit is exactly how the loader wedges, and must not read as progress.
+        lastSuccessfulBatchAtMs = System.currentTimeMillis();
+    }
+
     /**
      * Set the last known setup ID. Called from MainVerticle on startup to restore persisted state.
      *
@@ -0,0 +1,140 @@
+package com.knowledgepixels.query;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Group-commit checkpointer for the registry load counter of one {@code loadBatch} call.
+ *
+ * <p>The loader used to persist the counter through {@link StatusController} on every
+ * tenth nanopub, which made every tenth nanopub wait for an admin-repo transaction on the
+ * ingest thread. Now the ingest thread only records which counter has been committed
+ * ({@link #committed}); a dedicated thread persists the latest one every
+ * {@link #INTERVAL_MS}, or straight away once {@link #MAX_NANOPUBS} nanopubs have gone
+ * by unpersisted.
+ *
+ * <p>Restart-safety is unchanged in kind: the persisted counter never runs ahead of what
+ * is fully loaded, only further behind it, and a restart re-streams from the persisted
+ * value. Re-loading the gap is idempotent — {@link NanopubLoader#fetchRepoStatus} reports
+ * those nanopubs as already loaded and each repo skips them.
+ *
+ * <p>{@link #close()} must be called before the caller touches {@link StatusController}
+ * state again: a checkpoint landing after the loader has moved to READY would move it
+ * back. Close waits for any checkpoint in progress and stops further ones.
+ */
+final class LoadCounterCheckpointer implements AutoCloseable {
+
+    /**
+     * Checkpoint interval in ms, from {@code NANOPUB_QUERY_COUNTER_CHECKPOINT_INTERVAL_MS}
+     * (default 500).
+     */
+    static final long INTERVAL_MS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_COUNTER_CHECKPOINT_INTERVAL_MS", 500));
+
+    /**
+     * Nanopubs after which a checkpoint is taken without waiting for the interval, from
+     * {@code NANOPUB_QUERY_COUNTER_CHECKPOINT_MAX_NANOPUBS} (default 1000).
+     */
+    static final int MAX_NANOPUBS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_COUNTER_CHECKPOINT_MAX_NANOPUBS", 1000));
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "load-counter-checkpointer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadCounterCheckpointer.class);
+
+    private final LongConsumer persist;
+    private final int maxNanopubs;
+    private final ScheduledFuture<?> ticker;
+    private volatile long committedCounter;
+    private long persistedCounter;
+    private final AtomicInteger unpersistedNanopubs = new AtomicInteger();
+    private final AtomicBoolean checkpointQueued = new AtomicBoolean();
+    private boolean closed = false;
+
+    /**
+     * @param startCounter the counter already persisted when loading starts
+     * @param persist      writes a counter to the store; may throw
+     */
+    LoadCounterCheckpointer(long startCounter, LongConsumer persist) {
+        this(startCounter, persist, INTERVAL_MS, MAX_NANOPUBS);
+    }
+
+    LoadCounterCheckpointer(long startCounter, LongConsumer persist, long intervalMs, int maxNanopubs) {
+        this.committedCounter = startCounter;
+        this.persistedCounter = startCounter;
+        this.persist = persist;
+        this.maxNanopubs = maxNanopubs;
+        this.ticker = executor.scheduleWithFixedDelay(this::checkpoint, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that everything up to {@code counter} is fully loaded. Cheap; never touches
+     * the store on the calling thread.
+     *
+     * @param counter  the stream counter of the last fully loaded nanopub
+     * @param nanopubs how many nanopubs were loaded since the previous call
+     */
+    void committed(long counter, int nanopubs) {
+        // Lock-free on purpose: checkpoint() holds the monitor across the admin-repo write,
+        // and the ingest thread must not wait for that.
+        committedCounter = counter;
+        // One queued checkpoint at a time: while the store refuses them the tally stays
+        // above the threshold, and each call would queue one more write otherwise.
+        if (unpersistedNanopubs.addAndGet(nanopubs) >= maxNanopubs && checkpointQueued.compareAndSet(false, true)) {
+            executor.execute(this::checkpoint);
+        }
+    }
+
+    /**
+     * Persists the latest committed counter if it has moved. A failure is logged and left
+     * for the next tick; the caller's final save at the end of the batch is the one that
+     * has to succeed.
+     */
+    synchronized void checkpoint() {
+        checkpointQueued.set(false);
+        // Read the tally before the counter, so the counter persisted covers at least the
+        // nanopubs subtracted below.
+        int covered = unpersistedNanopubs.get();
+        long counter = committedCounter;
+        if (closed || counter == persistedCounter) {
+            return;
+        }
+        try {
+            persist.accept(counter);
+            persistedCounter = counter;
+            unpersistedNanopubs.addAndGet(-covered);
+        } catch (Exception ex) {
+            logger.warn("Could not checkpoint load counter {}; will retry on the next tick: {}", counter, ex.toString());
+        }
+    }
+
+    /**
+     * @return the last counter this checkpointer persisted (or the start counter)
+     */
+    synchronized long getPersistedCounter() {
+        return persistedCounter;
+    }
+
+    /**
+     * Stops checkpointing, waiting for a checkpoint in progress to finish. Does not take a
+     * final checkpoint: at the end of a batch the caller saves the counter itself, and
+     * after a failure the caller is about to retry from its in-memory counter anyway.
+     */
+    @Override
+    public void close() {
+        ticker.cancel(false);
+        synchronized (this) {
+            closed = true;
+        }
+    }
+}
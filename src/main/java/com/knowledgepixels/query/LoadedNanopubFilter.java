@@ -0,0 +1,211 @@
+package com.knowledgepixels.query;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.knowledgepixels.query.vocabulary.SpacesVocab;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.nanopub.vocabulary.NPA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory guard for the "is this nanopub already loaded here?" read that every write
+ * to a repo makes before stamping a load number.
+ *
+ * <p>During an initial load or a resync the answer is almost always "no", yet each write
+ * still asks the store. For the repos that take a write for (nearly) every nanopub — the
+ * pinned ones that carry load numbers, plus {@code text} — this class keeps a Bloom filter
+ * of the nanopub IRIs stamped there. A filter never returns a false "no", so a "no" skips
+ * the store read; a "maybe" is confirmed against the store exactly as before. At a 1 %
+ * false-positive rate a filter costs about 1.2 bytes per nanopub, so ten million fit in
+ * about 12 MB.
+ *
+ * <p>The filters live only in memory. {@link #rebuildAll()} fills them at startup by
+ * streaming {@code npa:hasLoadNumber} from each repo; until a repo's filter is complete
+ * it answers "maybe" for everything. No false negatives is the invariant everything
+ * rests on, since a false one would give a loaded nanopub a second load number, so:
+ * <ul>
+ *   <li>writers call {@link #added} <em>before</em> committing, under the repo's write
+ *       lock, so a commit whose outcome is unknown is still covered;</li>
+ *   <li>a filter is registered under that same lock before its stream starts, so every
+ *       commit is either visible to the stream or made by a writer that saw the
+ *       filter.</li>
+ * </ul>
+ *
+ * <p>A filter is sized at startup for twice the repo's count then, and degrades
+ * gracefully past that: more "maybe"s, hence more store reads, never a wrong answer. The
+ * next restart sizes it afresh.
+ */
+final class LoadedNanopubFilter {
+
+    /**
+     * Whether the filters are used, from {@code NANOPUB_QUERY_LOADED_FILTER} (default
+     * {@code true}). Off, every check goes to the store as it used to.
+     */
+    static final boolean ENABLED = "true".equalsIgnoreCase(Utils.getEnvString("NANOPUB_QUERY_LOADED_FILTER", "true"));
+
+    static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Smallest capacity a filter is created with, so that a young repo's filter does not
+     * fill up within the first hours.
+     */
+    static final long MIN_EXPECTED_NANOPUBS = 1_000_000;
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadedNanopubFilter.class);
+
+    private static final LoadedNanopubFilter instance = new LoadedNanopubFilter();
+
+    /**
+     * @return the filters used by the loader
+     */
+    static LoadedNanopubFilter get() {
+        return instance;
+    }
+
+    private static final class RepoFilter {
+
+        // Guava's BloomFilter is safe for concurrent put and mightContain.
+        private final BloomFilter<CharSequence> bloom;
+        private volatile boolean complete = false;
+
+        private RepoFilter(long expectedNanopubs) {
+            this.bloom = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedNanopubs, FALSE_POSITIVE_RATE);
+        }
+
+    }
+
+    private final ConcurrentHashMap<String, RepoFilter> filters = new ConcurrentHashMap<>();
+
+    /**
+     * The repos guarded by a filter: {@code meta}, {@code full}, {@code text} and
+     * {@code spaces} where enabled, and the pinned {@code type_} repos.
+     */
+    static List<String> guardedRepos() {
+        List<String> repos = new ArrayList<>(List.of("meta"));
+        if (FeatureFlags.fullRepoEnabled()) {
+            repos.add("full");
+        }
+        if (FeatureFlags.textRepoEnabled()) {
+            repos.add("text");
+        }
+        if (FeatureFlags.spacesEnabled()) {
+            repos.add("spaces");
+        }
+        for (String name : TripleStore.getPinnedRepoNames()) {
+            if (name.startsWith("type_")) {
+                repos.add(name);
+            }
+        }
+        return repos;
+    }
+
+    /**
+     * Builds the filter of every {@link #guardedRepos() guarded repo}, one after the other.
+     * A repo whose build fails is logged and left unguarded. Meant for a background thread
+     * at startup; loading can run meanwhile.
+     */
+    @GeneratedFlagForDependentElements
+    void rebuildAll() {
+        if (!ENABLED) {
+            return;
+        }
+        for (String repoName : guardedRepos()) {
+            try {
+                rebuild(repoName);
+            } catch (Exception ex) {
+                filters.remove(repoName);
+                logger.warn("Could not build the loaded-nanopub filter of repo '{}'; it stays unguarded: {}", repoName, ex.toString());
+            }
+        }
+    }
+
+    /**
+     * (Re)builds one repo's filter from the load numbers stamped in it.
+     *
+     * @param repoName the repo
+     */
+    @GeneratedFlagForDependentElements
+    void rebuild(String repoName) {
+        long start = System.currentTimeMillis();
+        RepoFilter filter;
+        try (RepositoryConnection conn = TripleStore.get().getRepoConnection(repoName)) {
+            filter = new RepoFilter(Math.max(MIN_EXPECTED_NANOPUBS, 2 * fetchCount(conn)));
+            ReentrantLock repoLock = NanopubLoader.repoWriteLock(repoName);
+            repoLock.lock();
+            try {
+                filters.put(repoName, filter);
+            } finally {
+                repoLock.unlock();
+            }
+            String query = "SELECT ?np { graph <" + NPA.GRAPH + "> { ?np <" + NPA.HAS_LOAD_NUMBER + "> ?n } }";
+            try (TupleQueryResult r = conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()) {
+                while (r.hasNext()) {
+                    filter.bloom.put(r.next().getValue("np").stringValue());
+                }
+            }
+        }
+        filter.complete = true;
+        logger.info("Built loaded-nanopub filter of repo '{}' with ~{} nanopubs in {} ms",
+                repoName, filter.bloom.approximateElementCount(), System.currentTimeMillis() - start);
+    }
+
+    private static long fetchCount(RepositoryConnection conn) {
+        Value count = Utils.getObjectForPattern(conn, NPA.GRAPH, NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT);
+        if (count == null) {
+            count = Utils.getObjectForPattern(conn, NPA.GRAPH, NPA.THIS_REPO, SpacesVocab.CURRENT_LOAD_COUNTER);
+        }
+        try {
+            return count == null ? 0 : Long.parseLong(count.stringValue());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param repoName the repo
+     * @param npId     the nanopub
+     * @return false only if the nanopub is certainly not stamped in the repo; true if it
+     * may be, which the caller has to confirm against the store
+     */
+    boolean mightBeLoaded(String repoName, IRI npId) {
+        RepoFilter filter = filters.get(repoName);
+        return filter == null || !filter.complete || filter.bloom.mightContain(npId.stringValue());
+    }
+
+    /**
+     * Records nanopubs about to be stamped in a repo. Call under the repo's write lock,
+     * before the commit.
+     *
+     * @param repoName the repo
+     * @param npIds    the nanopubs
+     */
+    void added(String repoName, Collection<IRI> npIds) {
+        RepoFilter filter = filters.get(repoName);
+        if (filter == null) {
+            return;
+        }
+        for (IRI npId : npIds) {
+            filter.bloom.put(npId.stringValue());
+        }
+    }
+
+    /**
+     * Drops every filter, leaving all repos unguarded until the next {@link #rebuild}.
+     */
+    void clear() {
+        filters.clear();
+    }
+
+}
@@ -75,8 +75,13 @@ public class LocalNanopubLoader {
         if (!loadNanopubsFile.exists()) {
             logger.info("No local nanopub file found.");
         } else {
+            // Batched like the Jelly stream: a dump is a long run of nanopubs sharing a few
+            // pubkeys and types, so per-repo transactions cover many of them at once.
+            NanopubLoadBatch batch = new NanopubLoadBatch((counter, nanopubs) -> {
+            });
             try {
-                MultiNanopubRdfHandler.process(RDFFormat.TRIG, loadNanopubsFile, np -> NanopubLoader.load(np, -1));
+                MultiNanopubRdfHandler.process(RDFFormat.TRIG, loadNanopubsFile, np -> batch.add(np, -1));
+                batch.flush();
             } catch (IOException | MalformedNanopubException ex) {
                 logger.info("Loading nanopubs failed.", ex);
             }
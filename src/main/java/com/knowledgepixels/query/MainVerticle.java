@@ -10,6 +10,7 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.*;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.CorsHandler;
 import io.vertx.ext.web.handler.StaticHandler;
 import io.vertx.ext.web.proxy.handler.ProxyHandler;
@@ -22,8 +23,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
 import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.Executors;
@@ -136,6 +135,7 @@ public class MainVerticle extends AbstractVerticle {
         // timeout so aborts stay rare: interrupted evaluations concurrent with writes
         // are a suspected LMDB corruption trigger upstream (rdf4j#5960/#4806).
         int queryTimeoutSeconds = Utils.getEnvInt("RDF4J_QUERY_TIMEOUT_SECONDS", 60);
+        boolean embeddedEndpoint = TripleStore.EMBEDDED_ENDPOINT_TYPE.equals(System.getenv("ENDPOINT_TYPE"));
 
         rdf4jProxy.addInterceptor(new ProxyInterceptor() {
 
@@ -150,12 +150,18 @@ public class MainVerticle extends AbstractVerticle {
 //					request.putHeader("Accept", "text/html");
 //				}
 //				request.putHeader("Accept", "application/json");
+                if (request.getMethod() == HttpMethod.GET && request.proxiedRequest().getParam("query") != null) {
+                    return ResponseCache.get().answer(vertx, context,
+                            EmbeddedSparqlEndpoint.repoName(request.proxiedRequest().path()),
+                            ResponseCache.query(request.proxiedRequest().params()));
+                }
                 return ProxyInterceptor.super.handleProxyRequest(context);
             }
 
             @Override
             @GeneratedFlagForDependentElements
             public Future<Void> handleProxyResponse(ProxyContext context) {
+                ResponseCache.get().capture(context);
                 ProxyResponse resp = context.response();
                 resp.putHeader("Access-Control-Allow-Origin", "*");
                 resp.putHeader("Access-Control-Allow-Methods", "POST, GET, OPTIONS");
@@ -172,10 +178,18 @@ public class MainVerticle extends AbstractVerticle {
         // ----------
 
         proxyRouter.route(HttpMethod.GET, "/repo").handler(req -> handleRedirect(req, "/repo"));
-        proxyRouter.route(HttpMethod.GET, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
-        proxyRouter.route(HttpMethod.POST, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
-        proxyRouter.route(HttpMethod.HEAD, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
-        proxyRouter.route(HttpMethod.OPTIONS, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
+        if (embeddedEndpoint) {
+            // No RDF4J server to proxy to: the repos are in this process.
+            proxyRouter.route(HttpMethod.POST, "/repo/*").handler(BodyHandler.create());
+            for (HttpMethod method : List.of(HttpMethod.GET, HttpMethod.POST, HttpMethod.HEAD)) {
+                proxyRouter.route(method, "/repo/*").handler(EmbeddedSparqlEndpoint.repoHandler(vertx, queryTimeoutSeconds));
+            }
+        } else {
+            proxyRouter.route(HttpMethod.GET, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
+            proxyRouter.route(HttpMethod.POST, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
+            proxyRouter.route(HttpMethod.HEAD, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
+            proxyRouter.route(HttpMethod.OPTIONS, "/repo/*").handler(ProxyHandler.create(rdf4jProxy));
+        }
         proxyRouter.route(HttpMethod.GET, "/tools/*").handler(req -> {
             final String yasguiPattern = "^/tools/([a-zA-Z0-9-_]+)(/([a-zA-Z0-9-_]+))?/yasgui\\.html$";
             if (req.normalizedPath().matches(yasguiPattern)) {
@@ -244,11 +258,11 @@ public class MainVerticle extends AbstractVerticle {
         proxyRouter.route(HttpMethod.GET, "/").handler(req -> {
             vertx.<String>executeBlocking(() -> {
                 String repos = "";
-                List<String> repoList = new ArrayList<>(TripleStore.get().getRepositoryNames());
-                Collections.sort(repoList);
-                for (String s : repoList) {
-                    if (s.startsWith("pubkey_") || s.startsWith("type_")) continue;
-                    repos += "<li><code><a href=\"/page/" + s + "\">" + s + "</a></code></li>";
+                for (String repoClass : TripleStore.get().getRepositoryClasses()) {
+                    if (repoClass.equals("pubkey") || repoClass.equals("type")) continue;
+                    for (String s : TripleStore.get().getRepositoryNames(repoClass)) {
+                        repos += "<li><code><a href=\"/page/" + s + "\">" + s + "</a></code></li>";
+                    }
                 }
                 String pinnedApisValue = Utils.getEnvString("NANOPUB_QUERY_PINNED_APIS", "");
                 String[] pinnedApis = pinnedApisValue.split(" ");
@@ -294,10 +308,7 @@ public class MainVerticle extends AbstractVerticle {
         proxyRouter.route(HttpMethod.GET, "/pubkeys").handler(req -> {
             vertx.<String>executeBlocking(() -> {
                 String repos = "";
-                List<String> repoList = new ArrayList<>(TripleStore.get().getRepositoryNames());
-                Collections.sort(repoList);
-                for (String s : repoList) {
-                    if (!s.startsWith("pubkey_")) continue;
+                for (String s : TripleStore.get().getRepositoryNames("pubkey")) {
                     String hash = s.replaceFirst("^([a-zA-Z0-9-]+)_([a-zA-Z0-9-_]+)$", "$2");
                     Value hashObj = Utils.getObjectForHash(hash);
                     String label;
@@ -331,10 +342,7 @@ public class MainVerticle extends AbstractVerticle {
         proxyRouter.route(HttpMethod.GET, "/types").handler(req -> {
             vertx.<String>executeBlocking(() -> {
                 String repos = "";
-                List<String> repoList = new ArrayList<>(TripleStore.get().getRepositoryNames());
-                Collections.sort(repoList);
-                for (String s : repoList) {
-                    if (!s.startsWith("type_")) continue;
+                for (String s : TripleStore.get().getRepositoryNames("type")) {
                     String hash = s.replaceFirst("^([a-zA-Z0-9-]+)_([a-zA-Z0-9-_]+)$", "$2");
                     Value hashObj = Utils.getObjectForHash(hash);
                     String label;
@@ -444,54 +452,73 @@ public class MainVerticle extends AbstractVerticle {
             public Future<ProxyResponse> handleProxyRequest(ProxyContext context) {
                 final ProxyRequest req = context.request();
                 final String apiPattern = "^/api/(RA[a-zA-Z0-9-_]{43})/([a-zA-Z0-9-_]+)([.]csv|[.]json|[.]srx)?([?].*)?$";
-                if (req.getURI().matches(apiPattern)) {
-                    try {
-                        req.setMethod(HttpMethod.POST);
-                        if (req.getURI().matches(".*[.]csv([?].*)?$")) {
-                            req.putHeader("Accept", "text/csv");
-                            req.setURI(req.getURI().replaceFirst("[.]csv([?].*)?$", "$1"));
-                        } else if (req.getURI().matches(".*[.]json([?].*)?$")) {
-                            req.putHeader("Accept", "application/json");
-                            req.setURI(req.getURI().replaceFirst("[.]json([?].*)?$", "$1"));
-                        } else if (req.getURI().matches(".*[.]srx([?].*)?$")) {
-                            req.putHeader("Accept", "application/xml");
-                            req.setURI(req.getURI().replaceFirst("[.]srx([?].*)?$", "$1"));
-                        }
-                        GrlcSpec grlcSpec = new GrlcSpec(req.getURI(), req.proxiedRequest().params());
-
-                        // Variant 1:
-                        req.putHeader("Content-Type", "application/sparql-query");
-                        req.setBody(Body.body(Buffer.buffer(grlcSpec.expandQuery())));
-                        // Variant 2:
-                        //req.putHeader("Content-Type", "application/x-www-form-urlencoded");
-                        //req.setBody(Body.body(Buffer.buffer("query=" + URLEncoder.encode(grlcSpec.getExpandedQueryContent(), Charsets.UTF_8))));
-
-                        req.setURI(Utils.appendQueryTimeout(
-                                "/rdf4j-server/repositories/" + grlcSpec.getRepoName(), queryTimeoutSeconds));
-                        logger.info("Forwarding apix request to /rdf4j-server/repositories/{}", grlcSpec.getRepoName());
-                    } catch (InvalidGrlcSpecException ex) {
-                        logger.warn("Bad API request for '{}' with params {}: {}", req.getURI(), req.proxiedRequest().params(), ex.getMessage());
-                        return Future.succeededFuture(context.request()
-                                .response()
-                                .setStatusCode(400)
-                                .putHeader("Content-Type", "text/plain")
-                                .setBody(Body.body(Buffer.buffer("Bad request: " + ex.getMessage()))));
-                    } catch (Exception ex) {
-                        logger.error("Unexpected error for API request '{}' with params {}", req.getURI(), req.proxiedRequest().params(), ex);
-                        return Future.succeededFuture(context.request()
-                                .response()
-                                .setStatusCode(500)
-                                .putHeader("Content-Type", "text/plain")
-                                .setBody(Body.body(Buffer.buffer("Unexpected error: " + ex.getMessage()))));
-                    }
+                if (!req.getURI().matches(apiPattern)) {
+                    return ProxyInterceptor.super.handleProxyRequest(context);
                 }
-                return ProxyInterceptor.super.handleProxyRequest(context);
+                req.setMethod(HttpMethod.POST);
+                if (req.getURI().matches(".*[.]csv([?].*)?$")) {
+                    req.putHeader("Accept", "text/csv");
+                    req.setURI(req.getURI().replaceFirst("[.]csv([?].*)?$", "$1"));
+                } else if (req.getURI().matches(".*[.]json([?].*)?$")) {
+                    req.putHeader("Accept", "application/json");
+                    req.setURI(req.getURI().replaceFirst("[.]json([?].*)?$", "$1"));
+                } else if (req.getURI().matches(".*[.]srx([?].*)?$")) {
+                    req.putHeader("Accept", "application/xml");
+                    req.setURI(req.getURI().replaceFirst("[.]srx([?].*)?$", "$1"));
+                }
+                // Reading the template may fetch its nanopub or query the meta repo, which
+                // must not happen on the event loop; the request waits, paused, until then.
+                return GrlcSpec.resolve(vertx, req.getURI(), req.proxiedRequest().params())
+                        .transform(resolved -> resolved.succeeded()
+                                ? forward(context, resolved.result())
+                                : reject(context, resolved.cause()));
+            }
+
+            @GeneratedFlagForDependentElements
+            private Future<ProxyResponse> forward(ProxyContext context, GrlcSpec grlcSpec) {
+                final ProxyRequest req = context.request();
+                try {
+                    String query = grlcSpec.expandQuery();
+                    // Variant 1:
+                    req.putHeader("Content-Type", "application/sparql-query");
+                    req.setBody(Body.body(Buffer.buffer(query)));
+                    // Variant 2:
+                    //req.putHeader("Content-Type", "application/x-www-form-urlencoded");
+                    //req.setBody(Body.body(Buffer.buffer("query=" + URLEncoder.encode(grlcSpec.getExpandedQueryContent(), Charsets.UTF_8))));
+
+                    req.setURI(Utils.appendQueryTimeout(
+                            "/rdf4j-server/repositories/" + grlcSpec.getRepoName(), queryTimeoutSeconds));
+                    logger.info("Forwarding apix request to /rdf4j-server/repositories/{}", grlcSpec.getRepoName());
+                    return ResponseCache.get().answer(vertx, context, grlcSpec.getRepoName(), query);
+                } catch (Exception ex) {
+                    return reject(context, ex);
+                }
+            }
+
+            @GeneratedFlagForDependentElements
+            private Future<ProxyResponse> reject(ProxyContext context, Throwable ex) {
+                final ProxyRequest req = context.request();
+                if (ex instanceof InvalidGrlcSpecException) {
+                    logger.warn("Bad API request for '{}' with params {}: {}", req.getURI(), req.proxiedRequest().params(), ex.getMessage());
+                    return Future.succeededFuture(context.request()
+                            .response()
+                            .setStatusCode(400)
+                            .putHeader("Content-Type", "text/plain")
+                            .setBody(Body.body(Buffer.buffer("Bad request: " + ex.getMessage()))));
+                }
+                logger.error("Unexpected error for API request '{}' with params {}", req.getURI(), req.proxiedRequest().params(), ex);
+                return Future.succeededFuture(context.request()
+                        .response()
+                        .setStatusCode(500)
+                        .putHeader("Content-Type", "text/plain")
+                        .setBody(Body.body(Buffer.buffer("Unexpected error: " + ex.getMessage()))));
             }
 
             @Override
             @GeneratedFlagForDependentElements
             public Future<Void> handleProxyResponse(ProxyContext context) {
                 logger.info("Receiving api response");
+                ResponseCache.get().capture(context);
                 ProxyResponse resp = context.response();
                 resp.putHeader("Access-Control-Allow-Origin", "*");
                 resp.putHeader("Access-Control-Allow-Methods", "POST, GET, OPTIONS");
@@ -500,6 +527,9 @@ public class MainVerticle extends AbstractVerticle {
             }
 
         });
+        if (embeddedEndpoint) {
+            proxyRouter.route(HttpMethod.GET, "/api/*").handler(EmbeddedSparqlEndpoint.apiHandler(vertx, queryTimeoutSeconds));
+        }
         proxyRouter.route(HttpMethod.GET, "/api/*").handler(ProxyHandler.create(grlcxProxy));
 
         // Handle HEAD requests for all paths not already covered (e.g. /repo/* has its own HEAD handler).
@@ -516,10 +546,10 @@ public class MainVerticle extends AbstractVerticle {
 
         // Periodic metrics update. Runs on a dedicated single-thread scheduled executor
         // (not on the Vert.x event loop) because `updateMetrics` can fall through to a
-        // synchronous HTTP call in `TripleStore.getRepositoryNames()` when the cache has
-        // been invalidated. `scheduleWithFixedDelay` naturally serialises ticks and cannot
-        // pile up if the work occasionally runs long. Same pattern as `JellyNanopubLoader.loadUpdates`
-        // below.
+        // synchronous HTTP call in `TripleStore.getRepositoryCount()` when the repo names
+        // are due for reconciliation with the store. `scheduleWithFixedDelay` naturally
+        // serialises ticks and cannot pile up if the work occasionally runs long. Same
+        // pattern as `JellyNanopubLoader.loadUpdates` below.
         Executors.newSingleThreadScheduledExecutor()
                 .scheduleWithFixedDelay(collector::updateMetrics, 1, 1, TimeUnit.SECONDS);
 
@@ -528,6 +558,11 @@ public class MainVerticle extends AbstractVerticle {
             try {
                 var status = StatusController.get().initialize();
                 logger.info("Current state: {}, last committed counter: {}", status.state, status.loadCounter);
+                // The store is reachable now. Build the loaded-nanopub filters alongside
+                // loading; until a repo's filter is complete its writes ask the store.
+                Thread filterBuilder = new Thread(LoadedNanopubFilter.get()::rebuildAll, "loaded-nanopub-filter");
+                filterBuilder.setDaemon(true);
+                filterBuilder.start();
                 // Restore or fetch the registry setup ID
                 Long storedSetupId = StatusController.get().getRegistrySetupId();
                 if (storedSetupId != null) {
@@ -617,7 +652,10 @@ public class MainVerticle extends AbstractVerticle {
             // window — is the repair latency for a dropped shard, and the damage
             // window of a missing shard is exactly the post-publish minutes when
             // its author is actively using it. An idle tick is one bounded query.
-            Executors.newSingleThreadScheduledExecutor().scheduleWithFixedDelay(
+            // Its store traffic, repairs included, leases from the reconciliation pool.
+            Executors.newSingleThreadScheduledExecutor(
+                    HttpPools.threadFactory(HttpPools.Workload.RECONCILIATION, "shard-reconciler")
+            ).scheduleWithFixedDelay(
                     () -> {
                         try {
                             ShardReconciler.tick();
@@ -638,7 +676,8 @@ public class MainVerticle extends AbstractVerticle {
             // npa:needsFullRebuild flag. Sharing one executor serialises the
             // two ticks naturally — they never overlap.
             if (FeatureFlags.spacesEnabled()) {
-                var spacesExecutor = Executors.newSingleThreadScheduledExecutor();
+                var spacesExecutor = Executors.newSingleThreadScheduledExecutor(
+                        HttpPools.threadFactory(HttpPools.Workload.MATERIALIZATION, "authority-resolver"));
                 spacesExecutor.scheduleWithFixedDelay(
                         () -> {
                             try {
@@ -667,6 +706,7 @@ public class MainVerticle extends AbstractVerticle {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 logger.info("Gracefully shutting down...");
+                AdminWriter.get().flush();
                 TripleStore.get().shutdownRepositories();
                 vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
                 logger.info("Graceful shutdown completed");
@@ -2,10 +2,14 @@ package com.knowledgepixels.query;
 
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -40,6 +44,33 @@ public final class MetricsCollector {
 
     private final Map<StatusController.State, AtomicInteger> statusStates = new ConcurrentHashMap<>();
 
+    /**
+     * Repo groups reported by the {@code registry.loader.write_queue.*} gauges, as named
+     * by {@link RepoWriteScheduler#metricsGroup}.
+     */
+    static final List<String> WRITE_QUEUE_GROUPS = List.of(
+            "meta", "full", "text", "last30d", "spaces", "pubkey_*", "type_*", RepoWriteScheduler.CROSS_REPO);
+
+    /**
+     * Values behind the write-queue gauges of one repo group. Refreshed on the
+     * {@code updateMetrics} tick, like {@link #syncLagNanopubs}: summing over thousands of
+     * {@code type_} queues does not belong on the scrape path.
+     */
+    private record WriteQueueValues(AtomicLong depth, AtomicLong tasks, AtomicLong waitNanos, AtomicLong maxWaitNanos) {
+    }
+
+    private final Map<String, WriteQueueValues> writeQueues = new ConcurrentHashMap<>();
+
+    /**
+     * Values behind the {@code registry.store_retry.*} gauges of one repo group, refreshed
+     * on the tick from {@link StoreRetries#snapshot}, which goes through every repo that has
+     * failed.
+     */
+    private record StoreRetryValues(AtomicLong attempts, AtomicLong retries, AtomicLong exhausted, AtomicLong openBreakers) {
+    }
+
+    private final Map<String, StoreRetryValues> storeRetries = new ConcurrentHashMap<>();
+
     /**
      * Creates new metrics collector object.
      *
@@ -111,6 +142,175 @@ public final class MetricsCollector {
                 .description("Shards that a previous sweep verified present and that later vanished (backend revoked readable state, issue #142)")
                 .register(meterRegistry);
 
+        // Per-repo write queues of the loader. Average queueing time is
+        // rate(wait_seconds_total) / rate(tasks_total); the group with the deepest
+        // queue or the longest waits is the shard holding loading up.
+        Gauge.builder("registry.loader.write_concurrency",
+                        () -> (double) RepoWriteScheduler.get().getConcurrency())
+                .description("Repos the loader writes to in parallel")
+                .register(meterRegistry);
+        for (String group : WRITE_QUEUE_GROUPS) {
+            WriteQueueValues values = new WriteQueueValues(new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong());
+            writeQueues.put(group, values);
+            Gauge.builder("registry.loader.write_queue.depth", values.depth(), AtomicLong::get)
+                    .description("Loader writes queued or running for this repo group")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+            Gauge.builder("registry.loader.write_queue.tasks_total", values.tasks(), AtomicLong::get)
+                    .description("Loader writes started for this repo group since process start")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+            Gauge.builder("registry.loader.write_queue.wait_seconds_total", values.waitNanos(), v -> v.get() / 1e9)
+                    .description("Time loader writes for this repo group spent queued before starting, since process start")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+            Gauge.builder("registry.loader.write_queue.max_wait_seconds", values.maxWaitNanos(), v -> v.get() / 1e9)
+                    .description("Longest time a single loader write for this repo group spent queued")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+        }
+
+        // Retries of the loader's store operations. exhausted_total going up means
+        // operations failed for good; open_breakers names the groups holding them back.
+        for (String group : WRITE_QUEUE_GROUPS) {
+            StoreRetryValues values = new StoreRetryValues(new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong());
+            storeRetries.put(group, values);
+            Gauge.builder("registry.store_retry.attempts_total", values.attempts(), AtomicLong::get)
+                    .description("Store operation attempts on this repo group since process start")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+            Gauge.builder("registry.store_retry.retries_total", values.retries(), AtomicLong::get)
+                    .description("Store operation attempts on this repo group that were retries, since process start")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+            Gauge.builder("registry.store_retry.exhausted_total", values.exhausted(), AtomicLong::get)
+                    .description("Store operations on this repo group given up since process start")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+            Gauge.builder("registry.store_retry.open_breakers", values.openBreakers(), AtomicLong::get)
+                    .description("Repos of this group whose store breaker is open")
+                    .tag("repo", group)
+                    .register(meterRegistry);
+        }
+        Map<String, Timer> attemptTimers = new ConcurrentHashMap<>();
+        StoreRetries.get().onAttempt((group, nanos, succeeded) -> {
+            String outcome = succeeded ? "success" : "failure";
+            attemptTimers.computeIfAbsent(group + "/" + outcome, k -> Timer.builder("registry.store_retry.attempt_latency")
+                    .description("Duration of store operation attempts on this repo group")
+                    .tag("repo", group)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofSeconds(60))
+                    .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+        });
+
+        // Repository handle cache. A miss rate that stays up, or evictions climbing with
+        // it, means the cap is too tight for the working set of repos.
+        Gauge.builder("registry.repo_cache.hits_total", TripleStore.CACHE_HITS, AtomicLong::get)
+                .description("Repository lookups served from the handle cache since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.repo_cache.misses_total", TripleStore.CACHE_MISSES, AtomicLong::get)
+                .description("Repository lookups that had to resurrect or create a handle since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.repo_cache.evictions_total", TripleStore.CACHE_EVICTIONS, AtomicLong::get)
+                .description("Repository handles evicted from the handle cache since process start")
+                .register(meterRegistry);
+
+        // Query templates of the /api routes. Misses or evictions that keep climbing mean
+        // NANOPUB_QUERY_TEMPLATE_CACHE_SIZE is too small for the templates in use.
+        QueryTemplateCache templates = QueryTemplateCache.get();
+        Gauge.builder("registry.template_cache.size", () -> (double) templates.stats().templates())
+                .description("Parsed query templates cached")
+                .register(meterRegistry);
+        Gauge.builder("registry.template_cache.hits_total", () -> (double) templates.stats().hits())
+                .description("Query template lookups served from the cache since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.template_cache.misses_total", () -> (double) templates.stats().misses())
+                .description("Query template lookups that had to fetch and parse the template since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.template_cache.evictions_total", () -> (double) templates.stats().evictions())
+                .description("Parsed query templates evicted from the cache since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.latest_version_cache.size", () -> (double) templates.stats().latestVersions())
+                .description("Resolved api-version=latest versions cached")
+                .register(meterRegistry);
+        Gauge.builder("registry.latest_version_cache.hits_total", () -> (double) templates.stats().latestVersionHits())
+                .description("api-version=latest lookups served from the cache since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.latest_version_cache.misses_total", () -> (double) templates.stats().latestVersionMisses())
+                .description("api-version=latest lookups that queried the meta repo since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.latest_version_cache.invalidations_total", () -> (double) templates.stats().latestVersionInvalidations())
+                .description("Cached latest versions dropped because a newer version or an invalidation was loaded, since process start")
+                .register(meterRegistry);
+
+        // Query responses of the proxy routes. Hits stay low while the repos queried are
+        // written to between requests; evictions that keep climbing mean
+        // NANOPUB_QUERY_RESPONSE_CACHE_MB is too small for the queries repeated.
+        ResponseCache responses = ResponseCache.get();
+        Gauge.builder("registry.response_cache.entries", () -> (double) responses.stats().entries())
+                .description("Query responses cached")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.bytes", () -> (double) responses.stats().bytes())
+                .description("Size of the cached query responses in bytes")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.hits_total", () -> (double) responses.stats().hits())
+                .description("Proxied queries answered from the cache since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.misses_total", () -> (double) responses.stats().misses())
+                .description("Proxied queries on a repo of known version that went to the store since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.evictions_total", () -> (double) responses.stats().evictions())
+                .description("Query responses evicted from the cache for space since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.not_modified_total", () -> (double) responses.stats().notModified())
+                .description("Proxied queries answered with 304 Not Modified since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.coalesced_total", () -> (double) responses.stats().coalesced())
+                .description("Proxied queries sent the response of the same query in flight since process start")
+                .register(meterRegistry);
+        Gauge.builder("registry.response_cache.coalesce_fallbacks_total", () -> (double) responses.stats().coalesceFallbacks())
+                .description("Proxied queries that waited for the same query in flight, then went to the store after all, since process start")
+                .register(meterRegistry);
+
+        // HTTP connection pools to the store, one per workload. A pool that keeps
+        // pending requests, or lease waits in the upper buckets, has too small a budget
+        // for its workload; the pool stats lock only briefly and do no I/O, so they are
+        // read on the scrape path.
+        HttpPools pools = HttpPools.get();
+        for (HttpPools.Workload workload : HttpPools.Workload.values()) {
+            Gauge.builder("registry.http_pool.leased", () -> (double) pools.stats(workload).getLeased())
+                    .description("Store connections of this pool currently in use")
+                    .tag("pool", workload.label())
+                    .register(meterRegistry);
+            Gauge.builder("registry.http_pool.available", () -> (double) pools.stats(workload).getAvailable())
+                    .description("Idle store connections kept open in this pool")
+                    .tag("pool", workload.label())
+                    .register(meterRegistry);
+            Gauge.builder("registry.http_pool.pending", () -> (double) pools.stats(workload).getPending())
+                    .description("Requests waiting for a connection from this pool")
+                    .tag("pool", workload.label())
+                    .register(meterRegistry);
+            Gauge.builder("registry.http_pool.max", () -> (double) workload.budget)
+                    .description("Connection budget of this pool")
+                    .tag("pool", workload.label())
+                    .register(meterRegistry);
+            Timer leaseWait = Timer.builder("registry.http_pool.lease_wait")
+                    .description("Time a request waited for a connection from this pool")
+                    .tag("pool", workload.label())
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(meterRegistry);
+            pools.onLeaseWait(workload, nanos -> leaseWait.record(nanos, TimeUnit.NANOSECONDS));
+        }
+
+        // Non-zero means a repo's chain head changed behind the loader's back, or the
+        // store lost it; the loader recovered by re-reading, but the cause wants a look.
+        Gauge.builder("registry.loader.chain_head_cache.divergences_total",
+                        RepoChainHeadCache.DIVERGENCES, AtomicLong::get)
+                .description("Cached repo chain heads found to differ from the store by a sampled verification")
+                .register(meterRegistry);
+
         // Status label metrics
         for (final var status : StatusController.State.values()) {
             AtomicInteger stateGauge = new AtomicInteger(0);
@@ -161,30 +361,19 @@ public final class MetricsCollector {
     public void updateMetrics() {
         // Update numeric metrics
         loadCounter.set((int) StatusController.get().getState().loadCounter);
-        // Request repository names once, to avoid multiple calls
-        var repoNames = TripleStore.get().getRepositoryNames();
-        if (repoNames == null) {
-            repoNames = Set.of();
-        }
-        typeRepositoriesCounter.set(
-                (int) repoNames
-                        .stream()
-                        .filter(repo -> repo.startsWith("type_"))
-                        .count()
-        );
-        pubkeyRepositoriesCounter.set(
-                (int) repoNames
-                        .stream()
-                        .filter(repo -> repo.startsWith("pubkey_"))
-                        .count()
-        );
-        fullRepositoriesCounter.set(repoNames.size());
+        // Kept as counters by TripleStore; no need to go through the names.
+        TripleStore store = TripleStore.get();
+        typeRepositoriesCounter.set(store.getRepositoryCount("type"));
+        pubkeyRepositoriesCounter.set(store.getRepositoryCount("pubkey"));
+        fullRepositoriesCounter.set(store.getRepositoryCount());
         // Keeps the loaded-count/checksum caches warm for applyGlobalHeaders, which
         // runs on the event loop and therefore reads them without a store fallback.
         // This tick is the right host: it already runs unconditionally on its own
         // executor at a fixed cadence, and computeSyncLag below needs the count anyway.
         NanopubLoader.primeHeaderCaches();
         syncLagNanopubs.set(computeSyncLag());
+        updateWriteQueueMetrics();
+        updateStoreRetryMetrics();
 
         // Update status gauge
         final var currentStatus = StatusController.get().getState().state;
@@ -193,6 +382,35 @@ public final class MetricsCollector {
         }
     }
 
+    private void updateWriteQueueMetrics() {
+        Map<String, long[]> totals = new HashMap<>();
+        RepoWriteScheduler.get().snapshot().forEach((repoName, stats) -> {
+            long[] t = totals.computeIfAbsent(RepoWriteScheduler.metricsGroup(repoName), k -> new long[4]);
+            t[0] += stats.depth();
+            t[1] += stats.tasks();
+            t[2] += stats.totalWaitNanos();
+            t[3] = Math.max(t[3], stats.maxWaitNanos());
+        });
+        writeQueues.forEach((group, values) -> {
+            long[] t = totals.getOrDefault(group, new long[4]);
+            values.depth().set(t[0]);
+            values.tasks().set(t[1]);
+            values.waitNanos().set(t[2]);
+            values.maxWaitNanos().set(t[3]);
+        });
+    }
+
+    private void updateStoreRetryMetrics() {
+        Map<String, StoreRetries.GroupStats> stats = StoreRetries.get().snapshot();
+        storeRetries.forEach((group, values) -> {
+            StoreRetries.GroupStats s = stats.getOrDefault(group, new StoreRetries.GroupStats(0, 0, 0, 0));
+            values.attempts().set(s.attempts());
+            values.retries().set(s.retries());
+            values.exhausted().set(s.exhausted());
+            values.openBreakers().set(s.openBreakers());
+        });
+    }
+
     /**
      * Nanopubs this instance is behind its registry, or {@link #UNKNOWN_LAG} if either
      * count is unavailable.
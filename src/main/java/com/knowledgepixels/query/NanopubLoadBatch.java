@@ -0,0 +1,148 @@
+package com.knowledgepixels.query;
+
+import org.nanopub.Nanopub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups consecutive nanopubs from the Jelly stream so that {@link NanopubLoader} can
+ * commit them with one transaction per target repo rather than one per nanopub per repo.
+ *
+ * <p>Every write is a full HTTP round trip to RDF4J, and a typical nanopub touches five
+ * or more repos ({@code text}, {@code full}, {@code meta}, its {@code pubkey_} repo and
+ * one {@code type_} repo per type), so during an initial load the per-nanopub commits
+ * were what capped throughput at a few dozen nanopubs per second, not the data volume.
+ *
+ * <p>The batch is flushed when it reaches {@link #MAX_SIZE} nanopubs or
+ * {@link #MAX_STATEMENTS} statements, when its oldest entry has waited
+ * {@link #MAX_LATENCY_MS}, or when the caller calls {@link #flush()}
+ * (at the end of the stream). The latency bound is checked as nanopubs arrive; a stream
+ * that goes quiet mid-batch is covered by the end-of-stream flush. Nanopubs that are not
+ * {@link NanopubLoader#isBatchable() batchable} flush the pending batch and are then
+ * loaded on their own, so store writes always happen in stream order.
+ *
+ * <p>Not thread-safe: owned by the thread consuming the stream.
+ */
+final class NanopubLoadBatch {
+
+    /**
+     * Maximum nanopubs per batch, from {@code NANOPUB_QUERY_LOAD_BATCH_SIZE} (default 50).
+     * A value of 1 disables batching and restores the one-transaction-per-nanopub path.
+     */
+    static final int MAX_SIZE = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_LOAD_BATCH_SIZE", 50));
+
+    /**
+     * Maximum time in ms a nanopub may sit in a pending batch before it is flushed, from
+     * {@code NANOPUB_QUERY_LOAD_BATCH_MAX_LATENCY_MS} (default 1000). Bounds how far the
+     * persisted load counter and the loaded-count headers can trail the stream.
+     */
+    static final long MAX_LATENCY_MS = Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_LOAD_BATCH_MAX_LATENCY_MS", 1000));
+
+    /**
+     * Maximum statements per batch, counted as what each nanopub writes to a content repo,
+     * from {@code NANOPUB_QUERY_LOAD_BATCH_MAX_STATEMENTS} (default 50000). Most nanopubs
+     * are a few dozen triples, so this rarely bites before {@link #MAX_SIZE}; it is there
+     * for the runs of very large ones, to keep a {@code full} transaction within what one
+     * HTTP request and one RDF4J commit comfortably carry.
+     */
+    static final int MAX_STATEMENTS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_LOAD_BATCH_MAX_STATEMENTS", 50_000));
+
+    /**
+     * Told about every commit, in stream order.
+     */
+    interface CommitListener {
+
+        /**
+         * @param counter   the stream counter of the last nanopub that is now fully loaded
+         * @param nanopubs  how many nanopubs this commit covered
+         */
+        void committed(long counter, int nanopubs);
+    }
+
+    private final int maxSize;
+    private final int maxStatements;
+    private final long maxLatencyMs;
+    private final CommitListener listener;
+    private final List<NanopubLoader> pending = new ArrayList<>();
+    private int pendingStatements = 0;
+    private long pendingLastCounter = -1;
+    private long pendingSinceMs = 0L;
+
+    NanopubLoadBatch(CommitListener listener) {
+        this(MAX_SIZE, MAX_LATENCY_MS, listener);
+    }
+
+    NanopubLoadBatch(int maxSize, long maxLatencyMs, CommitListener listener) {
+        this(maxSize, MAX_STATEMENTS, maxLatencyMs, listener);
+    }
+
+    NanopubLoadBatch(int maxSize, int maxStatements, long maxLatencyMs, CommitListener listener) {
+        this.maxSize = maxSize;
+        this.maxStatements = maxStatements;
+        this.maxLatencyMs = maxLatencyMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds the next nanopub from the stream, loading whatever this makes due.
+     *
+     * @param np      the nanopub
+     * @param counter its stream counter
+     */
+    void add(Nanopub np, long counter) {
+        add(NanopubLoader.prepare(np, counter));
+    }
+
+    /**
+     * Adds the next nanopub from the stream, already {@link NanopubLoader#prepare prepared},
+     * loading whatever this makes due. Loaders must arrive in stream order.
+     *
+     * @param loader the prepared loader
+     */
+    void add(NanopubLoader loader) {
+        // Only invalidators are ever kept out of a pending batch, and only they can change
+        // what this lookup returns, so it is safe to run with a batch still pending.
+        loader.resolveInvalidatingStatements();
+        long counter = loader.getCounter();
+        if (maxSize <= 1 || !loader.isBatchable()) {
+            flush();
+            NanopubLoader.executeLoading(List.of(loader));
+            listener.committed(counter, 1);
+            return;
+        }
+        if (pending.isEmpty()) {
+            pendingSinceMs = System.currentTimeMillis();
+        }
+        pending.add(loader);
+        pendingStatements += loader.getStatementCount();
+        pendingLastCounter = counter;
+        if (pending.size() >= maxSize || pendingStatements >= maxStatements
+            || System.currentTimeMillis() - pendingSinceMs >= maxLatencyMs) {
+            flush();
+        }
+    }
+
+    /**
+     * Loads the pending nanopubs, if any. If loading throws, the pending nanopubs are
+     * dropped without being reported as committed, so the caller resumes the stream
+     * from the last counter it was told about.
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<NanopubLoader> batch = new ArrayList<>(pending);
+        pending.clear();
+        pendingStatements = 0;
+        NanopubLoader.executeLoading(batch);
+        listener.committed(pendingLastCounter, batch.size());
+    }
+
+    /**
+     * @return the number of nanopubs waiting to be loaded
+     */
+    int pendingSize() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,130 @@
+package com.knowledgepixels.query;
+
+import org.nanopub.Nanopub;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the CPU-bound part of loading nanopubs from the Jelly stream ahead of the store
+ * writes, on a small pool, so that signature verification and statement building overlap
+ * with RDF4J round trips instead of waiting for them.
+ *
+ * <p>Three stages. The thread reading the stream decodes each nanopub and hands it to
+ * {@link #add}, which submits {@link NanopubLoader#prepare} to the prepare pool and
+ * queues the future. Once more than {@link #MAX_IN_FLIGHT} nanopubs are queued, the same
+ * thread takes the oldest future, waits for it, and passes the prepared loader on to the
+ * {@link NanopubLoadBatch}, which does the writes. Writes therefore still happen in counter
+ * order, on one thread, exactly as before; only the preparation runs ahead.
+ *
+ * <p>Backpressure falls out of that shape: while the stream thread is busy writing it is
+ * not reading, so the HTTP response is consumed no faster than the store accepts it and
+ * at most {@link #MAX_IN_FLIGHT} prepared nanopubs are ever held in memory.
+ *
+ * <p>Not thread-safe: owned by the thread consuming the stream.
+ */
+final class NanopubLoadPipeline implements AutoCloseable {
+
+    /**
+     * Threads preparing nanopubs, from {@code NANOPUB_QUERY_PREPARE_THREADS} (default: one
+     * less than the available processors, at least 1).
+     */
+    static final int PREPARE_THREADS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_PREPARE_THREADS",
+            Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * How many nanopubs may be prepared ahead of the store writes, from
+     * {@code NANOPUB_QUERY_PREPARE_MAX_IN_FLIGHT}. The default of twice the batch size
+     * keeps the pool busy for the whole of a batch flush, which is when the stream thread
+     * stops feeding it.
+     */
+    static final int MAX_IN_FLIGHT = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_PREPARE_MAX_IN_FLIGHT",
+            2 * NanopubLoadBatch.MAX_SIZE));
+
+    private static final ExecutorService preparePool = Executors.newFixedThreadPool(PREPARE_THREADS);
+
+    private final ArrayDeque<Future<NanopubLoader>> inFlight = new ArrayDeque<>();
+    private final NanopubLoadBatch batch;
+    private final int maxInFlight;
+
+    NanopubLoadPipeline(NanopubLoadBatch batch) {
+        this(batch, MAX_IN_FLIGHT);
+    }
+
+    NanopubLoadPipeline(NanopubLoadBatch batch, int maxInFlight) {
+        this.batch = batch;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Queues the next nanopub from the stream, writing the oldest queued ones if the
+     * queue is full.
+     *
+     * @param np      the decoded nanopub
+     * @param counter its stream counter
+     */
+    void add(Nanopub np, long counter) {
+        inFlight.add(submitPrepare(np, counter));
+        while (inFlight.size() > maxInFlight) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * Submits a nanopub to the prepare pool. Also used by {@link CounterRangeLoader}, whose
+     * readers share the pool.
+     *
+     * @param np      the decoded nanopub
+     * @param counter its stream counter
+     * @return the future prepared loader
+     */
+    static Future<NanopubLoader> submitPrepare(Nanopub np, long counter) {
+        return preparePool.submit(() -> NanopubLoader.prepare(np, counter));
+    }
+
+    /**
+     * Writes everything still queued and flushes the batch. Call at the end of the stream.
+     */
+    void finish() {
+        while (!inFlight.isEmpty()) {
+            writeOldest();
+        }
+        batch.flush();
+    }
+
+    private void writeOldest() {
+        Future<NanopubLoader> next = inFlight.poll();
+        NanopubLoader loader;
+        try {
+            loader = next.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a nanopub to be prepared", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Error in nanopub prepare thread", ex.getCause());
+        }
+        batch.add(loader);
+    }
+
+    /**
+     * Drops whatever is still queued. Harmless after {@link #finish()}; after a failure it
+     * stops the pool from preparing nanopubs that will be re-streamed anyway.
+     */
+    @Override
+    public void close() {
+        for (Future<NanopubLoader> f : inFlight) {
+            f.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * @return the number of nanopubs queued ahead of the store writes
+     */
+    int inFlightSize() {
+        return inFlight.size();
+    }
+}
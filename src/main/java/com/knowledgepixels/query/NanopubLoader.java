@@ -37,7 +37,7 @@ import java.security.GeneralSecurityException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
 
 /**
  * Utility class for loading nanopublications into the database.
@@ -45,7 +45,6 @@ import java.util.function.Consumer;
 public class NanopubLoader {
 
     private static HttpClient httpClient;
-    private static final ThreadPoolExecutor loadingPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
 
     /**
      * One write lock per repo, held for the whole read-modify-write of that repo's
@@ -73,6 +72,10 @@ public class NanopubLoader {
      * no {@code ObservingSailDataset} is created, {@code observed} stays null and
      * {@code sinkObserved} early-returns.
      *
+     * <p>On the loading path {@link RepoWriteScheduler} already runs one task per repo at a
+     * time, so there the lock is uncontended; it stays for the writers that bypass the
+     * scheduler, and inside the cross-repo invalidation tasks.
+     *
      * <p>Keyed by repo name, so writers to different repos never contend. Calls are never
      * nested across repos — the invalidator paths loop and call one repo at a time — so there
      * is no lock-ordering hazard.
@@ -120,38 +123,8 @@ public class NanopubLoader {
      */
     static volatile String loadedNanopubChecksum = null;
 
-    /**
-     * Retry budget for the five (with #71 merged: six) structurally identical
-     * retry loops in this file. Previously the shape was flat {@code 10 s × 30} —
-     * five minutes of constant hammering at RDF4J that did not help a slow server.
-     * The new shape is bounded exponential backoff with ±50 % jitter:
-     * {@code base = 1, 2, 4, 8, 16, 32, 60, 60 s} for attempts 1…8, each perturbed
-     * by up to half its base value. Jitter prevents the 4-thread loadingPool from
-     * retrying in lock-step after a shared RDF4J failure (GC pause / overload spike).
-     * Worst-case wall time per failing task drops from ~35 min (post-change-1
-     * timeouts × 30 flat retries) to ~11 min (8 retries × 60 s timeout + backoff
-     * sleeps). This is the figure that sets the circuit-breaker trip time in
-     * {@link JellyNanopubLoader}.
-     */
-    private static final int MAX_RETRIES = 8;
-    private static final long[] BACKOFF_BASE_MS =
-            {1_000L, 2_000L, 4_000L, 8_000L, 16_000L, 32_000L, 60_000L, 60_000L};
-
-    /**
-     * Returns the sleep delay in ms for the given 1-indexed retry attempt. Delay
-     * is {@link #BACKOFF_BASE_MS}{@code [attempt-1]} perturbed by ±50 % uniform
-     * jitter, clamped to be non-negative.
-     *
-     * @param attempt 1-indexed retry attempt number
-     * @return the computed sleep delay in ms
-     */
-    static long computeBackoffMillis(int attempt) {
-        long base = BACKOFF_BASE_MS[Math.min(attempt - 1, BACKOFF_BASE_MS.length - 1)];
-        long jitter = ThreadLocalRandom.current().nextLong(base + 1) - base / 2;
-        return Math.max(0L, base + jitter);
-    }
-
     private Nanopub np;
+    private final long counter;
     private NanopubSignatureElement el = null;
     private List<Statement> metaStatements = new ArrayList<>();
     private List<Statement> nanopubStatements = new ArrayList<>();
@@ -167,7 +140,38 @@ public class NanopubLoader {
 
 
     NanopubLoader(Nanopub np, long counter) {
+        this(np, counter, false);
+    }
+
+    /**
+     * Does the store-independent part of loading — signature and trusty-URI checks,
+     * building the statement lists, space extraction — and nothing else. The caller must
+     * call {@link #resolveInvalidatingStatements()} before loading, at the point in stream
+     * order where everything before this nanopub has been committed.
+     *
+     * <p>Safe to call from several threads at once for different nanopubs; this is what
+     * {@link NanopubLoadPipeline} runs on its prepare pool.
+     *
+     * <p>Also starts opening the repos the nanopub goes to, in the background. A nanopub
+     * with a new type or pubkey would otherwise have its repo writer wait for the repo to
+     * be created; this way the creation overlaps with the nanopubs ahead of it.
+     *
+     * @param np      the nanopub to load
+     * @param counter the load counter, only used for logging (or -1 if not known)
+     * @return the prepared loader
+     */
+    @GeneratedFlagForDependentElements
+    static NanopubLoader prepare(Nanopub np, long counter) {
+        NanopubLoader loader = new NanopubLoader(np, counter, true);
+        if (!loader.aborted) {
+            TripleStore.get().prewarmRepositories(loader.getShardStatements().keySet());
+        }
+        return loader;
+    }
+
+    private NanopubLoader(Nanopub np, long counter, boolean deferStoreReads) {
         this.np = np;
+        this.counter = counter;
         if (counter >= 0) {
             logger.info("Loading nanopub #{}: <{}>", counter, np.getUri());
         } else {
@@ -228,7 +232,7 @@ public class NanopubLoader {
         Set<IRI> invalidated = new HashSet<>();
         Set<IRI> retracted = new HashSet<>();
         Set<IRI> superseded = new HashSet<>();
-        String combinedLiterals = "";
+        StringBuilder combinedLiterals = new StringBuilder();
         for (Statement st : NanopubUtils.getStatements(np)) {
             nanopubStatements.add(st);
 
@@ -250,7 +254,7 @@ public class NanopubLoader {
                 if (st.getPredicate().equals(NPX.SUPERSEDES)) {
                     superseded.add((IRI) st.getObject());
                 }
-                if (st.getObject().toString().matches(".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}")) {
+                if (TrustyUriScanner.endsWithArtifactCode(st.getObject().stringValue())) {
                     metaStatements.add(vf.createStatement(np.getUri(), st.getPredicate(), st.getObject(), NPA.NETWORK_GRAPH));
                     // @ADMIN-TRIPLE-TABLE@ NANOPUB1, RELATION, NANOPUB2, npa:networkGraph, meta, any inter-nanopub relation found in NANOPUB1
                 }
@@ -281,7 +285,7 @@ public class NanopubLoader {
                     }
                 }
             } else {
-                combinedLiterals += st.getObject().stringValue().replaceAll("\\s+", " ") + "\n";
+                TrustyUriScanner.appendCollapsingWhitespace(combinedLiterals, st.getObject().stringValue());
 //				if (st.getSubject().equals(np.getUri()) && !st.getSubject().equals(HAS_FILTER_LITERAL)) {
 //					literalStatements.add(vf.createStatement(np.getUri(), st.getPredicate(), st.getObject(), LITERAL_GRAPH));
 //				} else {
@@ -354,11 +358,11 @@ public class NanopubLoader {
             // @ADMIN-TRIPLE-TABLE@ NANOPUB, dct:created, CREATION_DATE, npa:graph, meta, normalized creation timestamp
         }
 
-        String literalFilter = "_pubkey_" + Utils.createHash(el.getPublicKeyString());
+        StringBuilder literalFilter = new StringBuilder("_pubkey_").append(Utils.createHash(el.getPublicKeyString()));
         for (IRI typeIri : NanopubUtils.getTypes(np)) {
             metaStatements.add(vf.createStatement(np.getUri(), NPX.HAS_NANOPUB_TYPE, typeIri, NPA.GRAPH));
             // @ADMIN-TRIPLE-TABLE@ NANOPUB, npx:hasNanopubType, NANOPUB_TYPE, npa:graph, meta, type of NANOPUB
-            literalFilter += " _type_" + Utils.createHash(typeIri);
+            literalFilter.append(" _type_").append(Utils.createHash(typeIri));
         }
         String label = NanopubUtils.getLabel(np);
         if (label != null) {
@@ -380,15 +384,42 @@ public class NanopubLoader {
         }
 
         if (!combinedLiterals.isEmpty()) {
-            literalStatements.add(vf.createStatement(np.getUri(), NPA.HAS_FILTER_LITERAL, vf.createLiteral(literalFilter + "\n" + combinedLiterals), NPA.GRAPH));
+            literalStatements.add(vf.createStatement(np.getUri(), NPA.HAS_FILTER_LITERAL, vf.createLiteral(literalFilter.append('\n').append(combinedLiterals).toString()), NPA.GRAPH));
             // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasFilterLiteral, FILTER_LITERAL, npa:graph, literal, auxiliary literal for filtering by type and pubkey in text repo
         }
 
+        metaStatements.addAll(invalidateStatements);
+
+        if (FeatureFlags.spacesEnabled()) {
+            IRI signedBy = (el.getSigners().size() == 1) ? el.getSigners().iterator().next() : null;
+            String pubkeyHash = Utils.createHash(el.getPublicKeyString());
+            Date createdAt = (timestamp != null) ? timestamp.getTime() : null;
+            SpacesExtractor.Context ctx = new SpacesExtractor.Context(ac, signedBy, pubkeyHash, createdAt);
+            spaceExtractionStatements = SpacesExtractor.extract(np, ctx);
+        }
+
+        if (!deferStoreReads) {
+            resolveInvalidatingStatements();
+        }
+    }
+
+    /**
+     * Looks up already-loaded invalidators of this nanopub in {@code meta} and assembles
+     * the final statement lists from them. No-op if aborted or already resolved.
+     *
+     * <p>This is the one step of preparing a nanopub that reads the store, and its answer
+     * depends on which earlier nanopubs have been committed: an invalidator streamed just
+     * before this nanopub must already be in {@code meta}, or the reverse-order
+     * propagation in {@link #executeLoading()} would silently not happen. So it is kept
+     * out of {@link #prepare} and run in stream order, right before the write.
+     */
+    void resolveInvalidatingStatements() {
+        if (aborted || allStatements != null) {
+            return;
+        }
         // Any statements that express that the currently processed nanopub is already invalidated:
         invalidatingStatements = getInvalidatingStatements(np.getUri());
 
-        metaStatements.addAll(invalidateStatements);
-
         allStatements = new ArrayList<>(nanopubStatements);
         allStatements.addAll(metaStatements);
         allStatements.addAll(invalidatingStatements);
@@ -396,14 +427,6 @@ public class NanopubLoader {
         textStatements = new ArrayList<>(literalStatements);
         textStatements.addAll(metaStatements);
         textStatements.addAll(invalidatingStatements);
-
-        if (FeatureFlags.spacesEnabled()) {
-            IRI signedBy = (el.getSigners().size() == 1) ? el.getSigners().iterator().next() : null;
-            String pubkeyHash = Utils.createHash(el.getPublicKeyString());
-            Date createdAt = (timestamp != null) ? timestamp.getTime() : null;
-            SpacesExtractor.Context ctx = new SpacesExtractor.Context(ac, signedBy, pubkeyHash, createdAt);
-            spaceExtractionStatements = SpacesExtractor.extract(np, ctx);
-        }
     }
 
     /**
@@ -448,6 +471,18 @@ public class NanopubLoader {
         return aborted;
     }
 
+    long getCounter() {
+        return counter;
+    }
+
+    /**
+     * @return how many statements this nanopub writes to each content repo, or 0 before
+     * {@link #resolveInvalidatingStatements()} has run
+     */
+    int getStatementCount() {
+        return allStatements == null ? 0 : allStatements.size();
+    }
+
     List<String> getNotes() {
         return notes;
     }
@@ -455,57 +490,26 @@ public class NanopubLoader {
     @GeneratedFlagForDependentElements
     private void executeLoading() {
         var runningTasks = new ArrayList<Future<?>>();
-        Consumer<Runnable> runTask = t -> runningTasks.add(loadingPool.submit(t));
+        BiConsumer<String, Runnable> runTask = (repoName, t) -> runningTasks.add(RepoWriteScheduler.get().submit(repoName, t));
+        // Single-transaction writes, retried by the scheduler. The invalidation tasks below
+        // are made of several reads and writes and retry those one by one themselves.
+        BiConsumer<String, Runnable> runWrite = (repoName, t) -> runningTasks.add(
+                RepoWriteScheduler.get().submit(repoName, loadOf("nanopub <" + np.getUri() + ">", repoName), t));
 
         for (String note : notes) {
             loadNoteToRepo(np.getUri(), note);
         }
 
         if (!aborted) {
+            resolveInvalidatingStatements();
             // Submit all tasks except the "meta" task
-            if (timestamp != null) {
-                if (new Date().getTime() - timestamp.getTimeInMillis() < THIRTY_DAYS) {
-                    if (FeatureFlags.last30dRepoEnabled()) {
-                        runTask.accept(() -> loadNanopubToLatest(np.getUri(), allStatements));
-                    }
-                }
-            }
-
-            if (FeatureFlags.textRepoEnabled()) {
-                runTask.accept(() -> loadNanopubToRepo(np.getUri(), textStatements, "text"));
-            }
-            if (FeatureFlags.fullRepoEnabled()) {
-                runTask.accept(() -> loadNanopubToRepo(np.getUri(), allStatements, "full"));
+            if (belongsInLast30d()) {
+                runWrite.accept("last30d", () -> loadNanopubToLatest(np.getUri(), allStatements));
             }
             // Note: "meta" task is deferred until all other tasks complete successfully
-
-            runTask.accept(() -> loadNanopubToRepo(np.getUri(), allStatements, "pubkey_" + Utils.createHash(el.getPublicKeyString())));
-            //		loadNanopubToRepo(np.getUri(), textStatements, "text-pubkey_" + Utils.createHash(el.getPublicKeyString()));
-            for (IRI typeIri : NanopubUtils.getTypes(np)) {
-                // Exclude locally minted IRIs:
-                if (typeIri.stringValue().startsWith(np.getUri().stringValue())) {
-                    continue;
-                }
-                if (!typeIri.stringValue().matches("https?://.*")) {
-                    continue;
-                }
-                runTask.accept(() -> loadNanopubToRepo(np.getUri(), allStatements, "type_" + Utils.createHash(typeIri)));
-                //			loadNanopubToRepo(np.getUri(), textStatements, "text-type_" + Utils.createHash(typeIri));
+            for (Map.Entry<String, List<Statement>> shard : getShardStatements().entrySet()) {
+                runWrite.accept(shard.getKey(), () -> loadNanopubsToRepoOnce(List.of(new RepoEntry(np.getUri(), shard.getValue())), shard.getKey()));
             }
-            //		for (IRI creatorIri : SimpleCreatorPattern.getCreators(np)) {
-            //			// Exclude locally minted IRIs:
-            //			if (creatorIri.stringValue().startsWith(np.getUri().stringValue())) continue;
-            //			if (!creatorIri.stringValue().matches("https?://.*")) continue;
-            //			loadNanopubToRepo(np.getUri(), allStatements, "user_" + Utils.createHash(creatorIri));
-            //			loadNanopubToRepo(np.getUri(), textStatements, "text-user_" + Utils.createHash(creatorIri));
-            //		}
-            //		for (IRI authorIri : SimpleCreatorPattern.getAuthors(np)) {
-            //			// Exclude locally minted IRIs:
-            //			if (authorIri.stringValue().startsWith(np.getUri().stringValue())) continue;
-            //			if (!authorIri.stringValue().matches("https?://.*")) continue;
-            //			loadNanopubToRepo(np.getUri(), allStatements, "user_" + Utils.createHash(authorIri));
-            //			loadNanopubToRepo(np.getUri(), textStatements, "text-user_" + Utils.createHash(authorIri));
-            //		}
 
             // Write to the spaces repo only when the nanopub carries its own space-relevant
             // extractions. Invalidators of space-relevant nanopubs are propagated to spaces
@@ -517,11 +521,11 @@ public class NanopubLoader {
             // ones we propagate.
             boolean thisNpIsSpaceRelevant = FeatureFlags.spacesEnabled() && !spaceExtractionStatements.isEmpty();
             if (thisNpIsSpaceRelevant) {
-                runTask.accept(() -> loadToSpacesRepo(np.getUri(), allStatements, spaceExtractionStatements));
+                runWrite.accept("spaces", () -> loadToSpacesRepoOnce(List.of(new SpacesEntry(np.getUri(), allStatements, spaceExtractionStatements))));
             }
 
             for (Statement st : invalidateStatements) {
-                runTask.accept(() -> loadInvalidateStatements(np, el.getPublicKeyString(), st, pubkeyStatement, pubkeyStatementX, allStatements));
+                runTask.accept(RepoWriteScheduler.CROSS_REPO, () -> loadInvalidateStatements(np, el.getPublicKeyString(), st, pubkeyStatement, pubkeyStatementX, allStatements));
             }
 
             // Reverse-order symmetry: when retractors were loaded before this nanopub,
@@ -540,16 +544,16 @@ public class NanopubLoader {
                 for (Map.Entry<IRI, String> e : invalidatorPubkeys.entrySet()) {
                     IRI invIri = e.getKey();
                     String invPubkey = e.getValue();
-                    runTask.accept(() -> loadInvalidatorIntoTypeRepos(invIri, invPubkey, np.getUri(), thisNpTypes));
+                    runTask.accept(RepoWriteScheduler.CROSS_REPO, () -> loadInvalidatorIntoTypeRepos(invIri, invPubkey, np.getUri(), thisNpTypes));
                     if (thisNpIsSpaceRelevant) {
-                        runTask.accept(() -> loadInvalidatorIntoSpacesRepo(invIri, invPubkey, np.getUri()));
+                        runTask.accept("spaces", () -> loadInvalidatorIntoSpacesRepo(invIri, invPubkey, np.getUri()));
                     }
                 }
             }
 
             // Wait for all non-meta tasks to complete successfully before submitting the meta task.
             // On failure, cancel the remaining futures so orphaned tasks don't keep running in the
-            // shared loadingPool and race with the next batch retry (which re-submits the same
+            // shared scheduler and race with the next batch retry (which re-submits the same
             // nanopub against the same repos).
             for (var task : runningTasks) {
                 try {
@@ -565,12 +569,173 @@ public class NanopubLoader {
             }
 
             // Now submit and wait for the "meta" task after all other tasks have completed successfully
-            Future<?> metaTask = loadingPool.submit(() -> loadNanopubToRepo(np.getUri(), metaStatements, "meta"));
+            Future<?> metaTask = RepoWriteScheduler.get().submit("meta", loadOf("nanopub <" + np.getUri() + ">", "meta"),
+                    () -> loadNanopubsToRepoOnce(List.of(new RepoEntry(np.getUri(), metaStatements)), "meta"));
             try {
                 metaTask.get();
             } catch (ExecutionException | InterruptedException ex) {
                 throw new RuntimeException("Error in nanopub loading thread (meta task)", ex.getCause());
+            } finally {
+                // Also on failure: the commit may have landed all the same.
+                for (Statement st : invalidateStatements) {
+                    String invalidatedArtifactCode = TrustyUriUtils.getArtifactCode(st.getObject().stringValue());
+                    if (invalidatedArtifactCode != null) {
+                        QueryTemplateCache.get().chainChanged(invalidatedArtifactCode);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether this nanopub goes into the {@code last30d} repo: it must have a creation
+     * timestamp less than thirty days old, and the repo must be enabled.
+     */
+    private boolean belongsInLast30d() {
+        return timestamp != null
+               && new Date().getTime() - timestamp.getTimeInMillis() < THIRTY_DAYS
+               && FeatureFlags.last30dRepoEnabled();
+    }
+
+    /**
+     * The chain-tracking repos this nanopub is written to before {@code meta}, mapped to
+     * the statements each receives, in submission order: {@code text}, {@code full}, its
+     * {@code pubkey_} repo and its {@code type_} repos.
+     */
+    private Map<String, List<Statement>> getShardStatements() {
+        Map<String, List<Statement>> shards = new LinkedHashMap<>();
+        if (FeatureFlags.textRepoEnabled()) {
+            shards.put("text", textStatements);
+        }
+        if (FeatureFlags.fullRepoEnabled()) {
+            shards.put("full", allStatements);
+        }
+        shards.put("pubkey_" + Utils.createHash(el.getPublicKeyString()), allStatements);
+        //		loadNanopubToRepo(np.getUri(), textStatements, "text-pubkey_" + Utils.createHash(el.getPublicKeyString()));
+        for (IRI typeIri : NanopubUtils.getTypes(np)) {
+            // Exclude locally minted IRIs:
+            if (typeIri.stringValue().startsWith(np.getUri().stringValue())) {
+                continue;
+            }
+            if (!typeIri.stringValue().matches("https?://.*")) {
+                continue;
             }
+            shards.put("type_" + Utils.createHash(typeIri), allStatements);
+            //			loadNanopubToRepo(np.getUri(), textStatements, "text-type_" + Utils.createHash(typeIri));
+        }
+        //		for (IRI creatorIri : SimpleCreatorPattern.getCreators(np)) {
+        //			// Exclude locally minted IRIs:
+        //			if (creatorIri.stringValue().startsWith(np.getUri().stringValue())) continue;
+        //			if (!creatorIri.stringValue().matches("https?://.*")) continue;
+        //			loadNanopubToRepo(np.getUri(), allStatements, "user_" + Utils.createHash(creatorIri));
+        //			loadNanopubToRepo(np.getUri(), textStatements, "text-user_" + Utils.createHash(creatorIri));
+        //		}
+        //		for (IRI authorIri : SimpleCreatorPattern.getAuthors(np)) {
+        //			// Exclude locally minted IRIs:
+        //			if (authorIri.stringValue().startsWith(np.getUri().stringValue())) continue;
+        //			if (!authorIri.stringValue().matches("https?://.*")) continue;
+        //			loadNanopubToRepo(np.getUri(), allStatements, "user_" + Utils.createHash(authorIri));
+        //			loadNanopubToRepo(np.getUri(), textStatements, "text-user_" + Utils.createHash(authorIri));
+        //		}
+        return shards;
+    }
+
+    /**
+     * Whether this loader can share its repo transactions with neighbouring nanopubs in
+     * {@link #executeLoading(List)}.
+     *
+     * <p>Excluded are aborted nanopubs (nothing to write) and any nanopub on either side
+     * of an invalidation: one that invalidates others, or one whose constructor found
+     * already-loaded invalidators. Both kinds read the {@code meta} state of the other
+     * party and then fan out into its repos, so they only see the right picture if
+     * everything streamed before them is committed first — which is exactly what the
+     * single-nanopub path guarantees, and what a pending batch would not.
+     *
+     * @return true if this nanopub may be batched
+     */
+    boolean isBatchable() {
+        return !aborted && invalidateStatements.isEmpty() && invalidatingStatements.isEmpty();
+    }
+
+    /**
+     * Loads several consecutive nanopubs with one transaction per target repo instead of
+     * one per nanopub per repo. Every loader must be {@link #isBatchable() batchable}.
+     *
+     * <p>Produces the same store state as calling {@link #executeLoading()} on each loader
+     * in list order: {@link #loadNanopubsToRepo} reproduces the sequential count /
+     * load-number / checksum chain exactly, and the {@code meta} write for the whole batch
+     * still happens last, after every other repo has committed — so a nanopub is never
+     * stamped in {@code meta}, the completion marker {@link ShardReconciler} relies on,
+     * while one of its shards is missing. If anything fails the whole batch is reported
+     * as failed; repos that did commit are skipped by the idempotency check when the
+     * stream is retried.
+     *
+     * @param loaders loaders in stream order
+     */
+    @GeneratedFlagForDependentElements
+    static void executeLoading(List<NanopubLoader> loaders) {
+        if (loaders.size() == 1) {
+            loaders.get(0).executeLoading();
+            return;
+        }
+        var runningTasks = new ArrayList<Future<?>>();
+
+        List<RepoEntry> latestEntries = new ArrayList<>();
+        Map<String, List<RepoEntry>> shardEntries = new LinkedHashMap<>();
+        List<SpacesEntry> spacesEntries = new ArrayList<>();
+        List<RepoEntry> metaEntries = new ArrayList<>();
+        for (NanopubLoader l : loaders) {
+            if (!l.isBatchable()) {
+                throw new IllegalArgumentException("Nanopub cannot be batch-loaded: " + l.np.getUri());
+            }
+            for (String note : l.notes) {
+                loadNoteToRepo(l.np.getUri(), note);
+            }
+            IRI npId = l.np.getUri();
+            if (l.belongsInLast30d()) {
+                latestEntries.add(new RepoEntry(npId, l.allStatements));
+            }
+            for (Map.Entry<String, List<Statement>> shard : l.getShardStatements().entrySet()) {
+                shardEntries.computeIfAbsent(shard.getKey(), k -> new ArrayList<>()).add(new RepoEntry(npId, shard.getValue()));
+            }
+            if (FeatureFlags.spacesEnabled() && !l.spaceExtractionStatements.isEmpty()) {
+                spacesEntries.add(new SpacesEntry(npId, l.allStatements, l.spaceExtractionStatements));
+            }
+            metaEntries.add(new RepoEntry(npId, l.metaStatements));
+        }
+
+        if (!latestEntries.isEmpty()) {
+            runningTasks.add(RepoWriteScheduler.get().submit("last30d", loadOf(describeEntries(latestEntries), "last30d"),
+                    () -> loadNanopubsToLatest(latestEntries)));
+        }
+        for (Map.Entry<String, List<RepoEntry>> e : shardEntries.entrySet()) {
+            runningTasks.add(RepoWriteScheduler.get().submit(e.getKey(), loadOf(describeEntries(e.getValue()), e.getKey()),
+                    () -> loadNanopubsToRepoOnce(e.getValue(), e.getKey())));
+        }
+        if (!spacesEntries.isEmpty()) {
+            runningTasks.add(RepoWriteScheduler.get().submit("spaces", loadOf(describeEntries(spacesEntries), "spaces"),
+                    () -> loadToSpacesRepoOnce(spacesEntries)));
+        }
+
+        // Same wait-then-meta sequence as the single-nanopub path, for the same reasons.
+        for (var task : runningTasks) {
+            try {
+                task.get();
+            } catch (ExecutionException | InterruptedException ex) {
+                for (var t : runningTasks) {
+                    if (!t.isDone()) {
+                        t.cancel(true);
+                    }
+                }
+                throw new RuntimeException("Error in nanopub loading thread", ex.getCause());
+            }
+        }
+        Future<?> metaTask = RepoWriteScheduler.get().submit("meta", loadOf(describeEntries(metaEntries), "meta"),
+                () -> loadNanopubsToRepoOnce(metaEntries, "meta"));
+        try {
+            metaTask.get();
+        } catch (ExecutionException | InterruptedException ex) {
+            throw new RuntimeException("Error in nanopub loading thread (meta task)", ex.getCause());
         }
     }
 
@@ -580,136 +745,237 @@ public class NanopubLoader {
 
     @GeneratedFlagForDependentElements
     private static void loadNanopubToLatest(IRI npId, List<Statement> statements) {
-        boolean success = false;
-        int retries = 0;
-        while (!success) {
-            RepositoryConnection conn = TripleStore.get().getRepoConnection("last30d");
-            try (conn) {
-                // Read committed, because deleting old nanopubs is idempotent. Inserts do not collide
-                // with deletes, because we are not inserting old nanopubs.
-                conn.begin(IsolationLevels.READ_COMMITTED);
-                conn.add(statements);
-                if (lastUpdateOfLatestRepo == null || new Date().getTime() - lastUpdateOfLatestRepo > ONE_HOUR) {
-                    logger.debug("Pruning nanopubs older than 30 days from last30d repo...");
-                    Literal thirtyDaysAgo = vf.createLiteral(new Date(new Date().getTime() - THIRTY_DAYS));
-                    TupleQuery q = conn.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT * { graph <" + NPA.GRAPH + "> { " + "?np <" + DCTERMS.CREATED + "> ?date . " + "filter ( ?date < ?thirtydaysago ) " + "} }");
-                    q.setBinding("thirtydaysago", thirtyDaysAgo);
-                    try (TupleQueryResult r = q.evaluate()) {
-                        while (r.hasNext()) {
-                            BindingSet b = r.next();
-                            IRI oldNpId = (IRI) b.getBinding("np").getValue();
-                            logger.debug("Pruning expired nanopub from last30d repo: <{}>", oldNpId);
-                            for (Value v : Utils.getObjectsForPattern(conn, NPA.GRAPH, oldNpId, NPA.HAS_GRAPH)) {
-                                // Remove all four nanopub graphs:
-                                conn.remove((Resource) null, (IRI) null, (Value) null, (IRI) v);
-                            }
-                            // Remove nanopubs in admin graphs:
-                            conn.remove(oldNpId, null, null, NPA.GRAPH);
-                            conn.remove(oldNpId, null, null, NPA.NETWORK_GRAPH);
+        loadNanopubsToLatest(List.of(new RepoEntry(npId, statements)));
+    }
+
+    /**
+     * Batch form of {@link #loadNanopubToLatest}: all entries go in with one
+     * transaction, and the hourly prune runs at most once for the whole batch. One
+     * attempt; {@link RepoWriteScheduler} retries it.
+     */
+    @GeneratedFlagForDependentElements
+    private static void loadNanopubsToLatest(List<RepoEntry> entries) {
+        String what = describeEntries(entries);
+        RepositoryConnection conn = TripleStore.get().getRepoConnection("last30d");
+        try (conn) {
+            // Read committed, because deleting old nanopubs is idempotent. Inserts do not collide
+            // with deletes, because we are not inserting old nanopubs.
+            conn.begin(IsolationLevels.READ_COMMITTED);
+            for (RepoEntry e : entries) {
+                conn.add(e.statements());
+            }
+            if (lastUpdateOfLatestRepo == null || new Date().getTime() - lastUpdateOfLatestRepo > ONE_HOUR) {
+                logger.debug("Pruning nanopubs older than 30 days from last30d repo...");
+                Literal thirtyDaysAgo = vf.createLiteral(new Date(new Date().getTime() - THIRTY_DAYS));
+                TupleQuery q = conn.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT * { graph <" + NPA.GRAPH + "> { " + "?np <" + DCTERMS.CREATED + "> ?date . " + "filter ( ?date < ?thirtydaysago ) " + "} }");
+                q.setBinding("thirtydaysago", thirtyDaysAgo);
+                try (TupleQueryResult r = q.evaluate()) {
+                    while (r.hasNext()) {
+                        BindingSet b = r.next();
+                        IRI oldNpId = (IRI) b.getBinding("np").getValue();
+                        logger.debug("Pruning expired nanopub from last30d repo: <{}>", oldNpId);
+                        for (Value v : Utils.getObjectsForPattern(conn, NPA.GRAPH, oldNpId, NPA.HAS_GRAPH)) {
+                            // Remove all four nanopub graphs:
+                            conn.remove((Resource) null, (IRI) null, (Value) null, (IRI) v);
                         }
+                        // Remove nanopubs in admin graphs:
+                        conn.remove(oldNpId, null, null, NPA.GRAPH);
+                        conn.remove(oldNpId, null, null, NPA.NETWORK_GRAPH);
                     }
-                    lastUpdateOfLatestRepo = new Date().getTime();
-                }
-                conn.commit();
-                success = true;
-            } catch (Exception ex) {
-                logger.warn("Failed to load nanopub <{}> to last30d repo: {}", npId, ex.getMessage(), ex);
-                if (conn.isActive()) {
-                    conn.rollback();
                 }
+                lastUpdateOfLatestRepo = new Date().getTime();
             }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to load nanopub " + npId + " to last30d repo after " + MAX_RETRIES + " retries");
-                }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying load of <{}> to last30d repo in {} ms (attempt {}/{})...", npId, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
-                }
+            conn.commit();
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to load {} to last30d repo: {}", what, ex.getMessage(), ex);
+            if (conn.isActive()) {
+                conn.rollback();
             }
+            throw ex;
         }
     }
 
     @GeneratedFlagForDependentElements
     private static void loadNanopubToRepo(IRI npId, List<Statement> statements, String repoName) {
-        boolean success = false;
-        int retries = 0;
-        while (!success) {
-            // The count/checksum chain must not suffer write skew, so this read-modify-write
-            // is serialised — by repoWriteLock rather than by a SERIALIZABLE transaction. This
-            // process is the only writer of those triples, so the guarantee is the same; see
-            // repoWriteLocks for why the isolation level is the expensive way to buy it.
-            // Held across the whole transaction, released before any retry back-off.
-            ReentrantLock repoLock = repoWriteLock(repoName);
-            repoLock.lock();
-            try {
-                RepositoryConnection conn = TripleStore.get().getRepoConnection(repoName);
-                long newCountForCache = -1;
-                String newChecksumForCache = null;
-                try (conn) {
-                    conn.begin(IsolationLevels.SNAPSHOT);
-                    var repoStatus = fetchRepoStatus(conn, npId, repoName);
+        loadNanopubsToRepo(List.of(new RepoEntry(npId, statements)), repoName);
+    }
+
+    /**
+     * Appends the given nanopubs to one repo's count/checksum chain, in list order, in a
+     * single transaction. The single-nanopub path is the one-entry case of this.
+     *
+     * <p>The resulting chain is the one that calling {@link #loadNanopubToRepo} once per
+     * entry would have produced: each fresh nanopub gets the next load number and the
+     * XOR checksum as it stood after it, already-loaded ones are skipped without
+     * consuming a number, and a nanopub listed twice is loaded once. Only the final
+     * {@code npa:hasNanopubCount} / {@code npa:hasNanopubChecksum} pair is written —
+     * the intermediate heads were never observable outside the transaction anyway.
+     *
+     * <p>Costs two reads however long the list is: {@link #fetchRepoStatus} for the
+     * chain head, and one {@code VALUES} query for which of the other entries are
+     * already stamped. Reading the status per entry instead would make the RDF4J HTTP
+     * client flush its pending adds before each query, which is most of the round trips
+     * batching exists to save. Once the repo's head is in {@link RepoChainHeadCache} the
+     * first read is skipped and the {@code VALUES} query covers every entry.
+     *
+     * <p>Retried under {@link StoreRetries} on the calling thread. The loader's regular
+     * writes submit {@link #loadNanopubsToRepoOnce} to {@link RepoWriteScheduler} instead,
+     * which retries without holding a worker.
+     *
+     * @param entries  nanopubs to append, in load order
+     * @param repoName target repo
+     */
+    static void loadNanopubsToRepo(List<RepoEntry> entries, String repoName) {
+        StoreRetries.get().run(repoName, loadOf(describeEntries(entries), repoName), () -> loadNanopubsToRepoOnce(entries, repoName));
+    }
+
+    /**
+     * One attempt of {@link #loadNanopubsToRepo}.
+     */
+    @GeneratedFlagForDependentElements
+    private static void loadNanopubsToRepoOnce(List<RepoEntry> entries, String repoName) {
+        String what = describeEntries(entries);
+        // The count/checksum chain must not suffer write skew, so this read-modify-write
+        // is serialised — by repoWriteLock rather than by a SERIALIZABLE transaction. This
+        // process is the only writer of those triples, so the guarantee is the same; see
+        // repoWriteLocks for why the isolation level is the expensive way to buy it.
+        // Held across the whole transaction, released before any retry back-off.
+        ReentrantLock repoLock = repoWriteLock(repoName);
+        repoLock.lock();
+        try {
+            RepositoryConnection conn = TripleStore.get().getRepoConnection(repoName);
+            long newCountForCache = -1;
+            String newChecksumForCache = null;
+            try (conn) {
+                conn.begin(IsolationLevels.SNAPSHOT);
+                IRI firstId = entries.get(0).npId();
+                RepoChainHeadCache.Head head = RepoChainHeadCache.get().lookup(repoName);
+                Set<IRI> alreadyLoaded = new HashSet<>();
+                if (head != null) {
+                    alreadyLoaded.addAll(fetchLoadedNanopubs(conn, repoName, entries));
+                } else {
+                    var repoStatus = fetchRepoStatus(conn, firstId, repoName);
+                    head = new RepoChainHeadCache.Head(repoStatus.count, repoStatus.checksum);
+                    if (!RepoChainHeadCache.get().verified(repoName, head)) {
+                        logger.warn("Cached chain head of repo '{}' differed from the stored one; using the stored count {}", repoName, head.count());
+                    }
                     if (repoStatus.isLoaded) {
+                        alreadyLoaded.add(firstId);
+                    }
+                    if (entries.size() > 1) {
+                        alreadyLoaded.addAll(fetchLoadedNanopubs(conn, repoName, entries.subList(1, entries.size())));
+                    }
+                }
+                long count = head.count();
+                String checksum = head.checksum();
+                Set<IRI> seen = new HashSet<>();
+                List<IRI> stamped = new ArrayList<>();
+                for (RepoEntry e : entries) {
+                    IRI npId = e.npId();
+                    if (alreadyLoaded.contains(npId) || !seen.add(npId)) {
                         // INFO, not DEBUG: this skip decides that a shard write is unnecessary
                         // based on a single store read. When the backend misbehaves (issue #139:
                         // a shard "successfully" written yet not durable), this line is the only
                         // trace distinguishing a false skip from a lost commit.
                         logger.info("Skipping already-loaded nanopub <{}> in repo '{}'", npId, repoName);
-                    } else {
-                        String newChecksum = NanopubUtils.updateXorChecksum(npId, repoStatus.checksum);
-                        conn.remove(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, null, NPA.GRAPH);
-                        conn.remove(NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM, null, NPA.GRAPH);
-                        conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, vf.createLiteral(repoStatus.count + 1), NPA.GRAPH);
-                        // @ADMIN-TRIPLE-TABLE@ REPO, npa:hasNanopubCount, NANOPUB_COUNT, npa:graph, admin, number of nanopubs loaded
-                        conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM, vf.createLiteral(newChecksum), NPA.GRAPH);
-                        // @ADMIN-TRIPLE-TABLE@ REPO, npa:hasNanopubChecksum, NANOPUB_CHECKSUM, npa:graph, admin, checksum of all loaded nanopubs (order-independent XOR checksum on trusty URIs in Base64 notation)
-                        conn.add(npId, NPA.HAS_LOAD_NUMBER, vf.createLiteral(repoStatus.count), NPA.GRAPH);
-                        // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasLoadNumber, LOAD_NUMBER, npa:graph, admin, the sequential number at which this NANOPUB was loaded
-                        conn.add(npId, NPA.HAS_LOAD_CHECKSUM, vf.createLiteral(newChecksum), NPA.GRAPH);
-                        // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasLoadChecksum, LOAD_CHECKSUM, npa:graph, admin, the checksum of all loaded nanopubs after loading the given NANOPUB
-                        conn.add(npId, NPA.HAS_LOAD_TIMESTAMP, vf.createLiteral(new Date()), NPA.GRAPH);
-                        // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasLoadTimestamp, LOAD_TIMESTAMP, npa:graph, admin, the time point at which this NANOPUB was loaded
-                        conn.add(statements);
-                        if ("meta".equals(repoName)) {
-                            newCountForCache = repoStatus.count + 1;
-                            newChecksumForCache = newChecksum;
-                        }
-                    }
-                    conn.commit();
-                    if (newCountForCache >= 0) {
-                        loadedNanopubCount = newCountForCache;
-                    }
-                    if (newChecksumForCache != null) {
-                        loadedNanopubChecksum = newChecksumForCache;
+                        continue;
                     }
-                    success = true;
-                } catch (Exception ex) {
-                    logger.warn("Failed to load nanopub <{}> to repo '{}': {}", npId, repoName, ex.getMessage(), ex);
-                    if (conn.isActive()) {
-                        conn.rollback();
+                    checksum = NanopubUtils.updateXorChecksum(npId, checksum);
+                    conn.add(npId, NPA.HAS_LOAD_NUMBER, vf.createLiteral(count), NPA.GRAPH);
+                    // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasLoadNumber, LOAD_NUMBER, npa:graph, admin, the sequential number at which this NANOPUB was loaded
+                    conn.add(npId, NPA.HAS_LOAD_CHECKSUM, vf.createLiteral(checksum), NPA.GRAPH);
+                    // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasLoadChecksum, LOAD_CHECKSUM, npa:graph, admin, the checksum of all loaded nanopubs after loading the given NANOPUB
+                    conn.add(npId, NPA.HAS_LOAD_TIMESTAMP, vf.createLiteral(new Date()), NPA.GRAPH);
+                    // @ADMIN-TRIPLE-TABLE@ NANOPUB, npa:hasLoadTimestamp, LOAD_TIMESTAMP, npa:graph, admin, the time point at which this NANOPUB was loaded
+                    conn.add(e.statements());
+                    stamped.add(npId);
+                    count++;
+                }
+                if (count != head.count()) {
+                    conn.remove(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, null, NPA.GRAPH);
+                    conn.remove(NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM, null, NPA.GRAPH);
+                    conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, vf.createLiteral(count), NPA.GRAPH);
+                    // @ADMIN-TRIPLE-TABLE@ REPO, npa:hasNanopubCount, NANOPUB_COUNT, npa:graph, admin, number of nanopubs loaded
+                    conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM, vf.createLiteral(checksum), NPA.GRAPH);
+                    // @ADMIN-TRIPLE-TABLE@ REPO, npa:hasNanopubChecksum, NANOPUB_CHECKSUM, npa:graph, admin, checksum of all loaded nanopubs (order-independent XOR checksum on trusty URIs in Base64 notation)
+                    if ("meta".equals(repoName)) {
+                        newCountForCache = count;
+                        newChecksumForCache = checksum;
                     }
                 }
-            } finally {
-                repoLock.unlock();
-            }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to load nanopub " + npId + " to repo " + repoName + " after " + MAX_RETRIES + " retries");
+                // Before the commit: if its outcome turns out unknown, the filter must
+                // still not rule these nanopubs out.
+                LoadedNanopubFilter.get().added(repoName, stamped);
+                conn.commit();
+                RepoChainHeadCache.get().committed(repoName, new RepoChainHeadCache.Head(count, checksum));
+                RepoVersions.get().committed(repoName, checksum);
+                if (newCountForCache >= 0) {
+                    loadedNanopubCount = newCountForCache;
                 }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying load of <{}> to repo '{}' in {} ms (attempt {}/{})...", npId, repoName, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
+                if (newChecksumForCache != null) {
+                    loadedNanopubChecksum = newChecksumForCache;
+                }
+            } catch (RuntimeException ex) {
+                // The commit may or may not have landed; either way the cached head
+                // can no longer be trusted.
+                RepoChainHeadCache.get().invalidate(repoName);
+                RepoVersions.get().forget(repoName);
+                logger.warn("Failed to load {} to repo '{}': {}", what, repoName, ex.getMessage(), ex);
+                if (conn.isActive()) {
+                    conn.rollback();
                 }
+                throw ex;
             }
+        } finally {
+            repoLock.unlock();
+        }
+    }
+
+    /**
+     * Returns those of the given nanopubs that already carry an {@code npa:hasLoadNumber}
+     * stamp in the repo behind {@code conn}. Must be called from within a transaction.
+     * Nanopubs that {@link LoadedNanopubFilter} rules out are not asked about; if that is
+     * all of them, the store is not queried at all.
+     */
+    @GeneratedFlagForDependentElements
+    private static Set<IRI> fetchLoadedNanopubs(RepositoryConnection conn, String repoName, List<RepoEntry> entries) {
+        StringBuilder values = new StringBuilder();
+        for (RepoEntry e : entries) {
+            if (LoadedNanopubFilter.get().mightBeLoaded(repoName, e.npId())) {
+                values.append('<').append(e.npId()).append("> ");
+            }
+        }
+        if (values.isEmpty()) {
+            return Set.of();
+        }
+        String query = "SELECT ?np { VALUES ?np { " + values + "} graph <" + NPA.GRAPH + "> { ?np <" + NPA.HAS_LOAD_NUMBER + "> ?loadNumber . } }";
+        Set<IRI> loaded = new HashSet<>();
+        try (TupleQueryResult r = conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()) {
+            while (r.hasNext()) {
+                if (r.next().getValue("np") instanceof IRI iri) {
+                    loaded.add(iri);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Log/exception wording for a list of entries: "nanopub &lt;X&gt;" for the
+     * single-nanopub path, so those messages read exactly as they always have.
+     */
+    private static String describeEntries(List<? extends LoadEntry> entries) {
+        if (entries.size() == 1) {
+            return "nanopub <" + entries.get(0).npId() + ">";
         }
+        return entries.size() + " nanopubs <" + entries.get(0).npId() + "> .. <" + entries.get(entries.size() - 1).npId() + ">";
+    }
+
+    /**
+     * What a write of {@code described} to a repo is called in the retry log.
+     */
+    private static String loadOf(String described, String repoName) {
+        return "load of " + described + " to repo '" + repoName + "'";
     }
 
     /**
@@ -717,7 +983,7 @@ public class NanopubLoader {
      * repo alongside the pre-computed extraction statements (which target
      * {@code npa:spacesGraph}). Stamps the load-number on the nanopub IRI and bumps
      * {@code npa:thisRepo npa:currentLoadCounter} in {@code npa:graph}, all within
-     * one serializable transaction.
+     * one SNAPSHOT transaction, under the {@code spaces} {@link #repoWriteLock}.
      *
      * <p>Idempotent: if the nanopub already has a {@code npa:hasLoadNumber} stamp in
      * {@code npa:graph} of the {@code spaces} repo, this is a no-op.
@@ -729,61 +995,73 @@ public class NanopubLoader {
     @GeneratedFlagForDependentElements
     private static void loadToSpacesRepo(IRI npId, List<Statement> nanopubTriples,
                                          List<Statement> spaceExtraction) {
-        boolean success = false;
-        int retries = 0;
-        while (!success) {
-            // Same substitution as loadNanopubToRepo: the spaces load counter is a
-            // read-modify-write, serialised by repoWriteLock instead of by the isolation
-            // level. The spaces branch is also written by AuthorityResolver, whose own
-            // writers serialise via its synchronized methods at SNAPSHOT/READ_COMMITTED.
-            ReentrantLock repoLock = repoWriteLock("spaces");
-            repoLock.lock();
-            try {
-                RepositoryConnection conn = TripleStore.get().getRepoConnection("spaces");
-                try (conn) {
-                    conn.begin(IsolationLevels.SNAPSHOT);
-                    // Idempotency: skip if this nanopub is already stamped in this repo.
-                    if (Utils.getObjectForPattern(conn, NPA.GRAPH, npId, NPA.HAS_LOAD_NUMBER) != null) {
+        loadToSpacesRepo(List.of(new SpacesEntry(npId, nanopubTriples, spaceExtraction)));
+    }
+
+    /**
+     * Batch form of {@link #loadToSpacesRepo(IRI, List, List)}: one transaction, load
+     * counters handed out in list order exactly as per-entry calls would have. Retried on
+     * the calling thread, like {@link #loadNanopubsToRepo}.
+     */
+    private static void loadToSpacesRepo(List<SpacesEntry> entries) {
+        StoreRetries.get().run("spaces", loadOf(describeEntries(entries), "spaces"), () -> loadToSpacesRepoOnce(entries));
+    }
+
+    /**
+     * One attempt of {@link #loadToSpacesRepo(List)}.
+     */
+    @GeneratedFlagForDependentElements
+    private static void loadToSpacesRepoOnce(List<SpacesEntry> entries) {
+        String what = describeEntries(entries);
+        // Same substitution as loadNanopubToRepo: the spaces load counter is a
+        // read-modify-write, serialised by repoWriteLock instead of by the isolation
+        // level. The spaces branch is also written by AuthorityResolver, whose own
+        // writers serialise via its synchronized methods at SNAPSHOT/READ_COMMITTED.
+        ReentrantLock repoLock = repoWriteLock("spaces");
+        repoLock.lock();
+        try {
+            RepositoryConnection conn = TripleStore.get().getRepoConnection("spaces");
+            try (conn) {
+                conn.begin(IsolationLevels.SNAPSHOT);
+                // Idempotency: skip nanopubs already stamped in this repo. All reads
+                // happen before the first add, so they cost no buffered-add flushes.
+                List<SpacesEntry> fresh = new ArrayList<>();
+                Set<IRI> seen = new HashSet<>();
+                for (SpacesEntry e : entries) {
+                    if (!seen.add(e.npId()) || (LoadedNanopubFilter.get().mightBeLoaded("spaces", e.npId())
+                                                && Utils.getObjectForPattern(conn, NPA.GRAPH, e.npId(), NPA.HAS_LOAD_NUMBER) != null)) {
                         // INFO for the same reason as the loadNanopubToRepo skip (issue #139).
-                        logger.info("Skipping already-loaded nanopub <{}> in spaces repo", npId);
-                        conn.commit();
-                        success = true;
-                        continue;
+                        logger.info("Skipping already-loaded nanopub <{}> in spaces repo", e.npId());
+                    } else {
+                        fresh.add(e);
+                    }
+                }
+                if (!fresh.isEmpty()) {
+                    long counter = fetchSpacesLoadCounter(conn);
+                    for (SpacesEntry e : fresh) {
+                        counter++;
+                        conn.add(e.npId(), NPA.HAS_LOAD_NUMBER, vf.createLiteral(counter), NPA.GRAPH);
+                        conn.add(e.nanopubTriples());
+                        conn.add(e.spaceExtraction());
                     }
-                    long newCounter = fetchSpacesLoadCounter(conn) + 1;
                     conn.remove(NPA.THIS_REPO,
                             com.knowledgepixels.query.vocabulary.SpacesVocab.CURRENT_LOAD_COUNTER,
                             null, NPA.GRAPH);
                     conn.add(NPA.THIS_REPO,
                             com.knowledgepixels.query.vocabulary.SpacesVocab.CURRENT_LOAD_COUNTER,
-                            vf.createLiteral(newCounter), NPA.GRAPH);
-                    conn.add(npId, NPA.HAS_LOAD_NUMBER, vf.createLiteral(newCounter), NPA.GRAPH);
-                    conn.add(nanopubTriples);
-                    conn.add(spaceExtraction);
-                    conn.commit();
-                    success = true;
-                } catch (Exception ex) {
-                    logger.warn("Failed to load nanopub <{}> to spaces repo: {}", npId, ex.getMessage(), ex);
-                    if (conn.isActive()) {
-                        conn.rollback();
-                    }
-                }
-            } finally {
-                repoLock.unlock();
-            }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to load nanopub " + npId + " to spaces repo after " + MAX_RETRIES + " retries");
+                            vf.createLiteral(counter), NPA.GRAPH);
+                    LoadedNanopubFilter.get().added("spaces", fresh.stream().map(SpacesEntry::npId).toList());
                 }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying load of <{}> to spaces repo in {} ms (attempt {}/{})...", npId, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
+                conn.commit();
+            } catch (RuntimeException ex) {
+                logger.warn("Failed to load {} to spaces repo: {}", what, ex.getMessage(), ex);
+                if (conn.isActive()) {
+                    conn.rollback();
                 }
+                throw ex;
             }
+        } finally {
+            repoLock.unlock();
         }
     }
 
@@ -913,6 +1191,25 @@ public class NanopubLoader {
     record RepoStatus(boolean isLoaded, long count, String checksum) {
     }
 
+    /**
+     * Anything written on behalf of one nanopub in a (possibly single-entry) batch write.
+     */
+    interface LoadEntry {
+        IRI npId();
+    }
+
+    /**
+     * One nanopub's statements destined for a chain-tracking repo (or for {@code last30d}).
+     */
+    record RepoEntry(IRI npId, List<Statement> statements) implements LoadEntry {
+    }
+
+    /**
+     * One nanopub's raw triples plus its extraction summary, destined for {@code spaces}.
+     */
+    record SpacesEntry(IRI npId, List<Statement> nanopubTriples, List<Statement> spaceExtraction) implements LoadEntry {
+    }
+
     /**
      * To execute before loading a nanopub: check if the nanopub is already loaded and what is the
      * current load counter and checksum. This effectively batches three queries into one.
@@ -933,7 +1230,7 @@ public class NanopubLoader {
                 // issue #142) or a store that lost its admin triples. Treating it as "fresh
                 // repo" would commit count=1 over the existing chain — observed on the kpxl
                 // full repo 2026-08-12 (count reset from 86860 to ~0 while all data was
-                // still present). Throw instead: the caller's retry loop absorbs transients,
+                // still present). Throw instead: the caller's retries absorb transients,
                 // and a persistent failure surfaces to the operator rather than corrupting
                 // the chain.
                 throw new RuntimeException("Repo '" + repoName + "' returned no count/checksum chain; "
@@ -946,47 +1243,87 @@ public class NanopubLoader {
 
     @GeneratedFlagForDependentElements
     private static void loadInvalidateStatements(Nanopub thisNp, String thisPubkey, Statement invalidateStatement, Statement pubkeyStatement, Statement pubkeyStatementX, List<Statement> thisAllStatements) {
-        boolean success = false;
-        int retries = 0;
-        List<IRI> typesToLoadFullInto = new ArrayList<>();
-        boolean targetIsSpaceRelevant = false;
-        while (!success) {
-            typesToLoadFullInto.clear();
-            targetIsSpaceRelevant = false;
-            List<RepositoryConnection> connections = new ArrayList<>();
-            RepositoryConnection metaConn = TripleStore.get().getRepoConnection("meta");
-            try {
-                IRI invalidatedNpId = (IRI) invalidateStatement.getObject();
-                // Basic isolation because here we only read append-only data.
-                metaConn.begin(IsolationLevels.READ_COMMITTED);
+        InvalidationTargets targets = StoreRetries.get().call(RepoWriteScheduler.CROSS_REPO,
+                "invalidation-statement load for <" + thisNp.getUri() + ">",
+                () -> loadInvalidateStatementsOnce(thisNp, thisPubkey, invalidateStatement, pubkeyStatement, pubkeyStatementX));
+        List<IRI> typesToLoadFullInto = targets.typesToLoadFullInto();
+        boolean targetIsSpaceRelevant = targets.targetIsSpaceRelevant();
+        // Mirror the Registries' behaviour: index a retraction under the types of the
+        // nanopub it invalidates, even when the retractor itself doesn't carry those
+        // types. Load the full retracting nanopub (not just the npx:invalidates marker)
+        // so a query against a type repo can fetch the retractor's own assertion /
+        // provenance / pubinfo, not only the join handle.
+        // loadNanopubToRepo is idempotent (early-exit on npa:hasLoadNumber) and runs
+        // its own locked transaction and retries, so it's safe to call here.
+        for (IRI typeIri : typesToLoadFullInto) {
+            loadNanopubToRepo(thisNp.getUri(), thisAllStatements, "type_" + Utils.createHash(typeIri));
+        }
+        // Same rationale for the spaces repo: when the invalidated nanopub is itself
+        // space-relevant, the retractor needs to land in the spaces repo so the
+        // materialiser's invalidation join (?invNp npx:invalidates ?np +
+        // ?invNp npa:hasLoadNumber ?ln in npa:graph) finds it. spaceExtractionStatements
+        // is empty here — the retractor is not space-relevant by itself, otherwise it
+        // would have already been loaded to spaces by the regular spaces-load task.
+        if (targetIsSpaceRelevant && FeatureFlags.spacesEnabled()) {
+            loadToSpacesRepo(thisNp.getUri(), thisAllStatements, Collections.emptyList());
+        }
+    }
 
-                Value pubkeyValue = Utils.getObjectForPattern(metaConn, NPA.GRAPH, invalidatedNpId, NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY);
-                if (pubkeyValue != null) {
-                    String pubkey = pubkeyValue.stringValue();
+    /**
+     * Where an invalidation has to be propagated beyond the repos
+     * {@link #loadInvalidateStatementsOnce} writes itself.
+     *
+     * @param typesToLoadFullInto   types of the invalidated nanopub whose repos get the full retractor
+     * @param targetIsSpaceRelevant whether the retractor goes into the spaces repo
+     */
+    private record InvalidationTargets(List<IRI> typesToLoadFullInto, boolean targetIsSpaceRelevant) {
+    }
 
-                    if (!pubkey.equals(thisPubkey)) {
-                        //logger.info("Adding invalidation expressed in " + thisNp.getUri() + " also to repo for pubkey " + pubkey);
-                        connections.add(loadStatements("pubkey_" + Utils.createHash(pubkey), invalidateStatement, pubkeyStatement, pubkeyStatementX));
+    /**
+     * One attempt of the first part of {@link #loadInvalidateStatements}: adds the
+     * invalidation to the invalidated nanopub's pubkey repo and reads where else it goes.
+     */
+    @GeneratedFlagForDependentElements
+    private static InvalidationTargets loadInvalidateStatementsOnce(Nanopub thisNp, String thisPubkey, Statement invalidateStatement, Statement pubkeyStatement, Statement pubkeyStatementX) {
+        List<IRI> typesToLoadFullInto = new ArrayList<>();
+        boolean targetIsSpaceRelevant = false;
+        List<RepositoryConnection> connections = new ArrayList<>();
+        List<String> connectionRepos = new ArrayList<>();
+        RepositoryConnection metaConn = TripleStore.get().getRepoConnection("meta");
+        try {
+            IRI invalidatedNpId = (IRI) invalidateStatement.getObject();
+            // Basic isolation because here we only read append-only data.
+            metaConn.begin(IsolationLevels.READ_COMMITTED);
+
+            Value pubkeyValue = Utils.getObjectForPattern(metaConn, NPA.GRAPH, invalidatedNpId, NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY);
+            if (pubkeyValue != null) {
+                String pubkey = pubkeyValue.stringValue();
+
+                if (!pubkey.equals(thisPubkey)) {
+                    //logger.info("Adding invalidation expressed in " + thisNp.getUri() + " also to repo for pubkey " + pubkey);
+                    String pubkeyRepo = "pubkey_" + Utils.createHash(pubkey);
+                    connections.add(loadStatements(pubkeyRepo, invalidateStatement, pubkeyStatement, pubkeyStatementX));
+                    connectionRepos.add(pubkeyRepo);
 //						connections.add(loadStatements("text-pubkey_" + Utils.createHash(pubkey), invalidateStatement, pubkeyStatement));
-                    }
+                }
 
-                    Set<IRI> thisNpTypes = NanopubUtils.getTypes(thisNp);
-                    for (Value v : Utils.getObjectsForPattern(metaConn, NPA.GRAPH, invalidatedNpId, NPX.HAS_NANOPUB_TYPE)) {
-                        if (v instanceof IRI typeIri) {
-                            if (!thisNpTypes.contains(typeIri)) {
-                                // Defer until after the meta-read commits — full load goes
-                                // through loadNanopubToRepo, which has its own transaction
-                                // and retry loop (see post-loop block below).
-                                typesToLoadFullInto.add(typeIri);
-                            }
-                            if (SpacesExtractor.TRIGGER_TYPES.contains(typeIri)) {
-                                // Target carries a space-relevant type — propagate the
-                                // retractor into the spaces repo too (deferred, same
-                                // reason as above).
-                                targetIsSpaceRelevant = true;
-                            }
+                Set<IRI> thisNpTypes = NanopubUtils.getTypes(thisNp);
+                for (Value v : Utils.getObjectsForPattern(metaConn, NPA.GRAPH, invalidatedNpId, NPX.HAS_NANOPUB_TYPE)) {
+                    if (v instanceof IRI typeIri) {
+                        if (!thisNpTypes.contains(typeIri)) {
+                            // Defer until after the meta-read commits — full load goes
+                            // through loadNanopubToRepo, which has its own transaction
+                            // and retries (see loadInvalidateStatements).
+                            typesToLoadFullInto.add(typeIri);
+                        }
+                        if (SpacesExtractor.TRIGGER_TYPES.contains(typeIri)) {
+                            // Target carries a space-relevant type — propagate the
+                            // retractor into the spaces repo too (deferred, same
+                            // reason as above).
+                            targetIsSpaceRelevant = true;
                         }
                     }
+                }
 
 //					for (Value v : Utils.getObjectsForPattern(metaConn, NPA.GRAPH, invalidatedNpId, DCTERMS.CREATOR)) {
 //						IRI creatorIri = (IRI) v;
@@ -996,59 +1333,31 @@ public class NanopubLoader {
 //							connections.add(loadStatements("text-user_" + Utils.createHash(creatorIri), invalidateStatement, pubkeyStatement));
 //						}
 //					}
-                }
+            }
 
-                metaConn.commit();
-                // TODO handle case that some commits succeed and some fail
-                for (RepositoryConnection c : connections) c.commit();
-                success = true;
-            } catch (Exception ex) {
-                logger.warn("Failed to load invalidation statements from <{}> to target repos: {}", thisNp.getUri(), ex.getMessage(), ex);
-                if (metaConn.isActive()) {
-                    metaConn.rollback();
-                }
-                for (RepositoryConnection c : connections) {
-                    if (c.isActive()) {
-                        c.rollback();
-                    }
-                }
-            } finally {
-                metaConn.close();
-                for (RepositoryConnection c : connections) c.close();
+            metaConn.commit();
+            // TODO handle case that some commits succeed and some fail
+            for (int i = 0; i < connections.size(); i++) {
+                connections.get(i).commit();
+                RepoVersions.get().changed(connectionRepos.get(i));
             }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to load invalidate statements for " + thisNp.getUri() + " after " + MAX_RETRIES + " retries");
-                }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying invalidation-statement load for <{}> in {} ms (attempt {}/{})...", thisNp.getUri(), delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to load invalidation statements from <{}> to target repos: {}", thisNp.getUri(), ex.getMessage(), ex);
+            connectionRepos.forEach(RepoVersions.get()::forget);
+            if (metaConn.isActive()) {
+                metaConn.rollback();
+            }
+            for (RepositoryConnection c : connections) {
+                if (c.isActive()) {
+                    c.rollback();
                 }
             }
+            throw ex;
+        } finally {
+            metaConn.close();
+            for (RepositoryConnection c : connections) c.close();
         }
-        // Mirror the Registries' behaviour: index a retraction under the types of the
-        // nanopub it invalidates, even when the retractor itself doesn't carry those
-        // types. Load the full retracting nanopub (not just the npx:invalidates marker)
-        // so a query against a type repo can fetch the retractor's own assertion /
-        // provenance / pubinfo, not only the join handle.
-        // loadNanopubToRepo is idempotent (early-exit on npa:hasLoadNumber) and runs
-        // its own locked transaction + retry loop, so it's safe to call here.
-        for (IRI typeIri : typesToLoadFullInto) {
-            loadNanopubToRepo(thisNp.getUri(), thisAllStatements, "type_" + Utils.createHash(typeIri));
-        }
-        // Same rationale for the spaces repo: when the invalidated nanopub is itself
-        // space-relevant, the retractor needs to land in the spaces repo so the
-        // materialiser's invalidation join (?invNp npx:invalidates ?np +
-        // ?invNp npa:hasLoadNumber ?ln in npa:graph) finds it. spaceExtractionStatements
-        // is empty here — the retractor is not space-relevant by itself, otherwise it
-        // would have already been loaded to spaces by the regular spaces-load task.
-        if (targetIsSpaceRelevant && FeatureFlags.spacesEnabled()) {
-            loadToSpacesRepo(thisNp.getUri(), thisAllStatements, Collections.emptyList());
-        }
+        return new InvalidationTargets(typesToLoadFullInto, targetIsSpaceRelevant);
     }
 
     /**
@@ -1135,11 +1444,8 @@ public class NanopubLoader {
 
     @GeneratedFlagForDependentElements
     private static Set<IRI> readInvalidatorTypesFromMeta(IRI invIri, IRI thisNpId) {
-        Set<IRI> invTypes = new HashSet<>();
-        boolean success = false;
-        int retries = 0;
-        while (!success) {
-            invTypes.clear();
+        return StoreRetries.get().call("meta", "type-read for invalidator <" + invIri + ">", () -> {
+            Set<IRI> invTypes = new HashSet<>();
             RepositoryConnection metaConn = TripleStore.get().getRepoConnection("meta");
             try (metaConn) {
                 metaConn.begin(IsolationLevels.READ_COMMITTED);
@@ -1149,28 +1455,15 @@ public class NanopubLoader {
                     }
                 }
                 metaConn.commit();
-                success = true;
-            } catch (Exception ex) {
+            } catch (RuntimeException ex) {
                 logger.warn("Failed to read types for invalidator <{}> (needed for target <{}>): {}", invIri, thisNpId, ex.getMessage(), ex);
                 if (metaConn.isActive()) {
                     metaConn.rollback();
                 }
+                throw ex;
             }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to read invalidator types for " + invIri + " after " + MAX_RETRIES + " retries");
-                }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying type-read for invalidator <{}> in {} ms (attempt {}/{})...", invIri, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
-        return invTypes;
+            return invTypes;
+        });
     }
 
     /**
@@ -1200,11 +1493,8 @@ public class NanopubLoader {
     @GeneratedFlagForDependentElements
     private static List<Statement> fetchNanopubAllStatementsFromPubkeyRepo(IRI npId, String pubkey) {
         String repoName = "pubkey_" + Utils.createHash(pubkey);
-        boolean success = false;
-        int retries = 0;
-        List<Statement> result = new ArrayList<>();
-        while (!success) {
-            result.clear();
+        return StoreRetries.get().call(repoName, "content-fetch of <" + npId + "> from repo '" + repoName + "'", () -> {
+            List<Statement> result = new ArrayList<>();
             RepositoryConnection conn = TripleStore.get().getRepoConnection(repoName);
             try (conn) {
                 // Append-only data + idempotent re-load downstream: READ_COMMITTED suffices.
@@ -1220,11 +1510,7 @@ public class NanopubLoader {
                     }
                 }
 
-                for (IRI g : npGraphs) {
-                    try (RepositoryResult<Statement> r = conn.getStatements(null, null, null, g)) {
-                        while (r.hasNext()) result.add(r.next());
-                    }
-                }
+                TripleStore.get().fetchGraphs(conn, npGraphs, result::add);
 
                 try (RepositoryResult<Statement> r = conn.getStatements(npId, null, null, NPA.GRAPH)) {
                     while (r.hasNext()) {
@@ -1249,42 +1535,23 @@ public class NanopubLoader {
                         }
                     }
                 }
-                for (IRI invIri : invalidators) {
-                    try (RepositoryResult<Statement> r = conn.getStatements(invIri, NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY, null, NPA.GRAPH)) {
-                        while (r.hasNext()) result.add(r.next());
-                    }
-                    try (RepositoryResult<Statement> r = conn.getStatements(invIri, NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY_HASH, null, NPA.GRAPH)) {
-                        while (r.hasNext()) result.add(r.next());
-                    }
-                }
+                TripleStore.get().fetchSubjects(conn, invalidators,
+                        List.of(NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY, NPA.HAS_VALID_SIGNATURE_FOR_PUBLIC_KEY_HASH), NPA.GRAPH, result::add);
 
                 try (RepositoryResult<Statement> r = conn.getStatements(npId, null, null, NPA.NETWORK_GRAPH)) {
                     while (r.hasNext()) result.add(r.next());
                 }
 
                 conn.commit();
-                success = true;
-            } catch (Exception ex) {
+            } catch (RuntimeException ex) {
                 logger.warn("Failed to fetch content of nanopub <{}> from repo '{}': {}", npId, repoName, ex.getMessage(), ex);
                 if (conn.isActive()) {
                     conn.rollback();
                 }
+                throw ex;
             }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to fetch nanopub content from " + repoName + " for " + npId + " after " + MAX_RETRIES + " retries");
-                }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying content-fetch of <{}> from repo '{}' in {} ms (attempt {}/{})...", npId, repoName, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
-        return result;
+            return result;
+        });
     }
 
     @GeneratedFlagForDependentElements
@@ -1300,10 +1567,8 @@ public class NanopubLoader {
 
     @GeneratedFlagForDependentElements
     static List<Statement> getInvalidatingStatements(IRI npId) {
-        List<Statement> invalidatingStatements = new ArrayList<>();
-        boolean success = false;
-        int retries = 0;
-        while (!success) {
+        return StoreRetries.get().call("meta", "invalidator-query for <" + npId + ">", () -> {
+            List<Statement> invalidatingStatements = new ArrayList<>();
             RepositoryConnection conn = TripleStore.get().getRepoConnection("meta");
             try (conn) {
                 // Basic isolation because here we only read append-only data.
@@ -1318,58 +1583,23 @@ public class NanopubLoader {
                     }
                 }
                 conn.commit();
-                success = true;
-            } catch (Exception ex) {
+            } catch (RuntimeException ex) {
                 logger.warn("Failed to query existing invalidators of <{}> from meta repo: {}", npId, ex.getMessage(), ex);
                 if (conn.isActive()) {
                     conn.rollback();
                 }
+                throw ex;
             }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to get invalidating statements for " + npId + " after " + MAX_RETRIES + " retries");
-                }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying invalidator-query for <{}> in {} ms (attempt {}/{})...", npId, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
-        return invalidatingStatements;
+            return invalidatingStatements;
+        });
     }
 
-    @GeneratedFlagForDependentElements
+    /**
+     * Queues a note for the admin repo. It is committed at the latest with the next load
+     * counter, see {@link AdminWriter}.
+     */
     private static void loadNoteToRepo(Resource subj, String note) {
-        boolean success = false;
-        int retries = 0;
-        while (!success) {
-            RepositoryConnection conn = TripleStore.get().getAdminRepoConnection();
-            try (conn) {
-                List<Statement> statements = new ArrayList<>();
-                statements.add(vf.createStatement(subj, NPA.NOTE, vf.createLiteral(note), NPA.GRAPH));
-                conn.add(statements);
-                success = true;
-            } catch (Exception ex) {
-                logger.warn("Failed to write note \"{}\" to admin repo for <{}>: {}", note, subj, ex.getMessage(), ex);
-            }
-            if (!success) {
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new RuntimeException("Failed to load note to repo for " + subj + " after " + MAX_RETRIES + " retries");
-                }
-                long delay = computeBackoffMillis(retries);
-                logger.info("Retrying note-write for <{}> in {} ms (attempt {}/{})...", subj, delay, retries, MAX_RETRIES);
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException x) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
+        AdminWriter.get().enqueueNote(subj, note);
     }
 
     static boolean hasValidSignature(NanopubSignatureElement el) {
@@ -1390,14 +1620,10 @@ public class NanopubLoader {
     }
 
     private static IRI getBaseTrustyUri(Value v) {
-        if (!(v instanceof IRI)) {
-            return null;
-        }
-        String s = v.stringValue();
-        if (!s.matches(".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}([^A-Za-z0-9\\\\-_].{0,43})?")) {
+        if (!(v instanceof IRI iri)) {
             return null;
         }
-        return vf.createIRI(s.replaceFirst("^(.*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43})([^A-Za-z0-9\\\\-_].{0,43})?$", "$1"));
+        return TrustyUriScanner.getBaseTrustyUri(iri);
     }
 
     // TODO: Move this to nanopub library:
@@ -1418,6 +1644,9 @@ public class NanopubLoader {
      */
     @GeneratedFlagForDependentElements
     static boolean isNanopubLoaded(String npId) {
+        if (!LoadedNanopubFilter.get().mightBeLoaded("meta", vf.createIRI(npId))) {
+            return false;
+        }
         boolean loaded = false;
         RepositoryConnection conn = TripleStore.get().getRepoConnection("meta");
         try (conn) {
@@ -0,0 +1,212 @@
+package com.knowledgepixels.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * What {@link GrlcSpec} keeps between requests so that a hot {@code /api} call neither
+ * reads the store nor parses RDF: the parsed query templates, and the versions that
+ * {@code api-version=latest} resolved to.
+ *
+ * <p>Templates are keyed by artifact code and query name. A nanopub never changes, so
+ * they need no invalidation; the least recently used one is evicted once there are
+ * {@link #MAX_TEMPLATES}. Requests with an inline {@code _nanopub_trig} do not go
+ * through here: anybody could fill the cache with those.
+ *
+ * <p>A latest version is a lookup in the meta repo and does change, when a newer version
+ * or an invalidation of the current one is loaded. {@link NanopubLoader} reports each
+ * invalidated nanopub to {@link #chainChanged} once it is committed to the meta repo, which
+ * drops every entry resolving to it. A new version that supersedes an older one than
+ * the tip (a fork in the chain) is not caught that way, so entries also expire after
+ * {@link #LATEST_VERSION_TTL_MS}. A lookup that was running while a chain changed is not
+ * stored, as it may have read the chain before the change.
+ */
+final class QueryTemplateCache {
+
+    /**
+     * Parsed templates kept, from {@code NANOPUB_QUERY_TEMPLATE_CACHE_SIZE} (default 1000).
+     * Also caps the latest-version entries.
+     */
+    static final int MAX_TEMPLATES = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_TEMPLATE_CACHE_SIZE", 1000));
+
+    /**
+     * How long a resolved latest version is used at most, from
+     * {@code NANOPUB_QUERY_LATEST_VERSION_CACHE_SECONDS} (default 300; 0 disables the cache).
+     */
+    static final long LATEST_VERSION_TTL_MS = TimeUnit.SECONDS.toMillis(
+            Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_LATEST_VERSION_CACHE_SECONDS", 300)));
+
+    private static final QueryTemplateCache instance = new QueryTemplateCache(MAX_TEMPLATES, LATEST_VERSION_TTL_MS, System::currentTimeMillis);
+
+    /**
+     * @return the cache of {@link GrlcSpec}
+     */
+    static QueryTemplateCache get() {
+        return instance;
+    }
+
+    private record LatestVersion(String artifactCode, long resolvedAtMs) {
+    }
+
+    private final int maxEntries;
+    private final long latestVersionTtlMs;
+    private final LongSupplier clock;
+    // Access-ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, GrlcSpec.ParsedTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, LatestVersion> latestVersions = new LinkedHashMap<>(16, 0.75f, true);
+    private long chainGeneration = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long latestVersionHits = 0;
+    private long latestVersionMisses = 0;
+    private long latestVersionInvalidations = 0;
+
+    /**
+     * @param maxEntries         templates kept, and latest versions kept
+     * @param latestVersionTtlMs how long a latest version is used at most
+     * @param clock              current time in ms
+     */
+    QueryTemplateCache(int maxEntries, long latestVersionTtlMs, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.latestVersionTtlMs = latestVersionTtlMs;
+        this.clock = clock;
+    }
+
+    /**
+     * @param artifactCode artifact code of the template nanopub
+     * @param queryPart    query name, or empty for the whole template
+     * @return the parsed template, or null if it is not cached
+     */
+    synchronized GrlcSpec.ParsedTemplate getTemplate(String artifactCode, String queryPart) {
+        GrlcSpec.ParsedTemplate template = templates.get(key(artifactCode, queryPart));
+        if (template == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return template;
+    }
+
+    /**
+     * Like {@link #getTemplate} != null, but neither counted nor moving the entry up.
+     */
+    synchronized boolean hasTemplate(String artifactCode, String queryPart) {
+        return templates.containsKey(key(artifactCode, queryPart));
+    }
+
+    /**
+     * Like {@link #getLatestVersion} != null, but not counted.
+     */
+    synchronized boolean hasLatestVersion(String artifactCode) {
+        LatestVersion latest = latestVersions.get(artifactCode);
+        return latest != null && clock.getAsLong() - latest.resolvedAtMs() < latestVersionTtlMs;
+    }
+
+    /**
+     * Caches a parsed template, evicting the least recently used one if full.
+     */
+    synchronized void putTemplate(String artifactCode, String queryPart, GrlcSpec.ParsedTemplate template) {
+        templates.put(key(artifactCode, queryPart), template);
+        Iterator<String> eldest = templates.keySet().iterator();
+        while (templates.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @param artifactCode artifact code of a template nanopub
+     * @return the artifact code of its latest version, or null if not cached or expired
+     */
+    synchronized String getLatestVersion(String artifactCode) {
+        LatestVersion latest = latestVersions.get(artifactCode);
+        if (latest != null && clock.getAsLong() - latest.resolvedAtMs() >= latestVersionTtlMs) {
+            latestVersions.remove(artifactCode);
+            latest = null;
+        }
+        if (latest == null) {
+            latestVersionMisses++;
+            return null;
+        }
+        latestVersionHits++;
+        return latest.artifactCode();
+    }
+
+    /**
+     * @return the value to pass to {@link #putLatestVersion} for a lookup started now
+     */
+    synchronized long chainGeneration() {
+        return chainGeneration;
+    }
+
+    /**
+     * Caches a resolved latest version, unless a chain changed since the lookup started.
+     *
+     * @param artifactCode       artifact code of a template nanopub
+     * @param latestArtifactCode artifact code of its latest version
+     * @param generation         {@link #chainGeneration()} from before the lookup
+     */
+    synchronized void putLatestVersion(String artifactCode, String latestArtifactCode, long generation) {
+        if (generation != chainGeneration || latestVersionTtlMs == 0) {
+            return;
+        }
+        latestVersions.put(artifactCode, new LatestVersion(latestArtifactCode, clock.getAsLong()));
+        Iterator<String> eldest = latestVersions.keySet().iterator();
+        while (latestVersions.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Drops the latest versions that could change now that a nanopub is invalidated: those
+     * of it and those resolving to it.
+     *
+     * @param artifactCode artifact code of the invalidated nanopub
+     */
+    synchronized void chainChanged(String artifactCode) {
+        chainGeneration++;
+        Iterator<Map.Entry<String, LatestVersion>> it = latestVersions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, LatestVersion> e = it.next();
+            if (e.getKey().equals(artifactCode) || e.getValue().artifactCode().equals(artifactCode)) {
+                it.remove();
+                latestVersionInvalidations++;
+            }
+        }
+    }
+
+    /**
+     * Usage of the cache since process start.
+     *
+     * @param templates                  parsed templates cached now
+     * @param hits                       template lookups served from the cache
+     * @param misses                     template lookups that had to fetch and parse
+     * @param evictions                  templates evicted
+     * @param latestVersions             latest versions cached now
+     * @param latestVersionHits          latest-version lookups served from the cache
+     * @param latestVersionMisses        latest-version lookups that went to the store
+     * @param latestVersionInvalidations latest versions dropped by {@link #chainChanged}
+     */
+    record Stats(int templates, long hits, long misses, long evictions,
+                 int latestVersions, long latestVersionHits, long latestVersionMisses, long latestVersionInvalidations) {
+    }
+
+    /**
+     * @return usage figures
+     */
+    synchronized Stats stats() {
+        return new Stats(templates.size(), hits, misses, evictions,
+                latestVersions.size(), latestVersionHits, latestVersionMisses, latestVersionInvalidations);
+    }
+
+    private static String key(String artifactCode, String queryPart) {
+        return artifactCode + "/" + queryPart;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.knowledgepixels.query;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-through cache of each repo's chain head: the {@code npa:hasNanopubCount} /
+ * {@code npa:hasNanopubChecksum} pair that {@link NanopubLoader#loadNanopubsToRepo} reads
+ * at the start of every write and rewrites at the end.
+ *
+ * <p>This process is the only writer of those triples, and every write to them happens
+ * under the repo's {@link NanopubLoader#repoWriteLock}, so the value committed last is the
+ * value the store holds. Caching it removes the chain-head query from each shard
+ * transaction. An entry is filled the first time a repo is written, replaced after every
+ * commit, and dropped whenever the cached value might no longer be the stored one: when a
+ * transaction fails (it may have committed before the error reached us), and when
+ * {@link ShardReconciler} finds a repo missing a nanopub it was told had landed.
+ *
+ * <p>Because the failures this guards against are exactly the ones that are silent
+ * (issues #139 and #142: a backend acknowledging writes it then does not keep), one
+ * lookup in {@link #VERIFY_EVERY} is answered as a miss, so the caller reads the store as
+ * before and reports back through {@link #verified}. A mismatch is counted in
+ * {@link #DIVERGENCES} and the stored value wins.
+ *
+ * <p>Callers hold the repo's write lock, including for {@link #invalidate}: dropping an
+ * entry while a transaction that read it is still open would be undone by that
+ * transaction's {@link #committed}.
+ */
+final class RepoChainHeadCache {
+
+    /**
+     * How often a cached head is checked against the store, from
+     * {@code NANOPUB_QUERY_CHAIN_HEAD_VERIFY_EVERY} (default 100: one lookup in a hundred).
+     * 1 verifies every lookup, which amounts to switching the cache off.
+     */
+    static final int VERIFY_EVERY = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_CHAIN_HEAD_VERIFY_EVERY", 100));
+
+    /**
+     * Cached heads that turned out to differ from the store since process start. Read by
+     * {@link MetricsCollector}; any non-zero value means some other party changed a chain,
+     * or the store lost state.
+     */
+    static final AtomicLong DIVERGENCES = new AtomicLong();
+
+    private static final RepoChainHeadCache instance = new RepoChainHeadCache(VERIFY_EVERY);
+
+    /**
+     * @return the cache used by the loader
+     */
+    static RepoChainHeadCache get() {
+        return instance;
+    }
+
+    /**
+     * A repo's chain head.
+     *
+     * @param count    the number of nanopubs loaded into the repo
+     * @param checksum the XOR checksum over their trusty URIs
+     */
+    record Head(long count, String checksum) {
+    }
+
+    private final ConcurrentHashMap<String, Head> heads = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final int verifyEvery;
+
+    RepoChainHeadCache(int verifyEvery) {
+        this.verifyEvery = verifyEvery;
+    }
+
+    /**
+     * @param repoName the repo about to be written
+     * @return the cached head, or null if the caller has to read it from the store: either
+     * because none is cached, or because this lookup was picked for verification
+     */
+    Head lookup(String repoName) {
+        Head head = heads.get(repoName);
+        if (head == null || lookups.incrementAndGet() % verifyEvery == 0) {
+            return null;
+        }
+        return head;
+    }
+
+    /**
+     * Records the head just read from the store. If it differs from the cached one, the
+     * divergence is counted and the store's value replaces it.
+     *
+     * @param repoName the repo
+     * @param stored   the head as read within the current transaction
+     * @return true if nothing was cached or the cached head matched
+     */
+    boolean verified(String repoName, Head stored) {
+        Head cached = heads.put(repoName, stored);
+        if (cached != null && !cached.equals(stored)) {
+            DIVERGENCES.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the head a transaction has just committed.
+     */
+    void committed(String repoName, Head head) {
+        heads.put(repoName, head);
+    }
+
+    /**
+     * Drops a repo's head, so that the next write reads it from the store.
+     */
+    void invalidate(String repoName) {
+        heads.remove(repoName);
+    }
+
+    /**
+     * Drops every cached head.
+     */
+    void invalidateAll() {
+        heads.clear();
+    }
+
+}
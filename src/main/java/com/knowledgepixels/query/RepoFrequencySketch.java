@@ -0,0 +1,105 @@
+package com.knowledgepixels.query;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate, decaying access counts per repo name, as in TinyLFU: a count-min sketch
+ * of small saturating counters that are all halved every {@code 10 * width} recorded
+ * accesses, so that what counts is recent traffic rather than all-time totals.
+ *
+ * <p>{@link TripleStore} records every repo lookup here and reads the counts when it picks
+ * eviction victims. Unlike a map of counters, the sketch remembers names that are not
+ * cached any more, in fixed memory, so a repo that keeps coming back builds up a count
+ * across evictions.
+ *
+ * <p>Lock-free; a count read during a halving may be off by one step, which does not
+ * matter for choosing victims.
+ */
+final class RepoFrequencySketch {
+
+    /** Counts saturate here, like TinyLFU's 4-bit counters. */
+    static final int MAX_COUNT = 15;
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final AtomicIntegerArray counters;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger samples = new AtomicInteger();
+
+    /**
+     * @param width counters per row; rounded up to a power of two. A few times the number
+     *              of distinct repos keeps collisions rare.
+     */
+    RepoFrequencySketch(int width) {
+        int w = 16;
+        while (w < width) {
+            w <<= 1;
+        }
+        this.counters = new AtomicIntegerArray(DEPTH * w);
+        this.mask = w - 1;
+        this.sampleSize = 10 * w;
+    }
+
+    /**
+     * Records one access.
+     *
+     * @param name repo name
+     */
+    void increment(String name) {
+        int hash = spread(name.hashCode());
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            int count;
+            do {
+                count = counters.get(index);
+            } while (count < MAX_COUNT && !counters.compareAndSet(index, count, count + 1));
+        }
+        if (samples.incrementAndGet() >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * @param name repo name
+     * @return the estimated recent accesses, 0 to {@link #MAX_COUNT}
+     */
+    int frequency(String name) {
+        int hash = spread(name.hashCode());
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters.get(index(hash, row)));
+        }
+        return min;
+    }
+
+    /**
+     * Halves every counter. Only the thread that brings the sample count back down does it.
+     */
+    private void age() {
+        int n = samples.get();
+        if (n < sampleSize || !samples.compareAndSet(n, n / 2)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            int count;
+            do {
+                count = counters.get(i);
+            } while (!counters.compareAndSet(i, count, count >>> 1));
+        }
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x45D9F3B;
+        return h ^ (h >>> 16);
+    }
+
+}
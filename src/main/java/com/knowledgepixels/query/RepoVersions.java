@@ -0,0 +1,163 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.nanopub.vocabulary.NPA;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory view of what each chain-tracking repo holds, for answering queries from
+ * {@link ResponseCache} without asking the store whether anything changed.
+ *
+ * <p>A repo's version is its {@code npa:hasNanopubChecksum}, which {@link NanopubLoader}
+ * reports here after every commit, plus a count of the writes since process start that
+ * add to a repo without moving its chain (the invalidation markers
+ * {@link NanopubLoader} adds to the pubkey repo of an invalidated nanopub). This process
+ * is the only writer of these repos, so the version changes exactly when their content
+ * does.
+ *
+ * <p>A repo not written since process start has no version until {@link #prime} has read
+ * its checksum from the store; until then its queries are not cached. A version is also
+ * forgotten when a write fails, since the commit may or may not have landed. A read that
+ * overlapped any of these is not stored: it may have seen the state before.
+ *
+ * <p>Only {@code meta}, {@code full}, {@code text} and the {@code pubkey_} and
+ * {@code type_} repos are tracked; the others are written without a chain, or pruned.
+ */
+final class RepoVersions {
+
+    private static final RepoVersions instance = new RepoVersions();
+
+    /**
+     * @return the versions kept up to date by the loader
+     */
+    static RepoVersions get() {
+        return instance;
+    }
+
+    private static final class State {
+        String checksum;
+        long generation = 0;
+        long changes = 0;
+    }
+
+    private final Map<String, State> states = new HashMap<>();
+
+    /**
+     * @param repoName repo name
+     * @return whether the repo's version is tracked here
+     */
+    static boolean isTracked(String repoName) {
+        return repoName.equals("meta") || repoName.equals("full") || repoName.equals("text")
+               || repoName.startsWith("pubkey_") || repoName.startsWith("type_");
+    }
+
+    /**
+     * @param repoName repo name
+     * @return the repo's current version, or null if unknown or not tracked
+     */
+    synchronized String version(String repoName) {
+        State state = states.get(repoName);
+        if (state == null || state.checksum == null) {
+            return null;
+        }
+        return state.checksum + "/" + state.generation;
+    }
+
+    /**
+     * Records a commit that moved the repo's chain.
+     *
+     * @param repoName repo name
+     * @param checksum the repo's checksum after the commit
+     */
+    synchronized void committed(String repoName, String checksum) {
+        if (!isTracked(repoName)) {
+            return;
+        }
+        State state = state(repoName);
+        state.checksum = checksum;
+        state.changes++;
+    }
+
+    /**
+     * Records a commit that added to the repo without moving its chain.
+     *
+     * @param repoName repo name
+     */
+    synchronized void changed(String repoName) {
+        if (!isTracked(repoName)) {
+            return;
+        }
+        State state = state(repoName);
+        state.generation++;
+        state.changes++;
+    }
+
+    /**
+     * Forgets the repo's version, after a write whose outcome is unknown.
+     *
+     * @param repoName repo name
+     */
+    synchronized void forget(String repoName) {
+        State state = states.get(repoName);
+        if (state != null) {
+            state.checksum = null;
+            state.generation++;
+            state.changes++;
+        }
+    }
+
+    /**
+     * @param repoName repo name
+     * @return the value to pass to {@link #primed} for a read started now
+     */
+    synchronized long changes(String repoName) {
+        State state = states.get(repoName);
+        return state == null ? 0 : state.changes;
+    }
+
+    /**
+     * Sets the version read from the store, unless it is known already or the repo changed
+     * since the read started.
+     *
+     * @param repoName repo name
+     * @param checksum the checksum read; empty for a repo that has none yet
+     * @param changes  {@link #changes} from before the read
+     */
+    synchronized void primed(String repoName, String checksum, long changes) {
+        if (!isTracked(repoName)) {
+            return;
+        }
+        State state = state(repoName);
+        if (state.checksum == null && state.changes == changes) {
+            state.checksum = checksum;
+        }
+    }
+
+    /**
+     * Reads the repo's checksum from the store and sets it as its version.
+     *
+     * <p><b>Blocks.</b> Never call from the Vert.x event loop.
+     *
+     * @param repoName repo name
+     */
+    @GeneratedFlagForDependentElements
+    void prime(String repoName) {
+        // Opening a repo that does not exist would create it.
+        if (!TripleStore.get().getRepositoryNames(TripleStore.repoClass(repoName)).contains(repoName)) {
+            return;
+        }
+        long changes = changes(repoName);
+        try (RepositoryConnection conn = TripleStore.get().getRepoConnection(repoName)) {
+            Value checksum = Utils.getObjectForPattern(conn, NPA.GRAPH, NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM);
+            primed(repoName, checksum == null ? "" : checksum.stringValue(), changes);
+        }
+    }
+
+    private State state(String repoName) {
+        return states.computeIfAbsent(repoName, k -> new State());
+    }
+
+}
@@ -0,0 +1,357 @@
+package com.knowledgepixels.query;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the loader's store writes with one single-writer queue per repo over a bounded set
+ * of worker threads.
+ *
+ * <p>Before this, writes went to a plain four-thread pool and every task for a repo took
+ * that repo's {@link NanopubLoader#repoWriteLock} on arrival, so two tasks for the same
+ * repo (say the batch loader and a {@link ShardReconciler} repair both hitting
+ * {@code meta}) tied up two pool threads while one of them waited on the lock. Here the
+ * tasks for a repo are queued in submission order and at most one worker drains a queue
+ * at a time; a task that would have blocked on the lock simply waits in its queue without
+ * holding a thread or an HTTP connection. The lock is still taken inside the write
+ * methods, for the writers that do not come through here, but on this path it is never
+ * contended.
+ *
+ * <p>A worker runs one task and then puts the queue back at the end of the line if it has
+ * more, so a busy repo cannot starve the others. The number of workers is
+ * {@link #CONCURRENCY}, adjustable at runtime with {@link #setConcurrency}, and never more
+ * than the HTTP connections {@link TripleStore} allows per route minus
+ * {@link #RESERVED_CONNECTIONS}: beyond that, extra workers would only queue inside the
+ * connection pool where nobody can see them.
+ *
+ * <p>Writes submitted with a description ({@link #submit(String, String, Runnable)}) are
+ * retried under {@link StoreRetries}: a failed attempt stays at the head of its queue and
+ * is handed back to the workers once its back-off has passed, and a repo whose breaker is
+ * open is not tried until it half-opens. Neither wait holds a worker, so one failing repo
+ * costs the others nothing but the attempts themselves.
+ *
+ * <p>Each queue keeps its depth, task count and total queueing time, so the repo that is
+ * holding loading up can be read off {@link #snapshot()}; {@link MetricsCollector} exports
+ * them per {@link #metricsGroup repo group}.
+ */
+final class RepoWriteScheduler {
+
+    /**
+     * Ingest connections left free for the store traffic that does not go through this
+     * scheduler (the loader's own reads, queries served meanwhile). Admin-repo status
+     * updates have their own {@link HttpPools pool}.
+     */
+    static final int RESERVED_CONNECTIONS = 2;
+
+    /**
+     * Upper bound for the number of workers: the ingest HTTP connection budget minus
+     * {@link #RESERVED_CONNECTIONS}.
+     */
+    static final int MAX_CONCURRENCY = Math.max(1, TripleStore.MAX_CONNECTIONS_PER_ROUTE - RESERVED_CONNECTIONS);
+
+    /**
+     * Number of repos written to in parallel, from {@code NANOPUB_QUERY_LOAD_WRITE_CONCURRENCY}
+     * (default 4, as the pool this replaces), capped at {@link #MAX_CONCURRENCY}.
+     */
+    static final int CONCURRENCY = clamp(Utils.getEnvInt("NANOPUB_QUERY_LOAD_WRITE_CONCURRENCY", 4));
+
+    /**
+     * Queue key for tasks that touch several repos in turn (invalidation propagation). They
+     * share one lane rather than claiming any single repo's queue, and rely on the repo
+     * write locks of the writes they make.
+     */
+    static final String CROSS_REPO = "cross-repo";
+
+    private static final RepoWriteScheduler instance = new RepoWriteScheduler(CONCURRENCY);
+
+    /**
+     * @return the scheduler the loader writes through
+     */
+    static RepoWriteScheduler get() {
+        return instance;
+    }
+
+    /**
+     * Point-in-time figures of one repo queue.
+     *
+     * @param depth           tasks queued or running
+     * @param tasks           tasks started since process start
+     * @param totalWaitNanos  summed time those tasks spent queued before starting
+     * @param maxWaitNanos    the longest such time
+     */
+    record QueueStats(int depth, long tasks, long totalWaitNanos, long maxWaitNanos) {
+    }
+
+    /**
+     * A queued write.
+     */
+    private abstract static class Task {
+
+        final long enqueuedAtNanos = System.nanoTime();
+
+        /**
+         * Makes one attempt.
+         *
+         * @return ms after which to make the next attempt, or -1 when the task is done
+         */
+        abstract long attempt();
+
+    }
+
+    private static final class PlainTask extends Task {
+
+        final FutureTask<Void> future;
+
+        PlainTask(Runnable task) {
+            this.future = new FutureTask<>(task, null);
+        }
+
+        @Override
+        long attempt() {
+            future.run();
+            return -1;
+        }
+
+    }
+
+    private final class RetryingTask extends Task {
+
+        final String repoName;
+        final String what;
+        final Runnable write;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        int attempts = 0;
+
+        RetryingTask(String repoName, String what, Runnable write) {
+            this.repoName = repoName;
+            this.what = what;
+            this.write = write;
+        }
+
+        @Override
+        long attempt() {
+            if (future.isDone()) {
+                // Cancelled while waiting for its turn or its next attempt.
+                return -1;
+            }
+            long closed = retries.millisUntilOpen(repoName);
+            if (closed > 0) {
+                return closed;
+            }
+            attempts++;
+            long start = System.nanoTime();
+            try {
+                write.run();
+                retries.succeeded(repoName, attempts, System.nanoTime() - start);
+                future.complete(null);
+                return -1;
+            } catch (RuntimeException ex) {
+                long delay = retries.failed(repoName, what, attempts, System.nanoTime() - start, ex);
+                if (delay < 0) {
+                    future.completeExceptionally(StoreRetries.gaveUp(what, attempts, ex));
+                }
+                return delay;
+            } catch (Error err) {
+                future.completeExceptionally(err);
+                return -1;
+            }
+        }
+
+    }
+
+    private static final class RepoQueue {
+
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private boolean scheduled = false;
+        private long started = 0L;
+        private long totalWaitNanos = 0L;
+        private long maxWaitNanos = 0L;
+
+        synchronized QueueStats stats() {
+            return new QueueStats(depth.get(), started, totalWaitNanos, maxWaitNanos);
+        }
+
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final StoreRetries retries;
+    private final ConcurrentHashMap<String, RepoQueue> queues = new ConcurrentHashMap<>();
+
+    RepoWriteScheduler(int concurrency) {
+        this(concurrency, StoreRetries.get());
+    }
+
+    /**
+     * @param concurrency worker count, clamped to 1..{@link #MAX_CONCURRENCY}
+     * @param retries     the policy retrying writes submitted with a description
+     */
+    RepoWriteScheduler(int concurrency, StoreRetries retries) {
+        this.retries = retries;
+        int n = clamp(concurrency);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(n, n, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "repo-writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static int clamp(int concurrency) {
+        return Math.max(1, Math.min(concurrency, MAX_CONCURRENCY));
+    }
+
+    /**
+     * Queues a write for a repo. Tasks for the same repo run one at a time, in the order
+     * they were submitted.
+     *
+     * @param repoName the repo the task writes to, or {@link #CROSS_REPO}
+     * @param task     the write
+     * @return a future completing when the task has run; cancelling it before it starts
+     * removes it from the repo's turn
+     */
+    Future<?> submit(String repoName, Runnable task) {
+        PlainTask plain = new PlainTask(task);
+        enqueue(repoName, plain);
+        return plain.future;
+    }
+
+    /**
+     * Queues a write for a repo that is retried under {@link StoreRetries} until it
+     * succeeds or is given up. Tasks for the same repo run one at a time, in the order they
+     * were submitted, retries included.
+     *
+     * @param repoName the repo the task writes to, or {@link #CROSS_REPO}
+     * @param what     what the write does, for the log, e.g. {@code "load of nanopub <X> to repo 'meta'"}
+     * @param write    one attempt of the write; fails by throwing
+     * @return a future completing when the write has succeeded or been given up; cancelling
+     * it before an attempt starts drops the remaining attempts
+     */
+    Future<?> submit(String repoName, String what, Runnable write) {
+        RetryingTask retrying = new RetryingTask(repoName, what, write);
+        enqueue(repoName, retrying);
+        return retrying.future;
+    }
+
+    private void enqueue(String repoName, Task task) {
+        RepoQueue queue = queues.computeIfAbsent(repoName, k -> new RepoQueue());
+        boolean schedule;
+        synchronized (queue) {
+            queue.tasks.add(task);
+            queue.depth.incrementAndGet();
+            schedule = !queue.scheduled;
+            queue.scheduled = true;
+        }
+        if (schedule) {
+            workers.execute(() -> runNext(queue));
+        }
+    }
+
+    /**
+     * Takes the head of one queue and runs it. Only one {@code runNext} or {@link #attempt}
+     * per queue is ever pending, running or waiting on the retry timer, which is what makes
+     * the queue single-writer.
+     */
+    private void runNext(RepoQueue queue) {
+        Task task;
+        synchronized (queue) {
+            task = queue.tasks.poll();
+            if (task == null) {
+                queue.scheduled = false;
+                return;
+            }
+            long waited = System.nanoTime() - task.enqueuedAtNanos;
+            queue.started++;
+            queue.totalWaitNanos += waited;
+            queue.maxWaitNanos = Math.max(queue.maxWaitNanos, waited);
+        }
+        attempt(queue, task);
+    }
+
+    /**
+     * Makes one attempt of a queue's current task. If it is to be tried again, the timer
+     * brings it back to the workers later and the queue waits for it; otherwise, if more is
+     * queued, the queue is handed back to the pool.
+     */
+    private void attempt(RepoQueue queue, Task task) {
+        // Never throws: both kinds of task turn failures into the outcome of their future.
+        long retryInMs = task.attempt();
+        if (retryInMs >= 0) {
+            StoreRetries.schedule(() -> workers.execute(() -> attempt(queue, task)), retryInMs);
+            return;
+        }
+        queue.depth.decrementAndGet();
+        boolean more;
+        synchronized (queue) {
+            more = !queue.tasks.isEmpty();
+            queue.scheduled = more;
+        }
+        if (more) {
+            workers.execute(() -> runNext(queue));
+        }
+    }
+
+    /**
+     * Changes the number of repos written to in parallel. Takes effect as workers finish
+     * their current task.
+     *
+     * @param concurrency the new worker count, clamped to 1..{@link #MAX_CONCURRENCY}
+     */
+    void setConcurrency(int concurrency) {
+        int n = clamp(concurrency);
+        synchronized (workers) {
+            if (n > workers.getMaximumPoolSize()) {
+                workers.setMaximumPoolSize(n);
+                workers.setCorePoolSize(n);
+            } else {
+                workers.setCorePoolSize(n);
+                workers.setMaximumPoolSize(n);
+            }
+        }
+    }
+
+    /**
+     * @return the current worker count
+     */
+    int getConcurrency() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /**
+     * @return figures for every repo that has had a write queued since process start,
+     * by repo name
+     */
+    Map<String, QueueStats> snapshot() {
+        Map<String, QueueStats> result = new TreeMap<>();
+        queues.forEach((repoName, queue) -> result.put(repoName, queue.stats()));
+        return result;
+    }
+
+    /**
+     * The metrics label for a repo: {@code pubkey_} and {@code type_} repos are grouped
+     * under their prefix (there are thousands of them, too many for one series each); the
+     * fixed repos are reported by name.
+     *
+     * @param repoName a queue key
+     * @return the label to report it under
+     */
+    static String metricsGroup(String repoName) {
+        if (repoName.startsWith("pubkey_")) {
+            return "pubkey_*";
+        }
+        if (repoName.startsWith("type_")) {
+            return "type_*";
+        }
+        return repoName;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.knowledgepixels.query;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The names of the repos on the store, kept in process by {@link TripleStore}: as a flat
+ * set, as a sorted set per {@link TripleStore#repoClass repo class}, and as a count per
+ * class, so that the metrics tick and the listing pages read what they need without going
+ * through every name. With tens of thousands of {@code type_} and {@code pubkey_} repos,
+ * streaming the full set once a second just to count two prefixes was most of what the
+ * metrics tick did.
+ *
+ * <p>Reads are lock-free. Writes are rare (a repo is created, or a reconciliation with the
+ * server finds a difference) and synchronized, so the three views never disagree for
+ * longer than one write.
+ */
+final class RepositoryNames {
+
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, NavigableSet<String>> byClass = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    /**
+     * @param name repo name
+     * @return whether the name was new
+     */
+    synchronized boolean add(String name) {
+        if (!names.add(name)) {
+            return false;
+        }
+        String repoClass = TripleStore.repoClass(name);
+        byClass.computeIfAbsent(repoClass, c -> new ConcurrentSkipListSet<>()).add(name);
+        counts.computeIfAbsent(repoClass, c -> new AtomicInteger()).incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param name repo name
+     * @return whether the name was there
+     */
+    synchronized boolean remove(String name) {
+        if (!names.remove(name)) {
+            return false;
+        }
+        String repoClass = TripleStore.repoClass(name);
+        byClass.get(repoClass).remove(name);
+        counts.get(repoClass).decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Makes the names those in {@code current}, as listed by the store.
+     *
+     * @param current the names the store lists
+     * @return how many names were added or removed
+     */
+    synchronized int reconcile(Collection<String> current) {
+        int changes = 0;
+        for (String name : current) {
+            if (add(name)) {
+                changes++;
+            }
+        }
+        Set<String> listed = current instanceof Set<String> s ? s : new HashSet<>(current);
+        for (String name : List.copyOf(names)) {
+            if (!listed.contains(name) && remove(name)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return all names; a live, unmodifiable view
+     */
+    Set<String> all() {
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @param repoClass repo class, e.g. {@code type}
+     * @return the names in the class, sorted; a live, unmodifiable view
+     */
+    NavigableSet<String> ofClass(String repoClass) {
+        NavigableSet<String> set = byClass.get(repoClass);
+        return set == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(set);
+    }
+
+    /**
+     * @return the repo classes that have had names, sorted
+     */
+    NavigableSet<String> classes() {
+        return new TreeSet<>(byClass.keySet());
+    }
+
+    /**
+     * @param repoClass repo class, e.g. {@code type}
+     * @return the number of names in the class
+     */
+    int count(String repoClass) {
+        AtomicInteger count = counts.get(repoClass);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the number of names
+     */
+    int count() {
+        return names.size();
+    }
+
+}
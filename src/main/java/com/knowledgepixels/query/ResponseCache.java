@@ -0,0 +1,604 @@
+package com.knowledgepixels.query;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.httpproxy.Body;
+import io.vertx.httpproxy.ProxyContext;
+import io.vertx.httpproxy.ProxyRequest;
+import io.vertx.httpproxy.ProxyResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Responses of proxied {@code GET /repo/<name>?query=...} and {@code /api/...} requests,
+ * kept so that the same query on an unchanged repo is answered without going to the
+ * store.
+ *
+ * <p>An entry is keyed by repo, query, {@code Accept} and {@code Accept-Encoding}, and
+ * remembers the {@link RepoVersions} version of the repo it was read at. It is served only
+ * while that is still the repo's version, and dropped at the first lookup after it is not.
+ * Repos whose version is not known yet are primed in the background and not cached until
+ * then.
+ *
+ * <p>Only complete 200 responses of at most {@link #MAX_ENTRY_BYTES} are stored; the body
+ * is copied while it streams to the client. The least recently used entries are evicted
+ * once the bodies exceed {@link #MAX_BYTES}.
+ *
+ * <p>Every response on a repo of known version, cached or not, carries a strong
+ * {@code ETag} derived from the key and the version, so it is the same for as long as the
+ * repo does not change. A request whose {@code If-None-Match} names it gets a 304 straight
+ * from that, even with the cache disabled. Queries whose result can differ between runs
+ * on the same data (see {@link #isRepeatable}) are neither cached nor tagged.
+ *
+ * <p>A request that misses while the same one (same key, same repo version) is already on
+ * its way to the store does not go there too: it waits for that one's response and is sent
+ * a copy. If the response is no 200, grows beyond {@link #MAX_COALESCED_BYTES}, breaks off,
+ * or does not end within {@link #FOLLOW_TIMEOUT_MS}, the waiting requests go to the store
+ * on their own.
+ */
+final class ResponseCache {
+
+    /**
+     * Total size of cached bodies, from {@code NANOPUB_QUERY_RESPONSE_CACHE_MB} (default 64;
+     * 0 disables the cache).
+     */
+    static final long MAX_BYTES = Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_RESPONSE_CACHE_MB", 64)) * 1024L * 1024L;
+
+    /**
+     * Largest body cached, from {@code NANOPUB_QUERY_RESPONSE_CACHE_MAX_ENTRY_KB} (default 1024).
+     */
+    static final int MAX_ENTRY_BYTES = Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_RESPONSE_CACHE_MAX_ENTRY_KB", 1024)) * 1024;
+
+    /**
+     * Largest response shared with the requests waiting for it, from
+     * {@code NANOPUB_QUERY_COALESCE_MAX_KB} (default 4096; 0 sends every request to the store).
+     */
+    static final int MAX_COALESCED_BYTES = Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_COALESCE_MAX_KB", 4096)) * 1024;
+
+    /**
+     * How long a request waits for the same one in flight before going to the store itself:
+     * the server-side evaluation limit {@code RDF4J_QUERY_TIMEOUT_SECONDS} (default 60), after
+     * which the one in flight has stopped.
+     */
+    static final long FOLLOW_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(Math.max(1, Utils.getEnvInt("RDF4J_QUERY_TIMEOUT_SECONDS", 60)));
+
+    /**
+     * Response headers stored with the body and sent again with it.
+     */
+    static final List<String> STORED_HEADERS = List.of("Content-Type", "Content-Encoding", "Vary");
+
+    private static final Pattern UNREPEATABLE = Pattern.compile("(?i)\\b(NOW|RAND|UUID|STRUUID|BNODE)\\s*\\(|\\bSERVICE\\b");
+
+    private static final String PENDING = ResponseCache.class.getName() + ".pending";
+
+    // An entry's ETag must not survive a restart: the version it is derived from starts
+    // over with the process.
+    private static final String EPOCH = UUID.randomUUID().toString();
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final ResponseCache instance = new ResponseCache(MAX_BYTES, MAX_ENTRY_BYTES, MAX_COALESCED_BYTES);
+
+    /**
+     * @return the cache of the proxy routes
+     */
+    static ResponseCache get() {
+        return instance;
+    }
+
+    /**
+     * A cached response.
+     *
+     * @param version the repo's version it was read at
+     * @param etag    its entity tag, quoted
+     * @param headers the {@link #STORED_HEADERS} it came with
+     * @param body    the body as sent by the store
+     */
+    record Entry(String version, String etag, Map<String, String> headers, Buffer body) {
+    }
+
+    /**
+     * A request on its way to the store, whose response others wait for.
+     */
+    static final class Flight {
+
+        private final String id;
+        private final Promise<Entry> landed = Promise.promise();
+
+        private Flight(String id) {
+            this.id = id;
+        }
+
+        /**
+         * @return the response, or null if the waiting requests have to go to the store
+         */
+        Future<Entry> landed() {
+            return landed.future();
+        }
+
+    }
+
+    /**
+     * @param flight the flight joined or started
+     * @param leads  whether the request started it, and is the one to go to the store
+     */
+    record Boarding(Flight flight, boolean leads) {
+    }
+
+    // flight is null if nobody can wait for the request.
+    private record Pending(String repoName, String key, String version, Flight flight) {
+    }
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final int maxCoalescedBytes;
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    // Access-ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> priming = ConcurrentHashMap.newKeySet();
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long notModified = 0;
+    private long coalesced = 0;
+    private long coalesceFallbacks = 0;
+
+    /**
+     * @param maxBytes          total size of cached bodies; 0 disables the cache
+     * @param maxEntryBytes     largest body cached
+     * @param maxCoalescedBytes largest response shared with waiting requests; 0 disables
+     *                          coalescing
+     */
+    ResponseCache(long maxBytes, int maxEntryBytes, int maxCoalescedBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxEntryBytes, maxBytes);
+        this.maxCoalescedBytes = maxCoalescedBytes;
+    }
+
+    /**
+     * @param repoName       repo the query runs on
+     * @param query          the query, with whatever else selects the result
+     * @param accept         {@code Accept} header, or null
+     * @param acceptEncoding {@code Accept-Encoding} header, or null
+     * @return the cache key of the response
+     */
+    static String key(String repoName, String query, String accept, String acceptEncoding) {
+        return hash(repoName + "\n" + accept + "\n" + acceptEncoding + "\n" + query);
+    }
+
+    /**
+     * @param params request parameters
+     * @return the parameters in a canonical order, as the query part of a cache key
+     */
+    static String query(MultiMap params) {
+        return params.entries().stream()
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .sorted()
+                .collect(Collectors.joining("&"));
+    }
+
+    /**
+     * @param query the query, with whatever else selects the result
+     * @return whether the query gives the same result every time it runs on the same data;
+     * not so if it calls a function like {@code NOW()} or {@code RAND()}, or another endpoint
+     */
+    static boolean isRepeatable(String query) {
+        return !UNREPEATABLE.matcher(query).find();
+    }
+
+    /**
+     * @param key     cache key
+     * @param version repo version the response was read at
+     * @return the response's entity tag, quoted
+     */
+    static String etag(String key, String version) {
+        return "\"" + hash(EPOCH + "\n" + version + "\n" + key) + "\"";
+    }
+
+    /**
+     * @param ifNoneMatch {@code If-None-Match} header, or null
+     * @param etag        entity tag of the current response, quoted
+     * @return whether the header names the response
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // If-None-Match compares weakly.
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key     cache key
+     * @param version the repo's current version
+     * @return the cached response, or null if there is none for this version
+     */
+    synchronized Entry lookup(String key, String version) {
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.version().equals(version)) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a response, evicting the least recently used ones as needed. Bodies above the
+     * entry limit are not cached.
+     *
+     * @param key     cache key
+     * @param version repo version the response was read at
+     * @param headers the {@link #STORED_HEADERS} it came with
+     * @param body    the body
+     */
+    synchronized void put(String key, String version, Map<String, String> headers, Buffer body) {
+        if (body.length() > maxEntryBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(version, etag(key, version), headers, body));
+        bytes += body.length();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().body().length();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Counts a request answered with 304.
+     */
+    synchronized void notModified() {
+        notModified++;
+    }
+
+    /**
+     * Joins the flight of a request, or starts it if there is none.
+     *
+     * @param id the request's key and repo version
+     * @return the flight, and whether the caller started it
+     */
+    Boarding board(String id) {
+        Flight flight = new Flight(id);
+        Flight leader = inFlight.putIfAbsent(id, flight);
+        return leader == null ? new Boarding(flight, true) : new Boarding(leader, false);
+    }
+
+    /**
+     * Ends a flight, handing its response to the requests waiting for it. Later requests
+     * start a new one.
+     *
+     * @param flight the flight; nothing happens if null
+     * @param entry  the response, or null if the waiting requests have to go to the store
+     */
+    void land(Flight flight, Entry entry) {
+        if (flight == null) {
+            return;
+        }
+        inFlight.remove(flight.id, flight);
+        flight.landed.tryComplete(entry);
+    }
+
+    /**
+     * Counts a request that waited for another.
+     *
+     * @param shared whether it was sent that one's response, rather than going to the store
+     */
+    synchronized void followed(boolean shared) {
+        if (shared) {
+            coalesced++;
+        } else {
+            coalesceFallbacks++;
+        }
+    }
+
+    /**
+     * Usage of the cache since process start.
+     *
+     * @param entries           responses cached now
+     * @param bytes             size of their bodies
+     * @param hits              lookups answered from the cache
+     * @param misses            lookups that found no response for the current version
+     * @param evictions         responses evicted for space
+     * @param notModified       requests answered with 304
+     * @param coalesced         requests sent the response of the same one in flight
+     * @param coalesceFallbacks requests that waited for the same one in flight, then went to
+     *                          the store after all
+     */
+    record Stats(int entries, long bytes, long hits, long misses, long evictions, long notModified,
+                 long coalesced, long coalesceFallbacks) {
+    }
+
+    /**
+     * @return usage figures
+     */
+    synchronized Stats stats() {
+        return new Stats(entries.size(), bytes, hits, misses, evictions, notModified, coalesced, coalesceFallbacks);
+    }
+
+    /**
+     * Sends a proxied GET request on to the store, unless it can be answered without: with
+     * 304 if its {@code If-None-Match} names the current response, from the cache, or with
+     * the response of the same request in flight. Requests sent on are marked for
+     * {@link #capture}.
+     *
+     * @param vertx    for priming the repo's version off the event loop
+     * @param context  the proxy context of the request, ready to be sent
+     * @param repoName repo the query runs on
+     * @param query    the query, with whatever else selects the result
+     * @return the response
+     */
+    @GeneratedFlagForDependentElements
+    Future<ProxyResponse> answer(Vertx vertx, ProxyContext context, String repoName, String query) {
+        if (!RepoVersions.isTracked(repoName) || !isRepeatable(query)) {
+            return context.sendRequest();
+        }
+        String version = RepoVersions.get().version(repoName);
+        if (version == null) {
+            prime(vertx, repoName);
+            return context.sendRequest();
+        }
+        ProxyRequest req = context.request();
+        String key = key(repoName, query, req.headers().get("Accept"), req.headers().get("Accept-Encoding"));
+        String etag = etag(key, version);
+        if (matches(req.headers().get("If-None-Match"), etag)) {
+            notModified();
+            return Future.succeededFuture(req.response().setStatusCode(304).putHeader("ETag", etag));
+        }
+        Entry entry = maxBytes == 0 ? null : lookup(key, version);
+        if (entry != null) {
+            return Future.succeededFuture(send(req, entry));
+        }
+        if (maxCoalescedBytes == 0) {
+            context.set(PENDING, new Pending(repoName, key, version, null));
+            return context.sendRequest();
+        }
+        Boarding boarding = board(key + "@" + version);
+        if (!boarding.leads()) {
+            return follow(vertx, context, boarding.flight(), new Pending(repoName, key, version, null));
+        }
+        Flight flight = boarding.flight();
+        context.set(PENDING, new Pending(repoName, key, version, flight));
+        return context.sendRequest().onFailure(ex -> land(flight, null));
+    }
+
+    /**
+     * Tags the 200 response of a request {@link #answer} sent on with its {@code ETag}. Copies
+     * it into the cache, and to the requests waiting for it, as it streams to the client, if
+     * it is within the limits.
+     *
+     * @param context the proxy context of the request
+     */
+    @GeneratedFlagForDependentElements
+    void capture(ProxyContext context) {
+        Pending pending = context.get(PENDING, Pending.class);
+        if (pending == null) {
+            return;
+        }
+        ProxyResponse resp = context.response();
+        if (resp.getStatusCode() != 200) {
+            land(pending.flight(), null);
+            return;
+        }
+        String etag = etag(pending.key(), pending.version());
+        resp.putHeader("ETag", etag);
+        Body body = resp.getBody();
+        int limit = Math.max(maxBytes == 0 ? 0 : maxEntryBytes, pending.flight() == null ? 0 : maxCoalescedBytes);
+        if (body == null || limit == 0 || body.length() > limit) {
+            land(pending.flight(), null);
+            return;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : STORED_HEADERS) {
+            String value = resp.headers().get(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        resp.setBody(Body.body(new CopyingStream(body.stream(), limit, copy -> {
+            // Reads started before a change may have seen the state before or after it;
+            // an entry for the old version would never be served anyway.
+            if (maxBytes > 0 && pending.version().equals(RepoVersions.get().version(pending.repoName()))) {
+                put(pending.key(), pending.version(), headers, copy);
+            }
+            land(pending.flight(), copy.length() <= maxCoalescedBytes
+                    ? new Entry(pending.version(), etag, headers, copy) : null);
+        }, () -> land(pending.flight(), null)), body.length()));
+    }
+
+    @GeneratedFlagForDependentElements
+    private Future<ProxyResponse> follow(Vertx vertx, ProxyContext context, Flight flight, Pending pending) {
+        return waitFor(vertx, flight, FOLLOW_TIMEOUT_MS).compose(entry -> {
+            followed(entry != null);
+            if (entry == null) {
+                context.set(PENDING, pending);
+                return context.sendRequest();
+            }
+            return Future.succeededFuture(send(context.request(), entry));
+        });
+    }
+
+    /**
+     * Waits for a flight to land, on the context of the calling request. A flight that has not
+     * landed within the timeout is landed without a response, so that neither this request
+     * nor those that join it later wait any longer.
+     *
+     * @param vertx     for the timer
+     * @param flight    the flight to wait for
+     * @param timeoutMs how long to wait
+     * @return the response it landed with, or null if the request has to go to the store
+     */
+    Future<Entry> waitFor(Vertx vertx, Flight flight, long timeoutMs) {
+        // The flight lands on the event loop of the request leading it; this one goes on on its own.
+        Context requestContext = vertx.getOrCreateContext();
+        Promise<Entry> landed = Promise.promise();
+        long timer = vertx.setTimer(timeoutMs, t -> land(flight, null));
+        flight.landed().onComplete(r -> requestContext.runOnContext(v -> {
+            vertx.cancelTimer(timer);
+            landed.complete(r.result());
+        }));
+        return landed.future();
+    }
+
+    @GeneratedFlagForDependentElements
+    private static ProxyResponse send(ProxyRequest req, Entry entry) {
+        ProxyResponse resp = req.response().setStatusCode(200).putHeader("ETag", entry.etag());
+        entry.headers().forEach(resp::putHeader);
+        return resp.setBody(Body.body(entry.body()));
+    }
+
+    @GeneratedFlagForDependentElements
+    private void prime(Vertx vertx, String repoName) {
+        if (!priming.add(repoName)) {
+            return;
+        }
+        vertx.executeBlocking(() -> {
+            RepoVersions.get().prime(repoName);
+            return null;
+        }, false).onComplete(r -> {
+            priming.remove(repoName);
+            if (r.failed()) {
+                logger.warn("Could not read the checksum of repo '{}': {}", repoName, r.cause().toString());
+            }
+        });
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.body().length();
+        }
+    }
+
+    private static String hash(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Passes a body through unchanged, and hands a copy of it to a consumer once it has
+     * ended. If it gets longer than the limit or fails on the way, the copy is given up
+     * instead.
+     */
+    static final class CopyingStream implements ReadStream<Buffer> {
+
+        private final ReadStream<Buffer> source;
+        private final int limit;
+        private final Consumer<Buffer> onEnd;
+        private final Runnable onGiveUp;
+        private Buffer copy = Buffer.buffer();
+
+        CopyingStream(ReadStream<Buffer> source, int limit, Consumer<Buffer> onEnd, Runnable onGiveUp) {
+            this.source = source;
+            this.limit = limit;
+            this.onEnd = onEnd;
+            this.onGiveUp = onGiveUp;
+        }
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            source.exceptionHandler(handler == null ? null : ex -> {
+                giveUp();
+                handler.handle(ex);
+            });
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            source.handler(handler == null ? null : buf -> {
+                if (copy != null) {
+                    if (copy.length() + buf.length() > limit) {
+                        giveUp();
+                    } else {
+                        copy.appendBuffer(buf);
+                    }
+                }
+                handler.handle(buf);
+            });
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            source.pause();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            source.resume();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            source.fetch(amount);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+            source.endHandler(endHandler == null ? null : v -> {
+                if (copy != null) {
+                    Buffer done = copy;
+                    copy = null;
+                    onEnd.accept(done);
+                }
+                endHandler.handle(v);
+            });
+            return this;
+        }
+
+        private void giveUp() {
+            if (copy != null) {
+                copy = null;
+                onGiveUp.run();
+            }
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Periodic consistency sweep over the per-nanopub repo fan-out (issue #139).
@@ -406,6 +407,17 @@ public class ShardReconciler {
      */
     private static boolean repairNanopub(String driverRepo, IRI npId, List<String> missing) {
         logger.warn("Nanopub <{}> is missing from shard repo(s) {}; re-loading (see issue #139)", npId, missing);
+        // A repo that lost a nanopub it acknowledged may have lost its chain head too, so
+        // the re-load must read that head from the store rather than from the cache.
+        for (String repo : missing) {
+            ReentrantLock repoLock = NanopubLoader.repoWriteLock(repo);
+            repoLock.lock();
+            try {
+                RepoChainHeadCache.get().invalidate(repo);
+            } finally {
+                repoLock.unlock();
+            }
+        }
         Nanopub np;
         try {
             np = reconstructNanopub(driverRepo, npId);
@@ -449,13 +461,7 @@ public class ShardReconciler {
                     }
                 }
             }
-            for (IRI g : graphs) {
-                try (RepositoryResult<Statement> r = conn.getStatements(null, null, null, g)) {
-                    while (r.hasNext()) {
-                        content.add(r.next());
-                    }
-                }
-            }
+            TripleStore.get().fetchGraphs(conn, graphs, content::add);
         }
         return new NanopubImpl(content);
     }
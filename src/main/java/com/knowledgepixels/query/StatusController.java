@@ -78,7 +78,8 @@ public class StatusController {
      * <p>Cheap enough to do per call: {@code getConnection()} on an
      * {@code HTTPRepository} is local and does no HTTP, as
      * {@link TripleStore#getRepoConnection(String)} notes. Every other admin-repo
-     * caller in the codebase already works this way.
+     * caller in the codebase already works this way. Only {@link #initialize()} still
+     * uses it directly; the writes go through {@link AdminWriter}, which does the same.
      *
      * @return a new connection the caller must close
      */
@@ -86,25 +87,6 @@ public class StatusController {
         return TripleStore.get().getAdminRepoConnection();
     }
 
-    /**
-     * Rolls back an active transaction, suppressing any failure to do so.
-     *
-     * <p>The transaction may no longer exist server-side (already committed, timed
-     * out, or lost to a restart), and that secondary failure must not mask the
-     * original one.
-     *
-     * @param conn the connection whose transaction should be rolled back
-     */
-    private static void rollbackQuietly(RepositoryConnection conn) {
-        try {
-            if (conn.isActive()) {
-                conn.rollback();
-            }
-        } catch (Exception rollbackException) {
-            // Deliberately ignored; the caller rethrows the original cause.
-        }
-    }
-
     /**
      * Represents the current status of the service, including the load counter.
      */
@@ -198,7 +180,7 @@ public class StatusController {
                     }
                     conn.commit();
                 } catch (Exception e) {
-                    rollbackQuietly(conn);
+                    Utils.rollbackQuietly(conn);
                     throw new RuntimeException(e);
                 }
             }
@@ -314,18 +296,11 @@ public class StatusController {
      */
     public void setRegistrySetupId(long setupId) {
         synchronized (this) {
-            try (RepositoryConnection conn = openAdminConnection()) {
-                try {
-                    conn.begin(IsolationLevels.SNAPSHOT);
-                    conn.remove(NPA.THIS_REPO, HAS_REGISTRY_SETUP_ID, null, NPA.GRAPH);
-                    conn.add(NPA.THIS_REPO, HAS_REGISTRY_SETUP_ID, vf.createLiteral(setupId), NPA.GRAPH);
-                    conn.commit();
-                    registrySetupId = setupId;
-                } catch (Exception e) {
-                    rollbackQuietly(conn);
-                    throw new RuntimeException(e);
-                }
-            }
+            AdminWriter.get().commitNow(conn -> {
+                conn.remove(NPA.THIS_REPO, HAS_REGISTRY_SETUP_ID, null, NPA.GRAPH);
+                conn.add(NPA.THIS_REPO, HAS_REGISTRY_SETUP_ID, vf.createLiteral(setupId), NPA.GRAPH);
+            });
+            registrySetupId = setupId;
         }
     }
 
@@ -347,29 +322,22 @@ public class StatusController {
      * transition re-writes the same triples (the remove/add pair is idempotent), so
      * that direction costs at most some re-processing rather than silent data loss.
      *
+     * <p>The transaction is made by {@link AdminWriter#commitNow}, so the notes and hash
+     * mappings queued until now are committed with it.
+     *
      * @param newState    the state to transition to
      * @param loadCounter the load counter to persist alongside it
      */
     void updateState(State newState, long loadCounter) {
         synchronized (this) {
-            try (RepositoryConnection conn = openAdminConnection()) {
-                try {
-                    // This singleton's synchronized methods are the only writer of these
-                    // triples, so SNAPSHOT already gives strict consistency; see
-                    // NanopubLoader#repoWriteLocks for why SERIALIZABLE is avoided.
-                    conn.begin(IsolationLevels.SNAPSHOT);
-                    conn.remove(NPA.THIS_REPO, NPA.HAS_STATUS, null, NPA.GRAPH);
-                    conn.add(NPA.THIS_REPO, NPA.HAS_STATUS, stateAsLiteral(newState), NPA.GRAPH);
-                    conn.remove(NPA.THIS_REPO, NPA.HAS_REGISTRY_LOAD_COUNTER, null, NPA.GRAPH);
-                    conn.add(NPA.THIS_REPO, NPA.HAS_REGISTRY_LOAD_COUNTER, vf.createLiteral(loadCounter), NPA.GRAPH);
-                    conn.commit();
-                    state = newState;
-                    lastCommittedCounter = loadCounter;
-                } catch (Exception e) {
-                    rollbackQuietly(conn);
-                    throw new RuntimeException(e);
-                }
-            }
+            AdminWriter.get().commitNow(conn -> {
+                conn.remove(NPA.THIS_REPO, NPA.HAS_STATUS, null, NPA.GRAPH);
+                conn.add(NPA.THIS_REPO, NPA.HAS_STATUS, stateAsLiteral(newState), NPA.GRAPH);
+                conn.remove(NPA.THIS_REPO, NPA.HAS_REGISTRY_LOAD_COUNTER, null, NPA.GRAPH);
+                conn.add(NPA.THIS_REPO, NPA.HAS_REGISTRY_LOAD_COUNTER, vf.createLiteral(loadCounter), NPA.GRAPH);
+            });
+            state = newState;
+            lastCommittedCounter = loadCounter;
         }
     }
 
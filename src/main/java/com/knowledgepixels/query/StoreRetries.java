@@ -0,0 +1,383 @@
+package com.knowledgepixels.query;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The retry policy of the loader's store operations, shared by all of them, with a
+ * circuit breaker and a retry budget per repo.
+ *
+ * <p>{@link NanopubLoader} used to carry six copies of the same loop: try, log, sleep
+ * {@link #backoffMillis}, try again, up to {@link #MAX_ATTEMPTS} times. Each copy kept its
+ * thread for all of it, up to ~11 minutes per failing task (8 attempts of up to 60 s socket
+ * timeout plus the back-off), so a single degraded {@code type_} repo could hold every
+ * {@link RepoWriteScheduler} worker while the healthy repos waited. Now:
+ * <ul>
+ *   <li>The writes the scheduler runs are retried by the scheduler itself
+ *       ({@link RepoWriteScheduler#submit(String, String, Runnable)}): a failed attempt is
+ *       put back on a timer and the worker moves on to another repo. The repo's queue
+ *       stays where it is, so its writes still happen in order.</li>
+ *   <li>Operations whose caller needs the result on the spot (the loader's reads, writes
+ *       nested in other writes) go through {@link #call} and keep their thread while they
+ *       wait, as before, but under the same limits.</li>
+ *   <li>After {@link #BREAKER_THRESHOLD} consecutive failures on a repo its breaker opens:
+ *       for {@link #BREAKER_OPEN_MS} no attempt is made on the repo, and the first one after
+ *       that is the probe that closes it again or re-opens it.</li>
+ *   <li>Each repo may retry {@link #RETRY_BUDGET} times a minute. Past that a failure is
+ *       final at once, so a repo that fails everything cannot keep tasks going for ten
+ *       minutes each; the loader's batch retry and {@link JellyNanopubLoader}'s own breaker
+ *       take it from there.</li>
+ * </ul>
+ *
+ * <p>Attempts, retries, operations given up and open breakers are counted per
+ * {@link RepoWriteScheduler#metricsGroup repo group} ({@link #snapshot}), and the latency
+ * of every attempt is passed to the listener set with {@link #onAttempt};
+ * {@link MetricsCollector} exports both.
+ */
+final class StoreRetries {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoreRetries.class);
+
+    /**
+     * Attempts per operation. The back-off before attempts 2..8 is
+     * {@link #BACKOFF_BASE_MS} with ±50 % jitter, so that the workers do not retry in
+     * lock-step after a failure they all saw (GC pause, overload spike).
+     */
+    static final int MAX_ATTEMPTS = 8;
+
+    private static final long[] BACKOFF_BASE_MS =
+            {1_000L, 2_000L, 4_000L, 8_000L, 16_000L, 32_000L, 60_000L, 60_000L};
+
+    /**
+     * Consecutive failures on a repo that open its breaker, from
+     * {@code NANOPUB_QUERY_STORE_BREAKER_THRESHOLD} (default 5).
+     */
+    static final int BREAKER_THRESHOLD = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_STORE_BREAKER_THRESHOLD", 5));
+
+    /**
+     * How long an open breaker holds attempts back, from
+     * {@code NANOPUB_QUERY_STORE_BREAKER_OPEN_SECONDS} (default 30).
+     */
+    static final long BREAKER_OPEN_MS = TimeUnit.SECONDS.toMillis(Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_STORE_BREAKER_OPEN_SECONDS", 30)));
+
+    /**
+     * Retries per repo per minute, from {@code NANOPUB_QUERY_STORE_RETRY_BUDGET} (default 20).
+     */
+    static final int RETRY_BUDGET = Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_STORE_RETRY_BUDGET", 20));
+
+    private static final long BUDGET_WINDOW_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "store-retry-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final StoreRetries instance = new StoreRetries(BREAKER_THRESHOLD, BREAKER_OPEN_MS, RETRY_BUDGET,
+            StoreRetries::backoffMillis, System::currentTimeMillis);
+
+    /**
+     * @return the policy all loader store operations follow
+     */
+    static StoreRetries get() {
+        return instance;
+    }
+
+    /**
+     * Receives the latency of each attempt.
+     */
+    @FunctionalInterface
+    interface AttemptListener {
+
+        /**
+         * @param group     the repo group, see {@link RepoWriteScheduler#metricsGroup}
+         * @param nanos     how long the attempt took
+         * @param succeeded whether it succeeded
+         */
+        void attempted(String group, long nanos, boolean succeeded);
+
+    }
+
+    /**
+     * Counts of one repo group since process start, and its repos with an open breaker.
+     *
+     * @param attempts     attempts made
+     * @param retries      attempts that were retries
+     * @param exhausted    operations given up
+     * @param openBreakers repos whose breaker is open now
+     */
+    record GroupStats(long attempts, long retries, long exhausted, int openBreakers) {
+    }
+
+    private static final class GroupCounters {
+        final LongAdder attempts = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder exhausted = new LongAdder();
+    }
+
+    /**
+     * Breaker and budget of one repo.
+     */
+    private static final class RepoState {
+        int consecutiveFailures = 0;
+        long openUntilMs = 0L;
+        boolean open = false;
+        double budget;
+        long budgetUpdatedMs;
+
+        RepoState(double budget, long nowMs) {
+            this.budget = budget;
+            this.budgetUpdatedMs = nowMs;
+        }
+    }
+
+    private final int breakerThreshold;
+    private final long breakerOpenMs;
+    private final int retryBudget;
+    private final IntToLongFunction backoff;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, RepoState> repos = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, GroupCounters> groups = new ConcurrentHashMap<>();
+    private volatile AttemptListener attemptListener = (group, nanos, succeeded) -> {
+    };
+
+    /**
+     * @param breakerThreshold consecutive failures that open a repo's breaker
+     * @param breakerOpenMs    how long an open breaker holds attempts back
+     * @param retryBudget      retries per repo per minute
+     * @param backoff          the delay in ms before the given (1-based) retry
+     * @param clock            current time in ms
+     */
+    StoreRetries(int breakerThreshold, long breakerOpenMs, int retryBudget, IntToLongFunction backoff, LongSupplier clock) {
+        this.breakerThreshold = breakerThreshold;
+        this.breakerOpenMs = breakerOpenMs;
+        this.retryBudget = retryBudget;
+        this.backoff = backoff;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the back-off in ms before the given retry: {@link #BACKOFF_BASE_MS}
+     * {@code [retry-1]} perturbed by ±50 % uniform jitter, clamped to be non-negative.
+     *
+     * @param retry 1-based retry number
+     * @return the delay in ms
+     */
+    static long backoffMillis(int retry) {
+        long base = BACKOFF_BASE_MS[Math.min(retry - 1, BACKOFF_BASE_MS.length - 1)];
+        long jitter = ThreadLocalRandom.current().nextLong(base + 1) - base / 2;
+        return Math.max(0L, base + jitter);
+    }
+
+    /**
+     * Runs an operation on the calling thread, retrying it under this policy.
+     *
+     * @param repoName  the repo the operation is on, for its breaker and budget
+     * @param what      what the operation does, for the log, e.g. {@code "load of nanopub <X> to repo 'meta'"}
+     * @param operation one attempt; fails by throwing
+     * @param <T>       result type
+     * @return the result of the first successful attempt
+     * @throws RuntimeException if the operation was given up
+     */
+    <T> T call(String repoName, String what, Supplier<T> operation) {
+        for (int attempt = 1; ; attempt++) {
+            sleep(millisUntilOpen(repoName));
+            long start = System.nanoTime();
+            try {
+                T result = operation.get();
+                succeeded(repoName, attempt, System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException ex) {
+                long delay = failed(repoName, what, attempt, System.nanoTime() - start, ex);
+                if (delay < 0) {
+                    throw gaveUp(what, attempt, ex);
+                }
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * {@link #call} for operations without a result.
+     */
+    void run(String repoName, String what, Runnable operation) {
+        call(repoName, what, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param repoName a repo
+     * @return ms until its breaker lets an attempt through; 0 if it does now
+     */
+    long millisUntilOpen(String repoName) {
+        RepoState state = repos.get(repoName);
+        if (state == null) {
+            return 0L;
+        }
+        synchronized (state) {
+            return Math.max(0L, state.openUntilMs - clock.getAsLong());
+        }
+    }
+
+    /**
+     * Records a successful attempt, closing the repo's breaker.
+     *
+     * @param repoName the repo
+     * @param attempt  1-based attempt number
+     * @param nanos    how long the attempt took
+     */
+    void succeeded(String repoName, int attempt, long nanos) {
+        String group = RepoWriteScheduler.metricsGroup(repoName);
+        count(group, attempt);
+        RepoState state = repos.get(repoName);
+        if (state != null) {
+            synchronized (state) {
+                if (state.open) {
+                    logger.info("Store breaker of repo '{}' closed", repoName);
+                }
+                state.consecutiveFailures = 0;
+                state.openUntilMs = 0L;
+                state.open = false;
+            }
+        }
+        attemptListener.attempted(group, nanos, true);
+    }
+
+    /**
+     * Records a failed attempt and decides whether to retry.
+     *
+     * @param repoName the repo
+     * @param what     what the operation does, for the log
+     * @param attempt  1-based number of the attempt that failed
+     * @param nanos    how long it took
+     * @param cause    why it failed
+     * @return ms to wait before the next attempt, or -1 to give up
+     */
+    long failed(String repoName, String what, int attempt, long nanos, RuntimeException cause) {
+        String group = RepoWriteScheduler.metricsGroup(repoName);
+        count(group, attempt);
+        attemptListener.attempted(group, nanos, false);
+        long now = clock.getAsLong();
+        RepoState state = repos.computeIfAbsent(repoName, k -> new RepoState(retryBudget, now));
+        long delay;
+        synchronized (state) {
+            state.consecutiveFailures++;
+            if (state.consecutiveFailures >= breakerThreshold) {
+                if (!state.open) {
+                    logger.warn("Store breaker of repo '{}' opened after {} consecutive failures", repoName, state.consecutiveFailures);
+                }
+                state.open = true;
+                state.openUntilMs = now + breakerOpenMs;
+            }
+            if (attempt >= MAX_ATTEMPTS) {
+                delay = -1;
+            } else {
+                state.budget = Math.min(retryBudget, state.budget
+                                                     + (double) (now - state.budgetUpdatedMs) * retryBudget / BUDGET_WINDOW_MS);
+                state.budgetUpdatedMs = now;
+                if (state.budget < 1) {
+                    logger.warn("Retry budget of repo '{}' is used up; not retrying {}", repoName, what);
+                    delay = -1;
+                } else {
+                    state.budget -= 1;
+                    delay = Math.max(backoff.applyAsLong(attempt), state.openUntilMs - now);
+                }
+            }
+        }
+        if (delay < 0) {
+            groupCounters(group).exhausted.increment();
+        } else {
+            logger.info("Retrying {} in {} ms (attempt {}/{})...", what, delay, attempt, MAX_ATTEMPTS);
+        }
+        return delay;
+    }
+
+    /**
+     * @param what    what the operation does
+     * @param attempt attempts made
+     * @param cause   the last failure
+     * @return the exception reporting that the operation was given up
+     */
+    static RuntimeException gaveUp(String what, int attempt, RuntimeException cause) {
+        return new RuntimeException("Giving up on " + what + " after " + attempt + " attempt(s)", cause);
+    }
+
+    /**
+     * Runs a task after a delay on the policy's timer thread. For handing retries back to
+     * their executor; the task must not do store I/O itself.
+     *
+     * @param task    the task
+     * @param delayMs the delay
+     */
+    static void schedule(Runnable task, long delayMs) {
+        timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets what to tell about every attempt.
+     *
+     * @param listener called on the attempting thread
+     */
+    void onAttempt(AttemptListener listener) {
+        attemptListener = listener;
+    }
+
+    /**
+     * @return figures for every repo group that has had an attempt, by group
+     */
+    Map<String, GroupStats> snapshot() {
+        Map<String, Integer> open = new TreeMap<>();
+        repos.forEach((repoName, state) -> {
+            boolean isOpen;
+            synchronized (state) {
+                isOpen = state.open;
+            }
+            if (isOpen) {
+                open.merge(RepoWriteScheduler.metricsGroup(repoName), 1, Integer::sum);
+            }
+        });
+        Map<String, GroupStats> result = new TreeMap<>();
+        groups.forEach((group, c) -> result.put(group, new GroupStats(c.attempts.sum(), c.retries.sum(),
+                c.exhausted.sum(), open.getOrDefault(group, 0))));
+        return result;
+    }
+
+    private void count(String group, int attempt) {
+        GroupCounters c = groupCounters(group);
+        c.attempts.increment();
+        if (attempt > 1) {
+            c.retries.increment();
+        }
+    }
+
+    private GroupCounters groupCounters(String group) {
+        return groups.computeIfAbsent(group, k -> new GroupCounters());
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry", ex);
+        }
+    }
+
+}
@@ -1,38 +1,60 @@
 package com.knowledgepixels.query;
 
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import com.google.common.collect.Iterables;
 import com.google.common.hash.Hashing;
 import org.eclipse.rdf4j.common.transaction.IsolationLevels;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+import org.eclipse.rdf4j.repository.config.RepositoryConfigUtil;
 import org.eclipse.rdf4j.repository.http.HTTPRepository;
+import org.eclipse.rdf4j.repository.manager.LocalRepositoryManager;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
 import org.nanopub.NanopubUtils;
 import org.nanopub.vocabulary.NPA;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Class to access the database in the form of triple stores.
@@ -48,7 +70,106 @@ public class TripleStore {
 
     private static final Logger logger = LoggerFactory.getLogger(TripleStore.class);
 
-    private final Map<String, Repository> repositories = new LinkedHashMap<>();
+    /**
+     * Hard cap on cached repository handles. The cap is load-bearing: each cached handle
+     * keeps an LMDB environment alive on the RDF4J server (in-memory cache, mmap pages,
+     * native memory), so exceeding it by much risks server-side OOM.
+     */
+    static final int MAX_CACHED_REPOS = 100;
+
+    /**
+     * Most recently used handles that are never evicted, whatever their score: the
+     * admission window of W-TinyLFU. A repo just opened has had no time to build up a
+     * frequency and would otherwise be the first victim.
+     */
+    static final int ADMISSION_WINDOW = Math.max(1, MAX_CACHED_REPOS / 20);
+
+    /**
+     * How many of the most frequently used repos are pinned on top of
+     * {@link #PINNED_REPO_NAMES}, from {@code NANOPUB_QUERY_REPO_CACHE_HOT_PINS} (default
+     * 10). Only repos with a frequency of at least {@link #HOT_MIN_FREQUENCY} qualify.
+     */
+    static final int HOT_PINS = Math.max(0, Utils.getEnvInt("NANOPUB_QUERY_REPO_CACHE_HOT_PINS", 10));
+
+    static final int HOT_MIN_FREQUENCY = RepoFrequencySketch.MAX_COUNT / 2;
+
+    /** Assumed re-open time of a repo this process has not opened yet. */
+    static final long DEFAULT_REOPEN_COST_MS = 100;
+
+    /** Handle-cache counters since process start, exported by {@link MetricsCollector}. */
+    static final AtomicLong CACHE_HITS = new AtomicLong();
+    static final AtomicLong CACHE_MISSES = new AtomicLong();
+    static final AtomicLong CACHE_EVICTIONS = new AtomicLong();
+
+    /**
+     * A cached repository together with the time it was last handed out, which
+     * {@link #evictIdleRepos()} uses for the admission window and to break ties.
+     */
+    static final class RepoHandle {
+
+        final Repository repo;
+        volatile long lastAccessMs;
+
+        RepoHandle(Repository repo, long lastAccessMs) {
+            this.repo = repo;
+            this.lastAccessMs = lastAccessMs;
+        }
+
+    }
+
+    /**
+     * The live handle cache. Every query and every loader write looks a repo up here, so
+     * a hit takes no lock: it is a map read plus a volatile write of the access time.
+     * A miss goes through {@link #opening}. A handle is published here once its repo has
+     * been created and initialised, so no thread ever sees a half-initialised one.
+     */
+    private final ConcurrentHashMap<String, RepoHandle> repositories = new ConcurrentHashMap<>();
+
+    /** Recent lookups per repo name, cached or not. */
+    private final RepoFrequencySketch accessFrequency = new RepoFrequencySketch(4096);
+
+    /**
+     * How long the last open of each repo took (create-or-409, init, first connection),
+     * in ms: what evicting it would cost once its parked handle has been reaped.
+     */
+    private final ConcurrentHashMap<String, Long> reopenCostMs = new ConcurrentHashMap<>();
+
+    /**
+     * Repos being opened, by name. The first thread to miss on a name puts a future here
+     * and opens the repo; every other request for that name waits on the same future
+     * instead of sending a second create. Requests for other repos are not held up. The
+     * evictor also claims a name here while it parks the handle, so that an opening of
+     * that name cannot overlap with the parking; its future completes with {@code null},
+     * and whoever waited on it tries again.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<RepoHandle>> opening = new ConcurrentHashMap<>();
+
+    /**
+     * Threads for {@link #prewarmRepositories}, from {@code NANOPUB_QUERY_REPO_PREWARM_THREADS}
+     * (default 2). Each creates one repo at a time: a PUT, an init and a first write.
+     */
+    static final int PREWARM_THREADS = Math.max(1, Utils.getEnvInt("NANOPUB_QUERY_REPO_PREWARM_THREADS", 2));
+
+    private static final ExecutorService prewarmExecutor = Executors.newFixedThreadPool(PREWARM_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "repo-prewarm-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Held by whichever thread runs {@link #runMaintenance}; the others skip it rather
+     * than queue behind it.
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private volatile long lastMaintenanceMs = 0;
+
+    /** How often a cache hit may trigger maintenance; misses always try. */
+    private static final long MAINTENANCE_INTERVAL_MS = 1000;
 
     /**
      * Per-repo open-connection counter, read by the eviction loop to skip repos that
@@ -68,10 +189,11 @@ public class TripleStore {
      * can momentarily read zero between operations, or undercount a result set still
      * being streamed — we park it here and only shut it down from
      * {@link #reapPendingShutdowns()} once it has stayed idle for {@link #SHUTDOWN_GRACE_MS}.
-     * Guarded by the {@code this} monitor, like {@link #repositories}.
+     * Entries are only ever taken out with an atomic {@code remove}, so a handle is either
+     * resurrected or shut down, never both.
      */
-    private final Map<String, Repository> pendingShutdown = new LinkedHashMap<>();
-    private final Map<String, Long> pendingShutdownSince = new HashMap<>();
+    private final ConcurrentHashMap<String, RepoHandle> pendingShutdown = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> pendingShutdownSince = new ConcurrentHashMap<>();
 
     /** Idle grace period before a parked handle is actually shut down. */
     private static final long SHUTDOWN_GRACE_MS = 60_000;
@@ -82,10 +204,18 @@ public class TripleStore {
      * the spaces/view UI, so they churn through the {@code cap 100} LRU fastest and were
      * the handles most exposed to the shutdown-during-use race. Pinning a handful of
      * them is cheap (a few always-warm LMDB envs) and removes the thrash on exactly the
-     * repos that wedge.
+     * repos that wedge. Other repos with that kind of traffic are pinned while it lasts,
+     * see {@link #HOT_PINS}.
      */
     private static final Set<String> PINNED_REPO_NAMES = buildPinnedRepoNames();
 
+    /**
+     * @return the names of the repos that are never evicted
+     */
+    static Set<String> getPinnedRepoNames() {
+        return PINNED_REPO_NAMES;
+    }
+
     private static Set<String> buildPinnedRepoNames() {
         Set<String> names = new HashSet<>(Arrays.asList("admin", "empty", "meta", "full", "spaces", "last30d"));
         for (String typeIri : new String[] {
@@ -96,9 +226,62 @@ public class TripleStore {
         return Collections.unmodifiableSet(names);
     }
 
+    /**
+     * Repo classes whose responses the RDF4J server sends in its binary formats (BinaryRDF
+     * for statements, binary SPARQL results for tuple queries), from
+     * {@code NANOPUB_QUERY_BINARY_TRANSPORT}: {@code all} (default), {@code none}, or a
+     * comma-separated list of {@link #repoClass(String) repo classes} such as
+     * {@code meta,full,type}. Repos not covered keep the RDF4J client's defaults.
+     */
+    private static final Set<String> BINARY_TRANSPORT_CLASSES = parseRepoClasses(Utils.getEnvString("NANOPUB_QUERY_BINARY_TRANSPORT", "all"));
+
+    private static Set<String> parseRepoClasses(String value) {
+        Set<String> classes = new HashSet<>();
+        for (String c : value.split(",")) {
+            if (!c.isBlank()) {
+                classes.add(c.trim());
+            }
+        }
+        return Collections.unmodifiableSet(classes);
+    }
+
+    /**
+     * @param repoName repository name
+     * @return the repo's class: its name up to the first underscore, e.g. {@code type} for
+     * {@code type_<hash>}, or the whole name for {@code meta}, {@code full} and the like
+     */
+    static String repoClass(String repoName) {
+        int i = repoName.indexOf('_');
+        return i < 0 ? repoName : repoName.substring(0, i);
+    }
+
+    /**
+     * @param repoName repository name
+     * @return whether the repo's handle asks for the binary formats
+     */
+    static boolean usesBinaryTransport(String repoName) {
+        return BINARY_TRANSPORT_CLASSES.contains("all") || BINARY_TRANSPORT_CLASSES.contains(repoClass(repoName));
+    }
+
+    /**
+     * Value of {@code ENDPOINT_TYPE} that keeps the repos in this process instead of on an
+     * RDF4J server: each repo is a {@code SailRepository} over the store {@link #repoConfig}
+     * describes, under the directory {@code NANOPUB_QUERY_EMBEDDED_DATA_DIR} (default
+     * {@code data/repositories}). Statement adds and queries then skip the HTTP hop and the
+     * serialization on both ends, and {@link MainVerticle} answers {@code /repo/*} itself
+     * through {@link EmbeddedSparqlEndpoint}. Meant for single-node deployments and for
+     * running locally without the rdf4j container.
+     */
+    public static final String EMBEDDED_ENDPOINT_TYPE = "embedded";
+
     private String endpointBase = null;
     private String endpointType = null;
 
+    /**
+     * The repos in embedded mode, or null when they live on an RDF4J server.
+     */
+    private LocalRepositoryManager embeddedRepos = null;
+
     private static TripleStore tripleStoreInstance;
 
     /**
@@ -126,95 +309,231 @@ public class TripleStore {
         endpointBase = System.getenv("ENDPOINT_BASE");
         logger.info("Endpoint base: {}", endpointBase);
         endpointType = System.getenv("ENDPOINT_TYPE");
+        if (EMBEDDED_ENDPOINT_TYPE.equals(endpointType)) {
+            File dataDir = new File(Utils.getEnvString("NANOPUB_QUERY_EMBEDDED_DATA_DIR", "data/repositories"));
+            logger.info("Embedded repositories in: {}", dataDir.getAbsolutePath());
+            embeddedRepos = new LocalRepositoryManager(dataDir);
+            embeddedRepos.init();
+        }
 
         getRepository("empty");  // Make sure empty repo exists
     }
 
     /**
-     * Shared HTTP client for all RDF4J traffic. Apache HttpClient treats all requests
-     * to a given host + port + protocol as one "route", so every `HTTPRepository` in
-     * this process funnels through this single client's connection pool — plus the
-     * two ad-hoc users in {@link #createRepo} and {@link #getRepositoryNames}, which
-     * have been consolidated onto this client too.
+     * Pooled HTTP connections for the loader and other {@link HttpPools.Workload#INGEST
+     * ingest} traffic; since every repo lives on the same RDF4J server, this is the limit on
+     * its concurrent requests to the store. {@link RepoWriteScheduler} sizes its workers
+     * against it.
+     */
+    static final int MAX_CONNECTIONS_PER_ROUTE = HttpPools.Workload.INGEST.budget;
+
+    /**
+     * Shared HTTP client for all RDF4J traffic: every `HTTPRepository` in this process,
+     * plus the two ad-hoc users in {@link #createRepo} and {@link #getRepositoryNames}.
+     * It routes each request to the connection pool of its workload; see
+     * {@link HttpPools} for the budgets and timeouts.
      *
-     * <p>The Apache defaults (maxPerRoute=2 / maxTotal=20) throttle four concurrent
+     * <p>The Apache defaults (maxPerRoute=2 / maxTotal=20) throttled four concurrent
      * loader-pool threads down to two-way parallelism at the HTTP layer — invisible
-     * client-side serialisation the code is actively fighting. Raised to 10 / 40
-     * here: comfortable headroom for the 4-thread loader pool plus admin-repo
-     * transactions and the metrics tick, small enough to be a conservative first
-     * step with room to grow later.
-     *
-     * <p>Timeouts set via {@code setDefaultRequestConfig}:
-     * <ul>
-     *   <li><b>socket-read = 60 s</b> — an individual HTTP response body must arrive
-     *       within this window. Healthy per-nanopub commits complete in milliseconds,
-     *       so 60 s is pure safety margin; its job is to turn the silent "threads
-     *       parked forever inside a commit" wedge (observed in the April test) into
-     *       a recoverable error that feeds the existing retry path.</li>
-     *   <li><b>connection-request = 30 s</b> — a caller waiting for a pooled connection
-     *       gives up after this long. Prevents the invisible self-deadlock in
-     *       {@code loadInvalidateStatements} (one thread holding N connections while
-     *       waiting for an (N+1)th) from hanging forever.</li>
-     *   <li><b>connect = 10 s</b> — kills TCP handshakes that stall. Generous but
-     *       bounded.</li>
-     * </ul>
-     * Without these defaults, HttpClient uses {@code -1} everywhere, which means
-     * "wait forever".
-     */
-    private final CloseableHttpClient httpclient = HttpClients.custom()
-            .setMaxConnPerRoute(10)
-            .setMaxConnTotal(40)
-            .setDefaultRequestConfig(RequestConfig.custom()
-                    .setSocketTimeout(60_000)
-                    .setConnectionRequestTimeout(30_000)
-                    .setConnectTimeout(10_000)
-                    .build())
-            // Hygiene: kill pooled connections that RDF4J has quietly closed server-side
-            // before we try to reuse them. Without this, a half-broken connection is
-            // only noticed when the next request fails, spending the full socket-read
-            // timeout discovering it.
-            .evictExpiredConnections()
-            .evictIdleConnections(30, TimeUnit.SECONDS)
-            .build();
+     * client-side serialisation the code was actively fighting — which is why the ingest
+     * pool alone has {@link #MAX_CONNECTIONS_PER_ROUTE}.
+     */
+    private final CloseableHttpClient httpclient = HttpPools.get().client();
 
     @GeneratedFlagForDependentElements
     Repository getRepository(String name) {
-        synchronized (this) {
-            // Reap parked handles that have now been idle long enough, even when we're
-            // not over cap, so a burst that parked some repos doesn't leave them warm
-            // forever if load then drops. Cheap: early-returns when nothing is parked.
-            reapPendingShutdowns();
-            if (repositories.size() > 100) {
-                evictIdleRepos();
+        RepoHandle handle = repositories.get(name);
+        accessFrequency.increment(name);
+        (handle != null ? CACHE_HITS : CACHE_MISSES).incrementAndGet();
+        while (handle == null) {
+            // Null when the evictor held the name meanwhile; by now it is parked or gone.
+            handle = join(openRepository(name, Runnable::run));
+        }
+        long now = nowMillis();
+        handle.lastAccessMs = now;
+        if (now - lastMaintenanceMs >= MAINTENANCE_INTERVAL_MS) {
+            // Reap parked handles that have now been idle long enough, even when nothing
+            // misses, so a burst that parked some repos doesn't leave them warm forever
+            // if load then drops.
+            runMaintenance();
+        }
+        return handle.repo;
+    }
+
+    /**
+     * Returns the repository for the given name without blocking: a cached one at once,
+     * otherwise one opened on the pre-warm threads.
+     *
+     * @param name repository name
+     * @return the repository, once it is open
+     */
+    @GeneratedFlagForDependentElements
+    CompletableFuture<Repository> getRepositoryAsync(String name) {
+        // Counted like getRepository, so that repos reached only this way are not scored
+        // as unused by the evictor.
+        accessFrequency.increment(name);
+        return repositoryAsync(name);
+    }
+
+    @GeneratedFlagForDependentElements
+    private CompletableFuture<Repository> repositoryAsync(String name) {
+        RepoHandle handle = repositories.get(name);
+        if (handle != null) {
+            CACHE_HITS.incrementAndGet();
+            handle.lastAccessMs = nowMillis();
+            return CompletableFuture.completedFuture(handle.repo);
+        }
+        CACHE_MISSES.incrementAndGet();
+        return openRepository(name, prewarmExecutor)
+                .thenCompose(h -> h != null ? CompletableFuture.completedFuture(h.repo) : repositoryAsync(name));
+    }
+
+    /**
+     * Opens the given repositories in the background, creating those that do not exist
+     * yet, so that later writes to them find them cached. Names that are cached or already
+     * being opened cost nothing.
+     *
+     * @param names repository names
+     * @return completes when all of them are open
+     */
+    public CompletableFuture<Void> prewarmRepositories(Collection<String> names) {
+        List<CompletableFuture<Repository>> futures = new ArrayList<>();
+        for (String name : names) {
+            if (!repositories.containsKey(name)) {
+                futures.add(getRepositoryAsync(name));
             }
-            if (repositories.containsKey(name)) {
-                // Move to the end of the list:
-                Repository repo = repositories.remove(name);
-                repositories.put(name, repo);
-            } else if (pendingShutdown.containsKey(name)) {
-                // Needed again before its grace period elapsed: resurrect the parked
-                // handle instead of shutting it down and re-creating, avoiding both the
-                // re-init round-trip and any shutdown/use race.
-                Repository repo = pendingShutdown.remove(name);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * The miss path: joins the opening of {@code name} already in flight, or starts one.
+     * Resurrecting a parked handle happens right here; creating the repo runs on
+     * {@code executor}, which for a blocking caller is the calling thread itself.
+     *
+     * @return the opened handle, or {@code null} if the evictor held the name and the
+     * caller should look again
+     */
+    private CompletableFuture<RepoHandle> openRepository(String name, Executor executor) {
+        CompletableFuture<RepoHandle> opened = new CompletableFuture<>();
+        CompletableFuture<RepoHandle> inFlight = opening.putIfAbsent(name, opened);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        RepoHandle handle = repositories.get(name);
+        if (handle == null) {
+            // Needed again before its grace period elapsed: resurrect the parked
+            // handle instead of shutting it down and re-creating, avoiding both the
+            // re-init round-trip and any shutdown/use race.
+            handle = pendingShutdown.remove(name);
+            if (handle != null) {
                 pendingShutdownSince.remove(name);
-                repositories.put(name, repo);
-            } else {
-                Repository repository = null;
-                if (endpointType == null || endpointType.equals("rdf4j")) {
-                    HTTPRepository hr = new HTTPRepository(endpointBase + "repositories/" + name);
-                    hr.setHttpClient(httpclient);
-                    repository = hr;
-//			} else if (endpointType.equals("virtuoso")) {
-//				repository = new VirtuosoRepository(endpointBase + name, username, password);
-                } else {
-                    throw new RuntimeException("Unknown repository type: " + endpointType);
+                handle.lastAccessMs = nowMillis();
+                repositories.put(name, handle);
+            }
+        }
+        if (handle != null) {
+            finishOpening(name, opened, handle, null);
+            runMaintenance();
+            return opened;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    long started = System.nanoTime();
+                    Repository repo = createRepository(name);
+                    reopenCostMs.put(name, Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+                    RepoHandle created = new RepoHandle(repo, nowMillis());
+                    repositories.put(name, created);
+                    finishOpening(name, opened, created, null);
+                } catch (Throwable t) {
+                    finishOpening(name, opened, null, t);
                 }
-                repositories.put(name, repository);
-                createRepo(name);
-                getRepoConnection(name).close();
+                runMaintenance();
+            });
+        } catch (RejectedExecutionException ex) {
+            finishOpening(name, opened, null, ex);
+        }
+        return opened;
+    }
+
+    private void finishOpening(String name, CompletableFuture<RepoHandle> opened, RepoHandle handle, Throwable failure) {
+        opening.remove(name, opened);
+        if (failure != null) {
+            opened.completeExceptionally(failure);
+        } else {
+            opened.complete(handle);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (ex.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates the repo on the server, or in embedded mode locally, if needed and initialises
+     * a new handle for it. Package-private so tests can stand in for the remote calls.
+     */
+    @GeneratedFlagForDependentElements
+    Repository createRepository(String name) {
+        Repository repository;
+        if (endpointType == null || endpointType.equals("rdf4j")) {
+            HTTPRepository hr = new HTTPRepository(endpointBase + "repositories/" + name);
+            hr.setHttpClient(httpclient);
+            if (usesBinaryTransport(name)) {
+                hr.setPreferredRDFFormat(RDFFormat.BINARY);
+                hr.setPreferredTupleQueryResultFormat(TupleQueryResultFormat.BINARY);
             }
-            return repositories.get(name);
+            repository = hr;
+        } else if (endpointType.equals(EMBEDDED_ENDPOINT_TYPE)) {
+            repository = openEmbeddedRepo(name);
+//		} else if (endpointType.equals("virtuoso")) {
+//			repository = new VirtuosoRepository(endpointBase + name, username, password);
+        } else {
+            throw new RuntimeException("Unknown repository type: " + endpointType);
         }
+        if (embeddedRepos == null) {
+            createRepo(name, repository);
+        }
+        repository.getConnection().close();
+        return repository;
+    }
+
+    /**
+     * The embedded counterpart of {@link #createRepo}: adds the repo's config to
+     * {@link #embeddedRepos} if it is not there yet, and returns the initialised repo.
+     */
+    @GeneratedFlagForDependentElements
+    private Repository openEmbeddedRepo(String repoName) {
+        if (!repoName.equals(ADMIN_REPO)) {
+            getRepository(ADMIN_REPO);  // make sure admin repo is loaded first
+        }
+        boolean isNew = !embeddedRepos.hasRepositoryConfig(repoName);
+        if (isNew) {
+            try {
+                Model config = Rio.parse(new StringReader(repoConfig(repoName)), RDFFormat.TURTLE);
+                embeddedRepos.addRepositoryConfig(RepositoryConfigUtil.getRepositoryConfig(config, repoName));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        // Re-creates the repo from its config if a handle evicted earlier was shut down.
+        Repository repository = embeddedRepos.getRepository(repoName);
+        if (isNew) {
+            initNewRepo(repoName, repository);
+        }
+        repositoryNames.add(repoName);
+        return repository;
     }
 
     /**
@@ -225,18 +544,22 @@ public class TripleStore {
      */
     @GeneratedFlagForDependentElements
     public RepositoryConnection getRepoConnection(String name) {
-        // The increment has to happen under the same monitor that guards eviction,
-        // otherwise another thread could evict this repo in the window between
-        // getRepository() returning and the counter going above zero. getConnection()
-        // on HTTPRepository is local (it doesn't do HTTP), so holding the lock here
-        // is cheap.
-        synchronized (this) {
+        while (true) {
             Repository repo = getRepository(name);
             if (repo == null) {
                 return null;
             }
             AtomicInteger counter = openConnections.computeIfAbsent(name, k -> new AtomicInteger());
             counter.incrementAndGet();
+            // Eviction only unlinks a handle whose counter reads zero, and it may have
+            // done so between getRepository() returning and the increment above. If the
+            // handle is no longer the cached one, undo and go round again, which
+            // resurrects it.
+            RepoHandle cached = repositories.get(name);
+            if (cached == null || cached.repo != repo) {
+                counter.decrementAndGet();
+                continue;
+            }
             try {
                 return new CountingRepositoryConnection(repo, repo.getConnection(), counter);
             } catch (Throwable t) {
@@ -250,11 +573,43 @@ public class TripleStore {
     }
 
     /**
-     * Evicts the eldest cache entries until either the size is back within the
-     * 100-entry cap or every remaining entry is pinned or has an open connection.
-     * The cap is load-bearing — each cached entry keeps an LMDB environment alive
-     * on the RDF4J server (in-memory cache, mmap pages, native memory), so
-     * exceeding it by much risks server-side OOM.
+     * Current time in millis. A seam so tests can drive the eviction grace period
+     * deterministically instead of sleeping.
+     */
+    long nowMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Reaps parked handles and evicts down to {@link #MAX_CACHED_REPOS}. Runs on the
+     * requesting thread but never makes it wait: if another thread is already at it,
+     * this returns at once.
+     */
+    @GeneratedFlagForDependentElements
+    private void runMaintenance() {
+        if (!maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            lastMaintenanceMs = nowMillis();
+            evictIdleRepos();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts cache entries until either the size is back within {@link #MAX_CACHED_REPOS}
+     * or every remaining entry is protected or has an open connection.
+     *
+     * <p>Victims are chosen W-TinyLFU style rather than in plain LRU order, because
+     * evicting is not free: once the parked handle is reaped, the next request pays the
+     * create-409 and {@code init()} round trips again. Each idle handle is scored by its
+     * recent traffic from {@link #accessFrequency} times its measured
+     * {@link #reopenCostMs re-open cost}, and the lowest score goes first, the least
+     * recently used on a tie. Protected are the {@link #PINNED_REPO_NAMES}, the
+     * {@link #HOT_PINS} most frequently used repos (so heavily federated type repos stay
+     * warm without being listed), and the {@link #ADMISSION_WINDOW} most recently used.
      *
      * <p>Eviction is <em>non-destructive</em>: it only unlinks the handle from the
      * live cache into {@link #pendingShutdown}; it does <strong>not</strong> call
@@ -268,40 +623,73 @@ public class TripleStore {
      * The cap is still enforced immediately, because unlinked handles leave
      * {@link #repositories} right away.
      */
-    /**
-     * Current time in millis. A seam so tests can drive the eviction grace period
-     * deterministically instead of sleeping.
-     */
-    long nowMillis() {
-        return System.currentTimeMillis();
-    }
-
     @GeneratedFlagForDependentElements
     void evictIdleRepos() {
         reapPendingShutdowns();
-        List<String> skipped = new ArrayList<>();
-        long now = nowMillis();
-        Iterator<Entry<String, Repository>> iter = repositories.entrySet().iterator();
-        while (iter.hasNext() && repositories.size() > 100) {
-            Entry<String, Repository> e = iter.next();
+        if (repositories.size() <= MAX_CACHED_REPOS) {
+            return;
+        }
+        // Access times and frequencies keep changing under concurrent hits; rank on a
+        // snapshot of them.
+        record Candidate(String name, RepoHandle handle, long lastAccessMs, int frequency, long score) {
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (Entry<String, RepoHandle> e : repositories.entrySet()) {
             String name = e.getKey();
-            if (PINNED_REPO_NAMES.contains(name)) {
-                skipped.add(name);
+            int frequency = accessFrequency.frequency(name);
+            long score = (1L + frequency) * reopenCostMs.getOrDefault(name, DEFAULT_REOPEN_COST_MS);
+            candidates.add(new Candidate(name, e.getValue(), e.getValue().lastAccessMs, frequency, score));
+        }
+        Set<String> protectedNames = new HashSet<>(PINNED_REPO_NAMES);
+        candidates.sort(Comparator.comparingLong(Candidate::lastAccessMs).reversed());
+        for (Candidate c : candidates.subList(0, Math.min(ADMISSION_WINDOW, candidates.size()))) {
+            protectedNames.add(c.name());
+        }
+        candidates.sort(Comparator.comparingInt(Candidate::frequency).reversed());
+        for (Candidate c : candidates.subList(0, Math.min(HOT_PINS, candidates.size()))) {
+            if (c.frequency() >= HOT_MIN_FREQUENCY) {
+                protectedNames.add(c.name());
+            }
+        }
+        candidates.sort(Comparator.comparingLong(Candidate::score).thenComparingLong(Candidate::lastAccessMs));
+
+        List<String> active = new ArrayList<>();
+        long now = nowMillis();
+        for (Candidate c : candidates) {
+            if (repositories.size() <= MAX_CACHED_REPOS) {
+                break;
+            }
+            String name = c.name();
+            if (protectedNames.contains(name)) {
                 continue;
             }
-            AtomicInteger active = openConnections.get(name);
-            if (active != null && active.get() > 0) {
-                skipped.add(name);
+            AtomicInteger open = openConnections.get(name);
+            if (open != null && open.get() > 0) {
+                active.add(name);
                 continue;
             }
-            iter.remove();
-            // Park for deferred shutdown rather than shutting down in this hot path.
-            pendingShutdown.put(name, e.getValue());
-            pendingShutdownSince.put(name, now);
+            // Claim the name, so a concurrent miss on it finds the handle either still
+            // cached or already parked, and does not create a second one. If it is being
+            // opened right now, it is in use: leave it.
+            CompletableFuture<RepoHandle> claim = new CompletableFuture<>();
+            if (opening.putIfAbsent(name, claim) != null) {
+                continue;
+            }
+            try {
+                if (repositories.remove(name, c.handle())) {
+                    // Park for deferred shutdown rather than shutting down in this hot path.
+                    pendingShutdownSince.put(name, now);
+                    pendingShutdown.put(name, c.handle());
+                    CACHE_EVICTIONS.incrementAndGet();
+                }
+            } finally {
+                opening.remove(name, claim);
+                claim.complete(null);
+            }
         }
-        if (!skipped.isEmpty()) {
-            logger.warn("Skipped eviction for {} active/pinned repo(s); cache size is now {} (cap 100). Active names: {}",
-                    skipped.size(), repositories.size(), skipped);
+        if (repositories.size() > MAX_CACHED_REPOS) {
+            logger.warn("Could not evict down to the cap: cache size is {} (cap {}), {} protected, active: {}",
+                    repositories.size(), MAX_CACHED_REPOS, protectedNames.size(), active);
         }
     }
 
@@ -311,26 +699,23 @@ public class TripleStore {
      * period keeps eviction from killing a server-side transaction whose app-side
      * connection count merely dipped to zero between operations, or that is still
      * streaming a result set. A handle re-requested before it is reaped is resurrected
-     * in {@link #getRepository(String)} and never shut down. Must be called under the
-     * {@code this} monitor.
+     * in {@link #getRepository(String)} and never shut down.
      */
     void reapPendingShutdowns() {
         if (pendingShutdown.isEmpty()) {
             return;
         }
         long now = nowMillis();
-        Iterator<Entry<String, Repository>> iter = pendingShutdown.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<String, Repository> e = iter.next();
+        for (Entry<String, RepoHandle> e : pendingShutdown.entrySet()) {
             String name = e.getKey();
             AtomicInteger active = openConnections.get(name);
             Long since = pendingShutdownSince.get(name);
-            if ((active == null || active.get() == 0) && since != null && now - since >= SHUTDOWN_GRACE_MS) {
-                iter.remove();
+            if ((active == null || active.get() == 0) && since != null && now - since >= SHUTDOWN_GRACE_MS
+                    && pendingShutdown.remove(name, e.getValue())) {
                 pendingShutdownSince.remove(name);
                 logger.info("Shutting down idle repo (deferred): {}", name);
                 try {
-                    e.getValue().shutDown();
+                    e.getValue().repo.shutDown();
                 } catch (Exception ex) {
                     logger.warn("Deferred shutdown failed for repo '{}': {}", name, ex.getMessage());
                 }
@@ -369,18 +754,16 @@ public class TripleStore {
 
     }
 
-    @GeneratedFlagForDependentElements
-    private void createRepo(String repoName) {
-        if (!repoName.equals(ADMIN_REPO)) {
-            getRepository(ADMIN_REPO);  // make sure admin repo is loaded first
-        }
-        // Uses the shared this.httpclient rather than a per-call client so it inherits
-        // the configured pool sizes (and, once change 1 of the fix plan lands, the
-        // socket/connection-request timeouts).
-        try {
-            //logger.info("Trying to creating repo " + name);
-
-            // TODO new syntax somehow doesn't work for the Lucene case:
+    /**
+     * The RDF4J repository config, in Turtle, of the given repo: an LMDB store with the
+     * indexes its queries need, behind a Lucene index for the {@code text} repos. Sent to
+     * the server to create a repo, or given to {@link #embeddedRepos} in embedded mode.
+     *
+     * @param repoName repository name
+     * @return the config
+     */
+    static String repoConfig(String repoName) {
+        // TODO new syntax somehow doesn't work for the Lucene case:
 
 //			String createRegularRepoQueryString = "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#>.\n"
 //					+ "@prefix config: <tag:rdf4j.org,2023:config/>.\n"
@@ -418,65 +801,79 @@ public class TripleStore {
 //					+ "        ]\n"
 //					+ "    ].";
 
-            String indexTypes = "spoc,posc,ospc,cspo,cpos,cosp";
-            if (repoName.startsWith("meta") || repoName.startsWith("text")) {
-                indexTypes = "spoc,posc,ospc";
-            }
+        String indexTypes = "spoc,posc,ospc,cspo,cpos,cosp";
+        if (repoName.startsWith("meta") || repoName.startsWith("text")) {
+            indexTypes = "spoc,posc,ospc";
+        }
 
-            String createRegularRepoQueryString =
-                    "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#>.\n" +
-                    "@prefix rep: <http://www.openrdf.org/config/repository#>.\n" +
-                    "@prefix sr: <http://www.openrdf.org/config/repository/sail#>.\n" +
-                    "@prefix sail: <http://www.openrdf.org/config/sail#>.\n" +
-                    "@prefix sail-luc: <http://www.openrdf.org/config/sail/lucene#>.\n" +
-                    "@prefix lmdb: <http://rdf4j.org/config/sail/lmdb#>.\n" +
-                    "@prefix sb: <http://www.openrdf.org/config/sail/base#>.\n" +
-                    "\n" +
-                    "[] a rep:Repository ;\n" +
-                    "    rep:repositoryID \"" + repoName + "\" ;\n" +
-                    "    rdfs:label \"" + repoName + " LMDB store\" ;\n" +
-                    "    rep:repositoryImpl [\n" +
-                    "        rep:repositoryType \"openrdf:SailRepository\" ;\n" +
-                    "        sr:sailImpl [\n" +
-                    "            sail:sailType \"rdf4j:LmdbStore\" ;\n" +
-                    "            sail:iterationCacheSyncThreshold \"10000\";\n" +
-                    "            lmdb:tripleIndexes \"" + indexTypes + "\" ;\n" +
-                    "            sb:defaultQueryEvaluationMode \"STANDARD\"\n" +
-                    "        ]\n"
-                    + "    ].\n";
-
-            // TODO Index npa:hasFilterLiteral predicate too (see https://groups.google.com/g/rdf4j-users/c/epF4Af1jXGU):
-            String createTextRepoQueryString =
-                    "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#>.\n" +
-                    "@prefix rep: <http://www.openrdf.org/config/repository#>.\n" +
-                    "@prefix sr: <http://www.openrdf.org/config/repository/sail#>.\n" +
-                    "@prefix sail: <http://www.openrdf.org/config/sail#>.\n" +
-                    "@prefix sail-luc: <http://www.openrdf.org/config/sail/lucene#>.\n" +
-                    "@prefix lmdb: <http://rdf4j.org/config/sail/lmdb#>.\n" +
-                    "@prefix sb: <http://www.openrdf.org/config/sail/base#>.\n" +
-                    "\n"
-                    + "[] a rep:Repository ;\n" +
-                    "    rep:repositoryID \"" + repoName + "\" ;\n" +
-                    "    rdfs:label \"" + repoName + " store\" ;\n" +
-                    "    rep:repositoryImpl [\n" +
-                    "        rep:repositoryType \"openrdf:SailRepository\" ;\n" +
-                    "        sr:sailImpl [\n" +
-                    "            sail:sailType \"openrdf:LuceneSail\" ;\n" +
-                    "            sail-luc:indexDir \"index/\" ;\n" +
-                    "            sail-luc:transactional false ;\n" +
-                    "            sail:delegate [\n" +
-                    "              sail:sailType \"rdf4j:LmdbStore\" ;\n" +
-                    "              sail:iterationCacheSyncThreshold \"10000\";\n" +
-                    "              lmdb:tripleIndexes \"" + indexTypes + "\" ;\n" +
-                    "              sb:defaultQueryEvaluationMode \"STANDARD\"\n" +
-                    "            ]\n" +
-                    "        ]\n" +
-                    "    ].";
-
-            String createRepoQueryString = createRegularRepoQueryString;
-            if (repoName.startsWith("text")) {
-                createRepoQueryString = createTextRepoQueryString;
-            }
+        String createRegularRepoQueryString =
+                "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#>.\n" +
+                "@prefix rep: <http://www.openrdf.org/config/repository#>.\n" +
+                "@prefix sr: <http://www.openrdf.org/config/repository/sail#>.\n" +
+                "@prefix sail: <http://www.openrdf.org/config/sail#>.\n" +
+                "@prefix sail-luc: <http://www.openrdf.org/config/sail/lucene#>.\n" +
+                "@prefix lmdb: <http://rdf4j.org/config/sail/lmdb#>.\n" +
+                "@prefix sb: <http://www.openrdf.org/config/sail/base#>.\n" +
+                "\n" +
+                "[] a rep:Repository ;\n" +
+                "    rep:repositoryID \"" + repoName + "\" ;\n" +
+                "    rdfs:label \"" + repoName + " LMDB store\" ;\n" +
+                "    rep:repositoryImpl [\n" +
+                "        rep:repositoryType \"openrdf:SailRepository\" ;\n" +
+                "        sr:sailImpl [\n" +
+                "            sail:sailType \"rdf4j:LmdbStore\" ;\n" +
+                "            sail:iterationCacheSyncThreshold \"10000\";\n" +
+                "            lmdb:tripleIndexes \"" + indexTypes + "\" ;\n" +
+                "            sb:defaultQueryEvaluationMode \"STANDARD\"\n" +
+                "        ]\n"
+                + "    ].\n";
+
+        // TODO Index npa:hasFilterLiteral predicate too (see https://groups.google.com/g/rdf4j-users/c/epF4Af1jXGU):
+        String createTextRepoQueryString =
+                "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#>.\n" +
+                "@prefix rep: <http://www.openrdf.org/config/repository#>.\n" +
+                "@prefix sr: <http://www.openrdf.org/config/repository/sail#>.\n" +
+                "@prefix sail: <http://www.openrdf.org/config/sail#>.\n" +
+                "@prefix sail-luc: <http://www.openrdf.org/config/sail/lucene#>.\n" +
+                "@prefix lmdb: <http://rdf4j.org/config/sail/lmdb#>.\n" +
+                "@prefix sb: <http://www.openrdf.org/config/sail/base#>.\n" +
+                "\n"
+                + "[] a rep:Repository ;\n" +
+                "    rep:repositoryID \"" + repoName + "\" ;\n" +
+                "    rdfs:label \"" + repoName + " store\" ;\n" +
+                "    rep:repositoryImpl [\n" +
+                "        rep:repositoryType \"openrdf:SailRepository\" ;\n" +
+                "        sr:sailImpl [\n" +
+                "            sail:sailType \"openrdf:LuceneSail\" ;\n" +
+                "            sail-luc:indexDir \"index/\" ;\n" +
+                "            sail-luc:transactional false ;\n" +
+                "            sail:delegate [\n" +
+                "              sail:sailType \"rdf4j:LmdbStore\" ;\n" +
+                "              sail:iterationCacheSyncThreshold \"10000\";\n" +
+                "              lmdb:tripleIndexes \"" + indexTypes + "\" ;\n" +
+                "              sb:defaultQueryEvaluationMode \"STANDARD\"\n" +
+                "            ]\n" +
+                "        ]\n" +
+                "    ].";
+
+        if (repoName.startsWith("text")) {
+            return createTextRepoQueryString;
+        }
+        return createRegularRepoQueryString;
+    }
+
+    @GeneratedFlagForDependentElements
+    private void createRepo(String repoName, Repository repository) {
+        if (!repoName.equals(ADMIN_REPO)) {
+            getRepository(ADMIN_REPO);  // make sure admin repo is loaded first
+        }
+        // Uses the shared this.httpclient rather than a per-call client so it inherits
+        // the configured pool sizes (and, once change 1 of the fix plan lands, the
+        // socket/connection-request timeouts).
+        try {
+            //logger.info("Trying to creating repo " + name);
+
+            String createRepoQueryString = repoConfig(repoName);
 
             HttpUriRequest createRepoRequest = RequestBuilder.put().setUri(endpointBase + "repositories/" + repoName).addHeader("Content-Type", "text/turtle").setEntity(new StringEntity(createRepoQueryString)).build();
 
@@ -486,10 +883,12 @@ public class TripleStore {
                 int statusCode = response.getStatusLine().getStatusCode();
                 if (statusCode == 409) {
                     //logger.info("Already exists.");
-                    getRepository(repoName).init();
+                    repository.init();
+                    repositoryNames.add(repoName);
                 } else if (statusCode >= 200 && statusCode < 300) {
                     //logger.info("Successfully created.");
-                    initNewRepo(repoName);
+                    initNewRepo(repoName, repository);
+                    repositoryNames.add(repoName);
                 } else {
                     logger.info("Status code: {}", response.getStatusLine().getStatusCode());
                     logger.info(response.getStatusLine().getReasonPhrase());
@@ -507,11 +906,14 @@ public class TripleStore {
      */
     @GeneratedFlagForDependentElements
     public void shutdownRepositories() {
-        for (Repository repo : repositories.values()) {
-            if (repo != null && repo.isInitialized()) {
-                repo.shutDown();
+        for (RepoHandle handle : repositories.values()) {
+            if (handle.repo.isInitialized()) {
+                handle.repo.shutDown();
             }
         }
+        if (embeddedRepos != null) {
+            embeddedRepos.shutDown();
+        }
     }
 
     /**
@@ -524,87 +926,212 @@ public class TripleStore {
         return get().getRepoConnection(ADMIN_REPO);
     }
 
-    private Set<String> cachedRepositoryNames = Set.of();
-    private boolean repoNamesCacheValid = false;
-    private final ReadWriteLock repoNamesCacheLock = new ReentrantReadWriteLock();
+    /**
+     * Graphs or subjects per query in {@link #fetchGraphs} and {@link #fetchSubjects}. Each
+     * one is an IRI in a {@code VALUES} clause, so this bounds the query size.
+     */
+    static final int FETCH_BATCH_SIZE = 200;
 
     /**
-     * Returns set of all repository names.
+     * Streams every statement in the given named graphs to {@code consumer}, with one
+     * query per {@link #FETCH_BATCH_SIZE} graphs instead of one {@code getStatements}
+     * request per graph. Statements are handed over as the result is parsed, not
+     * collected first.
      *
-     * @return Repository name set
+     * @param conn     connection to the repo to read; may be in a transaction
+     * @param graphs   the graphs to read
+     * @param consumer takes each statement, with its graph as context
      */
-    public Set<String> getRepositoryNames() {
-        // See if the repository names are cached:
-        final var readLock = repoNamesCacheLock.readLock();
-        try {
-            readLock.lock();
-            if (repoNamesCacheValid) {
-                return cachedRepositoryNames;
+    public void fetchGraphs(RepositoryConnection conn, Collection<IRI> graphs, Consumer<Statement> consumer) {
+        for (List<IRI> batch : Iterables.partition(graphs, FETCH_BATCH_SIZE)) {
+            String query = "SELECT ?s ?p ?o ?g { VALUES ?g { " + valuesOf(batch) + "} graph ?g { ?s ?p ?o } }";
+            streamStatements(conn, query, null, consumer);
+        }
+    }
+
+    /**
+     * Streams the statements about the given subjects in one graph to {@code consumer},
+     * with one query per {@link #FETCH_BATCH_SIZE} subjects instead of one
+     * {@code getStatements} request per subject (and predicate).
+     *
+     * @param conn       connection to the repo to read; may be in a transaction
+     * @param subjects   the subjects to read
+     * @param predicates the predicates to read, or empty for all
+     * @param graph      the graph to read from
+     * @param consumer   takes each statement, with {@code graph} as context
+     */
+    public void fetchSubjects(RepositoryConnection conn, Collection<IRI> subjects, Collection<IRI> predicates, IRI graph,
+                              Consumer<Statement> consumer) {
+        String predicateValues = predicates.isEmpty() ? "" : "VALUES ?p { " + valuesOf(predicates) + "} ";
+        for (List<IRI> batch : Iterables.partition(subjects, FETCH_BATCH_SIZE)) {
+            String query = "SELECT ?s ?p ?o { VALUES ?s { " + valuesOf(batch) + "} " + predicateValues
+                           + "graph <" + graph + "> { ?s ?p ?o } }";
+            streamStatements(conn, query, graph, consumer);
+        }
+    }
+
+    private String valuesOf(Iterable<IRI> iris) {
+        StringBuilder values = new StringBuilder();
+        for (IRI iri : iris) {
+            values.append('<').append(iri).append("> ");
+        }
+        return values.toString();
+    }
+
+    private void streamStatements(RepositoryConnection conn, String query, IRI graph, Consumer<Statement> consumer) {
+        try (TupleQueryResult r = conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()) {
+            while (r.hasNext()) {
+                BindingSet b = r.next();
+                Resource context = graph != null ? graph : (Resource) b.getValue("g");
+                consumer.accept(vf.createStatement((Resource) b.getValue("s"), (IRI) b.getValue("p"), b.getValue("o"), context));
             }
-        } finally {
-            readLock.unlock();
         }
+    }
+
+    /**
+     * How often {@link #repositoryNames} is reconciled with the store's own listing, from
+     * {@code NANOPUB_QUERY_REPO_NAMES_RECONCILE_SECONDS} (default 300). In between, the
+     * names are maintained here as repos are created, so the listing only has to catch
+     * repos created or deleted behind this process's back.
+     */
+    static final long REPO_NAMES_RECONCILE_MS =
+            TimeUnit.SECONDS.toMillis(Utils.getEnvInt("NANOPUB_QUERY_REPO_NAMES_RECONCILE_SECONDS", 300));
+
+    private final RepositoryNames repositoryNames = new RepositoryNames();
+    private final ReentrantLock repoNamesLock = new ReentrantLock();
+
+    /**
+     * When {@link #repositoryNames} was last reconciled with the store; 0 while it has never
+     * been loaded.
+     */
+    private volatile long repoNamesReconciledMs = 0;
+
+    /**
+     * Returns set of all repository names.
+     *
+     * @return Repository name set, a live view; null if the names could not be loaded from
+     * the store yet
+     */
+    public Set<String> getRepositoryNames() {
+        return refreshRepositoryNames() ? repositoryNames.all() : null;
+    }
+
+    /**
+     * Returns the names of the repos of one class.
+     *
+     * @param repoClass repo class, e.g. {@code type} (see {@link #repoClass})
+     * @return the names, sorted; empty if the names could not be loaded from the store yet
+     */
+    public NavigableSet<String> getRepositoryNames(String repoClass) {
+        return refreshRepositoryNames() ? repositoryNames.ofClass(repoClass) : Collections.emptyNavigableSet();
+    }
+
+    /**
+     * @return the repo classes, sorted; empty if the names could not be loaded from the
+     * store yet
+     */
+    public NavigableSet<String> getRepositoryClasses() {
+        return refreshRepositoryNames() ? repositoryNames.classes() : Collections.emptyNavigableSet();
+    }
 
-        // Not cached, get from server:
-        final var writeLock = repoNamesCacheLock.writeLock();
+    /**
+     * Returns the number of repos of one class, without going through their names.
+     *
+     * @param repoClass repo class, e.g. {@code type} (see {@link #repoClass})
+     * @return the number; 0 if the names could not be loaded from the store yet
+     */
+    public int getRepositoryCount(String repoClass) {
+        return refreshRepositoryNames() ? repositoryNames.count(repoClass) : 0;
+    }
+
+    /**
+     * @return the number of repos; 0 if the names could not be loaded from the store yet
+     */
+    public int getRepositoryCount() {
+        return refreshRepositoryNames() ? repositoryNames.count() : 0;
+    }
+
+    /**
+     * Loads the repo names from the store the first time, and reconciles them with it every
+     * {@link #REPO_NAMES_RECONCILE_MS}. The first load blocks concurrent callers, since
+     * they have nothing to read yet; a later reconciliation is done by one caller while the
+     * others read the names as they are.
+     *
+     * @return whether the names have been loaded
+     */
+    private boolean refreshRepositoryNames() {
+        long reconciled = repoNamesReconciledMs;
+        if (reconciled != 0 && nowMillis() - reconciled < REPO_NAMES_RECONCILE_MS) {
+            return true;
+        }
+        if (reconciled == 0) {
+            repoNamesLock.lock();
+        } else if (!repoNamesLock.tryLock()) {
+            return true;
+        }
         try {
-            writeLock.lock();
-            // Check again if another thread has already updated the cache:
-            if (repoNamesCacheValid) {
-                return cachedRepositoryNames;
+            if (repoNamesReconciledMs != reconciled) {
+                return repoNamesReconciledMs != 0;
             }
-            Map<String, Boolean> repositoryNames = null;
-            // Uses the shared this.httpclient; response try-with-resources releases
-            // the pooled connection when done.
-            try (CloseableHttpResponse resp = httpclient.execute(RequestBuilder.get()
-                    .setUri(endpointBase + "/repositories")
-                    .addHeader("Content-Type", "text/csv")
-                    .build())) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(resp.getEntity().getContent()));
-                int code = resp.getStatusLine().getStatusCode();
-                if (code < 200 || code >= 300) return null;
-                repositoryNames = new HashMap<>();
-                int lineCount = 0;
-                while (true) {
-                    String line = reader.readLine();
-                    if (line == null) break;
-                    if (lineCount > 0) {
-                        String repoName = line.split(",")[1];
-                        repositoryNames.put(repoName, true);
-                    }
-                    lineCount = lineCount + 1;
-                }
-            } catch (IOException ex) {
-                logger.info("Could not get repository names.", ex);
-                return null;
+            Set<String> listed = fetchRepositoryNames();
+            if (listed == null) {
+                // Keep what we have; retried on the next call.
+                return reconciled != 0;
             }
-            cachedRepositoryNames = repositoryNames.keySet();
-            repoNamesCacheValid = true;
-            return cachedRepositoryNames;
+            int changes = repositoryNames.reconcile(listed);
+            if (reconciled != 0 && changes > 0) {
+                logger.info("Repository names were out of date by {} names; reconciled with the store", changes);
+            }
+            repoNamesReconciledMs = Math.max(1, nowMillis());
+            return true;
         } finally {
-            writeLock.unlock();
+            repoNamesLock.unlock();
         }
     }
 
     /**
-     * Invalidates the repository names cache. Call this method when a repository is created or deleted.
+     * Lists the repos on the store.
+     *
+     * @return the names, or null if the store could not list them
      */
-    private void invalidateRepositoryNamesCache() {
-        final var writeLock = repoNamesCacheLock.writeLock();
-        try {
-            writeLock.lock();
-            repoNamesCacheValid = false;
-        } finally {
-            writeLock.unlock();
+    private Set<String> fetchRepositoryNames() {
+        if (embeddedRepos != null) {
+            return Set.copyOf(embeddedRepos.getRepositoryIDs());
+        }
+        // Uses the shared this.httpclient; response try-with-resources releases
+        // the pooled connection when done.
+        try (CloseableHttpResponse resp = httpclient.execute(RequestBuilder.get()
+                .setUri(endpointBase + "/repositories")
+                .addHeader("Content-Type", "text/csv")
+                .build())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(resp.getEntity().getContent()));
+            int code = resp.getStatusLine().getStatusCode();
+            if (code < 200 || code >= 300) return null;
+            Set<String> repositoryNames = new HashSet<>();
+            int lineCount = 0;
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) break;
+                if (lineCount > 0) {
+                    String repoName = line.split(",")[1];
+                    repositoryNames.add(repoName);
+                }
+                lineCount = lineCount + 1;
+            }
+            return repositoryNames;
+        } catch (IOException ex) {
+            logger.info("Could not get repository names.", ex);
+            return null;
         }
     }
 
     @GeneratedFlagForDependentElements
-    private void initNewRepo(String repoName) {
+    private void initNewRepo(String repoName, Repository repository) {
         String repoInitId = new Random().nextLong() + "";
-        getRepository(repoName).init();
+        repository.init();
         if (!repoName.equals("empty")) {
-            RepositoryConnection conn = getRepoConnection(repoName);
+            // Not yet published in the cache, so not counted or evictable either.
+            RepositoryConnection conn = repository.getConnection();
             try (conn) {
                 // Append-only writes to a repo nothing else references yet; see
                 // NanopubLoader#repoWriteLocks for why SERIALIZABLE is avoided.
@@ -622,8 +1149,6 @@ public class TripleStore {
                 }
                 conn.commit();
             }
-            // Refresh repository names cache
-            invalidateRepositoryNamesCache();
         }
     }
 
@@ -184,7 +184,8 @@ public class TrustStateLoader {
         }
 
         try {
-            materialize(snapshot);
+            // Runs on the loader's poll thread; the bulk write is materialization traffic.
+            HttpPools.run(HttpPools.Workload.MATERIALIZATION, () -> materialize(snapshot));
             TrustStateRegistry.get().setCurrentHash(snapshot.trustStateHash());
             logger.info("Materialized trust state {} (counter={}, accounts={})",
                     snapshot.trustStateHash(), snapshot.trustStateCounter(),
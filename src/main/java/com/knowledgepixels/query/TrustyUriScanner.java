@@ -0,0 +1,205 @@
+package com.knowledgepixels.query;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Finds trusty URIs (an {@code RA} artifact code at the end of an IRI, or followed by a
+ * short suffix) in the IRIs of nanopubs being loaded.
+ *
+ * <p>{@link NanopubLoader} asks this for the subject, predicate and object of every
+ * statement. It used to do so with {@code String.matches} and {@code replaceFirst}, which
+ * compile their pattern on each call; those regexes are kept in the javadoc below as the
+ * specification, and the scanner reproduces them exactly, quirks included. Since an
+ * artifact code is 45 characters and the suffix at most 44, only the tail of the IRI is
+ * ever examined.
+ *
+ * <p>The IRIs a stream keeps repeating (vocabulary terms, the same few referenced
+ * nanopubs) are answered from a bounded cache shared by all loader threads.
+ */
+final class TrustyUriScanner {
+
+    private static final int CODE_LENGTH = 43;
+
+    /** {@code "RA"} plus the code. */
+    private static final int MODULE_LENGTH = 2 + CODE_LENGTH;
+
+    private static final int MAX_SUFFIX_LENGTH = 1 + 43;
+
+    private static final int CACHE_SIZE = 100_000;
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final Cache<String, Optional<IRI>> baseTrustyUriCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
+    private TrustyUriScanner() {
+    }  // no instances allowed
+
+    /**
+     * The trusty URI an IRI belongs to: the IRI itself if it ends in an artifact code, or
+     * the IRI up to the code if only a short suffix follows it. Same result as
+     * <pre>{@code
+     * s.matches(".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}([^A-Za-z0-9\\\\-_].{0,43})?")
+     *     ? s.replaceFirst("^(.*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43})([^A-Za-z0-9\\\\-_].{0,43})?$", "$1")
+     *     : null
+     * }</pre>
+     * (with the Java string escapes as written there).
+     *
+     * @param iri the IRI
+     * @return the base trusty URI, or null if the IRI is not (part of) a trusty URI
+     */
+    static IRI getBaseTrustyUri(IRI iri) {
+        try {
+            return baseTrustyUriCache.get(iri.stringValue(), () -> {
+                int end = baseTrustyUriEnd(iri.stringValue());
+                if (end < 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(end == iri.stringValue().length() ? iri : vf.createIRI(iri.stringValue().substring(0, end)));
+            }).orElse(null);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Whether a string ends in an artifact code; same result as
+     * {@code s.matches(".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}")}.
+     *
+     * @param s the string
+     * @return true if the string ends in an artifact code
+     */
+    static boolean endsWithArtifactCode(String s) {
+        int start = s.length() - MODULE_LENGTH;
+        return isModuleAt(s, start) && firstLineTerminator(s) >= start - 1;
+    }
+
+    /**
+     * @return the length of the base trusty URI within {@code s}, or -1 if there is none
+     */
+    static int baseTrustyUriEnd(String s) {
+        int n = s.length();
+        // The regex's leading .* is greedy, so the last position that works is the match.
+        int lowest = Math.max(1, n - MODULE_LENGTH - MAX_SUFFIX_LENGTH);
+        // Found once per string, and only for a candidate match.
+        int firstLineTerminator = -1;
+        for (int start = n - MODULE_LENGTH; start >= lowest; start--) {
+            if (isModuleAt(s, start) && isSuffix(s, start + MODULE_LENGTH)) {
+                if (firstLineTerminator < 0) {
+                    firstLineTerminator = firstLineTerminator(s);
+                }
+                // No line terminator may come before the separator (the regex's .*).
+                if (firstLineTerminator >= start - 1) {
+                    return start + MODULE_LENGTH;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether {@code "RA"} and a code start at {@code start}, preceded by a character
+     * outside the code alphabet. The callers check that no line terminator comes before
+     * that (the regex's {@code .*}).
+     */
+    private static boolean isModuleAt(String s, int start) {
+        if (start < 1 || s.charAt(start) != 'R' || s.charAt(start + 1) != 'A' || isCodeChar(s.charAt(start - 1))) {
+            return false;
+        }
+        for (int i = start + 2; i < start + MODULE_LENGTH; i++) {
+            if (!isCodeChar(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the first line terminator in {@code s}, or its length if it has none
+     */
+    private static int firstLineTerminator(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (isLineTerminator(s.charAt(i))) {
+                return i;
+            }
+        }
+        return s.length();
+    }
+
+    /**
+     * Whether {@code s} from {@code from} on is empty, or one separator character followed
+     * by up to 43 characters that are not line terminators.
+     */
+    private static boolean isSuffix(String s, int from) {
+        int n = s.length();
+        if (from == n) {
+            return true;
+        }
+        if (n - from > MAX_SUFFIX_LENGTH || !isSuffixSeparator(s.charAt(from))) {
+            return false;
+        }
+        for (int i = from + 1; i < n; i++) {
+            if (isLineTerminator(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /** {@code [A-Za-z0-9\-_]}: the base64url alphabet of artifact codes. */
+    private static boolean isCodeChar(char c) {
+        return isAlphanumeric(c) || c == '-' || c == '_';
+    }
+
+    /**
+     * {@code [^A-Za-z0-9\\-_]}: in the original regex the escaped backslash turns
+     * {@code \\-_} into the range from backslash to underscore, so {@code -} is allowed as
+     * a separator but {@code \ ] ^ _} are not.
+     */
+    private static boolean isSuffixSeparator(char c) {
+        return !isAlphanumeric(c) && (c < '\\' || c > '_');
+    }
+
+    /** What {@code .} does not match in a Java regex without DOTALL. */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Appends a literal to the filter text the way {@code s.replaceAll("\\s+", " ") + "\n"}
+     * would, without the intermediate strings.
+     *
+     * @param sb      the accumulated filter text
+     * @param literal the literal's label
+     */
+    static void appendCollapsingWhitespace(StringBuilder sb, String literal) {
+        boolean inWhitespace = false;
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            // \s: [ \t\n\x0B\f\r]
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                if (!inWhitespace) {
+                    sb.append(' ');
+                    inWhitespace = true;
+                }
+            } else {
+                sb.append(c);
+                inWhitespace = false;
+            }
+        }
+        sb.append('\n');
+    }
+
+}
@@ -4,10 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.config.CookieSpecs;
@@ -25,6 +25,8 @@ import org.nanopub.vocabulary.NPA;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.hash.Hashing;
 
 /**
@@ -39,7 +41,18 @@ public class Utils {
 
     private static final Logger logger = LoggerFactory.getLogger(Utils.class);
 
-    private static Map<String, Value> hashToObjMap;
+    // Concurrent, since loader threads add to it while others read it.
+    private static volatile Map<String, Value> hashToObjMap;
+
+    private static final int HASH_CACHE_SIZE = 10_000;
+
+    /**
+     * Hashes of recently hashed strings. The same few hundred pubkeys, types and repo
+     * names are hashed for every nanopub, so SHA-256 need not be recomputed each time.
+     */
+    private static final Cache<String, String> hashCache = CacheBuilder.newBuilder()
+            .maximumSize(HASH_CACHE_SIZE)
+            .build();
 
     /**
      * Returns reverse hashing map.
@@ -47,23 +60,30 @@ public class Utils {
      * @return Map from hashes to their original objects
      */
     static Map<String, Value> getHashToObjectMap() {
-        if (hashToObjMap == null) {
-            hashToObjMap = new HashMap<>();
-            try (RepositoryConnection conn = TripleStore.get().getAdminRepoConnection()) {
-                TupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT * { graph ?g { ?s ?p ?o } }");
-                query.setBinding("g", NPA.GRAPH);
-                query.setBinding("p", NPA.IS_HASH_OF);
-                try (TupleQueryResult r = query.evaluate()) {
-                    while (r.hasNext()) {
-                        BindingSet b = r.next();
-                        String hash = b.getBinding("s").getValue().stringValue();
-                        hash = StringUtils.replace(hash, NPA.HASH.toString(), "");
-                        hashToObjMap.put(hash, b.getBinding("o").getValue());
+        Map<String, Value> map = hashToObjMap;
+        if (map != null) {
+            return map;
+        }
+        synchronized (Utils.class) {
+            if (hashToObjMap == null) {
+                Map<String, Value> loaded = new ConcurrentHashMap<>();
+                try (RepositoryConnection conn = TripleStore.get().getAdminRepoConnection()) {
+                    TupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT * { graph ?g { ?s ?p ?o } }");
+                    query.setBinding("g", NPA.GRAPH);
+                    query.setBinding("p", NPA.IS_HASH_OF);
+                    try (TupleQueryResult r = query.evaluate()) {
+                        while (r.hasNext()) {
+                            BindingSet b = r.next();
+                            String hash = b.getBinding("s").getValue().stringValue();
+                            hash = StringUtils.replace(hash, NPA.HASH.toString(), "");
+                            loaded.put(hash, b.getBinding("o").getValue());
+                        }
                     }
                 }
+                hashToObjMap = loaded;
             }
+            return hashToObjMap;
         }
-        return hashToObjMap;
     }
 
     /**
@@ -77,20 +97,28 @@ public class Utils {
     }
 
     /**
-     * Creates a hash value for the object and remembers it.
+     * Creates a hash value for the object and remembers it. A hash not seen before is
+     * added to the in-memory map at once and written to the admin repo shortly after by
+     * {@link AdminWriter}.
      *
      * @param obj Object to be hashed
      * @return hash value
      */
     public static String createHash(Object obj) {
-        String hash = Hashing.sha256().hashString(obj.toString(), StandardCharsets.UTF_8).toString();
-
-        if (!getHashToObjectMap().containsKey(hash)) {
+        String s = obj.toString();
+        String hash = hashCache.getIfPresent(s);
+        if (hash == null) {
+            hash = Hashing.sha256().hashString(s, StandardCharsets.UTF_8).toString();
+            hashCache.put(s, hash);
+        }
+        Map<String, Value> map = getHashToObjectMap();
+        if (!map.containsKey(hash)) {
             Value objV = getValue(obj);
-            try (RepositoryConnection conn = TripleStore.get().getAdminRepoConnection()) {
-                conn.add(vf.createStatement(vf.createIRI(NPA.HASH + hash), NPA.IS_HASH_OF, objV, NPA.GRAPH));
+            // putIfAbsent decides which of several threads hashing the same new object
+            // queues the write.
+            if (map.putIfAbsent(hash, objV) == null) {
+                AdminWriter.get().enqueueHashMapping(hash, objV);
             }
-            getHashToObjectMap().put(hash, objV);
         }
         return hash;
     }
@@ -156,6 +184,25 @@ public class Utils {
         }
     }
 
+    /**
+     * Rolls back an active transaction, suppressing any failure to do so.
+     *
+     * <p>The transaction may no longer exist server-side (already committed, timed
+     * out, or lost to a restart), and that secondary failure must not mask the
+     * original one.
+     *
+     * @param conn the connection whose transaction should be rolled back
+     */
+    static void rollbackQuietly(RepositoryConnection conn) {
+        try {
+            if (conn.isActive()) {
+                conn.rollback();
+            }
+        } catch (Exception rollbackException) {
+            // Deliberately ignored; the caller rethrows the original cause.
+        }
+    }
+
     /**
      * Returns the system environment variable content for the given environment variable name.
      *
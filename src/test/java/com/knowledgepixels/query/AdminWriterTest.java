@@ -0,0 +1,170 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.util.Values;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.junit.jupiter.api.Test;
+import org.nanopub.vocabulary.NPA;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Queued triples reach the admin repo in batches from the writer's own thread; none may be
+ * dropped on the way, also when a write fails. A durable update takes them along.
+ */
+class AdminWriterTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void mappingsAreWrittenTogetherOnceEnoughArePending() throws Exception {
+        List<List<Statement>> batches = new CopyOnWriteArrayList<>();
+        CountDownLatch written = new CountDownLatch(1);
+        try (AdminWriter writer = new AdminWriter((batch, update) -> {
+            batches.add(batch);
+            written.countDown();
+        }, NEVER, 3)) {
+            writer.enqueueHashMapping("a", Values.literal("x"));
+            writer.enqueueHashMapping("b", Values.literal("y"));
+            assertEquals(List.of(), batches, "below the threshold nothing is written");
+            writer.enqueueHashMapping("c", Values.literal("z"));
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+
+            assertEquals(1, batches.size());
+            Statement first = batches.getFirst().getFirst();
+            assertEquals(Values.iri(NPA.HASH + "a"), first.getSubject());
+            assertEquals(NPA.IS_HASH_OF, first.getPredicate());
+            assertEquals(Values.literal("x"), first.getObject());
+            assertEquals(NPA.GRAPH, first.getContext());
+            assertEquals(0, writer.getPendingCount());
+        }
+    }
+
+    @Test
+    void failedWriteKeepsTheTriplesForTheNextAttempt() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Statement> written = new CopyOnWriteArrayList<>();
+        try (AdminWriter writer = new AdminWriter((batch, update) -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException("admin repo unreachable");
+            }
+            written.addAll(batch);
+        }, NEVER, Integer.MAX_VALUE)) {
+            writer.enqueueHashMapping("a", Values.literal("x"));
+            writer.enqueueHashMapping("b", Values.literal("y"));
+
+            writer.flush();
+            assertEquals(2, writer.getPendingCount());
+            assertEquals(List.of(), written);
+
+            writer.flush();
+            assertEquals(0, writer.getPendingCount());
+            assertEquals(2, written.size());
+        }
+    }
+
+    @Test
+    void failingWritesAreNotQueuedOncePerTriple() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (AdminWriter writer = new AdminWriter((batch, update) -> {
+            attempts.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("admin repo unreachable");
+        }, NEVER, 1)) {
+            writer.enqueueHashMapping("a", Values.literal("x"));
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            // The admin repo hangs; hashing goes on and keeps queuing mappings.
+            for (int i = 0; i < 100; i++) {
+                writer.enqueueHashMapping("h" + i, Values.literal("v" + i));
+            }
+            release.countDown();
+            Thread.sleep(200);
+            assertEquals(2, attempts.get(), "the one in progress and one queued behind it");
+            assertEquals(101, writer.getPendingCount());
+        }
+    }
+
+    @Test
+    void flushWithNothingPendingDoesNotWrite() {
+        AtomicInteger attempts = new AtomicInteger();
+        try (AdminWriter writer = new AdminWriter((batch, update) -> attempts.incrementAndGet(), NEVER, Integer.MAX_VALUE)) {
+            writer.flush();
+            assertEquals(0, attempts.get());
+        }
+    }
+
+    @Test
+    void commitNowWritesThePendingTriplesInTheSameTransaction() {
+        List<Statement> written = new CopyOnWriteArrayList<>();
+        List<Consumer<RepositoryConnection>> updates = new CopyOnWriteArrayList<>();
+        try (AdminWriter writer = new AdminWriter((batch, update) -> {
+            written.addAll(batch);
+            updates.add(update);
+        }, NEVER, Integer.MAX_VALUE)) {
+            IRI np = Values.iri("https://w3id.org/np/RA1");
+            writer.enqueueNote(np, "note");
+            writer.enqueueHashMapping("a", Values.literal("x"));
+
+            Consumer<RepositoryConnection> counterUpdate = conn -> {
+            };
+            writer.commitNow(counterUpdate);
+
+            assertEquals(List.of(counterUpdate), updates, "one transaction");
+            assertEquals(2, written.size());
+            assertEquals(np, written.getFirst().getSubject());
+            assertEquals(NPA.NOTE, written.getFirst().getPredicate());
+            assertEquals(Values.literal("note"), written.getFirst().getObject());
+            assertEquals(0, writer.getPendingCount());
+        }
+    }
+
+    @Test
+    void failedCommitNowThrowsAndKeepsThePendingTriples() {
+        try (AdminWriter writer = new AdminWriter((batch, update) -> {
+            throw new RuntimeException("admin repo unreachable");
+        }, NEVER, Integer.MAX_VALUE)) {
+            writer.enqueueNote(Values.iri("https://w3id.org/np/RA1"), "note");
+
+            assertThrows(RuntimeException.class, () -> writer.commitNow(conn -> {
+            }));
+            assertEquals(1, writer.getPendingCount());
+        }
+    }
+
+    @Test
+    void closedWriterStopsWritingOnTheInterval() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AdminWriter writer = new AdminWriter((batch, update) -> attempts.incrementAndGet(), 20, Integer.MAX_VALUE);
+        writer.close();
+        writer.enqueueNote(Values.iri("https://w3id.org/np/RA1"), "note");
+        Thread.sleep(100); // several intervals
+        assertEquals(0, attempts.get());
+        assertEquals(1, writer.getPendingCount());
+    }
+
+    @Test
+    void commitNowWritesAlsoWithNothingPending() {
+        AtomicInteger attempts = new AtomicInteger();
+        try (AdminWriter writer = new AdminWriter((batch, update) -> attempts.incrementAndGet(), NEVER, Integer.MAX_VALUE)) {
+            writer.commitNow(conn -> {
+            });
+            assertEquals(1, attempts.get());
+        }
+    }
+
+}
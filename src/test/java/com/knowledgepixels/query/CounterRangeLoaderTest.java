@@ -0,0 +1,208 @@
+package com.knowledgepixels.query;
+
+import com.knowledgepixels.query.CounterRangeLoader.CounterRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The ranges are read in parallel but must come out as one stream in counter order, with
+ * nothing lost or repeated when a range's stream breaks off and is reopened.
+ */
+class CounterRangeLoaderTest {
+
+    private static final long NO_DELAY = 0L;
+
+    private static final int WINDOW = 100;
+
+    private static Future<NanopubLoader> prepared(long counter) {
+        NanopubLoader loader = mock(NanopubLoader.class);
+        when(loader.getCounter()).thenReturn(counter);
+        return CompletableFuture.completedFuture(loader);
+    }
+
+    /**
+     * A registry holding counters 1..last, streaming them after the requested counter.
+     */
+    private static CounterRangeLoader.StreamSource registry(long last, Set<Long> streamStarts) {
+        return (afterCounter, consumer) -> {
+            streamStarts.add(afterCounter);
+            for (long c = afterCounter + 1; c <= last; c++) {
+                if (!consumer.accept(null, c)) {
+                    return;
+                }
+            }
+        };
+    }
+
+    private static List<Long> run(CounterRangeLoader loader, List<CounterRange> ranges) {
+        List<Long> counters = new ArrayList<>();
+        loader.run(ranges, l -> counters.add(l.getCounter()));
+        return counters;
+    }
+
+    @Test
+    void splitCoversTheCountersWithoutGapsOrOverlap() {
+        assertEquals(List.of(new CounterRange(-1, 9), new CounterRange(9, 19), new CounterRange(19, 25)),
+                CounterRangeLoader.split(-1, 25, 10));
+        assertEquals(List.of(), CounterRangeLoader.split(25, 25, 10));
+        assertEquals(List.of(), CounterRangeLoader.split(30, 25, 10));
+    }
+
+    @Test
+    void parallelRangesArePassedOnInCounterOrder() {
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        try (CounterRangeLoader loader = new CounterRangeLoader(registry(1000, starts), (np, c) -> prepared(c), 4, WINDOW, NO_DELAY)) {
+            List<Long> counters = run(loader, CounterRangeLoader.split(0, 1000, 50));
+            assertEquals(1000, counters.size());
+            for (int i = 0; i < counters.size(); i++) {
+                assertEquals(i + 1, counters.get(i));
+            }
+        }
+        assertEquals(20, starts.size(), "one stream per range, each opened at its start");
+    }
+
+    @Test
+    void loadStopsAtTheTargetEvenIfTheRegistryHasMore() {
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        try (CounterRangeLoader loader = new CounterRangeLoader(registry(5000, starts), (np, c) -> prepared(c), 3, WINDOW, NO_DELAY)) {
+            List<Long> counters = run(loader, CounterRangeLoader.split(100, 250, 40));
+            assertEquals(150, counters.size());
+            assertEquals(101L, counters.getFirst());
+            assertEquals(250L, counters.getLast());
+        }
+    }
+
+    @Test
+    void brokenStreamIsReopenedAfterTheLastCounterRead() {
+        Set<Long> broken = ConcurrentHashMap.newKeySet();
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        // Every range's first stream breaks off before its fifth nanopub.
+        CounterRangeLoader.StreamSource flaky = (afterCounter, consumer) -> {
+            starts.add(afterCounter);
+            for (long c = afterCounter + 1; c <= 100; c++) {
+                if (c % 10 == 5 && broken.add(c)) {
+                    throw new RuntimeException("connection reset");
+                }
+                if (!consumer.accept(null, c)) {
+                    return;
+                }
+            }
+        };
+        try (CounterRangeLoader loader = new CounterRangeLoader(flaky, (np, c) -> prepared(c), 2, WINDOW, NO_DELAY)) {
+            List<Long> counters = run(loader, CounterRangeLoader.split(0, 100, 10));
+            assertEquals(100, counters.size());
+            for (int i = 0; i < counters.size(); i++) {
+                assertEquals(i + 1, counters.get(i));
+            }
+        }
+        for (long c = 4; c < 100; c += 10) {
+            assertTrue(starts.contains(c), "range reopened right after counter " + c);
+        }
+    }
+
+    @Test
+    void rangeThatKeepsFailingFailsTheLoad() {
+        CounterRangeLoader.StreamSource down = (afterCounter, consumer) -> {
+            throw new RuntimeException("registry unreachable");
+        };
+        try (CounterRangeLoader loader = new CounterRangeLoader(down, (np, c) -> prepared(c), 2, WINDOW, NO_DELAY)) {
+            RuntimeException ex = assertThrows(RuntimeException.class, () -> run(loader, CounterRangeLoader.split(0, 30, 10)));
+            assertEquals("registry unreachable", ex.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void loadStopsAfterARangeThatEndsShort() {
+        // The registry has nothing after counter 15, although the target says 30.
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        try (CounterRangeLoader loader = new CounterRangeLoader(registry(15, starts), (np, c) -> prepared(c), 2, WINDOW, NO_DELAY)) {
+            List<Long> counters = run(loader, CounterRangeLoader.split(0, 30, 10));
+            assertEquals(15, counters.size());
+        }
+    }
+
+    @Test
+    void rangesAfterAnEmptyResponseAreNotPassedOn() {
+        // The stream for the middle range comes back empty; the counters are there all
+        // the same, and show up on the next pass.
+        CounterRangeLoader.StreamSource source = (afterCounter, consumer) -> {
+            if (afterCounter >= 10 && afterCounter < 20) {
+                return;
+            }
+            for (long c = afterCounter + 1; c <= 30; c++) {
+                if (!consumer.accept(null, c)) {
+                    return;
+                }
+            }
+        };
+        try (CounterRangeLoader loader = new CounterRangeLoader(source, (np, c) -> prepared(c), 3, WINDOW, NO_DELAY)) {
+            List<Long> counters = run(loader, CounterRangeLoader.split(0, 30, 10));
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), counters, "nothing after the gap is passed on");
+        }
+    }
+
+    @Test
+    void firstRangeEndingShortFailsTheLoad() {
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        try (CounterRangeLoader loader = new CounterRangeLoader(registry(0, starts), (np, c) -> prepared(c), 2, WINDOW, NO_DELAY)) {
+            assertThrows(RuntimeException.class, () -> run(loader, CounterRangeLoader.split(0, 30, 10)));
+        }
+    }
+
+    @Test
+    void countersMissingFromTheRegistryWithinARangeAreSkipped() {
+        // Counters 15 to 20 do not exist, as the counter 21 after them shows.
+        CounterRangeLoader.StreamSource source = (afterCounter, consumer) -> {
+            for (long c = afterCounter + 1; c <= 30; c++) {
+                if ((c < 15 || c > 20) && !consumer.accept(null, c)) {
+                    return;
+                }
+            }
+        };
+        try (CounterRangeLoader loader = new CounterRangeLoader(source, (np, c) -> prepared(c), 2, WINDOW, NO_DELAY)) {
+            List<Long> counters = run(loader, CounterRangeLoader.split(0, 30, 10));
+            assertEquals(24, counters.size());
+            assertEquals(30L, counters.getLast());
+        }
+    }
+
+    @Test
+    void readersWaitForTheMergeOnceTheWindowIsFull() {
+        AtomicInteger prepared = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        try (CounterRangeLoader loader = new CounterRangeLoader(registry(1000, starts), (np, c) -> {
+            prepared.incrementAndGet();
+            return prepared(c);
+        }, 2, 5, NO_DELAY)) {
+            loader.run(CounterRangeLoader.split(0, 1000, 500), l -> {
+                if (consumed.getAndIncrement() == 0) {
+                    // Give the readers time to run ahead as far as they can.
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                maxAhead.accumulateAndGet(prepared.get() - consumed.get(), Math::max);
+            });
+        }
+        assertEquals(1000, consumed.get());
+        // Per reader: a full queue (the window and the end marker's slot) and the nanopub
+        // waiting to go into it.
+        assertTrue(maxAhead.get() <= 2 * (5 + 2), "prepared ahead of the merge: " + maxAhead.get());
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.knowledgepixels.query;
+
+import com.knowledgepixels.query.EmbeddedSparqlEndpoint.Response;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedSparqlEndpointTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private Repository repo;
+    private RepositoryConnection conn;
+
+    @BeforeEach
+    void setUp() {
+        repo = new SailRepository(new MemoryStore());
+        conn = repo.getConnection();
+        conn.add(vf.createIRI("http://example.org/a"), RDFS.LABEL, vf.createLiteral("A"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        conn.close();
+        repo.shutDown();
+    }
+
+    private static String body(Response response) {
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void selectDefaultsToSparqlJson() {
+        Response r = EmbeddedSparqlEndpoint.evaluate(conn, "SELECT ?l { ?s ?p ?l }", null, 10);
+        assertEquals(200, r.status());
+        assertTrue(r.contentType().startsWith("application/sparql-results+json"));
+        assertTrue(body(r).contains("\"A\""));
+    }
+
+    @Test
+    void selectIsWrittenInTheMostPreferredKnownFormat() {
+        Response r = EmbeddedSparqlEndpoint.evaluate(conn, "SELECT ?l { ?s ?p ?l }",
+                "text/html, application/sparql-results+xml;q=0.5, text/csv;q=0.9", 10);
+        assertEquals(200, r.status());
+        assertTrue(r.contentType().startsWith("text/csv"));
+        assertEquals("l\r\nA\r\n", body(r));
+    }
+
+    @Test
+    void askAndConstructAreAnsweredToo() {
+        Response ask = EmbeddedSparqlEndpoint.evaluate(conn, "ASK { ?s ?p \"A\" }", "application/sparql-results+json", 10);
+        assertEquals(200, ask.status());
+        assertTrue(body(ask).contains("true"));
+
+        Response construct = EmbeddedSparqlEndpoint.evaluate(conn, "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }",
+                "application/n-triples", 10);
+        assertEquals(200, construct.status());
+        assertTrue(construct.contentType().startsWith("application/n-triples"));
+        assertTrue(body(construct).contains("<http://example.org/a>"));
+    }
+
+    @Test
+    void malformedQueryIsABadRequest() {
+        Response r = EmbeddedSparqlEndpoint.evaluate(conn, "SELECT WHERE", null, 10);
+        assertEquals(400, r.status());
+        assertTrue(body(r).startsWith("MALFORMED QUERY"));
+    }
+
+    @Test
+    void acceptedMimeTypesAreOrderedByPreference() {
+        assertEquals(List.of("text/csv", "application/json", "application/xml"),
+                EmbeddedSparqlEndpoint.acceptedMimeTypes("application/xml;q=0.2, text/csv, application/json;q=0.8, text/plain;q=0"));
+        assertEquals(List.of(), EmbeddedSparqlEndpoint.acceptedMimeTypes(null));
+    }
+
+    @Test
+    void repoNameIsMappedAsTheProxyDoes() {
+        assertEquals("type_abc", EmbeddedSparqlEndpoint.repoName("/repo/type/abc"));
+        assertEquals("full", EmbeddedSparqlEndpoint.repoName("/repo/full"));
+    }
+
+}
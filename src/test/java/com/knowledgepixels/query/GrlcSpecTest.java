@@ -12,6 +12,12 @@ import org.nanopub.testsuite.NanopubTestSuite;
 import org.nanopub.testsuite.TestSuiteEntry;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.any;
@@ -133,6 +139,52 @@ class GrlcSpecTest {
         }
     }
 
+    @Test
+    void concurrentFetchesOfOneNanopubAreMadeOnce() throws Exception {
+        Nanopub nanopub = new NanopubImpl(testSuiteEntry.toFile());
+        String artifactCode = "RA-concurrent-fetch-test";
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Nanopub> first = executor.submit(() -> GrlcSpec.fetchNanopub(artifactCode, ac -> {
+                fetches.incrementAndGet();
+                fetching.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return nanopub;
+            }));
+            assertTrue(fetching.await(10, TimeUnit.SECONDS));
+            Future<Nanopub> second = executor.submit(() -> GrlcSpec.fetchNanopub(artifactCode, ac -> {
+                fetches.incrementAndGet();
+                return nanopub;
+            }));
+            Thread.sleep(50);
+            assertFalse(second.isDone(), "waits for the running fetch");
+            release.countDown();
+            assertSame(nanopub, first.get(10, TimeUnit.SECONDS));
+            assertSame(nanopub, second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, fetches.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedFetchIsNotCached() throws Exception {
+        Nanopub nanopub = new NanopubImpl(testSuiteEntry.toFile());
+        String artifactCode = "RA-failed-fetch-test";
+        assertThrows(IllegalStateException.class, () -> GrlcSpec.fetchNanopub(artifactCode, ac -> {
+            throw new IllegalStateException("server unreachable");
+        }));
+        assertThrows(InvalidGrlcSpecException.class, () -> GrlcSpec.fetchNanopub(artifactCode, ac -> null));
+        assertSame(nanopub, GrlcSpec.fetchNanopub(artifactCode, ac -> nanopub));
+    }
+
     @Test
     void isIriPlaceholder() {
         assertTrue(GrlcSpec.isIriPlaceholder("example_iri"));
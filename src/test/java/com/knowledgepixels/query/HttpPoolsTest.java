@@ -0,0 +1,74 @@
+package com.knowledgepixels.query;
+
+import com.knowledgepixels.query.HttpPools.Workload;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpPoolsTest {
+
+    private static final String BASE = "http://rdf4j:8080/rdf4j-server/";
+
+    @Test
+    void repoTrafficFollowsTheCallingWorkload() {
+        assertEquals(Workload.RECONCILIATION,
+                HttpPools.workloadFor("POST", BASE + "repositories/meta", Workload.RECONCILIATION));
+        assertEquals(Workload.MATERIALIZATION,
+                HttpPools.workloadFor("PUT", BASE + "repositories/spaces/statements?context=x", Workload.MATERIALIZATION));
+        assertEquals(Workload.INGEST,
+                HttpPools.workloadFor("POST", BASE + "repositories/type_abc/transactions/1234", Workload.INGEST));
+    }
+
+    @Test
+    void adminRepoAndRepoManagementGoToTheAdminPool() {
+        assertEquals(Workload.ADMIN, HttpPools.workloadFor("POST", BASE + "repositories/admin", Workload.INGEST));
+        assertEquals(Workload.ADMIN,
+                HttpPools.workloadFor("PUT", BASE + "repositories/admin/transactions/1234?action=COMMIT", Workload.INGEST));
+        assertEquals(Workload.ADMIN, HttpPools.workloadFor("GET", BASE + "/repositories", Workload.INGEST));
+        assertEquals(Workload.ADMIN, HttpPools.workloadFor("PUT", BASE + "repositories/type_abc", Workload.INGEST));
+        // Only the admin repo itself, not repos whose name starts with it.
+        assertEquals(Workload.INGEST, HttpPools.workloadFor("POST", BASE + "repositories/administrative", Workload.INGEST));
+    }
+
+    @Test
+    void unparseableUrisKeepTheCallingWorkload() {
+        assertEquals(Workload.MATERIALIZATION,
+                HttpPools.workloadFor("GET", "http://rdf4j/repositories/admin?q={bad}", Workload.MATERIALIZATION));
+    }
+
+    @Test
+    void runTagsTheThreadAndRestoresTheWorkloadBefore() throws Exception {
+        AtomicReference<Workload> inner = new AtomicReference<>();
+        AtomicReference<Workload> nested = new AtomicReference<>();
+        HttpPools.run(Workload.RECONCILIATION, () -> {
+            inner.set(HttpPools.workloadFor("GET", BASE + "repositories/meta", HttpPools.currentWorkload()));
+            HttpPools.run(Workload.MATERIALIZATION,
+                    () -> nested.set(HttpPools.workloadFor("GET", BASE + "repositories/meta", HttpPools.currentWorkload())));
+            assertEquals(Workload.RECONCILIATION, HttpPools.currentWorkload());
+        });
+        assertEquals(Workload.RECONCILIATION, inner.get());
+        assertEquals(Workload.MATERIALIZATION, nested.get());
+        assertEquals(Workload.INGEST, HttpPools.currentWorkload());
+
+        AtomicReference<Workload> onThread = new AtomicReference<>();
+        Thread t = HttpPools.threadFactory(Workload.RECONCILIATION, "test-reconciler")
+                .newThread(() -> onThread.set(HttpPools.currentWorkload()));
+        assertEquals("test-reconciler", t.getName());
+        t.start();
+        t.join();
+        assertEquals(Workload.RECONCILIATION, onThread.get());
+    }
+
+    @Test
+    void eachWorkloadHasItsOwnPool() {
+        HttpPools pools = HttpPools.get();
+        for (Workload workload : Workload.values()) {
+            assertEquals(workload.budget, pools.stats(workload).getMax());
+            assertEquals(0, pools.stats(workload).getLeased());
+        }
+        assertEquals(TripleStore.MAX_CONNECTIONS_PER_ROUTE, Workload.INGEST.budget);
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.knowledgepixels.query;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.when;
@@ -57,8 +59,15 @@ final class InMemoryTripleStore implements AutoCloseable {
         // against a closed connection.
         when(store.getRepoConnection(anyString()))
                 .thenAnswer(inv -> repo(inv.getArgument(0)).getConnection());
+        // The bulk reads only issue queries on the connection they are given.
+        doCallRealMethod().when(store).fetchGraphs(any(), any(), any());
+        doCallRealMethod().when(store).fetchSubjects(any(), any(), any(), any(), any());
         staticMock = mockStatic(TripleStore.class);
         staticMock.when(TripleStore::get).thenReturn(store);
+        // Heads cached and filters built against the previous test's repos would not
+        // match these fresh ones.
+        RepoChainHeadCache.get().invalidateAll();
+        LoadedNanopubFilter.get().clear();
     }
 
     /** The (lazily created) repository behind a repo name. */
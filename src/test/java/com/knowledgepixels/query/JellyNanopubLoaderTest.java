@@ -2,11 +2,22 @@ package com.knowledgepixels.query;
 
 import com.knowledgepixels.query.JellyNanopubLoader.LoadingType;
 import com.knowledgepixels.query.JellyNanopubLoader.RegistryMetadata;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -93,6 +104,61 @@ class JellyNanopubLoaderTest {
         }
     }
 
+    @Test
+    void readerStoppingEarlyDoesNotReadTheRestOfTheBody() throws Exception {
+        assertBodyLeftUnread(is -> {
+            is.readNBytes(1024);
+            return false;
+        });
+    }
+
+    @Test
+    void readerFailingDoesNotReadTheRestOfTheBody() throws Exception {
+        assertBodyLeftUnread(is -> {
+            is.readNBytes(1024);
+            throw new IOException("broken nanopub");
+        });
+    }
+
+    /**
+     * Serves a body far larger than socket buffers and checks that the server could not
+     * write most of it once the reader is done.
+     */
+    private static void assertBodyLeftUnread(JellyNanopubLoader.BodyReader reader) throws Exception {
+        long bodySize = 256L * 1024 * 1024;
+        AtomicLong written = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, bodySize);
+            byte[] chunk = new byte[64 * 1024];
+            try (OutputStream out = exchange.getResponseBody()) {
+                while (written.get() < bodySize) {
+                    out.write(chunk);
+                    written.addAndGet(chunk.length);
+                }
+            } catch (IOException ex) {
+                // The client went away.
+            } finally {
+                done.countDown();
+            }
+        });
+        server.start();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            HttpGet request = new HttpGet("http://localhost:" + server.getAddress().getPort() + "/");
+            CloseableHttpResponse response = client.execute(request);
+            try {
+                JellyNanopubLoader.readBody(request, response, reader);
+            } catch (IOException ex) {
+                assertEquals("broken nanopub", ex.getMessage());
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertTrue(written.get() < bodySize / 4, "server wrote " + written.get() + " bytes");
+        } finally {
+            server.stop(0);
+        }
+    }
+
     private static long getLong(String fieldName) throws Exception {
         Field f = JellyNanopubLoader.class.getDeclaredField(fieldName);
         f.setAccessible(true);
@@ -0,0 +1,109 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The checkpointer takes the counter writes off the ingest thread, so what it must get
+ * right is when it writes: on the volume trigger, on the interval, never a stale or
+ * repeated value, and never after {@code close()}.
+ */
+class LoadCounterCheckpointerTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void volumeTriggerPersistsTheLatestCounterWithoutWaitingForTheInterval() throws Exception {
+        List<Long> persisted = new CopyOnWriteArrayList<>();
+        CountDownLatch written = new CountDownLatch(1);
+        try (LoadCounterCheckpointer cp = new LoadCounterCheckpointer(9, c -> {
+            persisted.add(c);
+            written.countDown();
+        }, NEVER, 100)) {
+            cp.committed(59, 50);
+            assertEquals(List.of(), persisted, "below the volume threshold nothing is written");
+            cp.committed(109, 50);
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of(109L), persisted);
+            assertEquals(109L, cp.getPersistedCounter());
+        }
+    }
+
+    @Test
+    void intervalPersistsOnlyWhenTheCounterMoved() throws Exception {
+        List<Long> persisted = new CopyOnWriteArrayList<>();
+        CountDownLatch written = new CountDownLatch(1);
+        try (LoadCounterCheckpointer cp = new LoadCounterCheckpointer(0, c -> {
+            persisted.add(c);
+            written.countDown();
+        }, 20, Integer.MAX_VALUE)) {
+            cp.committed(3, 3);
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100); // several more ticks with nothing new committed
+            assertEquals(List.of(3L), persisted);
+        }
+    }
+
+    @Test
+    void failedCheckpointIsRetriedAndDoesNotAdvanceThePersistedCounter() {
+        AtomicInteger attempts = new AtomicInteger();
+        try (LoadCounterCheckpointer cp = new LoadCounterCheckpointer(0, c -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException("admin repo unreachable");
+            }
+        }, NEVER, Integer.MAX_VALUE)) {
+            cp.committed(5, 5);
+            cp.checkpoint();
+            assertEquals(0L, cp.getPersistedCounter());
+            cp.checkpoint();
+            assertEquals(5L, cp.getPersistedCounter());
+            assertEquals(2, attempts.get());
+        }
+    }
+
+    @Test
+    void failingCheckpointsAreNotQueuedOncePerCommit() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (LoadCounterCheckpointer cp = new LoadCounterCheckpointer(0, c -> {
+            attempts.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("admin repo unreachable");
+        }, NEVER, 10)) {
+            cp.committed(10, 10);
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            // The admin repo hangs; the loader keeps committing above the threshold.
+            for (long c = 20; c <= 1000; c += 10) {
+                cp.committed(c, 10);
+            }
+            release.countDown();
+            Thread.sleep(200);
+            assertEquals(2, attempts.get(), "the one in progress and one queued behind it");
+            assertEquals(0L, cp.getPersistedCounter());
+        }
+    }
+
+    @Test
+    void nothingIsPersistedAfterClose() {
+        AtomicInteger writes = new AtomicInteger();
+        LoadCounterCheckpointer cp = new LoadCounterCheckpointer(0, c -> writes.incrementAndGet(), NEVER, Integer.MAX_VALUE);
+        cp.committed(7, 7);
+        cp.close();
+        cp.checkpoint();
+        assertEquals(0, writes.get());
+    }
+}
@@ -0,0 +1,105 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.junit.jupiter.api.Test;
+import org.nanopub.NanopubUtils;
+import org.nanopub.vocabulary.NPA;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The filter may say "maybe" as often as it likes, but must never say "no" for a nanopub
+ * that is stamped in the repo: not for one found by the startup stream, and not for one
+ * written while or after the filter was built.
+ */
+class LoadedNanopubFilterTest {
+
+    private static final SimpleValueFactory VF = SimpleValueFactory.getInstance();
+    private static final String B64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    /** A distinct, well-formed trusty URI per index; {@code updateXorChecksum} decodes it. */
+    private static IRI np(int i) {
+        StringBuilder sb = new StringBuilder("A".repeat(43));
+        sb.setCharAt(0, B64.charAt(i & 63));
+        sb.setCharAt(1, B64.charAt((i >> 6) & 63));
+        return VF.createIRI("http://purl.org/np/RA" + sb);
+    }
+
+    private static void stamp(InMemoryTripleStore store, String repo, int from, int to) {
+        try (RepositoryConnection conn = store.connection(repo)) {
+            conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, VF.createLiteral((long) (to - from)), NPA.GRAPH);
+            for (int i = from; i < to; i++) {
+                conn.add(np(i), NPA.HAS_LOAD_NUMBER, VF.createLiteral((long) i), NPA.GRAPH);
+            }
+        }
+    }
+
+    @Test
+    void unbuiltRepoIsNeverRuledOut() {
+        LoadedNanopubFilter filter = new LoadedNanopubFilter();
+        assertTrue(filter.mightBeLoaded("meta", np(1)));
+        filter.added("meta", List.of(np(1)));
+        assertTrue(filter.mightBeLoaded("meta", np(2)));
+    }
+
+    @Test
+    void builtFilterKnowsEveryStampedNanopubAndRulesOutMostOthers() {
+        try (InMemoryTripleStore store = new InMemoryTripleStore()) {
+            stamp(store, "full", 0, 500);
+            LoadedNanopubFilter filter = new LoadedNanopubFilter();
+            filter.rebuild("full");
+
+            for (int i = 0; i < 500; i++) {
+                assertTrue(filter.mightBeLoaded("full", np(i)), "stamped #" + i);
+            }
+            int ruledOut = 0;
+            for (int i = 500; i < 1500; i++) {
+                if (!filter.mightBeLoaded("full", np(i))) {
+                    ruledOut++;
+                }
+            }
+            assertTrue(ruledOut > 950, "false-positive rate far above 1 %: " + (1000 - ruledOut) + " of 1000");
+            assertTrue(filter.mightBeLoaded("meta", np(600)), "other repos stay unguarded");
+        }
+    }
+
+    @Test
+    void nanopubsAddedAfterTheBuildAreKnown() {
+        try (InMemoryTripleStore store = new InMemoryTripleStore()) {
+            stamp(store, "text", 0, 10);
+            LoadedNanopubFilter filter = new LoadedNanopubFilter();
+            filter.rebuild("text");
+            filter.added("text", List.of(np(20), np(21)));
+            assertTrue(filter.mightBeLoaded("text", np(20)));
+            assertTrue(filter.mightBeLoaded("text", np(21)));
+        }
+    }
+
+    @Test
+    void loaderSkipsTheReadForRuledOutNanopubsAndStillSkipsLoadedOnes() {
+        try (InMemoryTripleStore store = new InMemoryTripleStore()) {
+            try (RepositoryConnection conn = store.connection("meta")) {
+                conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM, VF.createLiteral(NanopubUtils.INIT_CHECKSUM), NPA.GRAPH);
+                conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, VF.createLiteral(0L), NPA.GRAPH);
+            }
+            NanopubLoader.loadNanopubsToRepo(List.of(new NanopubLoader.RepoEntry(np(0), List.of())), "meta");
+            LoadedNanopubFilter.get().rebuild("meta");
+
+            NanopubLoader.loadNanopubsToRepo(List.of(
+                    new NanopubLoader.RepoEntry(np(0), List.of()),
+                    new NanopubLoader.RepoEntry(np(1), List.of()),
+                    new NanopubLoader.RepoEntry(np(2), List.of())), "meta");
+
+            try (RepositoryConnection conn = store.connection("meta")) {
+                assertEquals("3", Utils.getObjectForPattern(conn, NPA.GRAPH, NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT).stringValue());
+                assertEquals("0", Utils.getObjectForPattern(conn, NPA.GRAPH, np(0), NPA.HAS_LOAD_NUMBER).stringValue());
+                assertEquals("2", Utils.getObjectForPattern(conn, NPA.GRAPH, np(2), NPA.HAS_LOAD_NUMBER).stringValue());
+            }
+            assertTrue(LoadedNanopubFilter.get().mightBeLoaded("meta", np(2)));
+        }
+    }
+}
@@ -7,11 +7,13 @@ import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
-import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class MetricsCollectorTest {
 
@@ -46,6 +48,29 @@ class MetricsCollectorTest {
         assertEquals(0.0, registry.find("registry.spaces.processed_up_to_lag").gauge().value());
     }
 
+    @Test
+    void registersRepoCacheGauges() {
+        var registry = new SimpleMeterRegistry();
+        new MetricsCollector(registry);
+        assertNotNull(registry.find("registry.repo_cache.hits_total").gauge());
+        assertNotNull(registry.find("registry.repo_cache.misses_total").gauge());
+        assertNotNull(registry.find("registry.repo_cache.evictions_total").gauge());
+    }
+
+    @Test
+    void registersHttpPoolMetricsPerWorkload() {
+        var registry = new SimpleMeterRegistry();
+        new MetricsCollector(registry);
+        for (HttpPools.Workload workload : HttpPools.Workload.values()) {
+            String pool = workload.label();
+            assertEquals(0.0, registry.find("registry.http_pool.leased").tag("pool", pool).gauge().value());
+            assertEquals(0.0, registry.find("registry.http_pool.pending").tag("pool", pool).gauge().value());
+            assertNotNull(registry.find("registry.http_pool.available").tag("pool", pool).gauge());
+            assertEquals(workload.budget, registry.find("registry.http_pool.max").tag("pool", pool).gauge().value());
+            assertNotNull(registry.find("registry.http_pool.lease_wait").tag("pool", pool).timer());
+        }
+    }
+
     @Test
     void exportsTheMetricNamesTheAlertRulesReferenceOn() {
         // monitoring/prometheus-alerts.yml matches on these exact strings. Micrometer
@@ -102,10 +127,12 @@ class MetricsCollectorTest {
         MetricsCollector collector = new MetricsCollector(meterRegistry);
         try (MockedStatic<TripleStore> tripleStoreMockedStatic = mockStatic(TripleStore.class)) {
             TripleStore tripleStore = mock(TripleStore.class);
-            Set<String> repositoryNames = Set.of("type_repo1", "pubkey_repo1", "full_repo1");
             tripleStoreMockedStatic.when(TripleStore::get).thenReturn(tripleStore);
-            tripleStoreMockedStatic.when(tripleStore::getRepositoryNames).thenReturn(repositoryNames);
+            when(tripleStore.getRepositoryCount("type")).thenReturn(1);
+            when(tripleStore.getRepositoryCount("pubkey")).thenReturn(1);
+            when(tripleStore.getRepositoryCount()).thenReturn(3);
             assertDoesNotThrow(collector::updateMetrics);
+            verify(tripleStore, never()).getRepositoryNames();
         }
     }
 
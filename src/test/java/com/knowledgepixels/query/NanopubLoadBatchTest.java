@@ -0,0 +1,77 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * When the batch hands its nanopubs to {@link NanopubLoader#executeLoading(List)}: on the
+ * nanopub count, on the statement count, and on its own for non-batchable nanopubs.
+ */
+class NanopubLoadBatchTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private static NanopubLoader loader(long counter, int statements, boolean batchable) {
+        NanopubLoader loader = mock(NanopubLoader.class);
+        when(loader.getCounter()).thenReturn(counter);
+        when(loader.getStatementCount()).thenReturn(statements);
+        when(loader.isBatchable()).thenReturn(batchable);
+        return loader;
+    }
+
+    @Test
+    void flushesOnNanopubCount() {
+        List<Long> committed = new ArrayList<>();
+        try (MockedStatic<NanopubLoader> mocked = mockStatic(NanopubLoader.class)) {
+            NanopubLoadBatch batch = new NanopubLoadBatch(3, Integer.MAX_VALUE, NEVER, (c, n) -> committed.add(c));
+            for (int i = 1; i <= 7; i++) {
+                batch.add(loader(i, 10, true));
+            }
+            assertEquals(List.of(3L, 6L), committed);
+            assertEquals(1, batch.pendingSize());
+            batch.flush();
+            assertEquals(List.of(3L, 6L, 7L), committed);
+            mocked.verify(() -> NanopubLoader.executeLoading(anyList()), times(3));
+        }
+    }
+
+    @Test
+    void flushesOnStatementCountBeforeTheBatchIsFull() {
+        List<Long> committed = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        try (MockedStatic<NanopubLoader> mocked = mockStatic(NanopubLoader.class)) {
+            NanopubLoadBatch batch = new NanopubLoadBatch(50, 1000, NEVER, (c, n) -> {
+                committed.add(c);
+                sizes.add(n);
+            });
+            batch.add(loader(1, 400, true));
+            batch.add(loader(2, 400, true));
+            assertEquals(List.of(), committed);
+            batch.add(loader(3, 400, true));
+            assertEquals(List.of(3L), committed);
+            assertEquals(List.of(3), sizes);
+            batch.add(loader(4, 100, true));
+            assertEquals(1, batch.pendingSize(), "the statement tally starts over after a flush");
+        }
+    }
+
+    @Test
+    void nonBatchableNanopubFlushesThePendingOnesAndLoadsAlone() {
+        List<Long> committed = new ArrayList<>();
+        try (MockedStatic<NanopubLoader> mocked = mockStatic(NanopubLoader.class)) {
+            NanopubLoadBatch batch = new NanopubLoadBatch(50, Integer.MAX_VALUE, NEVER, (c, n) -> committed.add(c));
+            batch.add(loader(1, 10, true));
+            batch.add(loader(2, 10, true));
+            batch.add(loader(3, 10, false));
+            assertEquals(List.of(2L, 3L), committed);
+            assertEquals(0, batch.pendingSize());
+        }
+    }
+}
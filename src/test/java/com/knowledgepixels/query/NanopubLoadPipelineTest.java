@@ -0,0 +1,78 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.PROV;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.nanopub.Nanopub;
+import org.nanopub.NanopubCreator;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Preparation may run ahead and in parallel, but the writes it feeds must see the nanopubs
+ * in stream order, and no more than the in-flight bound may be held at once.
+ *
+ * <p>Uses unsigned test nanopubs: {@link NanopubLoader#prepare} aborts them at the
+ * signature check, before anything touches the store, so the prepare pool can run them for
+ * real without a {@link TripleStore}.
+ */
+class NanopubLoadPipelineTest {
+
+    private static Nanopub unsignedNanopub(int i) throws Exception {
+        ValueFactory vf = SimpleValueFactory.getInstance();
+        String baseUri = "http://example.org/pipeline-test-" + i;
+        NanopubCreator creator = new NanopubCreator(baseUri);
+        IRI thing = vf.createIRI(baseUri + "#thing");
+        creator.addAssertionStatement(thing, RDFS.LABEL, vf.createLiteral("thing " + i));
+        creator.addProvenanceStatement(PROV.WAS_ATTRIBUTED_TO, vf.createIRI("http://example.org/someone"));
+        creator.addTimestampNow();
+        return creator.finalizeTrustyNanopub();
+    }
+
+    @Test
+    void writesHappenInStreamOrderWithinTheInFlightBound() throws Exception {
+        NanopubLoadBatch batch = mock(NanopubLoadBatch.class);
+        int maxInFlight = 3;
+        int n = 20;
+        try (NanopubLoadPipeline pipeline = new NanopubLoadPipeline(batch, maxInFlight)) {
+            for (int i = 0; i < n; i++) {
+                pipeline.add(unsignedNanopub(i), 100 + i);
+                assertTrue(pipeline.inFlightSize() <= maxInFlight);
+            }
+            // Everything beyond the bound has already been handed to the writer.
+            verify(batch, times(n - maxInFlight)).add(any(NanopubLoader.class));
+            pipeline.finish();
+        }
+
+        ArgumentCaptor<NanopubLoader> captor = ArgumentCaptor.forClass(NanopubLoader.class);
+        verify(batch, times(n)).add(captor.capture());
+        verify(batch).flush();
+        List<NanopubLoader> written = captor.getAllValues();
+        for (int i = 0; i < n; i++) {
+            assertEquals(100 + i, written.get(i).getCounter());
+            assertTrue(written.get(i).isAborted());
+        }
+    }
+
+    @Test
+    void closeAfterFailureDropsQueuedWork() throws Exception {
+        NanopubLoadBatch batch = mock(NanopubLoadBatch.class);
+        NanopubLoadPipeline pipeline = new NanopubLoadPipeline(batch, 10);
+        pipeline.add(unsignedNanopub(1), 1);
+        pipeline.add(unsignedNanopub(2), 2);
+
+        pipeline.close();
+
+        assertEquals(0, pipeline.inFlightSize());
+        verify(batch, never()).add(any(NanopubLoader.class));
+        verify(batch, never()).flush();
+    }
+}
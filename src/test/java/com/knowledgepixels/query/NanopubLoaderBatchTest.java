@@ -0,0 +1,128 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.junit.jupiter.api.Test;
+import org.nanopub.NanopubUtils;
+import org.nanopub.vocabulary.NPA;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Batched commits must leave exactly the count / load-number / checksum chain that
+ * loading the same nanopubs one transaction at a time would have left.
+ *
+ * <p>Runs {@code loadNanopubsToRepo} end to end against {@link InMemoryTripleStore}: one
+ * repo is fed entry by entry (the single-nanopub path), the other the whole list at once,
+ * and the two chains are compared triple by triple.
+ */
+class NanopubLoaderBatchTest {
+
+    private static final SimpleValueFactory VF = SimpleValueFactory.getInstance();
+    private static final String B64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    /** A distinct, well-formed trusty URI per index; {@code updateXorChecksum} decodes it. */
+    private static IRI np(int i) {
+        StringBuilder sb = new StringBuilder("A".repeat(43));
+        sb.setCharAt(0, B64.charAt(i & 63));
+        sb.setCharAt(1, B64.charAt((i >> 6) & 63));
+        return VF.createIRI("http://purl.org/np/RA" + sb);
+    }
+
+    private static NanopubLoader.RepoEntry entry(int i) {
+        IRI id = np(i);
+        Statement st = VF.createStatement(id, NPA.HAS_HEAD_GRAPH, VF.createIRI(id + "/Head"), NPA.GRAPH);
+        return new NanopubLoader.RepoEntry(id, List.of(st));
+    }
+
+    private static void seed(InMemoryTripleStore store, String repo) {
+        try (RepositoryConnection conn = store.connection(repo)) {
+            conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, VF.createLiteral(0L), NPA.GRAPH);
+            conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM, VF.createLiteral(NanopubUtils.INIT_CHECKSUM), NPA.GRAPH);
+        }
+    }
+
+    private static String value(InMemoryTripleStore store, String repo, IRI subj, IRI pred) {
+        try (RepositoryConnection conn = store.connection(repo)) {
+            Value v = Utils.getObjectForPattern(conn, NPA.GRAPH, subj, pred);
+            return v == null ? null : v.stringValue();
+        }
+    }
+
+    @Test
+    void batchProducesTheSequentialChain() {
+        try (InMemoryTripleStore store = new InMemoryTripleStore()) {
+            seed(store, "type_seq");
+            seed(store, "type_batch");
+            // One nanopub already present in both, as after a crash mid-batch.
+            NanopubLoader.loadNanopubsToRepo(List.of(entry(2)), "type_seq");
+            NanopubLoader.loadNanopubsToRepo(List.of(entry(2)), "type_batch");
+
+            List<NanopubLoader.RepoEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                entries.add(entry(i));
+            }
+            entries.add(entry(4)); // listed twice: loaded once
+
+            for (NanopubLoader.RepoEntry e : entries) {
+                NanopubLoader.loadNanopubsToRepo(List.of(e), "type_seq");
+            }
+            NanopubLoader.loadNanopubsToRepo(entries, "type_batch");
+
+            assertEquals("6", value(store, "type_batch", NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT));
+            assertEquals(value(store, "type_seq", NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT),
+                    value(store, "type_batch", NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT));
+            assertEquals(value(store, "type_seq", NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM),
+                    value(store, "type_batch", NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM));
+            for (int i = 0; i < 6; i++) {
+                assertEquals(value(store, "type_seq", np(i), NPA.HAS_LOAD_NUMBER),
+                        value(store, "type_batch", np(i), NPA.HAS_LOAD_NUMBER), "load number of #" + i);
+                assertEquals(value(store, "type_seq", np(i), NPA.HAS_LOAD_CHECKSUM),
+                        value(store, "type_batch", np(i), NPA.HAS_LOAD_CHECKSUM), "load checksum of #" + i);
+            }
+            assertEquals(store.graphSize("type_seq", NPA.GRAPH), store.graphSize("type_batch", NPA.GRAPH));
+        }
+    }
+
+    @Test
+    void batchOfAlreadyLoadedNanopubsLeavesTheHeadUntouched() {
+        try (InMemoryTripleStore store = new InMemoryTripleStore()) {
+            seed(store, "full");
+            List<NanopubLoader.RepoEntry> entries = List.of(entry(7), entry(8));
+            NanopubLoader.loadNanopubsToRepo(entries, "full");
+            String checksum = value(store, "full", NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM);
+
+            NanopubLoader.loadNanopubsToRepo(entries, "full");
+
+            assertEquals("2", value(store, "full", NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT));
+            assertEquals(checksum, value(store, "full", NPA.THIS_REPO, NPA.HAS_NANOPUB_CHECKSUM));
+            assertNull(value(store, "full", np(9), NPA.HAS_LOAD_NUMBER));
+        }
+    }
+    @Test
+    void invalidatedHeadIsReadFromTheStoreAgain() {
+        try (InMemoryTripleStore store = new InMemoryTripleStore()) {
+            seed(store, "pubkey_x");
+            NanopubLoader.loadNanopubsToRepo(List.of(entry(0)), "pubkey_x");
+            // Move the stored head behind the loader's back, as a backend losing state
+            // would, and invalidate as ShardReconciler does when it notices.
+            try (RepositoryConnection conn = store.connection("pubkey_x")) {
+                conn.remove(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, null, NPA.GRAPH);
+                conn.add(NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT, VF.createLiteral(40L), NPA.GRAPH);
+            }
+            RepoChainHeadCache.get().invalidate("pubkey_x");
+
+            NanopubLoader.loadNanopubsToRepo(List.of(entry(1)), "pubkey_x");
+
+            assertEquals("40", value(store, "pubkey_x", np(1), NPA.HAS_LOAD_NUMBER));
+            assertEquals("41", value(store, "pubkey_x", NPA.THIS_REPO, NPA.HAS_NANOPUB_COUNT));
+        }
+    }
+}
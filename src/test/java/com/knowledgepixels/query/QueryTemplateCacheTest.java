@@ -0,0 +1,87 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryTemplateCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private static GrlcSpec.ParsedTemplate template(String query) {
+        return new GrlcSpec.ParsedTemplate(null, query, null);
+    }
+
+    @Test
+    void leastRecentlyUsedTemplateIsEvicted() {
+        QueryTemplateCache cache = new QueryTemplateCache(2, 60_000L, now::get);
+        cache.putTemplate("RAa", "q", template("a"));
+        cache.putTemplate("RAb", "q", template("b"));
+        assertEquals("a", cache.getTemplate("RAa", "q").queryContent());
+        cache.putTemplate("RAc", "q", template("c"));
+
+        assertNull(cache.getTemplate("RAb", "q"));
+        assertNotNull(cache.getTemplate("RAa", "q"));
+        assertNotNull(cache.getTemplate("RAc", "q"));
+        QueryTemplateCache.Stats stats = cache.stats();
+        assertEquals(2, stats.templates());
+        assertEquals(3, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.evictions());
+    }
+
+    @Test
+    void templatesAreKeyedByQueryName() {
+        QueryTemplateCache cache = new QueryTemplateCache(10, 60_000L, now::get);
+        cache.putTemplate("RAa", "", template("whole"));
+        assertTrue(cache.hasTemplate("RAa", ""));
+        assertFalse(cache.hasTemplate("RAa", "q"));
+        assertEquals(0, cache.stats().hits() + cache.stats().misses(), "hasTemplate is not counted");
+    }
+
+    @Test
+    void latestVersionExpires() {
+        QueryTemplateCache cache = new QueryTemplateCache(10, 60_000L, now::get);
+        cache.putLatestVersion("RAold", "RAnew", cache.chainGeneration());
+        assertEquals("RAnew", cache.getLatestVersion("RAold"));
+        now.addAndGet(60_000L);
+        assertFalse(cache.hasLatestVersion("RAold"));
+        assertNull(cache.getLatestVersion("RAold"));
+        assertEquals(1, cache.stats().latestVersionHits());
+        assertEquals(1, cache.stats().latestVersionMisses());
+    }
+
+    @Test
+    void invalidationDropsTheEntriesOfTheChain() {
+        QueryTemplateCache cache = new QueryTemplateCache(10, 60_000L, now::get);
+        cache.putLatestVersion("RAv1", "RAv2", cache.chainGeneration());
+        cache.putLatestVersion("RAv2", "RAv2", cache.chainGeneration());
+        cache.putLatestVersion("RAother", "RAother", cache.chainGeneration());
+
+        // A v3 superseding v2 is loaded.
+        cache.chainChanged("RAv2");
+        assertNull(cache.getLatestVersion("RAv1"));
+        assertNull(cache.getLatestVersion("RAv2"));
+        assertEquals("RAother", cache.getLatestVersion("RAother"));
+        assertEquals(2, cache.stats().latestVersionInvalidations());
+    }
+
+    @Test
+    void lookupOverlappingAChainChangeIsNotStored() {
+        QueryTemplateCache cache = new QueryTemplateCache(10, 60_000L, now::get);
+        long generation = cache.chainGeneration();
+        cache.chainChanged("RAv2");
+        cache.putLatestVersion("RAv1", "RAv2", generation);
+        assertNull(cache.getLatestVersion("RAv1"));
+    }
+
+    @Test
+    void zeroTtlDisablesTheLatestVersionCache() {
+        QueryTemplateCache cache = new QueryTemplateCache(10, 0L, now::get);
+        cache.putLatestVersion("RAv1", "RAv2", cache.chainGeneration());
+        assertNull(cache.getLatestVersion("RAv1"));
+    }
+
+}
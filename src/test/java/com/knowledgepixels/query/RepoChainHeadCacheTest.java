@@ -0,0 +1,63 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The cache may only answer for a repo whose head it saw committed or read, must send a
+ * sample of lookups back to the store, and must count and repair a head it got wrong.
+ */
+class RepoChainHeadCacheTest {
+
+    private static final RepoChainHeadCache.Head HEAD_5 = new RepoChainHeadCache.Head(5, "checksum-5");
+    private static final RepoChainHeadCache.Head HEAD_7 = new RepoChainHeadCache.Head(7, "checksum-7");
+
+    @Test
+    void answersOnlyAfterACommitOrARead() {
+        RepoChainHeadCache cache = new RepoChainHeadCache(Integer.MAX_VALUE);
+        assertNull(cache.lookup("full"));
+        cache.committed("full", HEAD_5);
+        assertEquals(HEAD_5, cache.lookup("full"));
+        assertTrue(cache.verified("meta", HEAD_7));
+        assertEquals(HEAD_7, cache.lookup("meta"));
+    }
+
+    @Test
+    void invalidatedRepoIsReadFromTheStoreAgain() {
+        RepoChainHeadCache cache = new RepoChainHeadCache(Integer.MAX_VALUE);
+        cache.committed("full", HEAD_5);
+        cache.committed("meta", HEAD_5);
+        cache.invalidate("full");
+        assertNull(cache.lookup("full"));
+        assertEquals(HEAD_5, cache.lookup("meta"));
+        cache.invalidateAll();
+        assertNull(cache.lookup("meta"));
+    }
+
+    @Test
+    void everyNthLookupIsSentToTheStore() {
+        RepoChainHeadCache cache = new RepoChainHeadCache(4);
+        cache.committed("full", HEAD_5);
+        int misses = 0;
+        for (int i = 0; i < 40; i++) {
+            if (cache.lookup("full") == null) {
+                misses++;
+            }
+        }
+        assertEquals(10, misses);
+    }
+
+    @Test
+    void divergentHeadIsCountedAndReplacedByTheStoredOne() {
+        RepoChainHeadCache cache = new RepoChainHeadCache(Integer.MAX_VALUE);
+        long before = RepoChainHeadCache.DIVERGENCES.get();
+        cache.committed("type_x", HEAD_7);
+        assertTrue(cache.verified("type_x", HEAD_7));
+        assertEquals(before, RepoChainHeadCache.DIVERGENCES.get());
+
+        assertFalse(cache.verified("type_x", HEAD_5));
+        assertEquals(before + 1, RepoChainHeadCache.DIVERGENCES.get());
+        assertEquals(HEAD_5, cache.lookup("type_x"));
+    }
+}
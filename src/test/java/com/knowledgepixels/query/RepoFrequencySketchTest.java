@@ -0,0 +1,45 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepoFrequencySketchTest {
+
+    @Test
+    void countsAccessesPerName() {
+        RepoFrequencySketch sketch = new RepoFrequencySketch(1024);
+        for (int i = 0; i < 3; i++) {
+            sketch.increment("type_a");
+        }
+        sketch.increment("type_b");
+
+        assertEquals(3, sketch.frequency("type_a"));
+        assertEquals(1, sketch.frequency("type_b"));
+        assertEquals(0, sketch.frequency("type_c"));
+    }
+
+    @Test
+    void countsSaturate() {
+        RepoFrequencySketch sketch = new RepoFrequencySketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("meta");
+        }
+        assertEquals(RepoFrequencySketch.MAX_COUNT, sketch.frequency("meta"));
+    }
+
+    @Test
+    void oldTrafficFadesOnceEnoughNewTrafficIsRecorded() {
+        RepoFrequencySketch sketch = new RepoFrequencySketch(16);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("type_old");
+        }
+        // The 160th access (10 * width) halves every count.
+        for (int i = 0; i < 160 - 8; i++) {
+            sketch.increment("type_new");
+        }
+        assertEquals(4, sketch.frequency("type_old"));
+        assertEquals(RepoFrequencySketch.MAX_COUNT / 2, sketch.frequency("type_new"));
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepoVersionsTest {
+
+    @Test
+    void commitSetsTheVersion() {
+        RepoVersions versions = new RepoVersions();
+        assertNull(versions.version("meta"));
+        versions.committed("meta", "abc");
+        String first = versions.version("meta");
+        assertNotNull(first);
+        versions.committed("meta", "def");
+        assertNotEquals(first, versions.version("meta"));
+    }
+
+    @Test
+    void writeWithoutChainMovesTheVersion() {
+        RepoVersions versions = new RepoVersions();
+        versions.committed("pubkey_a", "abc");
+        String before = versions.version("pubkey_a");
+        versions.changed("pubkey_a");
+        assertNotNull(versions.version("pubkey_a"));
+        assertNotEquals(before, versions.version("pubkey_a"));
+    }
+
+    @Test
+    void untrackedReposHaveNoVersion() {
+        RepoVersions versions = new RepoVersions();
+        versions.committed("last30d", "abc");
+        versions.primed("spaces", "abc", versions.changes("spaces"));
+        assertNull(versions.version("last30d"));
+        assertNull(versions.version("spaces"));
+        assertTrue(RepoVersions.isTracked("type_x"));
+        assertFalse(RepoVersions.isTracked("admin"));
+    }
+
+    @Test
+    void forgottenVersionIsNotReusedAfterPriming() {
+        RepoVersions versions = new RepoVersions();
+        versions.committed("full", "abc");
+        String before = versions.version("full");
+        versions.forget("full");
+        assertNull(versions.version("full"));
+
+        // The failed commit did not land after all: same checksum, yet a new version, as
+        // responses read in between may have seen either state.
+        versions.primed("full", "abc", versions.changes("full"));
+        assertNotNull(versions.version("full"));
+        assertNotEquals(before, versions.version("full"));
+    }
+
+    @Test
+    void primingThatOverlappedAWriteIsDropped() {
+        RepoVersions versions = new RepoVersions();
+        long changes = versions.changes("text");
+        versions.changed("text");
+        versions.primed("text", "abc", changes);
+        assertNull(versions.version("text"));
+
+        versions.primed("text", "abc", versions.changes("text"));
+        assertNotNull(versions.version("text"));
+    }
+
+    @Test
+    void primingDoesNotOverrideAKnownVersion() {
+        RepoVersions versions = new RepoVersions();
+        versions.committed("meta", "new");
+        String known = versions.version("meta");
+        versions.primed("meta", "old", versions.changes("meta"));
+        assertEquals(known, versions.version("meta"));
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The scheduler replaces the per-repo lock as what keeps writes to one repo apart, so it
+ * has to run a repo's tasks one at a time and in order, while still letting other repos
+ * through in parallel.
+ */
+class RepoWriteSchedulerTest {
+
+    @Test
+    void tasksForOneRepoRunOneAtATimeInSubmissionOrder() throws Exception {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            futures.add(scheduler.submit("meta", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(n);
+                running.decrementAndGet();
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    void differentReposRunInParallel() throws Exception {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(2);
+        CountDownLatch otherRepoRan = new CountDownLatch(1);
+        // Would time out if "full" had to wait for "meta" to finish.
+        Future<?> blocked = scheduler.submit("meta", () -> {
+            try {
+                assertTrue(otherRepoRan.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        scheduler.submit("full", otherRepoRan::countDown).get(10, TimeUnit.SECONDS);
+        blocked.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failingTaskDoesNotStallItsQueue() throws Exception {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(1);
+        Future<?> failed = scheduler.submit("type_x", () -> {
+            throw new IllegalStateException("store unreachable");
+        });
+        Future<?> next = scheduler.submit("type_x", () -> {
+        });
+        next.get(10, TimeUnit.SECONDS);
+        assertTrue(failed.isDone());
+        assertThrows(Exception.class, failed::get);
+    }
+
+    @Test
+    void retriedTaskFreesTheWorkerBetweenAttempts() throws Exception {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(1,
+                new StoreRetries(100, 1_000L, 100, n -> 200L, System::currentTimeMillis));
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> order = new CopyOnWriteArrayList<>();
+        Future<?> retried = scheduler.submit("type_x", "test write", () -> {
+            order.add("type_x");
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("store unreachable");
+            }
+        });
+        Future<?> sameRepo = scheduler.submit("type_x", "next write", () -> order.add("type_x next"));
+        // The only worker would be busy for the whole back-off if it slept through it.
+        scheduler.submit("meta", () -> order.add("meta")).get(150, TimeUnit.MILLISECONDS);
+        retried.get(10, TimeUnit.SECONDS);
+        sameRepo.get(10, TimeUnit.SECONDS);
+        assertEquals(3, attempts.get());
+        assertEquals(List.of("type_x", "meta", "type_x", "type_x", "type_x next"), order);
+    }
+
+    @Test
+    void retriedTaskFailsOnceGivenUp() {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(1,
+                new StoreRetries(100, 1_000L, 0, n -> 0L, System::currentTimeMillis));
+        Future<?> failed = scheduler.submit("type_x", "test write", () -> {
+            throw new IllegalStateException("store unreachable");
+        });
+        Exception ex = assertThrows(Exception.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertTrue(ex.getCause().getMessage().startsWith("Giving up on test write after 1 attempt(s)"));
+    }
+
+    @Test
+    void snapshotReportsDepthAndWaitPerRepo() throws Exception {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> first = scheduler.submit("pubkey_a", () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        Future<?> second = scheduler.submit("pubkey_a", () -> {
+        });
+        assertEquals(2, scheduler.snapshot().get("pubkey_a").depth());
+
+        Thread.sleep(20);
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        RepoWriteScheduler.QueueStats stats = scheduler.snapshot().get("pubkey_a");
+        assertEquals(0, stats.depth());
+        assertEquals(2, stats.tasks());
+        assertTrue(stats.maxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(20), "second task waited for the first");
+        assertTrue(stats.totalWaitNanos() >= stats.maxWaitNanos());
+    }
+
+    @Test
+    void concurrencyIsCappedByTheHttpPool() {
+        RepoWriteScheduler scheduler = new RepoWriteScheduler(1000);
+        assertEquals(RepoWriteScheduler.MAX_CONCURRENCY, scheduler.getConcurrency());
+        assertTrue(RepoWriteScheduler.MAX_CONCURRENCY < TripleStore.MAX_CONNECTIONS_PER_ROUTE);
+        scheduler.setConcurrency(3);
+        assertEquals(3, scheduler.getConcurrency());
+        scheduler.setConcurrency(0);
+        assertEquals(1, scheduler.getConcurrency());
+    }
+
+    @Test
+    void typeAndPubkeyReposAreGroupedForMetrics() {
+        assertEquals("type_*", RepoWriteScheduler.metricsGroup("type_abc"));
+        assertEquals("pubkey_*", RepoWriteScheduler.metricsGroup("pubkey_abc"));
+        assertEquals("meta", RepoWriteScheduler.metricsGroup("meta"));
+    }
+}
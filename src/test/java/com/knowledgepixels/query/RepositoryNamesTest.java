@@ -0,0 +1,54 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositoryNamesTest {
+
+    @Test
+    void countsAndListsNamesPerRepoClass() {
+        RepositoryNames names = new RepositoryNames();
+        assertTrue(names.add("type_b"));
+        assertTrue(names.add("type_a"));
+        assertTrue(names.add("pubkey_a"));
+        assertTrue(names.add("meta"));
+        assertFalse(names.add("type_a"));
+
+        assertEquals(4, names.count());
+        assertEquals(2, names.count("type"));
+        assertEquals(1, names.count("pubkey"));
+        assertEquals(0, names.count("text"));
+        assertEquals(List.of("type_a", "type_b"), List.copyOf(names.ofClass("type")));
+        assertEquals(List.of("meta", "pubkey", "type"), List.copyOf(names.classes()));
+        assertTrue(names.ofClass("text").isEmpty());
+    }
+
+    @Test
+    void reconcileAddsAndRemovesWhatChanged() {
+        RepositoryNames names = new RepositoryNames();
+        names.add("type_a");
+        names.add("type_b");
+        names.add("meta");
+
+        assertEquals(3, names.reconcile(List.of("meta", "type_b", "pubkey_a", "pubkey_b")));
+        assertEquals(Set.of("meta", "type_b", "pubkey_a", "pubkey_b"), names.all());
+        assertEquals(1, names.count("type"));
+        assertEquals(2, names.count("pubkey"));
+        assertEquals(0, names.reconcile(Set.of("meta", "type_b", "pubkey_a", "pubkey_b")));
+    }
+
+    @Test
+    void removeUpdatesTheCount() {
+        RepositoryNames names = new RepositoryNames();
+        names.add("type_a");
+        assertTrue(names.remove("type_a"));
+        assertFalse(names.remove("type_a"));
+        assertEquals(0, names.count("type"));
+        assertEquals(0, names.count());
+    }
+
+}
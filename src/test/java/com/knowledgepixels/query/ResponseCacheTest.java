@@ -0,0 +1,316 @@
+package com.knowledgepixels.query;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    private static final Map<String, String> JSON = Map.of("Content-Type", "application/sparql-results+json");
+
+    private static Buffer body(int length) {
+        return Buffer.buffer(new byte[length]);
+    }
+
+    @Test
+    void entryIsServedOnlyAtItsVersion() {
+        ResponseCache cache = new ResponseCache(1024, 1024, 0);
+        String key = ResponseCache.key("meta", "SELECT * {}", "application/json", null);
+        cache.put(key, "abc/0", JSON, Buffer.buffer("result"));
+
+        ResponseCache.Entry entry = cache.lookup(key, "abc/0");
+        assertEquals("result", entry.body().toString());
+        assertEquals(JSON, entry.headers());
+        assertEquals(ResponseCache.etag(key, "abc/0"), entry.etag());
+
+        assertNull(cache.lookup(key, "abc/1"));
+        assertNull(cache.lookup(key, "abc/0"), "an outdated entry is dropped");
+        ResponseCache.Stats stats = cache.stats();
+        assertEquals(0, stats.entries());
+        assertEquals(0, stats.bytes());
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvictedForSpace() {
+        ResponseCache cache = new ResponseCache(250, 200, 0);
+        cache.put("a", "v", JSON, body(100));
+        cache.put("b", "v", JSON, body(100));
+        assertNotNull(cache.lookup("a", "v"));
+        cache.put("c", "v", JSON, body(100));
+
+        assertNull(cache.lookup("b", "v"));
+        assertNotNull(cache.lookup("a", "v"));
+        assertNotNull(cache.lookup("c", "v"));
+        assertEquals(200, cache.stats().bytes());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void bodiesAboveTheEntryLimitAreNotCached() {
+        ResponseCache cache = new ResponseCache(1000, 100, 0);
+        cache.put("a", "v", JSON, body(101));
+        assertNull(cache.lookup("a", "v"));
+        assertEquals(0, cache.stats().bytes());
+    }
+
+    @Test
+    void replacingAnEntryKeepsTheSizeRight() {
+        ResponseCache cache = new ResponseCache(1000, 1000, 0);
+        cache.put("a", "v1", JSON, body(100));
+        cache.put("a", "v2", JSON, body(50));
+        assertEquals(1, cache.stats().entries());
+        assertEquals(50, cache.stats().bytes());
+    }
+
+    @Test
+    void sameRequestJoinsTheFlightInProgress() {
+        ResponseCache cache = new ResponseCache(0, 0, 1024);
+        ResponseCache.Boarding leader = cache.board("k@v");
+        ResponseCache.Boarding follower = cache.board("k@v");
+        assertTrue(leader.leads());
+        assertFalse(follower.leads());
+        assertSame(leader.flight(), follower.flight());
+        assertTrue(cache.board("k@w").leads(), "a request at another version goes on its own");
+
+        ResponseCache.Entry entry = new ResponseCache.Entry("v", "\"t\"", JSON, Buffer.buffer("result"));
+        cache.land(leader.flight(), entry);
+        assertSame(entry, follower.flight().landed().result());
+        assertTrue(cache.board("k@v").leads(), "a landed flight is not joined");
+    }
+
+    @Test
+    void flightLandingWithoutResponseSendsFollowersToTheStore() {
+        ResponseCache cache = new ResponseCache(0, 0, 1024);
+        ResponseCache.Flight flight = cache.board("k@v").flight();
+        cache.land(flight, null);
+        assertTrue(flight.landed().succeeded());
+        assertNull(flight.landed().result());
+
+        ResponseCache.Flight next = cache.board("k@v").flight();
+        cache.land(flight, null);
+        assertFalse(cache.board("k@v").leads(), "landing an old flight again leaves the new one");
+        cache.land(next, null);
+    }
+
+    @Test
+    void followerGetsTheResponseTheFlightLandsWith() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            ResponseCache cache = new ResponseCache(0, 0, 1024);
+            ResponseCache.Flight flight = cache.board("k@v").flight();
+            CompletableFuture<ResponseCache.Entry> followed = cache.waitFor(vertx, flight, 60_000)
+                    .toCompletionStage().toCompletableFuture();
+
+            ResponseCache.Entry entry = new ResponseCache.Entry("v", "\"t\"", JSON, Buffer.buffer("result"));
+            cache.land(flight, entry);
+            assertSame(entry, followed.get(10, TimeUnit.SECONDS));
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void followerGoesToTheStoreWhenTheLeaderFails() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            ResponseCache cache = new ResponseCache(0, 0, 1024);
+            ResponseCache.Flight flight = cache.board("k@v").flight();
+            CompletableFuture<ResponseCache.Entry> followed = cache.waitFor(vertx, flight, 60_000)
+                    .toCompletionStage().toCompletableFuture();
+            assertFalse(followed.isDone());
+
+            // What the leader does when its request fails, or its response is not to be shared.
+            cache.land(flight, null);
+            assertNull(followed.get(10, TimeUnit.SECONDS), "the follower does not wait for the timeout");
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void followerGoesToTheStoreWhenTheLeaderNeverLands() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            ResponseCache cache = new ResponseCache(0, 0, 1024);
+            ResponseCache.Flight flight = cache.board("k@v").flight();
+            CompletableFuture<ResponseCache.Entry> followed = cache.waitFor(vertx, flight, 50)
+                    .toCompletionStage().toCompletableFuture();
+
+            assertNull(followed.get(10, TimeUnit.SECONDS));
+            assertTrue(flight.landed().succeeded());
+            assertNull(flight.landed().result(), "later followers do not wait either");
+            assertTrue(cache.board("k@v").leads(), "the next request starts a new flight");
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void keyCoversRepoQueryAndNegotiation() {
+        String key = ResponseCache.key("meta", "q", "text/csv", "gzip");
+        assertEquals(key, ResponseCache.key("meta", "q", "text/csv", "gzip"));
+        assertNotEquals(key, ResponseCache.key("full", "q", "text/csv", "gzip"));
+        assertNotEquals(key, ResponseCache.key("meta", "q2", "text/csv", "gzip"));
+        assertNotEquals(key, ResponseCache.key("meta", "q", "application/json", "gzip"));
+        assertNotEquals(key, ResponseCache.key("meta", "q", "text/csv", null));
+    }
+
+    @Test
+    void queryIgnoresParameterOrder() {
+        MultiMap a = MultiMap.caseInsensitiveMultiMap().add("query", "SELECT * {}").add("infer", "false");
+        MultiMap b = MultiMap.caseInsensitiveMultiMap().add("infer", "false").add("query", "SELECT * {}");
+        assertEquals(ResponseCache.query(a), ResponseCache.query(b));
+        b.set("infer", "true");
+        assertNotEquals(ResponseCache.query(a), ResponseCache.query(b));
+    }
+
+    @Test
+    void etagDependsOnTheVersion() {
+        assertNotEquals(ResponseCache.etag("k", "abc/0"), ResponseCache.etag("k", "abc/1"));
+        assertTrue(ResponseCache.etag("k", "abc/0").startsWith("\""));
+    }
+
+    @Test
+    void queriesWithVaryingResultsAreNotRepeatable() {
+        assertTrue(ResponseCache.isRepeatable("SELECT ?np WHERE { ?np a ?type } LIMIT 10"));
+        assertTrue(ResponseCache.isRepeatable("SELECT ?now WHERE { ?s <http://example.org/randomness> ?now }"));
+        assertFalse(ResponseCache.isRepeatable("SELECT (now() AS ?t) {}"));
+        assertFalse(ResponseCache.isRepeatable("SELECT * {} ORDER BY RAND ()"));
+        assertFalse(ResponseCache.isRepeatable("SELECT * { service <http://example.org/sparql> { ?s ?p ?o } }"));
+    }
+
+    @Test
+    void ifNoneMatchIsComparedWeakly() {
+        String etag = ResponseCache.etag("k", "v");
+        assertTrue(ResponseCache.matches(etag, etag));
+        assertTrue(ResponseCache.matches("\"other\", W/" + etag, etag));
+        assertTrue(ResponseCache.matches("*", etag));
+        assertFalse(ResponseCache.matches("\"other\"", etag));
+        assertFalse(ResponseCache.matches(null, etag));
+    }
+
+    @Test
+    void copyingStreamHandsOnTheWholeBody() {
+        Source source = new Source();
+        List<Buffer> copies = new ArrayList<>();
+        AtomicInteger givenUp = new AtomicInteger();
+        ResponseCache.CopyingStream stream = new ResponseCache.CopyingStream(source, 8, copies::add,
+                givenUp::incrementAndGet);
+        Buffer passed = Buffer.buffer();
+        stream.handler(passed::appendBuffer);
+        stream.endHandler(v -> passed.appendString("|end"));
+
+        source.handler.handle(Buffer.buffer("abcd"));
+        source.handler.handle(Buffer.buffer("efgh"));
+        source.endHandler.handle(null);
+
+        assertEquals("abcdefgh|end", passed.toString());
+        assertEquals(List.of(Buffer.buffer("abcdefgh")), copies);
+        assertEquals(0, givenUp.get());
+    }
+
+    @Test
+    void copyingStreamGivesUpTheCopyAboveTheLimit() {
+        Source source = new Source();
+        List<Buffer> copies = new ArrayList<>();
+        AtomicInteger givenUp = new AtomicInteger();
+        ResponseCache.CopyingStream stream = new ResponseCache.CopyingStream(source, 6, copies::add,
+                givenUp::incrementAndGet);
+        Buffer passed = Buffer.buffer();
+        stream.handler(passed::appendBuffer);
+        stream.endHandler(v -> passed.appendString("|end"));
+
+        source.handler.handle(Buffer.buffer("abcd"));
+        source.handler.handle(Buffer.buffer("efgh"));
+        source.handler.handle(Buffer.buffer("ijkl"));
+        source.endHandler.handle(null);
+
+        assertEquals("abcdefghijkl|end", passed.toString(), "the body still passes through");
+        assertTrue(copies.isEmpty());
+        assertEquals(1, givenUp.get());
+    }
+
+    @Test
+    void copyingStreamGivesUpTheCopyWhenTheSourceFails() {
+        Source source = new Source();
+        List<Buffer> copies = new ArrayList<>();
+        AtomicInteger givenUp = new AtomicInteger();
+        ResponseCache.CopyingStream stream = new ResponseCache.CopyingStream(source, 1024, copies::add,
+                givenUp::incrementAndGet);
+        List<Throwable> failures = new ArrayList<>();
+        stream.handler(buf -> {
+        });
+        stream.exceptionHandler(failures::add);
+        stream.endHandler(v -> {
+        });
+
+        source.handler.handle(Buffer.buffer("abcd"));
+        IllegalStateException failure = new IllegalStateException("connection reset");
+        source.exceptionHandler.handle(failure);
+        source.exceptionHandler.handle(failure);
+        source.endHandler.handle(null);
+
+        assertEquals(List.of(failure, failure), failures, "failures still reach the client side");
+        assertTrue(copies.isEmpty());
+        assertEquals(1, givenUp.get());
+    }
+
+    /**
+     * Stream whose events the test fires itself.
+     */
+    private static final class Source implements ReadStream<Buffer> {
+
+        private Handler<Buffer> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+
+    }
+
+}
@@ -106,6 +106,7 @@ class ShardReconcilerTest {
 
         TripleStore tripleStore = mock(TripleStore.class);
         when(tripleStore.getRepoConnection("full")).thenAnswer(inv -> repo.getConnection());
+        doCallRealMethod().when(tripleStore).fetchGraphs(any(), any(), any());
         try (MockedStatic<TripleStore> mockedTripleStore = mockStatic(TripleStore.class)) {
             mockedTripleStore.when(TripleStore::get).thenReturn(tripleStore);
             Nanopub reconstructed = ShardReconciler.reconstructNanopub("full", original.getUri());
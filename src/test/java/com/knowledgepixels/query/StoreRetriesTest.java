@@ -0,0 +1,109 @@
+package com.knowledgepixels.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoreRetriesTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private StoreRetries retries(int breakerThreshold, int retryBudget) {
+        return new StoreRetries(breakerThreshold, 30_000L, retryBudget, n -> 0L, now::get);
+    }
+
+    private static RuntimeException failure() {
+        return new IllegalStateException("store unreachable");
+    }
+
+    @Test
+    void callRetriesUntilTheOperationSucceeds() {
+        StoreRetries retries = retries(100, 100);
+        AtomicInteger attempts = new AtomicInteger();
+        String result = retries.call("meta", "test read", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw failure();
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        StoreRetries.GroupStats stats = retries.snapshot().get("meta");
+        assertEquals(3, stats.attempts());
+        assertEquals(2, stats.retries());
+        assertEquals(0, stats.exhausted());
+    }
+
+    @Test
+    void callGivesUpAfterMaxAttempts() {
+        StoreRetries retries = retries(100, 100);
+        AtomicInteger attempts = new AtomicInteger();
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> retries.run("meta", "test write", () -> {
+            attempts.incrementAndGet();
+            throw failure();
+        }));
+        assertEquals(StoreRetries.MAX_ATTEMPTS, attempts.get());
+        assertEquals("Giving up on test write after " + StoreRetries.MAX_ATTEMPTS + " attempt(s)", ex.getMessage());
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        assertEquals(1, retries.snapshot().get("meta").exhausted());
+    }
+
+    @Test
+    void breakerOpensAfterThresholdAndHoldsAttemptsBack() {
+        StoreRetries retries = retries(3, 100);
+        assertEquals(0, retries.failed("type_a", "w", 1, 0, failure()));
+        assertEquals(0, retries.failed("type_a", "w", 2, 0, failure()));
+        assertEquals(0L, retries.millisUntilOpen("type_a"));
+        // The third failure opens it; the next retry waits for it.
+        assertEquals(30_000L, retries.failed("type_a", "w", 3, 0, failure()));
+        assertEquals(30_000L, retries.millisUntilOpen("type_a"));
+        assertEquals(1, retries.snapshot().get("type_*").openBreakers());
+        // Other repos of the group are not affected.
+        assertEquals(0L, retries.millisUntilOpen("type_b"));
+
+        now.addAndGet(30_000L);
+        assertEquals(0L, retries.millisUntilOpen("type_a"));
+        retries.succeeded("type_a", 4, 0);
+        assertEquals(0, retries.snapshot().get("type_*").openBreakers());
+        assertEquals(0, retries.failed("type_a", "w", 1, 0, failure()), "success reset the failure count");
+    }
+
+    @Test
+    void usedUpBudgetGivesUpAtOnceAndRefills() {
+        StoreRetries retries = retries(100, 2);
+        assertEquals(0, retries.failed("full", "w", 1, 0, failure()));
+        assertEquals(0, retries.failed("full", "w", 2, 0, failure()));
+        assertEquals(-1, retries.failed("full", "w", 3, 0, failure()));
+        assertEquals(1, retries.snapshot().get("full").exhausted());
+        // The budget is per repo.
+        assertEquals(0, retries.failed("text", "w", 1, 0, failure()));
+
+        // Two retries a minute: one is back after half a minute.
+        now.addAndGet(30_000L);
+        assertEquals(0, retries.failed("full", "w", 1, 0, failure()));
+        assertEquals(-1, retries.failed("full", "w", 2, 0, failure()));
+    }
+
+    @Test
+    void attemptsAreReportedToTheListener() {
+        StoreRetries retries = retries(100, 100);
+        StringBuilder seen = new StringBuilder();
+        retries.onAttempt((group, nanos, succeeded) -> seen.append(group).append(succeeded ? "+" : "-").append(' '));
+        retries.failed("pubkey_a", "w", 1, 5, failure());
+        retries.succeeded("pubkey_a", 2, 5);
+        assertEquals("pubkey_*- pubkey_*+ ", seen.toString());
+    }
+
+    @Test
+    void backoffStaysWithinJitterBounds() {
+        for (int retry = 1; retry <= StoreRetries.MAX_ATTEMPTS + 2; retry++) {
+            long delay = StoreRetries.backoffMillis(retry);
+            assertTrue(delay >= 0 && delay <= 90_000L, "retry " + retry + ": " + delay);
+        }
+        assertTrue(StoreRetries.backoffMillis(1) <= 1_500L);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.AbstractTupleQueryResultHandler;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.nanopub.Nanopub;
+import org.nanopub.NanopubImpl;
+import org.nanopub.NanopubUtils;
+import org.nanopub.testsuite.NanopubTestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the wire formats {@link TripleStore} can use with the RDF4J server, per
+ * nanopub: the statements a load sends (one nanopub's quads, written and parsed back) and
+ * the tuple results a bulk read receives (the same quads as {@code ?s ?p ?o ?g} rows).
+ * Prints throughput, CPU time per nanopub on the benchmark thread, and payload size.
+ *
+ * <p>Not a test; run by hand after {@code mvn test-compile}, with the test classpath:
+ * <pre>{@code
+ * mvn -q exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.knowledgepixels.query.TransportFormatBenchmark -Dexec.args=20000
+ * }</pre>
+ * The only argument is the number of measured iterations per format (default 20000).
+ */
+final class TransportFormatBenchmark {
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Nanopub np = new NanopubImpl(NanopubTestSuite.getLatest()
+                .getByArtifactCode("RA6T-YLqLnYd5XfnqR9PaGUjCzudvHdYjcG4GvOc7fdpA").getFirst().toFile());
+        List<Statement> statements = NanopubUtils.getStatements(np);
+        List<String> names = List.of("s", "p", "o", "g");
+        List<BindingSet> rows = new ArrayList<>();
+        for (Statement st : statements) {
+            rows.add(new ListBindingSet(names, st.getSubject(), st.getPredicate(), st.getObject(), st.getContext()));
+        }
+        System.out.printf("%d statements per nanopub, %d iterations per format%n", statements.size(), iterations);
+
+        for (RDFFormat format : List.of(RDFFormat.NQUADS, RDFFormat.TRIG, RDFFormat.BINARY)) {
+            run("statements " + format.getName(), iterations, () -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Rio.write(statements, out, format);
+                byte[] bytes = out.toByteArray();
+                if (Rio.parse(new ByteArrayInputStream(bytes), "", format).size() != statements.size()) {
+                    throw new IllegalStateException("round trip lost statements in " + format.getName());
+                }
+                return bytes.length;
+            });
+        }
+        for (TupleQueryResultFormat format : List.of(TupleQueryResultFormat.SPARQL, TupleQueryResultFormat.JSON,
+                TupleQueryResultFormat.BINARY)) {
+            run("results " + format.getName(), iterations, () -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                QueryResultIO.writeTuple(new IteratingTupleQueryResult(names, rows), format, out);
+                byte[] bytes = out.toByteArray();
+                int[] count = {0};
+                QueryResultIO.parseTuple(new ByteArrayInputStream(bytes), format, new AbstractTupleQueryResultHandler() {
+                    @Override
+                    public void handleSolution(BindingSet bindingSet) {
+                        count[0]++;
+                    }
+                }, SimpleValueFactory.getInstance());
+                if (count[0] != rows.size()) {
+                    throw new IllegalStateException("round trip lost rows in " + format.getName());
+                }
+                return bytes.length;
+            });
+        }
+    }
+
+    /**
+     * Runs one round trip per iteration after a warm-up of a fifth as many.
+     *
+     * @param roundTrip writes and parses one nanopub's worth, returning the payload size
+     */
+    private static void run(String label, int iterations, Callable<Integer> roundTrip) throws Exception {
+        for (int i = 0; i < iterations / 5; i++) {
+            roundTrip.call();
+        }
+        int bytes = 0;
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long wallStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = roundTrip.call();
+        }
+        long wallNs = System.nanoTime() - wallStart;
+        long cpuNs = threads.getCurrentThreadCpuTime() - cpuStart;
+        System.out.printf("%-28s %10.0f nanopubs/s %8.1f us CPU/nanopub %8d bytes%n",
+                label, iterations / (wallNs / 1e9), cpuNs / 1e3 / iterations, bytes);
+    }
+
+}
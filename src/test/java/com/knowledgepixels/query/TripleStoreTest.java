@@ -5,7 +5,21 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.config.RepositoryConfig;
+import org.eclipse.rdf4j.repository.config.RepositoryConfigUtil;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
 import org.junit.jupiter.api.Test;
 import org.junit.platform.commons.support.HierarchyTraversalMode;
 import org.junit.platform.commons.support.ReflectionSupport;
@@ -15,46 +29,42 @@ import com.google.common.hash.Hashing;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 class TripleStoreTest {
 
     /**
-     * Initializes the repoNamesCacheLock field in TripleStore mock.
-     * Without this, all calls to getRepositoryNames() would result in a NullPointerException.
+     * Initializes the repo-name fields in a TripleStore mock, which does not run field
+     * initialisers. Without this, all calls to getRepositoryNames() would result in a
+     * NullPointerException.
      */
-    private ReentrantReadWriteLock initRepoNamesCacheLock(TripleStore mock) {
-        final var readWriteLock = new ReentrantReadWriteLock();
-        final var lockField = ReflectionSupport.findFields(
-                TripleStore.class,
-                f -> f.getName().equals("repoNamesCacheLock"),
-                HierarchyTraversalMode.TOP_DOWN
-        ).getFirst();
-        lockField.setAccessible(true);
-        try {
-            lockField.set(mock, readWriteLock);
-            return readWriteLock;
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
+    private ReentrantLock initRepoNames(TripleStore mock) {
+        ReentrantLock lock = new ReentrantLock();
+        setField(mock, "repositoryNames", new RepositoryNames());
+        setField(mock, "repoNamesLock", lock);
+        return lock;
     }
 
     /**
@@ -97,21 +107,20 @@ class TripleStoreTest {
     @Test
     void getRepositoryNamesHandlesIOException() throws IOException {
         TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
-        ReentrantReadWriteLock repoNamesCacheLock = initRepoNamesCacheLock(mock);
+        ReentrantLock repoNamesLock = initRepoNames(mock);
         CloseableHttpClient httpClientMock = mock(CloseableHttpClient.class);
         injectHttpClient(mock, httpClientMock);
 
         when(httpClientMock.execute(any(HttpUriRequest.class))).thenThrow(new IOException());
 
         assertNull(mock.getRepositoryNames());
-        assertEquals(0, repoNamesCacheLock.getReadLockCount());
-        assertEquals(0, repoNamesCacheLock.getWriteHoldCount());
+        assertFalse(repoNamesLock.isLocked());
     }
 
     @Test
     void getRepositoryNamesReturnsNullForNonValidResponse() throws IOException {
         TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
-        ReentrantReadWriteLock repoNamesCacheLock = initRepoNamesCacheLock(mock);
+        ReentrantLock repoNamesLock = initRepoNames(mock);
         CloseableHttpClient httpClientMock = mock(CloseableHttpClient.class);
         injectHttpClient(mock, httpClientMock);
         CloseableHttpResponse responseMock = mock(CloseableHttpResponse.class);
@@ -123,14 +132,13 @@ class TripleStoreTest {
         when(responseMock.getStatusLine().getStatusCode()).thenReturn(500);
 
         assertNull(mock.getRepositoryNames());
-        assertEquals(0, repoNamesCacheLock.getReadLockCount());
-        assertEquals(0, repoNamesCacheLock.getWriteHoldCount());
+        assertFalse(repoNamesLock.isLocked());
     }
 
     @Test
     void getRepositoryNamesReturnsSetOfRepositoryNames() throws IOException {
         TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
-        ReentrantReadWriteLock repoNamesCacheLock = initRepoNamesCacheLock(mock);
+        ReentrantLock repoNamesLock = initRepoNames(mock);
         CloseableHttpClient httpClientMock = mock(CloseableHttpClient.class);
         injectHttpClient(mock, httpClientMock);
         CloseableHttpResponse responseMock = mock(CloseableHttpResponse.class);
@@ -145,14 +153,13 @@ class TripleStoreTest {
 
         Set<String> result = mock.getRepositoryNames();
         assertEquals(Set.of("repo1", "repo2"), result);
-        assertEquals(0, repoNamesCacheLock.getReadLockCount());
-        assertEquals(0, repoNamesCacheLock.getWriteHoldCount());
+        assertFalse(repoNamesLock.isLocked());
     }
 
     @Test
     void getRepositoryNamesCachesResult() throws IOException {
         TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
-        ReentrantReadWriteLock repoNamesCacheLock = initRepoNamesCacheLock(mock);
+        ReentrantLock repoNamesLock = initRepoNames(mock);
         CloseableHttpClient httpClientMock = mock(CloseableHttpClient.class);
         injectHttpClient(mock, httpClientMock);
         CloseableHttpResponse responseMock = mock(CloseableHttpResponse.class);
@@ -170,14 +177,87 @@ class TripleStoreTest {
         assertEquals(Set.of("repo1", "repo2"), firstCallResult);
         assertEquals(firstCallResult, secondCallResult);
         verify(httpClientMock, times(1)).execute(any(HttpUriRequest.class));
-        assertEquals(0, repoNamesCacheLock.getReadLockCount());
-        assertEquals(0, repoNamesCacheLock.getWriteHoldCount());
+        assertFalse(repoNamesLock.isLocked());
+    }
+
+    @Test
+    void repositoryNamesAreReconciledWithTheStoreOnlyWhenDue() throws IOException {
+        TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
+        initRepoNames(mock);
+        CloseableHttpClient httpClientMock = mock(CloseableHttpClient.class);
+        injectHttpClient(mock, httpClientMock);
+        AtomicLong clock = new AtomicLong(1_000);
+        doAnswer(inv -> clock.get()).when(mock).nowMillis();
+        String[] listing = {"id,name\n1,meta\n2,type_a\n3,type_b\n4,pubkey_a\n"};
+        when(httpClientMock.execute(any(HttpUriRequest.class))).thenAnswer(inv -> {
+            CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+            HttpEntity entity = mock(HttpEntity.class);
+            when(entity.getContent()).thenReturn(new ByteArrayInputStream(listing[0].getBytes()));
+            when(response.getEntity()).thenReturn(entity);
+            StatusLine status = mock(StatusLine.class);
+            when(status.getStatusCode()).thenReturn(200);
+            when(response.getStatusLine()).thenReturn(status);
+            return response;
+        });
+
+        assertEquals(4, mock.getRepositoryCount());
+        assertEquals(2, mock.getRepositoryCount("type"));
+        assertEquals(1, mock.getRepositoryCount("pubkey"));
+        assertEquals(List.of("type_a", "type_b"), List.copyOf(mock.getRepositoryNames("type")));
+
+        // Changed behind our back; not noticed until the reconciliation is due.
+        listing[0] = "id,name\n1,meta\n2,type_b\n3,type_c\n4,type_d\n";
+        clock.addAndGet(TripleStore.REPO_NAMES_RECONCILE_MS - 1);
+        assertEquals(2, mock.getRepositoryCount("type"));
+        verify(httpClientMock, times(1)).execute(any(HttpUriRequest.class));
+
+        clock.addAndGet(1);
+        assertEquals(3, mock.getRepositoryCount("type"));
+        assertEquals(0, mock.getRepositoryCount("pubkey"));
+        assertEquals(Set.of("meta", "type_b", "type_c", "type_d"), mock.getRepositoryNames());
+        assertEquals(List.of("meta", "pubkey", "type"), List.copyOf(mock.getRepositoryClasses()));
+        verify(httpClientMock, times(2)).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    void repositoryNamesKeepTheLastListingWhenTheStoreCannotList() throws IOException {
+        TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
+        initRepoNames(mock);
+        CloseableHttpClient httpClientMock = mock(CloseableHttpClient.class);
+        injectHttpClient(mock, httpClientMock);
+        AtomicLong clock = new AtomicLong(1_000);
+        doAnswer(inv -> clock.get()).when(mock).nowMillis();
+        CloseableHttpResponse responseMock = mock(CloseableHttpResponse.class);
+        when(responseMock.getEntity()).thenReturn(mock(HttpEntity.class));
+        when(responseMock.getEntity().getContent()).thenReturn(new ByteArrayInputStream("id,name\n1,type_a\n".getBytes()));
+        when(responseMock.getStatusLine()).thenReturn(mock(StatusLine.class));
+        when(responseMock.getStatusLine().getStatusCode()).thenReturn(200);
+        when(httpClientMock.execute(any(HttpUriRequest.class))).thenReturn(responseMock).thenThrow(new IOException());
+
+        assertEquals(Set.of("type_a"), mock.getRepositoryNames());
+        clock.addAndGet(TripleStore.REPO_NAMES_RECONCILE_MS);
+        assertEquals(Set.of("type_a"), mock.getRepositoryNames());
+        assertEquals(1, mock.getRepositoryCount("type"));
     }
 
     // --- repo-cache eviction: deferred idle-only shutdown + pinned hot repos ---
 
     private static final long GRACE_MS = 60_000;
 
+    private Object getField(TripleStore mock, String name) {
+        final Field f = ReflectionSupport.findFields(
+                TripleStore.class,
+                fl -> fl.getName().equals(name),
+                HierarchyTraversalMode.TOP_DOWN
+        ).getFirst();
+        f.setAccessible(true);
+        try {
+            return f.get(mock);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private void setField(TripleStore mock, String name, Object value) {
         final Field f = ReflectionSupport.findFields(
                 TripleStore.class,
@@ -193,41 +273,53 @@ class TripleStoreTest {
     }
 
     /**
-     * A {@link TripleStore} mock running the real cache methods, with the four cache
-     * maps injected (mocks don't run field initialisers) and {@code nowMillis()} driven
+     * A {@link TripleStore} mock running the real cache methods, with the cache maps and
+     * locks injected (mocks don't run field initialisers) and {@code nowMillis()} driven
      * by the supplied clock so the grace period is deterministic.
      */
     private TripleStore cacheMock(AtomicLong clock,
-                                  Map<String, Repository> repositories,
+                                  ConcurrentHashMap<String, TripleStore.RepoHandle> repositories,
                                   ConcurrentHashMap<String, AtomicInteger> openConnections,
-                                  Map<String, Repository> pendingShutdown,
-                                  Map<String, Long> pendingShutdownSince) {
+                                  ConcurrentHashMap<String, TripleStore.RepoHandle> pendingShutdown,
+                                  ConcurrentHashMap<String, Long> pendingShutdownSince) {
         TripleStore mock = mock(TripleStore.class, CALLS_REAL_METHODS);
         setField(mock, "repositories", repositories);
         setField(mock, "openConnections", openConnections);
         setField(mock, "pendingShutdown", pendingShutdown);
         setField(mock, "pendingShutdownSince", pendingShutdownSince);
+        setField(mock, "opening", new ConcurrentHashMap<>());
+        setField(mock, "maintenanceLock", new ReentrantLock());
+        setField(mock, "accessFrequency", new RepoFrequencySketch(1024));
+        setField(mock, "reopenCostMs", new ConcurrentHashMap<String, Long>());
         doAnswer(inv -> clock.get()).when(mock).nowMillis();
         return mock;
     }
 
-    /** Inserts {@code n} idle mock repos named {@code type_0..type_{n-1}} in order. */
-    private List<Repository> fillIdle(Map<String, Repository> repositories, int n) {
+    /**
+     * Inserts {@code n} idle mock repos named {@code type_0..type_{n-1}}, last accessed in
+     * that order.
+     */
+    private List<Repository> fillIdle(Map<String, TripleStore.RepoHandle> repositories, int n) {
         List<Repository> repos = new ArrayList<>();
         for (int i = 0; i < n; i++) {
             Repository r = mock(Repository.class);
             repos.add(r);
-            repositories.put("type_" + i, r);
+            repositories.put("type_" + i, new TripleStore.RepoHandle(r, i));
         }
         return repos;
     }
 
+    private void park(Map<String, TripleStore.RepoHandle> pending, Map<String, Long> since, String name, Repository repo, long at) {
+        pending.put(name, new TripleStore.RepoHandle(repo, at));
+        since.put(name, at);
+    }
+
     @Test
     void evictionParksEldestWithoutShutdownThenReapsAfterGrace() {
         AtomicLong clock = new AtomicLong(1_000);
-        Map<String, Repository> repositories = new LinkedHashMap<>();
-        Map<String, Repository> pending = new LinkedHashMap<>();
-        Map<String, Long> since = new HashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> since = new ConcurrentHashMap<>();
         TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, since);
         List<Repository> repos = fillIdle(repositories, 101);
 
@@ -252,13 +344,109 @@ class TripleStoreTest {
         assertFalse(pending.containsKey("type_0"));
     }
 
+    @Test
+    void cacheHitMakesARepoTheMostRecentlyUsed() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new ConcurrentHashMap<>());
+        List<Repository> repos = fillIdle(repositories, 101);
+
+        // The hit on the eldest runs the periodic maintenance, which evicts the next one.
+        long hits = TripleStore.CACHE_HITS.get();
+        long evictions = TripleStore.CACHE_EVICTIONS.get();
+        assertSame(repos.get(0), store.getRepository("type_0"));
+        assertEquals(hits + 1, TripleStore.CACHE_HITS.get());
+        assertEquals(evictions + 1, TripleStore.CACHE_EVICTIONS.get());
+
+        assertTrue(repositories.containsKey("type_0"));
+        assertEquals(Set.of("type_1"), pending.keySet());
+    }
+
+    private RepoFrequencySketch frequencies(TripleStore store) {
+        return (RepoFrequencySketch) getField(store, "accessFrequency");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> reopenCosts(TripleStore store) {
+        return (Map<String, Long>) getField(store, "reopenCostMs");
+    }
+
+    @Test
+    void repoThatIsExpensiveToReopenIsKeptOverLessRecentlyUsedOnes() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new ConcurrentHashMap<>());
+        fillIdle(repositories, 101);
+        reopenCosts(store).put("type_0", 5_000L);
+
+        store.evictIdleRepos();
+
+        assertTrue(repositories.containsKey("type_0"));
+        assertEquals(Set.of("type_1"), pending.keySet());
+    }
+
+    @Test
+    void frequentlyUsedRepoIsKeptOverLessFrequentlyUsedOnes() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new ConcurrentHashMap<>());
+        fillIdle(repositories, 101);
+        frequencies(store).increment("type_0");
+        frequencies(store).increment("type_0");
+
+        store.evictIdleRepos();
+
+        assertTrue(repositories.containsKey("type_0"));
+        assertEquals(Set.of("type_1"), pending.keySet());
+    }
+
+    @Test
+    void hotRepoIsPinnedEvenIfItIsCheapToReopen() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new ConcurrentHashMap<>());
+        fillIdle(repositories, 101);
+        for (int i = 0; i < TripleStore.HOT_MIN_FREQUENCY; i++) {
+            frequencies(store).increment("type_0");
+        }
+        // By score alone it would go first: (1 + 7) * 1 ms against (1 + 0) * 100 ms.
+        reopenCosts(store).put("type_0", 1L);
+
+        store.evictIdleRepos();
+
+        assertTrue(repositories.containsKey("type_0"));
+        assertEquals(Set.of("type_1"), pending.keySet());
+    }
+
+    @Test
+    void recentlyOpenedRepoIsNotEvictedBeforeItCouldBuildUpAFrequency() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new ConcurrentHashMap<>());
+        fillIdle(repositories, 100);
+        for (int i = 0; i < 100; i++) {
+            frequencies(store).increment("type_" + i);
+        }
+        repositories.put("type_new", new TripleStore.RepoHandle(mock(Repository.class), 1_000));
+
+        store.evictIdleRepos();
+
+        assertTrue(repositories.containsKey("type_new"));
+        assertEquals(Set.of("type_0"), pending.keySet());
+    }
+
     @Test
     void activeRepoIsNeverParked() {
         AtomicLong clock = new AtomicLong(1_000);
-        Map<String, Repository> repositories = new LinkedHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
         ConcurrentHashMap<String, AtomicInteger> open = new ConcurrentHashMap<>();
-        Map<String, Repository> pending = new LinkedHashMap<>();
-        TripleStore store = cacheMock(clock, repositories, open, pending, new HashMap<>());
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, open, pending, new ConcurrentHashMap<>());
         List<Repository> repos = fillIdle(repositories, 101);
         // Eldest has a live connection.
         open.put("type_0", new AtomicInteger(1));
@@ -275,15 +463,15 @@ class TripleStoreTest {
     @Test
     void pinnedViewRepoIsNeverParked() {
         AtomicLong clock = new AtomicLong(1_000);
-        Map<String, Repository> repositories = new LinkedHashMap<>();
-        Map<String, Repository> pending = new LinkedHashMap<>();
-        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new HashMap<>());
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, new ConcurrentHashMap<>());
 
         // The ResourceView type repo (the one that wedged) is pinned and sits eldest.
         String resourceView = "type_" + Hashing.sha256()
                 .hashString("https://w3id.org/kpxl/gen/terms/ResourceView", StandardCharsets.UTF_8);
         Repository rvRepo = mock(Repository.class);
-        repositories.put(resourceView, rvRepo);
+        repositories.put(resourceView, new TripleStore.RepoHandle(rvRepo, -1));
         fillIdle(repositories, 100); // 101 total
 
         store.evictIdleRepos();
@@ -298,14 +486,13 @@ class TripleStoreTest {
     @Test
     void reapDoesNotShutDownAHandleThatBecameActiveAgain() {
         AtomicLong clock = new AtomicLong(1_000);
-        Map<String, Repository> pending = new LinkedHashMap<>();
-        Map<String, Long> since = new HashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> since = new ConcurrentHashMap<>();
         ConcurrentHashMap<String, AtomicInteger> open = new ConcurrentHashMap<>();
-        TripleStore store = cacheMock(clock, new LinkedHashMap<>(), open, pending, since);
+        TripleStore store = cacheMock(clock, new ConcurrentHashMap<>(), open, pending, since);
 
         Repository parked = mock(Repository.class);
-        pending.put("type_x", parked);
-        since.put("type_x", 1_000L);
+        park(pending, since, "type_x", parked, 1_000L);
         // A connection was opened against it after parking.
         open.put("type_x", new AtomicInteger(1));
 
@@ -319,22 +506,212 @@ class TripleStoreTest {
     @Test
     void getRepositoryResurrectsParkedHandleWithoutShutdown() {
         AtomicLong clock = new AtomicLong(1_000);
-        Map<String, Repository> repositories = new LinkedHashMap<>();
-        Map<String, Repository> pending = new LinkedHashMap<>();
-        Map<String, Long> since = new HashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> since = new ConcurrentHashMap<>();
         TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), pending, since);
 
         Repository parked = mock(Repository.class);
-        pending.put("type_x", parked);
-        since.put("type_x", 1_000L);
+        park(pending, since, "type_x", parked, 1_000L);
 
         // Requested again before the grace period elapses.
         clock.set(1_000 + GRACE_MS / 2);
+        long misses = TripleStore.CACHE_MISSES.get();
         Repository got = store.getRepository("type_x");
+        assertEquals(misses + 1, TripleStore.CACHE_MISSES.get());
 
         assertSame(parked, got);
         assertTrue(repositories.containsKey("type_x"));
         assertFalse(pending.containsKey("type_x"));
         verify(parked, never()).shutDown();
     }
-}
\ No newline at end of file
+
+    @Test
+    void connectionIsNotHandedOutOnAHandleEvictedBeforeItWasCounted() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, AtomicInteger> open = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, TripleStore.RepoHandle> pending = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> since = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, open, pending, since);
+
+        Repository repo = mock(Repository.class);
+        when(repo.getConnection()).thenReturn(mock(RepositoryConnection.class));
+        repositories.put("type_x", new TripleStore.RepoHandle(repo, 1_000));
+        // Eviction parks the handle right after the first lookup returned it, before the
+        // connection was counted.
+        AtomicInteger lookups = new AtomicInteger();
+        doAnswer(inv -> {
+            Object found = inv.callRealMethod();
+            if (lookups.incrementAndGet() == 1) {
+                pending.put("type_x", repositories.remove("type_x"));
+                since.put("type_x", clock.get());
+            }
+            return found;
+        }).when(store).getRepository("type_x");
+
+        RepositoryConnection conn = store.getRepoConnection("type_x");
+
+        assertEquals(2, lookups.get());
+        assertSame(repo, repositories.get("type_x").repo);
+        assertFalse(pending.containsKey("type_x"));
+        assertEquals(1, open.get("type_x").get());
+        conn.close();
+        assertEquals(0, open.get("type_x").get());
+    }
+
+    @Test
+    void asyncAccessCountsTowardsTheAccessFrequency() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        List<Repository> cached = fillIdle(repositories, 1);
+
+        assertSame(cached.getFirst(), store.getRepositoryAsync("type_0").get(10, TimeUnit.SECONDS));
+        store.getRepository("type_0");
+        assertEquals(2, frequencies(store).frequency("type_0"));
+    }
+
+    @Test
+    void concurrentRequestsForANewRepoCreateItOnceWithoutHoldingUpOthers() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        List<Repository> cached = fillIdle(repositories, 1);
+
+        Repository created = mock(Repository.class);
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            creations.incrementAndGet();
+            creating.countDown();
+            release.await();
+            return created;
+        }).when(store).createRepository("type_new");
+
+        CompletableFuture<Repository> first = CompletableFuture.supplyAsync(() -> store.getRepository("type_new"));
+        assertTrue(creating.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Repository> second = store.getRepositoryAsync("type_new");
+        CompletableFuture<Void> prewarmed = store.prewarmRepositories(List.of("type_new", "type_0"));
+
+        // Other repos are served while the creation is in flight.
+        assertSame(cached.getFirst(), store.getRepository("type_0"));
+        assertFalse(second.isDone());
+
+        release.countDown();
+        assertSame(created, first.get(10, TimeUnit.SECONDS));
+        assertSame(created, second.get(10, TimeUnit.SECONDS));
+        prewarmed.get(10, TimeUnit.SECONDS);
+        assertEquals(1, creations.get());
+        assertSame(created, repositories.get("type_new").repo);
+    }
+
+    @Test
+    void prewarmCreatesMissingReposInTheBackground() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        doAnswer(inv -> {
+            threads.add(Thread.currentThread().getName());
+            return mock(Repository.class);
+        }).when(store).createRepository(anyString());
+
+        store.prewarmRepositories(List.of("type_a", "pubkey_b")).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Set.of("type_a", "pubkey_b"), repositories.keySet());
+        assertTrue(threads.stream().allMatch(t -> t.startsWith("repo-prewarm-")), threads.toString());
+    }
+
+    @Test
+    void failedCreationIsReportedAndRetriedOnTheNextRequest() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ConcurrentHashMap<String, TripleStore.RepoHandle> repositories = new ConcurrentHashMap<>();
+        TripleStore store = cacheMock(clock, repositories, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        Repository created = mock(Repository.class);
+        doThrow(new IllegalStateException("server unreachable")).doReturn(created).when(store).createRepository("type_x");
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> store.getRepository("type_x"));
+        assertEquals("server unreachable", ex.getMessage());
+        assertFalse(repositories.containsKey("type_x"));
+
+        assertSame(created, store.getRepository("type_x"));
+    }
+
+    // --- bulk reads ---
+
+    @Test
+    void fetchGraphsStreamsEveryGraphAcrossBatches() {
+        TripleStore store = mock(TripleStore.class, CALLS_REAL_METHODS);
+        ValueFactory vf = SimpleValueFactory.getInstance();
+        Repository repo = new SailRepository(new MemoryStore());
+        repo.init();
+        try (RepositoryConnection conn = repo.getConnection()) {
+            List<IRI> graphs = new ArrayList<>();
+            for (int i = 0; i < TripleStore.FETCH_BATCH_SIZE + 5; i++) {
+                IRI g = vf.createIRI("https://example.org/np" + i + "/assertion");
+                graphs.add(g);
+                conn.add(vf.createIRI("https://example.org/s" + i), RDF.VALUE, vf.createLiteral(i), g);
+            }
+            conn.add(vf.createIRI("https://example.org/other"), RDF.VALUE, vf.createLiteral(-1), vf.createIRI("https://example.org/other"));
+
+            List<Statement> fetched = new ArrayList<>();
+            store.fetchGraphs(conn, graphs, fetched::add);
+
+            assertEquals(graphs.size(), fetched.size());
+            assertEquals(Set.copyOf(graphs), fetched.stream().map(Statement::getContext).collect(Collectors.toSet()));
+        } finally {
+            repo.shutDown();
+        }
+    }
+
+    @Test
+    void fetchSubjectsReadsOnlyTheRequestedPredicatesInTheGraph() {
+        TripleStore store = mock(TripleStore.class, CALLS_REAL_METHODS);
+        ValueFactory vf = SimpleValueFactory.getInstance();
+        IRI graph = vf.createIRI("https://example.org/graph");
+        IRI a = vf.createIRI("https://example.org/a");
+        IRI b = vf.createIRI("https://example.org/b");
+        Repository repo = new SailRepository(new MemoryStore());
+        repo.init();
+        try (RepositoryConnection conn = repo.getConnection()) {
+            conn.add(a, RDF.VALUE, vf.createLiteral("a"), graph);
+            conn.add(a, RDFS.LABEL, vf.createLiteral("label"), graph);
+            conn.add(b, RDF.VALUE, vf.createLiteral("b"), graph);
+            conn.add(b, RDF.VALUE, vf.createLiteral("elsewhere"), vf.createIRI("https://example.org/other"));
+
+            List<Statement> fetched = new ArrayList<>();
+            store.fetchSubjects(conn, List.of(a, b), List.of(RDF.VALUE), graph, fetched::add);
+
+            assertEquals(Set.of(vf.createStatement(a, RDF.VALUE, vf.createLiteral("a"), graph),
+                    vf.createStatement(b, RDF.VALUE, vf.createLiteral("b"), graph)), Set.copyOf(fetched));
+        } finally {
+            repo.shutDown();
+        }
+    }
+
+    @Test
+    void repoClassIsTheNameUpToTheFirstUnderscore() {
+        assertEquals("type", TripleStore.repoClass("type_abc"));
+        assertEquals("pubkey", TripleStore.repoClass("pubkey_abc"));
+        assertEquals("meta", TripleStore.repoClass("meta"));
+        // The default covers every repo class.
+        assertTrue(TripleStore.usesBinaryTransport("type_abc"));
+        assertTrue(TripleStore.usesBinaryTransport("admin"));
+    }
+
+    @Test
+    void repoConfigIsAValidRepositoryConfigForTheEmbeddedManager() throws IOException {
+        for (String name : List.of("type_abc", "meta", "text")) {
+            Model model = Rio.parse(new StringReader(TripleStore.repoConfig(name)), RDFFormat.TURTLE);
+            RepositoryConfig config = RepositoryConfigUtil.getRepositoryConfig(model, name);
+            assertEquals(name, config.getID());
+            config.validate();
+        }
+        assertTrue(TripleStore.repoConfig("type_abc").contains("spoc,posc,ospc,cspo,cpos,cosp"));
+        assertTrue(TripleStore.repoConfig("meta").contains("\"spoc,posc,ospc\""));
+        assertTrue(TripleStore.repoConfig("text").contains("openrdf:LuceneSail"));
+        assertFalse(TripleStore.repoConfig("full").contains("LuceneSail"));
+    }
+}
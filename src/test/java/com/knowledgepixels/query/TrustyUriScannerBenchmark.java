@@ -0,0 +1,185 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.nanopub.Nanopub;
+import org.nanopub.NanopubImpl;
+import org.nanopub.NanopubUtils;
+import org.nanopub.testsuite.NanopubTestSuite;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compares, per nanopub, the trusty-URI and literal handling of the {@link NanopubLoader}
+ * constructor before and after {@link TrustyUriScanner}: {@code String.matches} and
+ * {@code replaceFirst} on the IRIs of every statement and {@code +=} on the filter
+ * literal, against the scanner and {@code StringBuilder}s. The scanner runs once on its
+ * own and once through the cache the loader uses. Prints throughput and CPU time per
+ * nanopub on the benchmark thread.
+ *
+ * <p>Not a test; run by hand after {@code mvn test-compile}, with the test classpath:
+ * <pre>{@code
+ * mvn -q exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.knowledgepixels.query.TrustyUriScannerBenchmark -Dexec.args=20000
+ * }</pre>
+ * The only argument is the number of measured iterations per variant (default 20000).
+ */
+final class TrustyUriScannerBenchmark {
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    /**
+     * Where the results go, so that the work is not optimized away.
+     */
+    private static volatile int sink;
+
+    private static final String ARTIFACT_CODE_REGEX = ".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}";
+    private static final String TRUSTY_URI_REGEX = ".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}([^A-Za-z0-9\\\\-_].{0,43})?";
+    private static final String BASE_TRUSTY_URI_REGEX = "^(.*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43})([^A-Za-z0-9\\\\-_].{0,43})?$";
+
+    /**
+     * One nanopub's statements and types, read once up front.
+     */
+    private record Input(List<Statement> statements, List<IRI> types) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        List<Nanopub> nanopubs = List.of(
+                new NanopubImpl(NanopubTestSuite.getLatest()
+                        .getByArtifactCode("RA6T-YLqLnYd5XfnqR9PaGUjCzudvHdYjcG4GvOc7fdpA").getFirst().toFile()),
+                new NanopubImpl(NanopubTestSuite.getLatest()
+                        .getByArtifactCode("RATq2i1SMq-Ci6-1MAFALTELRRSL7xAsI4iQOC3cgMldE").getFirst().toFile()),
+                new NanopubImpl(NanopubTestSuite.getLatest()
+                        .getByNanopubUri("http://example.org/nanopub-validator-example/RAeUPiCKlke8Pw9wYbqIESyBqFJM5UDSkx4uF9kkRfCh0")
+                        .getFirst().toFile()));
+        List<Input> inputs = new ArrayList<>();
+        int statements = 0;
+        for (Nanopub np : nanopubs) {
+            List<IRI> types = new ArrayList<>();
+            for (IRI type : NanopubUtils.getTypes(np)) {
+                types.add(type);
+            }
+            inputs.add(new Input(NanopubUtils.getStatements(np), types));
+            statements += inputs.getLast().statements().size();
+        }
+        System.out.printf("%d nanopubs, %d statements, %d iterations per variant%n", inputs.size(), statements, iterations);
+
+        for (Input input : inputs) {
+            if (withRegexes(input) != withScanner(input, TrustyUriScannerBenchmark::scannedBase)
+                || withRegexes(input) != withScanner(input, TrustyUriScanner::getBaseTrustyUri)) {
+                throw new IllegalStateException("the scanner disagrees with the regexes");
+            }
+        }
+        run("regexes, +=", iterations, inputs, TrustyUriScannerBenchmark::withRegexes);
+        run("scanner, StringBuilder", iterations, inputs,
+                input -> withScanner(input, TrustyUriScannerBenchmark::scannedBase));
+        run("scanner, cache, StringBuilder", iterations, inputs,
+                input -> withScanner(input, TrustyUriScanner::getBaseTrustyUri));
+    }
+
+    /**
+     * The constructor's work as it was, condensed. The returned figure is only there to be
+     * checked against the other path and to keep the work from being optimized away.
+     */
+    private static int withRegexes(Input input) {
+        int found = 0;
+        String combinedLiterals = "";
+        for (Statement st : input.statements()) {
+            found += regexBase(st.getPredicate()) != null ? 1 : 0;
+            if (st.getObject() instanceof IRI && st.getObject().toString().matches(ARTIFACT_CODE_REGEX)) {
+                found++;
+            }
+            found += regexBase(st.getSubject()) != null ? 1 : 0;
+            if (st.getObject() instanceof IRI) {
+                found += regexBase(st.getObject()) != null ? 1 : 0;
+            } else {
+                combinedLiterals += st.getObject().stringValue().replaceAll("\\s+", " ") + "\n";
+            }
+        }
+        String literalFilter = "_pubkey_";
+        for (IRI type : input.types()) {
+            literalFilter += " _type_" + type.stringValue();
+        }
+        return found + (literalFilter + "\n" + combinedLiterals).length();
+    }
+
+    private static int withScanner(Input input, Function<IRI, IRI> base) {
+        int found = 0;
+        StringBuilder combinedLiterals = new StringBuilder();
+        for (Statement st : input.statements()) {
+            found += base(base, st.getPredicate()) != null ? 1 : 0;
+            if (st.getObject() instanceof IRI && TrustyUriScanner.endsWithArtifactCode(st.getObject().stringValue())) {
+                found++;
+            }
+            found += base(base, st.getSubject()) != null ? 1 : 0;
+            if (st.getObject() instanceof IRI) {
+                found += base(base, st.getObject()) != null ? 1 : 0;
+            } else {
+                TrustyUriScanner.appendCollapsingWhitespace(combinedLiterals, st.getObject().stringValue());
+            }
+        }
+        StringBuilder literalFilter = new StringBuilder("_pubkey_");
+        for (IRI type : input.types()) {
+            literalFilter.append(" _type_").append(type.stringValue());
+        }
+        return found + literalFilter.append('\n').append(combinedLiterals).length();
+    }
+
+    private static IRI base(Function<IRI, IRI> base, Value v) {
+        return v instanceof IRI iri ? base.apply(iri) : null;
+    }
+
+    private static IRI regexBase(Value v) {
+        if (!(v instanceof IRI)) {
+            return null;
+        }
+        String s = v.stringValue();
+        if (!s.matches(TRUSTY_URI_REGEX)) {
+            return null;
+        }
+        return vf.createIRI(s.replaceFirst(BASE_TRUSTY_URI_REGEX, "$1"));
+    }
+
+    private static IRI scannedBase(IRI iri) {
+        int end = TrustyUriScanner.baseTrustyUriEnd(iri.stringValue());
+        if (end < 0) {
+            return null;
+        }
+        return end == iri.stringValue().length() ? iri : vf.createIRI(iri.stringValue().substring(0, end));
+    }
+
+    /**
+     * Runs every nanopub once per iteration after a warm-up of a fifth as many.
+     */
+    private static void run(String label, int iterations, List<Input> inputs, ToIntFunction<Input> load) {
+        for (int i = 0; i < iterations / 5; i++) {
+            for (Input input : inputs) {
+                sink += load.applyAsInt(input);
+            }
+        }
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long wallStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (Input input : inputs) {
+                sink += load.applyAsInt(input);
+            }
+        }
+        long wallNs = System.nanoTime() - wallStart;
+        long cpuNs = threads.getCurrentThreadCpuTime() - cpuStart;
+        long runs = (long) iterations * inputs.size();
+        System.out.printf("%-30s %10.0f nanopubs/s %8.1f us CPU/nanopub%n",
+                label, runs / (wallNs / 1e9), cpuNs / 1e3 / runs);
+    }
+
+}
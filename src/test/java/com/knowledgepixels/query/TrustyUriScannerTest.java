@@ -0,0 +1,113 @@
+package com.knowledgepixels.query;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The scanner stands in for the regexes the loader used before, so its answers are
+ * checked against those regexes, on hand-picked edge cases and on random strings built
+ * from the characters that matter.
+ */
+class TrustyUriScannerTest {
+
+    private static final String ARTIFACT_CODE_REGEX = ".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}";
+    private static final String TRUSTY_URI_REGEX = ".*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43}([^A-Za-z0-9\\\\-_].{0,43})?";
+    private static final String BASE_TRUSTY_URI_REGEX = "^(.*[^A-Za-z0-9\\-_]RA[A-Za-z0-9\\-_]{43})([^A-Za-z0-9\\\\-_].{0,43})?$";
+
+    private static final String CODE = "RA1234567890abcdefghijklmnopqrstuvwxyzABCDEFG";
+    private static final String NP = "https://w3id.org/np/" + CODE;
+
+    private static String expectedBase(String s) {
+        return s.matches(TRUSTY_URI_REGEX) ? s.replaceFirst(BASE_TRUSTY_URI_REGEX, "$1") : null;
+    }
+
+    private static String actualBase(String s) {
+        int end = TrustyUriScanner.baseTrustyUriEnd(s);
+        return end < 0 ? null : s.substring(0, end);
+    }
+
+    private static void assertSameAsRegex(String s) {
+        assertEquals(s.matches(ARTIFACT_CODE_REGEX), TrustyUriScanner.endsWithArtifactCode(s), s);
+        assertEquals(expectedBase(s), actualBase(s), s);
+    }
+
+    @Test
+    void edgeCasesMatchTheRegexes() {
+        List<String> cases = List.of(
+                NP,
+                NP + "/assertion",
+                NP + "#assertion",
+                NP + "-suffix",
+                NP + "]suffix",
+                NP + "_suffix",
+                NP + "\\suffix",
+                NP + "/" + "x".repeat(42),
+                NP + "/" + "x".repeat(43),
+                NP + "/" + "x".repeat(44),
+                NP + "/a\nb",
+                "https://w3id.org/np\n/" + CODE,
+                "https://w3id.org/np/x" + CODE,
+                "https://w3id.org/np/" + CODE.substring(0, 44),
+                "https://w3id.org/np/" + CODE + "/" + CODE,
+                "https://w3id.org/np/" + CODE + "/" + CODE + "/x",
+                CODE,
+                "/" + CODE,
+                "",
+                "RA",
+                "http://example.org/thing");
+        for (String s : cases) {
+            assertSameAsRegex(s);
+        }
+    }
+
+    @Test
+    void randomStringsMatchTheRegexes() {
+        Random random = new Random(42);
+        char[] alphabet = {'R', 'A', 'x', '0', '-', '_', '/', '#', '.', ']', '\\', '\n', ' '};
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (random.nextBoolean()) {
+                sb.append("https://w3id.org/np/");
+            }
+            if (random.nextInt(3) > 0) {
+                sb.append(random.nextBoolean() ? '/' : 'x').append(CODE);
+            }
+            int tail = random.nextInt(50);
+            for (int j = 0; j < tail; j++) {
+                sb.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            assertSameAsRegex(sb.toString());
+        }
+    }
+
+    @Test
+    void baseTrustyUriIsCachedPerIri() {
+        IRI iri = SimpleValueFactory.getInstance().createIRI(NP + "/assertion");
+        IRI base = TrustyUriScanner.getBaseTrustyUri(iri);
+        assertEquals(NP, base.stringValue());
+        assertSame(base, TrustyUriScanner.getBaseTrustyUri(iri));
+
+        IRI whole = SimpleValueFactory.getInstance().createIRI(NP);
+        assertEquals(whole, TrustyUriScanner.getBaseTrustyUri(whole));
+        assertNull(TrustyUriScanner.getBaseTrustyUri(SimpleValueFactory.getInstance().createIRI("http://example.org/thing")));
+    }
+
+    @Test
+    void whitespaceIsCollapsedAsReplaceAllDid() {
+        List<String> literals = List.of("", " ", "a", "a  b", "\ta\n\nb \r\n", "x\u000By\fz", "keep\u00A0nbsp", "a b ");
+        StringBuilder actual = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (String literal : literals) {
+            TrustyUriScanner.appendCollapsingWhitespace(actual, literal);
+            expected.append(literal.replaceAll("\\s+", " ")).append("\n");
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+}
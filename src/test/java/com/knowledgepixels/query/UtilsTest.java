@@ -277,6 +277,22 @@ class UtilsTest {
         }
     }
 
+    @Test
+    void createHashRecordsNewHashWithoutWritingOnTheCallingThread() {
+        try (MockedStatic<Utils> mockedUtils = Mockito.mockStatic(Utils.class, Mockito.CALLS_REAL_METHODS);
+             MockedStatic<TripleStore> mockedTripleStore = Mockito.mockStatic(TripleStore.class)) {
+            TripleStore mockTripleStore = mock(TripleStore.class);
+            mockedTripleStore.when(TripleStore::get).thenReturn(mockTripleStore);
+            Map<String, Value> map = new HashMap<>();
+            mockedUtils.when(Utils::getHashToObjectMap).thenReturn(map);
+
+            String hash = Utils.createHash("anotherTestObject");
+            assertEquals(Values.literal("anotherTestObject"), map.get(hash));
+            assertEquals(hash, Utils.createHash("anotherTestObject"));
+            verify(mockTripleStore, never()).getAdminRepoConnection();
+        }
+    }
+
     @Test
     void createHashWhenAlreadyExists() {
         try (MockedStatic<Utils> mockedUtils = Mockito.mockStatic(Utils.class, Mockito.CALLS_REAL_METHODS)) {